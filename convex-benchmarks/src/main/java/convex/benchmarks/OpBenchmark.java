@@ -1,8 +1,10 @@
 package  convex.benchmarks;
 
 import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.profile.GCProfiler;
 import org.openjdk.jmh.runner.Runner;
 import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
 
 import convex.core.data.ACell;
 import convex.core.lang.AOp;
@@ -45,11 +47,39 @@ public class OpBenchmark {
 	public void simpleSumPrecompiled() {
 		runOp(simpleSum2);
 	}
-	 
-
+	
+	// arithmetic on longs outside the small value cache
+	static final AOp<ACell> longArith=Invoke.create(Constant.create(Core.MINUS),
+			Invoke.create(Constant.create(Core.TIMES),Constant.of(12345L),Constant.of(678L)),Constant.of(9999L));
+	@Benchmark
+	public void longArithmetic() {
+		runOp(longArith);
+	}
+	
+	// mixed long / double arithmetic
+	static final AOp<ACell> doubleArith=Invoke.create(Constant.create(Core.PLUS),
+			Invoke.create(Constant.create(Core.TIMES),Constant.of(1.5),Constant.of(678L)),Constant.of(0.25));
+	@Benchmark
+	public void doubleArithmetic() {
+		runOp(doubleArith);
+	}
+	
+	static final AOp<ACell> compareOp=Invoke.create(Constant.create(Core.LT),Constant.of(12345L),Constant.of(67890L));
+	@Benchmark
+	public void longCompare() {
+		runOp(compareOp);
+	}
+	
+	// numeric loop similar to actor token maths, with small values
+	static final AOp<ACell> numericLoop=CTX.expandCompile(Reader.read("(loop [i 0 acc 0] (if (< i 100) (recur (inc i) (+ acc (* i 3))) acc))")).getResult();
+	@Benchmark
+	public void numericLoop() {
+		runOp(numericLoop);
+	}
 
 	public static void main(String[] args) throws Exception {
-		Options opt = Benchmarks.createOptions(OpBenchmark.class);
+		// GC profiler reports allocation rate per op (gc.alloc.rate.norm)
+		Options opt = new OptionsBuilder().parent(Benchmarks.createOptions(OpBenchmark.class)).addProfiler(GCProfiler.class).build();
 		new Runner(opt).run();
 	}
 }
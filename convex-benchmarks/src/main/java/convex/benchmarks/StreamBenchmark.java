@@ -0,0 +1,47 @@
+package convex.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+
+import convex.core.data.AVector;
+import convex.core.data.AccountStatus;
+import convex.core.data.VectorBuilder;
+
+/**
+ * Benchmarks for sequential and parallel streams over large CVM vectors
+ */
+public class StreamBenchmark {
+
+	static final int NUM_ACCOUNTS = 1000000;
+
+	static final AVector<AccountStatus> ACCOUNTS;
+
+	static {
+		VectorBuilder<AccountStatus> vb = new VectorBuilder<>();
+		for (int i = 0; i < NUM_ACCOUNTS; i++) {
+			vb.conj(AccountStatus.create(i, Benchmarks.HERO_KEY));
+		}
+		ACCOUNTS = vb.toVector();
+	}
+
+	@Benchmark
+	public long sequentialSum() {
+		return ACCOUNTS.stream().mapToLong(AccountStatus::getBalance).sum();
+	}
+
+	@Benchmark
+	public long parallelSum() {
+		return ACCOUNTS.parallelStream().mapToLong(AccountStatus::getBalance).sum();
+	}
+
+	@Benchmark
+	public long reduceSum() {
+		return ACCOUNTS.reduce((Long acc, AccountStatus as) -> acc + as.getBalance(), 0L);
+	}
+
+	public static void main(String[] args) throws Exception {
+		Options opt = Benchmarks.createOptions(StreamBenchmark.class);
+		new Runner(opt).run();
+	}
+}
@@ -187,57 +187,68 @@ public class Belief extends ARecord {
 			Belief[] beliefs) {
 		// Initialise result with existing Orders from this Belief
 		BlobMap<AccountKey, SignedData<Order>> result = this.orders;
-		
+		AccountKey myKey = mc.getAccountKey();
+		MapEntry<AccountKey, SignedData<Order>> myEntry = result.getEntry(myKey);
+
 		// Iterate over each received Belief
 		for (Belief belief : beliefs) {
 			if (belief == null) continue; // ignore null beliefs, might happen if invalidated
 			if (belief.equals(this)) continue; // ignore an identical belief. Nothing to update.
-			BlobMap<AccountKey, SignedData<Order>> bOrders = belief.orders;
-			
-			// Iterate over each Peer's ordering convevey in this Belief
-			long bcount=bOrders.count();
-			for (long i=0; i<bcount; i++) {
-				MapEntry<AccountKey,SignedData<Order>> be=bOrders.entryAt(i);
-				ABlob key=be.getKey();
-				
-				// Skip merging own Key. We should always have our own latest Order
-				if(key.equalsBytes(mc.getAccountKey())) continue; 
-				
-				SignedData<Order> a=result.get(key);
-				if (a == null) {result=result.assocEntry(be); continue;}
-				SignedData<Order> b=be.getValue();
-				if (b == null) continue;
-				
-				// Check signature
-				if (!b.checkSignature()) {
-					// TODO: Better handling than just ignoring, e.g. slashing?
-					continue;
-				};
-				
-				if (a.equals(b)) continue; // PERF: fast path for no changes
-
-				Order ac = a.getValue();
-				Order bc = b.getValue();
-
-				// TODO: penalise inconsistency?
-				// TODO: check for forks / inconsistent values?
-				// TODO: check logic?
-
-				// prefer advanced consensus first!
-				if (bc.getConsensusPoint() > ac.getConsensusPoint()) {result=result.assocEntry(be); continue;};
-
-				// prefer longer orders, must be later?
-				if (bc.getBlockCount() > ac.getBlockCount()) {result=result.assocEntry(be); continue;};
-
-				// prefer advanced proposals
-				if (bc.getProposalPoint() > ac.getProposalPoint()) {result=result.assocEntry(be); continue;};
-
-				// keep current view (more stable?)
+
+			// Merge each Peer's ordering conveyed in this Belief. Orders shared with the
+			// current result are skipped structurally, so only differing Orders are compared
+			result = result.mergeDifferences(belief.orders, Belief::mergeOrder);
+		}
+
+		// Skip merging own Key. We should always have our own latest Order
+		MapEntry<AccountKey, SignedData<Order>> newEntry = result.getEntry(myKey);
+		if (newEntry != myEntry) {
+			if (myEntry == null) {
+				result = result.dissoc((ABlob) myKey);
+			} else {
+				result = result.assocEntry(myEntry);
 			}
 		}
 		return result;
 	}
 
+	/**
+	 * Chooses between two different Orders for the same Peer. Either may be null if
+	 * the Peer is missing from one of the maps being merged.
+	 * @param a Current Order
+	 * @param b Received Order
+	 * @return Preferred Order
+	 */
+	private static SignedData<Order> mergeOrder(SignedData<Order> a, SignedData<Order> b) {
+		if (b == null) return a;
+		if (a == null) return b;
+
+		// Check signature
+		if (!b.checkSignature()) {
+			// TODO: Better handling than just ignoring, e.g. slashing?
+			return a;
+		}
+
+		Order ac = a.getValue();
+		Order bc = b.getValue();
+
+		// TODO: penalise inconsistency?
+		// TODO: check for forks / inconsistent values?
+		// TODO: check logic?
+
+		// prefer advanced consensus first!
+		if (bc.getConsensusPoint() > ac.getConsensusPoint()) return b;
+
+		// prefer longer orders, must be later?
+		if (bc.getBlockCount() > ac.getBlockCount()) return b;
+
+		// prefer advanced proposals
+		if (bc.getProposalPoint() > ac.getProposalPoint()) return b;
+
+		// keep current view (more stable?)
+		return a;
+	}
+
 	/**
 	 * Conducts a stake-weighted vote across a map of consistent chains, in the
 	 * given merge context
@@ -16,10 +16,18 @@ import convex.core.data.prim.CVMBool;
 public class Constants {
 
 	/**
-	 * Limit of scheduled transactions run in a single Block
+	 * Limit of scheduled transactions run in a single Block. Only enforced for
+	 * Blocks with a timestamp at or after SCHEDULE_LIMIT_ACTIVATION.
 	 */
 	public static final long MAX_SCHEDULED_TRANSACTIONS_PER_BLOCK = 100;
 
+	/**
+	 * Block timestamp from which MAX_SCHEDULED_TRANSACTIONS_PER_BLOCK is enforced.
+	 * This is a consensus change, so all Peers must agree on the value. Not yet
+	 * scheduled.
+	 */
+	public static final long SCHEDULE_LIMIT_ACTIVATION = Long.MAX_VALUE;
+
 	/**
 	 * Threshold of stake required to propose consensus
 	 */
@@ -186,6 +194,31 @@ public class Constants {
 	 */
 	public static final long PEER_SYNC_TIMEOUT = 60000;
 
+	/**
+	 * Default number of recent States retained in memory by a Peer Server
+	 */
+	public static final long PEER_RETAIN_STATES = 10000;
+
+	/**
+	 * Default interval in Blocks between historical State checkpoints
+	 */
+	public static final long PEER_CHECKPOINT_BLOCKS = 1000;
+
+	/**
+	 * Default interval in milliseconds between historical State checkpoints
+	 */
+	public static final long PEER_CHECKPOINT_TIME = 600000;
+
+	/**
+	 * Default number of Blocks between background persistence of Peer data
+	 */
+	public static final long PEER_PERSIST_BLOCKS = 100;
+
+	/**
+	 * Default interval in milliseconds between background persistence of Peer data
+	 */
+	public static final long PEER_PERSIST_INTERVAL = 10000;
+
 	/**
 	 * Number of fields in a Peer STATUS message
 	 */
@@ -191,5 +191,14 @@ public class ErrorCodes {
 	 */
 	public static final Keyword FORMAT = Keyword.create("FORMAT");
 
+	/**
+	 * ErrorCode for a request rejected because a Peer resource limit was reached.
+	 */
+	public static final Keyword LOAD = Keyword.create("LOAD");
+
+	/**
+	 * ErrorCode for a request that did not produce a result within the allowed time.
+	 */
+	public static final Keyword TIMEOUT = Keyword.create("TIMEOUT");
 
 }
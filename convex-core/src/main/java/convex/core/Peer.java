@@ -24,6 +24,7 @@ import convex.core.exceptions.InvalidDataException;
 import convex.core.init.Init;
 import convex.core.lang.AOp;
 import convex.core.lang.Context;
+import convex.core.lang.RT;
 import convex.core.store.AStore;
 import convex.core.store.Stores;
 import convex.core.transactions.ATransaction;
@@ -46,6 +47,14 @@ import convex.core.util.Utils;
  * consensus updates happen.
  * </p>
  *
+ * <p>
+ * A Peer may be configured with a history retention policy. In that case only the
+ * most recent States and BlockResults are retained in the main window, and older
+ * States are kept as sparse checkpoints in a separate history vector. The genesis
+ * State is always retained as the first checkpoint. Once persisted, checkpoints
+ * are only loaded from the store when needed.
+ * </p>
+ *
  *
  * "Don't worry about what anybody else is going to do. The best way to predict
  * the future is to invent it." - Alan Kay
@@ -71,22 +80,95 @@ public class Peer {
 	private final long timestamp;
 
 	/**
-	 * Vector of states
+	 * Vector of retained states. The first element is the State at position
+	 * stateOffset, i.e. after that number of Blocks have been applied.
 	 */
 	private final AVector<State> states;
 
 	/**
-	 * Vector of results
+	 * Vector of retained results. Element i is the BlockResult for Block
+	 * (stateOffset + i)
 	 */
 	private final AVector<BlockResult> blockResults;
 
+	/**
+	 * Position of the first retained State
+	 */
+	private final long stateOffset;
+
+	/**
+	 * Sparse checkpoints of historical States, starting with the genesis State
+	 */
+	private final AVector<State> history;
+
+	/**
+	 * Retention policy for State history
+	 */
+	private final Retention retention;
+
+	/**
+	 * Policy for retention of Peer State history.
+	 */
+	public static final class Retention {
+		/**
+		 * Number of recent States to retain. Zero retains all States.
+		 */
+		public final long states;
+
+		/**
+		 * Interval in Blocks between retained checkpoints. Zero disables
+		 * Block-based checkpoints.
+		 */
+		public final long checkpointBlocks;
+
+		/**
+		 * Minimum interval in milliseconds between retained checkpoints. Zero
+		 * disables time-based checkpoints.
+		 */
+		public final long checkpointTime;
+
+		private Retention(long states, long checkpointBlocks, long checkpointTime) {
+			this.states = states;
+			this.checkpointBlocks = checkpointBlocks;
+			this.checkpointTime = checkpointTime;
+		}
+
+		/**
+		 * Creates a retention policy
+		 * @param states Number of recent States to retain, or zero to retain all
+		 * @param checkpointBlocks Interval in Blocks between checkpoints, or zero
+		 * @param checkpointTime Interval in milliseconds between checkpoints, or zero
+		 * @return Retention policy
+		 */
+		public static Retention create(long states, long checkpointBlocks, long checkpointTime) {
+			return new Retention(states, checkpointBlocks, checkpointTime);
+		}
+
+		/**
+		 * Retention policy that keeps all States
+		 */
+		public static final Retention ALL = new Retention(0, 0, 0);
+
+		private boolean isCheckpoint(long position, State s, State lastCheckpoint) {
+			if ((checkpointBlocks > 0) && (position % checkpointBlocks == 0)) return true;
+			if (checkpointTime > 0) {
+				long elapsed = s.getTimeStamp().longValue() - lastCheckpoint.getTimeStamp().longValue();
+				if (elapsed >= checkpointTime) return true;
+			}
+			return false;
+		}
+	}
+
 	private Peer(AKeyPair kp, SignedData<Belief> belief, AVector<State> states, AVector<BlockResult> results,
-			long timeStamp) {
+			long stateOffset, AVector<State> history, Retention retention, long timeStamp) {
 		this.keyPair = kp;
 		this.peerKey = kp.getAccountKey();
 		this.belief = belief;
 		this.states = states;
 		this.blockResults = results;
+		this.stateOffset = stateOffset;
+		this.history = history;
+		this.retention = retention;
 		this.timestamp = timeStamp;
 	}
 
@@ -101,8 +183,12 @@ public class Peer {
 		SignedData<Belief> belief=(SignedData<Belief>) peerData.get(Keywords.BELIEF);
 		AVector<BlockResult> results=(AVector<BlockResult>) peerData.get(Keywords.RESULTS);
 		AVector<State> states=(AVector<State>) peerData.get(Keywords.STATES);
+		AVector<State> history=(AVector<State>) peerData.get(Keywords.HISTORY);
+		ACell offset=peerData.get(Keywords.OFFSET);
+		long stateOffset=(offset==null)?0:RT.ensureLong(offset).longValue();
+		if (history==null) history=Vectors.of(states.get(0));
 		long timestamp=belief.getValue().getTimestamp();
-		return new Peer(keyPair,belief,states,results,timestamp);
+		return new Peer(keyPair,belief,states,results,stateOffset,history,Retention.ALL,timestamp);
 	}
 
 	/**
@@ -113,7 +199,9 @@ public class Peer {
 		return Maps.of(
 			Keywords.BELIEF,belief,
 			Keywords.RESULTS,blockResults,
-			Keywords.STATES,states
+			Keywords.STATES,states,
+			Keywords.HISTORY,history,
+			Keywords.OFFSET,CVMLong.create(stateOffset)
 		);
 	}
 
@@ -138,7 +226,7 @@ public class Peer {
 			throw new Error("Belief not correctly persisted! "+sb.getHash());
 		}
 
-		return new Peer(peerKP, sb, states, Vectors.empty(), initialState.getTimeStamp().longValue());
+		return new Peer(peerKP, sb, states, Vectors.empty(), 0, states, Retention.ALL, initialState.getTimeStamp().longValue());
 	}
 	
 	/**
@@ -226,7 +314,27 @@ public class Peer {
 	 */
 	public Peer updateTimestamp(long newTimestamp) {
 		if (newTimestamp < timestamp) return this;
-		return new Peer(keyPair, belief, states, blockResults, timestamp);
+		return new Peer(keyPair, belief, states, blockResults, stateOffset, history, retention, timestamp);
+	}
+
+	/**
+	 * Sets the State history retention policy for this Peer. Excess States will be
+	 * removed on the next consensus update.
+	 *
+	 * @param retention Retention policy
+	 * @return Peer with updated retention policy
+	 */
+	public Peer withRetention(Retention retention) {
+		if (this.retention == retention) return this;
+		return new Peer(keyPair, belief, states, blockResults, stateOffset, history, retention, timestamp);
+	}
+
+	/**
+	 * Gets the State history retention policy for this Peer.
+	 * @return Retention policy
+	 */
+	public Retention getRetention() {
+		return retention;
 	}
 
 	/**
@@ -407,24 +515,55 @@ public class Peer {
 		if (belief.getValue() == newBelief) return this;
 		Order myOrder = newBelief.getOrder(peerKey); // this peer's chain from new belief
 		long consensusPoint = myOrder.getConsensusPoint();
-		long stateIndex = states.count() - 1; // index of last state
+		long stateIndex = stateOffset + states.count() - 1; // position of last state
 		AVector<SignedData<Block>> blocks = myOrder.getBlocks();
 
 		// need to advance states
 		AVector<State> newStates = this.states;
 		AVector<BlockResult> newResults = this.blockResults;
+		State s = getConsensusState();
 		while (stateIndex < consensusPoint) { // add states until last state is at consensus point
-			State s = newStates.get(stateIndex);
 			SignedData<Block> block = blocks.get(stateIndex);
 			
 			// TODO: Block signature validation here?
 			BlockResult br = s.applyBlock(block.getValue());
-			newStates = newStates.append(br.getState());
+			s = br.getState();
+			newStates = newStates.append(s);
 			newResults = newResults.append(br);
 			stateIndex++;
 		}
 		SignedData<Belief> sb = keyPair.signData(newBelief);
-		return new Peer(keyPair, sb, newStates, newResults, timestamp);
+		return new Peer(keyPair, sb, newStates, newResults, stateOffset, history, retention, timestamp).trimHistory();
+	}
+
+	/**
+	 * Trims the retained State window according to the retention policy, moving
+	 * checkpoint States into the history vector. Trims in batches so that the cost
+	 * of slicing the window is amortised over many Blocks.
+	 *
+	 * @return Updated Peer, or this Peer if no trimming required
+	 */
+	private Peer trimHistory() {
+		long retain = retention.states;
+		if (retain <= 0) return this;
+		long n = states.count();
+		if (n <= retain + (retain / 4)) return this;
+
+		long drop = n - retain;
+		AVector<State> newHistory = history;
+		State lastCheckpoint = newHistory.get(newHistory.count() - 1);
+		for (long i = 0; i < drop; i++) {
+			long position = stateOffset + i;
+			if (position == 0) continue; // genesis is always the first checkpoint
+			State s = states.get(i);
+			if (retention.isCheckpoint(position, s, lastCheckpoint)) {
+				newHistory = newHistory.append(s);
+				lastCheckpoint = s;
+			}
+		}
+		AVector<State> newStates = states.slice(drop, n);
+		AVector<BlockResult> newResults = blockResults.slice(drop, blockResults.count());
+		return new Peer(keyPair, belief, newStates, newResults, stateOffset + drop, newHistory, retention, timestamp);
 	}
 
 	/**
@@ -445,12 +584,17 @@ public class Peer {
 		AVector<BlockResult> newResults = this.blockResults;
 		newResults=ACell.createPersisted(newResults).getValue();
 
-		return new Peer(this.keyPair, sb, newStates, newResults, this.timestamp);
+		// Persist history checkpoints
+		AVector<State> newHistory = this.history;
+		newHistory=ACell.createPersisted(newHistory).getValue();
+
+		return new Peer(this.keyPair, sb, newStates, newResults, stateOffset, newHistory, retention, this.timestamp);
 	}
 
 	/**
-	 * Gets the vector of States maintained by this Peer, starting from the
-	 * Genesis state (index 0).
+	 * Gets the vector of States retained by this Peer. If all history is retained,
+	 * this starts from the Genesis state (index 0), otherwise it starts from the
+	 * position given by {@link #getStateOffset()}.
 	 * 
 	 * @return Vector of states
 	 */
@@ -458,23 +602,66 @@ public class Peer {
 		return states;
 	}
 
+	/**
+	 * Gets the position of the first State retained in the main State window, i.e.
+	 * the number of Blocks applied to reach that State.
+	 * @return State offset
+	 */
+	public long getStateOffset() {
+		return stateOffset;
+	}
+
+	/**
+	 * Gets the vector of historical checkpoint States for this Peer, starting with
+	 * the Genesis state.
+	 * @return Vector of checkpoint States
+	 */
+	public AVector<State> getHistory() {
+		return history;
+	}
+
+	/**
+	 * Gets the State at a given position, i.e. after the given number of Blocks
+	 * have been applied.
+	 * @param position Position of State
+	 * @return State, or null if not retained by this Peer
+	 */
+	public State getState(long position) {
+		if (position == 0) return getGenesisState();
+		long i = position - stateOffset;
+		if ((i < 0) || (i >= states.count())) return null;
+		return states.get(i);
+	}
+
+	/**
+	 * Gets the Genesis State for this Peer
+	 * @return Genesis State
+	 */
+	public State getGenesisState() {
+		return history.get(0);
+	}
+
 	/**
 	 * Gets the result of a specific transaction
 	 * @param blockIndex Index of Block in Order
 	 * @param txIndex Index of transaction in block
-	 * @return Result from transaction
+	 * @return Result from transaction, or null if the BlockResult is no longer retained
 	 */
 	public Result getResult(long blockIndex, long txIndex) {
-		return blockResults.get(blockIndex).getResult(txIndex);
+		BlockResult br = getBlockResult(blockIndex);
+		if (br == null) return null;
+		return br.getResult(txIndex);
 	}
 
 	/**
 	 * Gets the BlockResult of a specific block index
 	 * @param i Index of Block
-	 * @return BlockResult
+	 * @return BlockResult, or null if not retained by this Peer
 	 */
 	public BlockResult getBlockResult(long i) {
-		return blockResults.get(i);
+		long ix = i - stateOffset;
+		if ((ix < 0) || (ix >= blockResults.count())) return null;
+		return blockResults.get(ix);
 	}
 
 	/**
@@ -534,12 +721,16 @@ public class Peer {
 	 * Returns State as-of timestamp.
 	 *
 	 * Timestamp doesn't need to be an exact match; a leftmost State will be returned - unless timestamp is too old.
+	 * 
+	 * If the timestamp is before the retained State window, the nearest earlier checkpoint is returned.
 	 *
 	 * @param timestamp Timestamp in milliseconds.
 	 * @return State or null.
 	 */
 	public State asOf(CVMLong timestamp) {
-		return Utils.stateAsOf(states, timestamp);
+		State s = Utils.stateAsOf(states, timestamp);
+		if (s != null) return s;
+		return Utils.stateAsOf(history, timestamp);
 	}
 
 	/**
@@ -551,7 +742,12 @@ public class Peer {
 	 * @return Vector of States.
 	 */
 	public AVector<State> asOfRange(CVMLong timestamp, long interval, int count) {
-		return Utils.statesAsOfRange(states, timestamp, interval, count);
+		AVector<State> v = Vectors.empty();
+		for (int i = 0; i < count; i++) {
+			v = v.conj(asOf(timestamp));
+			timestamp = CVMLong.create(timestamp.longValue() + interval);
+		}
+		return v;
 	}
 
 	/**
@@ -559,6 +755,6 @@ public class Peer {
 	 * @return Network ID
 	 */
 	public Hash getNetworkID() {
-		return getStates().get(0).getHash();
+		return getGenesisState().getHash();
 	}
 }
@@ -302,36 +302,11 @@ public class State extends ARecord {
 
 	@SuppressWarnings("unchecked")
 	private State applyScheduledTransactions(Block b) {
-		long tcount = 0;
-		BlobMap<ABlob, AVector<ACell>> sched = this.schedule;
-		CVMLong timestamp = this.getTimeStamp();
-
-		// ArrayList to accumulate the transactions to apply. Null until we need it
-		ArrayList<ACell> al = null;
-
-		// walk schedule entries to determine how many there are
-		// and remove from the current schedule
-		// we can optimise bulk removal later
-		while (tcount < Constants.MAX_SCHEDULED_TRANSACTIONS_PER_BLOCK) {
-			if (sched.isEmpty()) break;
-			MapEntry<ABlob, AVector<ACell>> me = sched.entryAt(0);
-			ABlob key = me.getKey();
-			long time = key.longValue();
-			if (time > timestamp.longValue()) break; // exit if we are still in the future
-			AVector<ACell> trans = me.getValue();
-			long numScheduled = trans.count(); // number scheduled at this schedule timestamp
-			long take = Math.min(numScheduled, Constants.MAX_SCHEDULED_TRANSACTIONS_PER_BLOCK - tcount);
-
-			// add scheduled transactions to List
-			if (al == null) al = new ArrayList<>();
-			for (long i = 0; i < take; i++) {
-				al.add(trans.get(i));
-			}
-			// remove schedule entries taken. Delete key if no more entries remaining
-			trans = trans.slice(take, numScheduled);
-			if (trans.isEmpty()) sched = sched.dissoc(key);
-		}
-		if (al==null) return this; // nothing to do if no transactions to execute
+		// ArrayList to accumulate the transactions to apply
+		ArrayList<ACell> al = new ArrayList<>();
+		long time = getTimeStamp().longValue();
+		BlobMap<ABlob, AVector<ACell>> sched = dequeueSchedule(this.schedule, time, scheduleLimit(time), al);
+		if (al.isEmpty()) return this; // nothing to do if no transactions to execute
 
 		// update state with amended schedule
 		State state = this.withSchedule(sched);
@@ -366,6 +341,57 @@ public class State extends ARecord {
 		return state;
 	}
 
+	/**
+	 * Gets the maximum number of scheduled transactions run in a Block with the given
+	 * timestamp. The limit only applies from Constants.SCHEDULE_LIMIT_ACTIVATION, since
+	 * earlier Blocks always ran every due transaction and changing this changes consensus.
+	 * 
+	 * @param time Block timestamp
+	 * @return Maximum number of scheduled transactions, or Long.MAX_VALUE if unlimited
+	 */
+	static long scheduleLimit(long time) {
+		if (time < Constants.SCHEDULE_LIMIT_ACTIVATION) return Long.MAX_VALUE;
+		return Constants.MAX_SCHEDULED_TRANSACTIONS_PER_BLOCK;
+	}
+
+	/**
+	 * Takes scheduled transactions that are due at or before the given time, in schedule
+	 * order, up to a maximum number. Due entries are found in a single traversal of the
+	 * schedule and removed with a single bulk operation. If the maximum is reached part
+	 * way through a timestamp, the remaining transactions for that timestamp stay scheduled.
+	 * 
+	 * @param sched Schedule to take transactions from
+	 * @param time Current timestamp
+	 * @param max Maximum number of transactions to take, see scheduleLimit(long)
+	 * @param al ArrayList to accumulate transactions taken
+	 * @return Updated schedule with taken transactions removed
+	 */
+	@SuppressWarnings("unchecked")
+	static BlobMap<ABlob, AVector<ACell>> dequeueSchedule(BlobMap<ABlob, AVector<ACell>> sched, long time, long max, ArrayList<ACell> al) {
+		long[] consumed = new long[1]; // number of schedule entries taken completely
+		MapEntry<ABlob, AVector<ACell>>[] remainder = new MapEntry[1]; // entry taken partially, if any
+		long start = al.size();
+		sched.allMatch(me -> {
+			if (me.getKey().longValue() > time) return false; // still in the future
+			AVector<ACell> trans = me.getValue();
+			long numScheduled = trans.count(); // number scheduled at this schedule timestamp
+			long take = Math.min(numScheduled, max - (al.size() - start));
+			for (long i = 0; i < take; i++) {
+				al.add(trans.get(i));
+			}
+			if (take < numScheduled) {
+				remainder[0] = me.withValue(trans.slice(take, numScheduled));
+				return false;
+			}
+			consumed[0]++;
+			return (al.size() - start) < max;
+		});
+
+		sched = sched.removeLeadingEntries(consumed[0]);
+		if (remainder[0] != null) sched = sched.assocEntry(remainder[0]);
+		return sched;
+	}
+
 	private State withSchedule(BlobMap<ABlob, AVector<ACell>> newSchedule) {
 		if (schedule == newSchedule) return this;
 		return new State(accounts, peers, globals, newSchedule);
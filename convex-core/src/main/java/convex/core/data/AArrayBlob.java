@@ -63,6 +63,12 @@ public abstract class AArrayBlob extends ABlob {
 			return BlobTree.create(this.append(d.slice(0,split)).toFlatBlob(),d.slice(split,dlength).toFlatBlob());
 		}
 		
+		// A full chunk can be followed directly by the chunks of the other Blob
+		if (length==Blob.CHUNK_LENGTH) {
+			BlobTree head=BlobTree.create(this.toFlatBlob(),d.slice(0,Blob.CHUNK_LENGTH).toFlatBlob());
+			return head.append(d.slice(Blob.CHUNK_LENGTH,dlength));
+		}
+		
 		// More than 2 chunks, use a BlobBuilder
 		BlobBuilder bb=new BlobBuilder(this);
 		bb.append(d);
@@ -1,5 +1,10 @@
 package convex.core.data;
 
+import java.util.Spliterator;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
 /**
  * Abstract base class for Persistent data structures. Each can be regarded as a
  * countable, immutable collection of elements.
@@ -119,6 +124,50 @@ public abstract class ADataStructure<E extends ACell> extends ACountable<E> {
 	 */
 	public abstract boolean containsKey(ACell key);
 	
+	/**
+	 * Tests whether all elements of this data structure match a predicate, visiting
+	 * elements in order and stopping at the first element that does not match.
+	 * 
+	 * Tree structures override this to walk leaf nodes directly, so this is the preferred
+	 * way to traverse all elements (with early exit) rather than looking up each element by index.
+	 * 
+	 * @param pred Predicate to test elements
+	 * @return true if all elements match, false otherwise
+	 */
+	public boolean allMatch(Predicate<? super E> pred) {
+		long n = count();
+		for (long i = 0; i < n; i++) {
+			if (!pred.test(get(i))) return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * Gets a Spliterator over the elements of this data structure. Tree structures are
+	 * split evenly along the tree, with exact sizes for each split.
+	 * 
+	 * @return Spliterator instance
+	 */
+	public Spliterator<E> spliterator() {
+		return new TreeSpliterator<E>(this, 0);
+	}
+	
+	/**
+	 * Gets a sequential Stream of the elements of this data structure
+	 * @return Stream instance
+	 */
+	public Stream<E> stream() {
+		return StreamSupport.stream(spliterator(), false);
+	}
+	
+	/**
+	 * Gets a parallel Stream of the elements of this data structure
+	 * @return Stream instance
+	 */
+	public Stream<E> parallelStream() {
+		return StreamSupport.stream(spliterator(), true);
+	}
+	
 	/**
 	 * Converts CVM data structure to a CVM String, as per 'print'
 	 */
@@ -5,6 +5,7 @@ import java.util.function.Predicate;
 
 import convex.core.data.type.Types;
 import convex.core.exceptions.InvalidDataException;
+import convex.core.lang.RT;
 import convex.core.util.MergeFunction;
 import convex.core.util.Utils;
 
@@ -40,6 +41,19 @@ public abstract class AHashMap<K extends ACell, V extends ACell> extends AMap<K,
 
 	protected abstract AHashMap<K, V> assocEntry(MapEntry<K, V> e, int shift);
 
+	@SuppressWarnings("unchecked")
+	@Override
+	public <R extends ACell> ADataStructure<R> conjAll(ACollection<R> xs) {
+		HashMapBuilder<K, V> builder = new HashMapBuilder<>(this);
+		long n = xs.count();
+		for (long i = 0; i < n; i++) {
+			MapEntry<K, V> me = RT.ensureMapEntry(xs.get(i));
+			if (me == null) return null;
+			builder.assocEntry(me);
+		}
+		return (ADataStructure<R>) builder.toMap();
+	}
+
 	/**
 	 * Merge another map into this map. Replaces existing entries if they are
 	 * different
@@ -50,14 +64,21 @@ public abstract class AHashMap<K extends ACell, V extends ACell> extends AMap<K,
 	 * @return Merged HashMap
 	 */
 	public AHashMap<K, V> merge(AHashMap<K, V> m) {
-		AHashMap<K, V> result = this;
-		long n = m.count();
-		for (int i = 0; i < n; i++) {
-			result = result.assocEntry(m.entryAt(i));
-		}
-		return result;
+		if (m.isEmpty()) return this;
+		if (this.isEmpty()) return m;
+		return merge(m, 0);
 	}
 
+	/**
+	 * Merge another map into this map at the given shift level. Subtrees of the other map
+	 * which are identical to this map, or absent from this map, are used without traversal.
+	 * 
+	 * @param m HashMap to merge into this HashMap, aligned at the same shift
+	 * @param shift Shift level of both maps
+	 * @return Merged HashMap
+	 */
+	protected abstract AHashMap<K, V> merge(AHashMap<K, V> m, int shift);
+
 	/**
 	 * Merge this map with another map, using the given function for each key that
 	 * is present in either map and has a different value
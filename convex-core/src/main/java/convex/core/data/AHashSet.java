@@ -65,12 +65,8 @@ public abstract class AHashSet<T extends ACell> extends ASet<T> {
 	public <R extends ACell> ASet<R> conjAll(ACollection<R> elements) {
 		if (elements instanceof AHashSet) return includeAll((AHashSet<R>) elements);
 		@SuppressWarnings("unchecked")
-		AHashSet<R> result=(AHashSet<R>) this;
-		long n=elements.count();
-		for (long i=0; i<n; i++) {
-			result=result.conj(elements.get(i));
-		}
-		return result;
+		HashSetBuilder<R> builder=new HashSetBuilder<R>((AHashSet<R>) this);
+		return builder.conjAll(elements).toSet();
 	};
 	
 
@@ -0,0 +1,347 @@
+package convex.core.data;
+
+import java.lang.ref.WeakReference;
+import java.util.ListIterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import convex.core.exceptions.InvalidDataException;
+import convex.core.util.Errors;
+import convex.core.util.Utils;
+
+/**
+ * Abstract base class for vectors backed by a primitive Java array.
+ *
+ * These are non-canonical, in-memory representations of large vectors of primitive values. Elements
+ * are stored as primitives rather than as a Ref to a cell per element, and cells are created lazily
+ * on access. The canonical form is the equivalent VectorTree, so encodings and hashes are identical
+ * to those of any other vector with the same elements.
+ *
+ * The canonical form is only weakly cached, so a primitive vector never holds a full tree of cells
+ * alongside its array unless the tree is in use elsewhere. Only the top level encoding and memory size
+ * are retained. Persistence converts to the canonical form once, at the store boundary.
+ *
+ * Vectors of a single chunk or less are always represented as a canonical VectorLeaf.
+ *
+ * Like VectorArray, these are not CVM values. CVM operations always produce canonical vectors, so
+ * a primitive vector is only used from Java code and never reaches CVM state.
+ *
+ * @param <T> Type of vector elements
+ */
+public abstract class APrimitiveVector<T extends ACell> extends AVector<T> {
+
+	/**
+	 * Weak cache of the canonical form, so it is shared while in use but never retained by this vector
+	 */
+	private WeakReference<AVector<T>> canonicalCache = null;
+
+	protected APrimitiveVector(long count) {
+		super(count);
+	}
+
+	/**
+	 * Creates cells for a range of elements in this vector
+	 * @param start Start index
+	 * @param length Number of elements
+	 * @return Array of cells
+	 */
+	protected ACell[] materialise(long start, int length) {
+		ACell[] cells = new ACell[length];
+		for (int i = 0; i < length; i++) {
+			cells[i] = get(start + i);
+		}
+		return cells;
+	}
+
+	@Override
+	public Ref<T> getElementRef(long i) {
+		return Ref.get(get(i));
+	}
+
+	@Override
+	public AVector<T> appendChunk(VectorLeaf<T> chunk) {
+		return toCanonical().appendChunk(chunk);
+	}
+
+	@Override
+	public VectorLeaf<T> getChunk(long offset) {
+		if (((offset & Vectors.BITMASK) == 0) && (offset + Vectors.CHUNK_SIZE <= count)) {
+			// A full chunk is the same as the corresponding canonical chunk
+			return VectorLeaf.create(materialise(offset, Vectors.CHUNK_SIZE), 0, Vectors.CHUNK_SIZE);
+		}
+		return toCanonical().getChunk(offset);
+	}
+
+	@Override
+	public AVector<T> append(T value) {
+		return toCanonical().append(value);
+	}
+
+	@Override
+	public boolean isFullyPacked() {
+		// Canonical form is fully packed if the count is a power of 16
+		return (Long.bitCount(count) == 1) && ((Long.numberOfTrailingZeros(count) % Vectors.BITS_PER_LEVEL) == 0);
+	}
+
+	@Override
+	public boolean anyMatch(Predicate<? super T> pred) {
+		for (long i = 0; i < count; i++) {
+			if (pred.test(get(i))) return true;
+		}
+		return false;
+	}
+
+	@Override
+	public boolean allMatch(Predicate<? super T> pred) {
+		for (long i = 0; i < count; i++) {
+			if (!pred.test(get(i))) return false;
+		}
+		return true;
+	}
+
+	@Override
+	public void forEach(Consumer<? super T> action) {
+		for (long i = 0; i < count; i++) {
+			action.accept(get(i));
+		}
+	}
+
+	@Override
+	public <R> R reduce(BiFunction<? super R, ? super T, ? extends R> func, R value) {
+		for (long i = 0; i < count; i++) {
+			value = func.apply(value, get(i));
+		}
+		return value;
+	}
+
+	@Override
+	public <R extends ACell> AVector<R> map(Function<? super T, ? extends R> mapper) {
+		int n = size();
+		ACell[] results = new ACell[n];
+		for (int i = 0; i < n; i++) {
+			results[i] = mapper.apply(get(i));
+		}
+		return Vectors.createCompact(results);
+	}
+
+	@Override
+	public void visitElementRefs(Consumer<Ref<T>> f) {
+		for (long i = 0; i < count; i++) {
+			f.accept(getElementRef(i));
+		}
+	}
+
+	@Override
+	public long longIndexOf(Object o) {
+		for (long i = 0; i < count; i++) {
+			if (Utils.equals(get(i), o)) return i;
+		}
+		return -1L;
+	}
+
+	@Override
+	public long longLastIndexOf(Object o) {
+		for (long i = count - 1; i >= 0; i--) {
+			if (Utils.equals(get(i), o)) return i;
+		}
+		return -1L;
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	protected <R> void copyToArray(R[] arr, int offset) {
+		int n = size();
+		for (int i = 0; i < n; i++) {
+			arr[offset + i] = (R) get(i);
+		}
+	}
+
+	@Override
+	public <R extends ACell> AVector<R> concat(ASequence<R> b) {
+		return toCanonical().concat(b);
+	}
+
+	@Override
+	public Spliterator<T> spliterator(long position) {
+		return new TreeSpliterator<T>(this, position);
+	}
+
+	@Override
+	public ListIterator<T> listIterator() {
+		return listIterator(0);
+	}
+
+	@Override
+	public ListIterator<T> listIterator(long index) {
+		if ((index < 0) || (index > count)) throw new IndexOutOfBoundsException(Errors.badIndex(index));
+		return new IndexIterator(index);
+	}
+
+	/**
+	 * ListIterator over elements by index
+	 */
+	private class IndexIterator implements ListIterator<T> {
+		long pos;
+
+		IndexIterator(long index) {
+			this.pos = index;
+		}
+
+		@Override
+		public boolean hasNext() {
+			return pos < count;
+		}
+
+		@Override
+		public T next() {
+			if (pos >= count) throw new NoSuchElementException();
+			return get(pos++);
+		}
+
+		@Override
+		public boolean hasPrevious() {
+			return pos > 0;
+		}
+
+		@Override
+		public T previous() {
+			if (pos <= 0) throw new NoSuchElementException();
+			return get(--pos);
+		}
+
+		@Override
+		public int nextIndex() {
+			return Utils.checkedInt(pos);
+		}
+
+		@Override
+		public int previousIndex() {
+			return Utils.checkedInt(pos - 1);
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException(Errors.immutable(this));
+		}
+
+		@Override
+		public void set(T e) {
+			throw new UnsupportedOperationException(Errors.immutable(this));
+		}
+
+		@Override
+		public void add(T e) {
+			throw new UnsupportedOperationException(Errors.immutable(this));
+		}
+	}
+
+	@Override
+	public long commonPrefixLength(AVector<T> b) {
+		if (this == b) return count;
+		long n = Math.min(count, b.count());
+		for (long i = 0; i < n; i++) {
+			if (!Utils.equals(get(i), b.get(i))) return i;
+		}
+		return n;
+	}
+
+	@Override
+	public AVector<T> next() {
+		if (count <= 1) return null;
+		return slice(1, count);
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public <R extends ACell> AVector<R> assoc(long i, R value) {
+		if ((i < 0) || (i >= count)) return null;
+		if (Utils.equals(get(i), value)) return (AVector<R>) this;
+		return toCanonical().assoc(i, value);
+	}
+
+	@Override
+	public boolean isCanonical() {
+		// Not canonical, converts to a VectorTree for encoding
+		return false;
+	}
+
+	@Override
+	public final boolean isCVMValue() {
+		return false;
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public <R extends ACell> AVector<R> toVector() {
+		return (AVector<R>) this;
+	}
+
+	@Override
+	public AVector<T> toCanonical() {
+		return Vectors.create(materialise(0, size()));
+	}
+
+	@Override
+	public AVector<T> getCanonical() {
+		// not cached in a Ref, since that would retain the whole tree
+		WeakReference<AVector<T>> cache = canonicalCache;
+		AVector<T> canonical = (cache == null) ? null : cache.get();
+		if (canonical == null) {
+			canonical = toCanonical();
+			if (encoding != null) canonical.attachEncoding(encoding);
+			canonicalCache = new WeakReference<>(canonical);
+		}
+		return canonical;
+	}
+
+	@Override
+	public int encode(byte[] bs, int pos) {
+		return getEncoding().encodeRawData(bs, pos);
+	}
+
+	@Override
+	public int encodeRaw(byte[] bs, int pos) {
+		// encoding without the tag byte
+		return getEncoding().slice(1).encodeRawData(bs, pos);
+	}
+
+	@Override
+	public int estimatedEncodingSize() {
+		return Vectors.MAX_ENCODING_LENGTH;
+	}
+
+	@Override
+	protected long calcMemorySize() {
+		// Memory size must match the canonical tree, since that is what gets stored
+		return getCanonical().getMemorySize();
+	}
+
+	@Override
+	public int getRefCount() {
+		// Refs are those of the canonical form. Rarely needed, since persistence
+		// converts to the canonical form first.
+		return getCanonical().getRefCount();
+	}
+
+	@Override
+	public <R extends ACell> Ref<R> getRef(int i) {
+		return getCanonical().getRef(i);
+	}
+
+	@Override
+	public AVector<T> updateRefs(IRefFunction func) {
+		AVector<T> canonical = getCanonical();
+		AVector<T> updated = canonical.updateRefs(func);
+		if (updated == canonical) return this;
+		return updated;
+	}
+
+	@Override
+	public void validateCell() throws InvalidDataException {
+		toCanonical().validateCell();
+	}
+}
@@ -1,5 +1,6 @@
 package convex.core.data;
 
+import java.util.function.BiFunction;
 import java.util.function.Function;
 
 import convex.core.Constants;
@@ -196,6 +197,15 @@ public abstract class ASet<T extends ACell> extends ACollection<T> implements ja
 	 */
 	public abstract boolean containsAll(ASet<T> b);
 	
+	/**
+	 * Reduces over all elements of this set, walking leaf nodes directly
+	 * @param <R> Type of reduction result
+	 * @param func Reduction function
+	 * @param initial Initial value
+	 * @return Result of reduction
+	 */
+	public abstract <R> R reduce(BiFunction<? super R, ? super T, ? extends R> func, R initial);
+	
 	/**
 	 * Tests if this set is a (non-strict) subset of another Set
 	 * @param b Set to test against
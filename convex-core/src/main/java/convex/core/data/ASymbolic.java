@@ -1,5 +1,9 @@
 package convex.core.data;
 
+import java.lang.ref.WeakReference;
+import java.util.WeakHashMap;
+import java.util.function.Function;
+
 import convex.core.Constants;
 import convex.core.exceptions.InvalidDataException;
 
@@ -41,6 +45,30 @@ public abstract class ASymbolic extends ACell {
 		return name;
 	}
 
+	/**
+	 * Interns a symbolic value with the given name, so that equal values share a single
+	 * instance. The table holds names and instances weakly, so unused values can still be
+	 * garbage collected. New instances have their hash computed on creation, so map lookups
+	 * with interned values never need to recompute it.
+	 * 
+	 * @param <T> Type of symbolic value
+	 * @param table Interning table for the type
+	 * @param name Name of the symbolic value (assumed valid)
+	 * @param constructor Function to create a new instance if none is interned
+	 * @return Interned instance
+	 */
+	protected static <T extends ASymbolic> T intern(WeakHashMap<AString, WeakReference<T>> table, AString name, Function<AString, T> constructor) {
+		synchronized (table) {
+			WeakReference<T> ref = table.get(name);
+			T value = (ref == null) ? null : ref.get();
+			if (value != null) return value;
+			value = constructor.apply(name);
+			value.getHash();
+			table.put(name, new WeakReference<>(value));
+			return value;
+		}
+	}
+
 	protected static boolean validateName(AString name) {
 		if (name == null) return false;
 		long n = name.count();
@@ -123,6 +123,7 @@ public abstract class AVector<T extends ACell> extends ASequence<T> {
 
 	public abstract boolean anyMatch(Predicate<? super T> pred);
 
+	@Override
 	public abstract boolean allMatch(Predicate<? super T> pred);
 
 	@Override
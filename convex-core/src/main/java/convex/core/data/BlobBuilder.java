@@ -62,6 +62,15 @@ public class BlobBuilder {
 		
 		long spare=spare();
 		
+		if ((spare==Blob.CHUNK_LENGTH)&&(blen>=Blob.CHUNK_LENGTH)) {
+			// Chunk aligned, so whole chunks of b can be shared with the accumulator rather than copied
+			long take=blen&~((long)Blob.CHUNK_LENGTH-1);
+			acc=acc.append(b.slice(0,take));
+			count+=take;
+			if (take<blen) append(b.slice(take,blen));
+			return this;
+		}
+		
 		if (blen<=spare) {
 			// Does not overflow current chunk
 			ensureArray(arrayPos()+blen);
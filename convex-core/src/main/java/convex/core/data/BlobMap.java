@@ -2,6 +2,7 @@ package convex.core.data;
 
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.function.BiConsumer;
 import java.util.function.BiFunction;
@@ -12,6 +13,7 @@ import convex.core.exceptions.InvalidDataException;
 import convex.core.lang.RT;
 import convex.core.util.Bits;
 import convex.core.util.Errors;
+import convex.core.util.MergeFunction;
 import convex.core.util.Utils;
 
 /**
@@ -27,7 +29,7 @@ import convex.core.util.Utils;
  */
 public class BlobMap<K extends ABlob, V extends ACell> extends ABlobMap<K, V> {
 	@SuppressWarnings({ "unchecked", "rawtypes" })
-	private static final Ref<BlobMap>[] EMPTY_CHILDREN = new Ref[0];
+	static final Ref<BlobMap>[] EMPTY_CHILDREN = new Ref[0];
 
 	/**
 	 * Empty BlobMap singleton
@@ -44,29 +46,29 @@ public class BlobMap<K extends ABlob, V extends ACell> extends ABlobMap<K, V> {
 	 * Child entries, i.e. nodes with keys where this node is a common prefix. Only contains children where mask is set.
 	 * Child entries must have at least one entry.
 	 */
-	private final Ref<BlobMap<K, V>>[] children;
+	final Ref<BlobMap<K, V>>[] children;
 
 	/**
 	 * Entry for this node of the radix tree. Invariant assumption that the prefix
 	 * is correct. May be null if there is no entry at this node.
 	 */
-	private final MapEntry<K, V> entry;
+	final MapEntry<K, V> entry;
 
 	/**
 	 * Mask of child entries, 16 bits for each hex digit that may be present.
 	 */
-	private final short mask;
+	final short mask;
 
 	/**
 	 * Depth of radix tree in number of hex digits. Top level is 0. 
 	 * Children should have depth = parent depth + parent prefixLength + 1
 	 */
-	private final long depth;
+	final long depth;
 
 	/**
 	 * Length of prefix, where the tree branches beyond depth. 0 = no prefix.
 	 */
-	private final long prefixLength;
+	final long prefixLength;
 
 	@SuppressWarnings({ "rawtypes", "unchecked" })
 	protected BlobMap(long depth, long prefixLength, MapEntry<K, V> entry, Ref<BlobMap>[] entries,
@@ -166,7 +168,7 @@ public class BlobMap<K extends ABlob, V extends ACell> extends ABlobMap<K, V> {
 	 * @param digit
 	 * @return
 	 */
-	private BlobMap<K, V> getChild(int digit) {
+	BlobMap<K, V> getChild(int digit) {
 		int i = Bits.indexForDigit(digit, mask);
 		if (i < 0) return null;
 		return (BlobMap<K, V>) children[i].getValue();
@@ -251,7 +253,7 @@ public class BlobMap<K extends ABlob, V extends ACell> extends ABlobMap<K, V> {
 	 * Typically we populate with the key of the first entry added to avoid
 	 * unnecessary blob instances being created.
 	 */
-	private ABlob getPrefix() {
+	ABlob getPrefix() {
 		if (entry!=null) return entry.getKey();
 		int n=children.length;
 		if (n==0) return Blob.EMPTY;
@@ -291,6 +293,15 @@ public class BlobMap<K extends ABlob, V extends ACell> extends ABlobMap<K, V> {
 		}
 	}
 
+	@Override
+	public boolean allMatch(Predicate<? super MapEntry<K, V>> pred) {
+		if ((entry != null) && !pred.test(entry)) return false;
+		for (int i = 0; i < children.length; i++) {
+			if (!children[i].getValue().allMatch(pred)) return false;
+		}
+		return true;
+	}
+
 	@SuppressWarnings({ "unchecked", "rawtypes" })
 	@Override
 	public BlobMap<K, V> assocEntry(MapEntry<K, V> e) {
@@ -487,6 +498,137 @@ public class BlobMap<K extends ABlob, V extends ACell> extends ABlobMap<K, V> {
 		return r;
 	}
 
+	/**
+	 * Merge this BlobMap with another BlobMap, using the given function for each key that
+	 * is present in either map and has a different value. The function is passed null for
+	 * missing values in either map. If the function returns null, the entry is removed.
+	 * 
+	 * Subtrees which are identical in both maps are skipped without traversal, so the cost
+	 * is proportional to the differences between the maps.
+	 * 
+	 * @param b Other BlobMap to merge with
+	 * @param func Merge function, returning a new value for each key
+	 * @return A merged BlobMap, or this BlobMap if no changes occurred
+	 */
+	public BlobMap<K, V> mergeDifferences(BlobMap<K, V> b, MergeFunction<V> func) {
+		BlobMap<K, V> r = mergeDifferencesInternal(b, func);
+		if (r == null) r = empty();
+		return r;
+	}
+
+	/**
+	 * Merges differences with another BlobMap node at the same depth.
+	 * @return Merged BlobMap, or null if all entries were removed
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private BlobMap<K, V> mergeDifferencesInternal(BlobMap<K, V> b, MergeFunction<V> func) {
+		if (this == b) return this;
+		if ((depth != b.depth) || (prefixLength != b.prefixLength) || (count == 0) || (b.count == 0)
+				|| !getPrefix().hexEquals(b.getPrefix(), depth, prefixLength)) {
+			// different structure, so fall back to merging individual entries
+			return mergeEntries(b, func);
+		}
+
+		// Same prefix, so we can merge entry and children in place
+		MapEntry<K, V> newEntry = mergeEntry(entry, b.entry, func);
+		boolean changed = (newEntry != entry);
+		Ref[] newChildren = new Ref[16];
+		int n = 0;
+		short newMask = 0;
+		long newCount = (newEntry == null) ? 0 : 1;
+		int fullMask = (mask | b.mask) & 0xFFFF;
+		for (int digit = 0; digit < 16; digit++) {
+			if ((fullMask & (1 << digit)) == 0) continue;
+			int ai = Bits.indexForDigit(digit, mask);
+			int bi = Bits.indexForDigit(digit, b.mask);
+			Ref<BlobMap<K, V>> aref = (ai < 0) ? null : children[ai];
+			Ref<BlobMap<K, V>> bref = (bi < 0) ? null : b.children[bi];
+			Ref<BlobMap<K, V>> rref;
+			if (aref == null) {
+				BlobMap<K, V> bc = bref.getValue();
+				BlobMap<K, V> rc = bc.mergeEntries((BlobMap<K, V>) EMPTY, func.reverse());
+				rref = (rc == null) ? null : ((rc == bc) ? bref : rc.getRef());
+			} else if (bref == null) {
+				BlobMap<K, V> ac = aref.getValue();
+				BlobMap<K, V> rc = ac.mergeEntries((BlobMap<K, V>) EMPTY, func);
+				rref = (rc == null) ? null : ((rc == ac) ? aref : rc.getRef());
+			} else if (aref.isKnownEqual(bref)) {
+				rref = aref; // identical subtrees, no differences
+			} else {
+				BlobMap<K, V> ac = aref.getValue();
+				BlobMap<K, V> bc = bref.getValue();
+				BlobMap<K, V> rc = ac.mergeDifferencesInternal(bc, func);
+				rref = (rc == null) ? null : ((rc == ac) ? aref : ((rc == bc) ? bref : rc.getRef()));
+			}
+			if (rref != aref) changed = true;
+			if (rref != null) {
+				newChildren[n++] = rref;
+				newMask |= (short) (1 << digit);
+				newCount += rref.getValue().count();
+			}
+		}
+		if (!changed) return this;
+
+		if (newEntry == null) {
+			if (n == 0) return null;
+			if (n == 1) {
+				// promote single remaining child to this depth
+				BlobMap<K, V> c = (BlobMap<K, V>) newChildren[0].getValue();
+				return new BlobMap<K, V>(depth, c.prefixDepth() - depth, c.entry, (Ref[]) c.children, c.mask, c.count);
+			}
+		}
+		return new BlobMap<K, V>(depth, prefixLength, newEntry, Arrays.copyOf(newChildren, n), newMask, newCount);
+	}
+
+	/**
+	 * Merges two entries with the same key, either of which may be null
+	 * @return Merged entry, or null if no entry should exist
+	 */
+	private static <K extends ABlob, V extends ACell> MapEntry<K, V> mergeEntry(MapEntry<K, V> ae, MapEntry<K, V> be, MergeFunction<V> func) {
+		if (ae == be) return ae;
+		V av = (ae == null) ? null : ae.getValue();
+		V bv = (be == null) ? null : be.getValue();
+		if ((ae != null) && (be != null) && Utils.equals(av, bv)) return ae;
+		V v = func.merge(av, bv);
+		if (v == null) return null;
+		if ((ae != null) && (v == av)) return ae;
+		if ((be != null) && (v == bv)) return be;
+		return ((ae != null) ? ae : be).withValue(v);
+	}
+
+	/**
+	 * Merges differences with another BlobMap node by walking entries of both in key
+	 * order. Used where the structure of the two maps differs.
+	 * @return Merged BlobMap, or null if all entries were removed
+	 */
+	private BlobMap<K, V> mergeEntries(BlobMap<K, V> b, MergeFunction<V> func) {
+		BlobMap<K, V> result = this;
+		long an = count;
+		long bn = b.count;
+		long ai = 0;
+		long bi = 0;
+		while ((ai < an) || (bi < bn)) {
+			MapEntry<K, V> ae = (ai < an) ? entryAt(ai) : null;
+			MapEntry<K, V> be = (bi < bn) ? b.entryAt(bi) : null;
+			int c = (ae == null) ? 1 : ((be == null) ? -1 : ae.getKey().compareTo(be.getKey()));
+			if (c <= 0) ai++;
+			if (c >= 0) bi++;
+			MapEntry<K, V> ne = mergeEntry((c <= 0) ? ae : null, (c >= 0) ? be : null, func);
+			if (c <= 0) {
+				if (ne == ae) continue;
+				if (ne == null) {
+					result = (result == null) ? null : result.dissoc(ae.getKey());
+					continue;
+				}
+			} else if (ne == null) {
+				continue;
+			}
+			result = (result == null) ? createAtDepth(ne, depth) : result.assocEntry(ne);
+		}
+		if ((result != null) && (result.count == 0)) return null;
+		return result;
+	}
+
 	@Override
 	public int encode(byte[] bs, int pos) {
 		bs[pos++]=Tag.BLOBMAP;
@@ -625,7 +767,7 @@ public class BlobMap<K extends ABlob, V extends ACell> extends ABlobMap<K, V> {
 	 * 
 	 * @return
 	 */
-	private long prefixDepth() {
+	long prefixDepth() {
 		return depth + prefixLength;
 	}
 
@@ -679,7 +821,8 @@ public class BlobMap<K extends ABlob, V extends ACell> extends ABlobMap<K, V> {
 	}
 
 	/**
-	 * Removes n leading entries from this BlobMap, in key order.
+	 * Removes n leading entries from this BlobMap, in key order. Performs a single
+	 * traversal down the left edge of the tree, dropping whole subtrees where possible.
 	 * 
 	 * @param n Number of entries to remove
 	 * @return Updated BlobMap with leading entries removed.
@@ -687,13 +830,47 @@ public class BlobMap<K extends ABlob, V extends ACell> extends ABlobMap<K, V> {
 	 *                                   BlobMap
 	 */
 	public BlobMap<K, V> removeLeadingEntries(long n) {
-		// TODO: optimise this
-		BlobMap<K, V> bm = this;
-		for (long i = 0; i < n; i++) {
-			MapEntry<K, V> me = bm.entryAt(0);
-			bm = bm.dissoc(me.getKey());
+		if ((n < 0) || (n > count)) throw new IndexOutOfBoundsException(Errors.badIndex(n));
+		BlobMap<K, V> result = removeLeading(n);
+		if (result == null) result = empty();
+		return result;
+	}
+
+	/**
+	 * Removes n leading entries from this node
+	 * @return Updated node, or null if all entries were removed
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private BlobMap<K, V> removeLeading(long n) {
+		if (n == 0) return this;
+		if (n >= count) return null;
+		long removed = n;
+
+		// entry for this node comes before all children
+		if (entry != null) n--;
+
+		// skip children that are removed completely
+		int nc = children.length;
+		int i = 0;
+		int newMask = mask & 0xFFFF;
+		while (true) {
+			long cc = children[i].getValue().count();
+			if (n < cc) break;
+			n -= cc;
+			newMask &= newMask - 1; // clear lowest digit
+			i++;
+		}
+
+		// remove from the first remaining child, which must still have entries
+		Ref<BlobMap<K, V>> cref = children[i];
+		BlobMap<K, V> c = cref.getValue().removeLeading(n);
+		if (i == nc - 1) {
+			// only one child remains, so promote it to this depth
+			return new BlobMap<K, V>(depth, c.prefixDepth() - depth, c.entry, (Ref[]) c.children, c.mask, c.count);
 		}
-		return bm;
+		Ref[] newChildren = Arrays.copyOfRange(children, i, nc);
+		if (n > 0) newChildren[0] = c.getRef();
+		return new BlobMap<K, V>(depth, prefixLength, null, newChildren, (short) newMask, count - removed);
 	}
 	
 	/**
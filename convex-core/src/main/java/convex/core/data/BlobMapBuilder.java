@@ -0,0 +1,210 @@
+package convex.core.data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Transient builder for BlobMaps, designed for constructing a large BlobMap from many
+ * individual entries without creating intermediate persistent maps.
+ *
+ * Entries are accumulated in a mutable sorted Java map. When the BlobMap is produced,
+ * either the changes are applied to the base map (if only a few changes were made) or the
+ * canonical radix tree is constructed bottom-up in a single pass, creating each node
+ * exactly once.
+ *
+ * Not thread safe.
+ *
+ * @param <K> Type of keys
+ * @param <V> Type of values
+ */
+public class BlobMapBuilder<K extends ABlob, V extends ACell> {
+
+	/**
+	 * Base map, to which changes are applied
+	 */
+	protected BlobMap<K, V> base;
+
+	/**
+	 * Pending changes in key order. A null entry indicates a removed key.
+	 */
+	protected final TreeMap<ABlob, MapEntry<K, V>> changes = new TreeMap<>();
+
+	/**
+	 * Total count of entries in this builder
+	 */
+	protected long count;
+
+	public BlobMapBuilder() {
+		this(BlobMaps.empty());
+	}
+
+	public BlobMapBuilder(BlobMap<K, V> base) {
+		this.base = base;
+		this.count = base.count();
+	}
+
+	/**
+	 * Associates a key with a value, replacing any existing value
+	 * @param key Key to add
+	 * @param value Value for key
+	 * @return This builder
+	 */
+	public BlobMapBuilder<K, V> assoc(K key, V value) {
+		return assocEntry(MapEntry.create(key, value));
+	}
+
+	/**
+	 * Adds a map entry, replacing any existing entry with the same key
+	 * @param e Entry to add
+	 * @return This builder
+	 */
+	public BlobMapBuilder<K, V> assocEntry(MapEntry<K, V> e) {
+		K key = e.getKey();
+		if (!containsKey(key)) count++;
+		changes.put(key, e);
+		return this;
+	}
+
+	/**
+	 * Removes a key, if present
+	 * @param key Key to remove
+	 * @return This builder
+	 */
+	public BlobMapBuilder<K, V> dissoc(ABlob key) {
+		if (!containsKey(key)) return this;
+		if (base.containsKey(key)) {
+			changes.put(key, null);
+		} else {
+			changes.remove(key);
+		}
+		count--;
+		return this;
+	}
+
+	/**
+	 * Checks if this builder contains the given key
+	 * @param key Key to check
+	 * @return true if key is present, false otherwise
+	 */
+	public boolean containsKey(ABlob key) {
+		if (changes.containsKey(key)) return changes.get(key) != null;
+		return base.containsKey(key);
+	}
+
+	/**
+	 * Gets the value for a key in this builder
+	 * @param key Key to look up
+	 * @return Value, or null if not present
+	 */
+	public V get(ABlob key) {
+		if (changes.containsKey(key)) {
+			MapEntry<K, V> e = changes.get(key);
+			return (e == null) ? null : e.getValue();
+		}
+		return base.get(key);
+	}
+
+	/**
+	 * Gets the number of entries in this builder
+	 * @return Count of entries
+	 */
+	public long count() {
+		return count;
+	}
+
+	/**
+	 * Clears this builder
+	 */
+	public void clear() {
+		base = BlobMaps.empty();
+		changes.clear();
+		count = 0;
+	}
+
+	/**
+	 * Produces a canonical BlobMap containing all entries in this builder. The builder
+	 * may continue to be used afterwards.
+	 * @return BlobMap
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public BlobMap<K, V> toBlobMap() {
+		if (changes.isEmpty()) return base;
+		BlobMap<K, V> result;
+		long baseCount = base.count();
+		if ((long) changes.size() * HashMapBuilder.INCREMENTAL_RATIO < baseCount) {
+			result = base;
+			for (Map.Entry<ABlob, MapEntry<K, V>> me : changes.entrySet()) {
+				MapEntry<K, V> e = me.getValue();
+				result = (e == null) ? result.dissoc(me.getKey()) : result.assocEntry(e);
+			}
+		} else {
+			// merge sorted base entries with sorted changes
+			ArrayList<MapEntry<K, V>> entries = new ArrayList<>((int) count);
+			Iterator<Map.Entry<ABlob, MapEntry<K, V>>> it = changes.entrySet().iterator();
+			Map.Entry[] head = { it.next() };
+			// walk the base entries in key order directly, rather than indexing each from the root
+			base.allMatch(e -> {
+				K key = e.getKey();
+				Map.Entry<ABlob, MapEntry<K, V>> n = head[0];
+				while ((n != null) && (n.getKey().compareTo(key) < 0)) {
+					if (n.getValue() != null) entries.add(n.getValue());
+					n = it.hasNext() ? it.next() : null;
+				}
+				head[0] = n;
+				if ((n == null) || (n.getKey().compareTo(key) != 0)) entries.add(e);
+				return true;
+			});
+			Map.Entry<ABlob, MapEntry<K, V>> next = head[0];
+			while (next != null) {
+				if (next.getValue() != null) entries.add(next.getValue());
+				next = it.hasNext() ? it.next() : null;
+			}
+			result = build(entries.toArray(new MapEntry[entries.size()]), 0, entries.size(), 0);
+		}
+		base = result;
+		changes.clear();
+		return result;
+	}
+
+	/**
+	 * Builds a canonical BlobMap node from a range of entries sorted by key. All keys in the
+	 * range must share the same hex prefix up to the given depth.
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	static <K extends ABlob, V extends ACell> BlobMap<K, V> build(MapEntry<K, V>[] entries, int start, int end, long depth) {
+		int n = end - start;
+		if (n == 0) return BlobMaps.empty();
+		if (n == 1) {
+			MapEntry<K, V> e = entries[start];
+			return new BlobMap<K, V>(depth, e.getKey().hexLength() - depth, e, BlobMap.EMPTY_CHILDREN, (short) 0, 1L);
+		}
+
+		// keys are sorted, so the common prefix of first and last is common to all
+		K first = entries[start].getKey();
+		long prefixDepth = first.commonHexPrefixLength(entries[end - 1].getKey());
+
+		// entry for this node, if any, must be the first since it is a prefix of all others
+		MapEntry<K, V> entry = null;
+		int i = start;
+		if (first.hexLength() == prefixDepth) {
+			entry = entries[start];
+			i++;
+		}
+
+		Ref[] children = new Ref[16];
+		int childCount = 0;
+		short mask = 0;
+		while (i < end) {
+			int digit = entries[i].getKey().getHexDigit(prefixDepth);
+			int j = i + 1;
+			while ((j < end) && (entries[j].getKey().getHexDigit(prefixDepth) == digit)) j++;
+			children[childCount++] = build(entries, i, j, prefixDepth + 1).getRef();
+			mask |= (short) (1 << digit);
+			i = j;
+		}
+		return new BlobMap<K, V>(depth, prefixDepth - depth, entry, Arrays.copyOf(children, childCount), mask, n);
+	}
+}
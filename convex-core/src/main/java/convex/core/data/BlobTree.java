@@ -2,6 +2,7 @@ package convex.core.data;
 
 import java.nio.ByteBuffer;
 import java.security.MessageDigest;
+import java.util.Arrays;
 
 import convex.core.exceptions.BadFormatException;
 import convex.core.exceptions.InvalidDataException;
@@ -210,6 +211,7 @@ public class BlobTree extends ABlob {
 		if (length<0) return null;
 		
 		if ((start == 0L) && (length == this.count)) return this;
+		if (length == 0) return Blob.EMPTY;
 
 		long csize = childLength();
 		int ci = (int) (start / csize);
@@ -219,7 +221,11 @@ public class BlobTree extends ABlob {
 			long coffset=ci*csize;
 			return getChild(ci).slice(start - coffset, end - coffset);
 		}
+		
+		if (start == 0L) return slicePrefix(end);
+		if ((start & (Blob.CHUNK_LENGTH-1)) == 0) return sliceChunks(start, end);
 
+		// Unaligned slice, so every chunk must be rebuilt
 		// Construct using BlobBuilder iterating over relevant children
 		BlobBuilder bb=new BlobBuilder();
 		for (int i=ci; i<=cilast; i++) {
@@ -232,6 +238,42 @@ public class BlobTree extends ABlob {
 		return bb.toBlob();
 	}
 
+	/**
+	 * Slices a prefix of this BlobTree spanning more than one child. All children before the
+	 * last are shared, so the cost is logarithmic in the size of the BlobTree.
+	 * 
+	 * @param end End of slice, must be beyond the first child
+	 * @return Canonical BlobTree prefix
+	 */
+	private BlobTree slicePrefix(long end) {
+		long csize = childLength();
+		int cilast=(int)((end - 1) / csize);
+		Ref<ABlob>[] newChildren=Arrays.copyOf(children, cilast+1);
+		long coffset=cilast*csize;
+		newChildren[cilast]=getChild(cilast).slice(0, end-coffset).getRef();
+		return new BlobTree(newChildren,shift,end);
+	}
+	
+	/**
+	 * Slices this BlobTree at a chunk aligned start position. Existing chunks are shared rather
+	 * than copied, only the final chunk may be sliced.
+	 * 
+	 * @param start Start of slice, must be a multiple of the chunk size
+	 * @param end End of slice
+	 * @return Canonical BlobTree slice
+	 */
+	private BlobTree sliceChunks(long start, long end) {
+		long firstChunk=start>>Blobs.CHUNK_SHIFT;
+		int n=Utils.checkedInt(calcChunks(end-start));
+		Blob[] chunks=new Blob[n];
+		for (int i=0; i<n; i++) {
+			chunks[i]=getChunk(firstChunk+i);
+		}
+		long lastLength=(end-start)-((long)(n-1)<<Blobs.CHUNK_SHIFT);
+		chunks[n-1]=chunks[n-1].slice(0, lastLength);
+		return create(chunks);
+	}
+
 	private ABlob getChild(int childIndex) {
 		return children[childIndex].getValue();
 	}
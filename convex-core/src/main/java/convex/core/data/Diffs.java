@@ -0,0 +1,336 @@
+package convex.core.data;
+
+import java.util.ArrayDeque;
+
+import convex.core.State;
+import convex.core.data.prim.CVMLong;
+import convex.core.util.Bits;
+
+/**
+ * Static utility functions for computing structural differences between cells.
+ *
+ * Diffs walk the trees of both values together and skip any pair of subtrees whose
+ * Refs are equal (i.e. have the same hash), so the cost is proportional to the size of
+ * the changes rather than the size of the values. For persisted values, where hashes are
+ * already known, unchanged subtrees are never loaded from the store.
+ *
+ * Differences are reported to an {@link IDiffHandler} along with the path to each
+ * changed value.
+ */
+public class Diffs {
+
+	/**
+	 * Change type for a value present only in the new cell
+	 */
+	public static final int ADDED = 1;
+
+	/**
+	 * Change type for a value present only in the old cell
+	 */
+	public static final int REMOVED = 2;
+
+	/**
+	 * Change type for a value present in both cells with different values
+	 */
+	public static final int CHANGED = 3;
+
+	/**
+	 * Computes the differences between two States. Paths are of the form
+	 * <code>[:accounts index]</code>, <code>[:peers peer-key]</code>,
+	 * <code>[:globals index]</code> or <code>[:schedule timestamp]</code>.
+	 *
+	 * @param a Old State
+	 * @param b New State
+	 * @param handler Handler to receive changes
+	 */
+	public static void diff(State a, State b, IDiffHandler handler) {
+		diffState(a, b, Vectors.empty(), handler);
+	}
+
+	private static void diffState(State a, State b, AVector<ACell> path, IDiffHandler handler) {
+		if (a.getRef().equals(b.getRef())) return;
+		diff(a.getAccounts(), b.getAccounts(), path.conj(Keywords.ACCOUNTS), handler);
+		diff(a.getPeers(), b.getPeers(), path.conj(Keywords.PEERS), handler);
+		diff(a.getGlobals(), b.getGlobals(), path.conj(Keywords.GLOBALS), handler);
+		diff(a.getSchedule(), b.getSchedule(), path.conj(Keywords.SCHEDULE), handler);
+	}
+
+	/**
+	 * Computes the differences between two cells. States, hash maps, BlobMaps and vectors
+	 * are compared structurally. Any other differing values are reported as a single change.
+	 *
+	 * @param a Old value
+	 * @param b New value
+	 * @param path Path to the values, prepended to all reported paths
+	 * @param handler Handler to receive changes
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public static void diff(ACell a, ACell b, AVector<ACell> path, IDiffHandler handler) {
+		if (Ref.get(a).equals(Ref.get(b))) return;
+		if ((a instanceof AHashMap) && (b instanceof AHashMap)) {
+			diff((AHashMap) a, (AHashMap) b, path, handler);
+		} else if ((a instanceof BlobMap) && (b instanceof BlobMap)) {
+			diff((BlobMap) a, (BlobMap) b, path, handler);
+		} else if ((a instanceof AVector) && (b instanceof AVector)) {
+			diff((AVector) a, (AVector) b, path, handler);
+		} else if ((a instanceof State) && (b instanceof State)) {
+			diffState((State) a, (State) b, path, handler);
+		} else {
+			handler.change(CHANGED, path, a, b);
+		}
+	}
+
+	/**
+	 * Computes the differences between two hash maps. Paths are extended with the key
+	 * of each changed entry.
+	 *
+	 * @param a Old map
+	 * @param b New map
+	 * @param path Path to the maps
+	 * @param handler Handler to receive changes
+	 */
+	public static <K extends ACell, V extends ACell> void diff(AHashMap<K, V> a, AHashMap<K, V> b, AVector<ACell> path, IDiffHandler handler) {
+		if (a.getRef().equals(b.getRef())) return;
+		if ((a instanceof MapTree) && (b instanceof MapTree)) {
+			// trees at the same level split on the same hash digit, so compare children pairwise
+			MapTree<K, V> ta = (MapTree<K, V>) a;
+			MapTree<K, V> tb = (MapTree<K, V>) b;
+			for (int digit = 0; digit < 16; digit++) {
+				Ref<AHashMap<K, V>> ra = ta.childForDigit(digit);
+				Ref<AHashMap<K, V>> rb = tb.childForDigit(digit);
+				if (ra.equals(rb)) continue;
+				diff(ra.getValue(), rb.getValue(), path, handler);
+			}
+			return;
+		}
+
+		// at least one side is a leaf, so compare entries directly
+		long an = a.count();
+		for (long i = 0; i < an; i++) {
+			MapEntry<K, V> ae = a.entryAt(i);
+			MapEntry<K, V> be = b.getEntry(ae.getKey());
+			if (be == null) {
+				handler.change(REMOVED, path.conj(ae.getKey()), ae.getValue(), null);
+			} else if (!ae.getValueRef().equals(be.getValueRef())) {
+				handler.change(CHANGED, path.conj(ae.getKey()), ae.getValue(), be.getValue());
+			}
+		}
+		long bn = b.count();
+		for (long i = 0; i < bn; i++) {
+			MapEntry<K, V> be = b.entryAt(i);
+			if (a.containsKey(be.getKey())) continue;
+			handler.change(ADDED, path.conj(be.getKey()), null, be.getValue());
+		}
+	}
+
+	/**
+	 * Computes the differences between two BlobMaps. Paths are extended with the key
+	 * of each changed entry.
+	 *
+	 * @param a Old map
+	 * @param b New map
+	 * @param path Path to the maps
+	 * @param handler Handler to receive changes
+	 */
+	public static <K extends ABlob, V extends ACell> void diff(BlobMap<K, V> a, BlobMap<K, V> b, AVector<ACell> path, IDiffHandler handler) {
+		if (a.getRef().equals(b.getRef())) return;
+		if ((a.depth != b.depth) || (a.prefixLength != b.prefixLength) || (a.count() == 0) || (b.count() == 0)
+				|| !a.getPrefix().hexEquals(b.getPrefix(), a.depth, a.prefixLength)) {
+			// different structure, so fall back to comparing entries in key order
+			diffEntries(a, b, path, handler);
+			return;
+		}
+
+		// same prefix, so compare entry and children in place
+		diffEntry(a.entry, b.entry, path, handler);
+		int fullMask = (a.mask | b.mask) & 0xFFFF;
+		for (int digit = 0; digit < 16; digit++) {
+			if ((fullMask & (1 << digit)) == 0) continue;
+			int ai = Bits.indexForDigit(digit, a.mask);
+			int bi = Bits.indexForDigit(digit, b.mask);
+			if (ai < 0) {
+				diffEntries(BlobMaps.empty(), b.children[bi].getValue(), path, handler);
+			} else if (bi < 0) {
+				diffEntries(a.children[ai].getValue(), BlobMaps.empty(), path, handler);
+			} else {
+				Ref<BlobMap<K, V>> ra = a.children[ai];
+				Ref<BlobMap<K, V>> rb = b.children[bi];
+				if (ra.equals(rb)) continue;
+				diff(ra.getValue(), rb.getValue(), path, handler);
+			}
+		}
+	}
+
+	/**
+	 * Compares two BlobMap entries with the same key, either of which may be null
+	 */
+	private static <K extends ABlob, V extends ACell> void diffEntry(MapEntry<K, V> ae, MapEntry<K, V> be, AVector<ACell> path, IDiffHandler handler) {
+		if (ae == null) {
+			if (be != null) handler.change(ADDED, path.conj(be.getKey()), null, be.getValue());
+		} else if (be == null) {
+			handler.change(REMOVED, path.conj(ae.getKey()), ae.getValue(), null);
+		} else if (!ae.getValueRef().equals(be.getValueRef())) {
+			handler.change(CHANGED, path.conj(ae.getKey()), ae.getValue(), be.getValue());
+		}
+	}
+
+	/**
+	 * Compares two BlobMaps by walking entries of both in key order
+	 */
+	private static <K extends ABlob, V extends ACell> void diffEntries(BlobMap<K, V> a, BlobMap<K, V> b, AVector<ACell> path, IDiffHandler handler) {
+		long an = a.count();
+		long bn = b.count();
+		long ai = 0;
+		long bi = 0;
+		while ((ai < an) || (bi < bn)) {
+			MapEntry<K, V> ae = (ai < an) ? a.entryAt(ai) : null;
+			MapEntry<K, V> be = (bi < bn) ? b.entryAt(bi) : null;
+			int c = (ae == null) ? 1 : ((be == null) ? -1 : ae.getKey().compareTo(be.getKey()));
+			if (c <= 0) ai++;
+			if (c >= 0) bi++;
+			diffEntry((c <= 0) ? ae : null, (c >= 0) ? be : null, path, handler);
+		}
+	}
+
+	/**
+	 * Computes the differences between two vectors. Paths are extended with the index
+	 * of each changed element. Elements beyond the end of the shorter vector are reported
+	 * as added or removed.
+	 *
+	 * Both vectors are walked as sequences of aligned segments. Segments covering the
+	 * same range with equal Refs are skipped, otherwise the larger segment is expanded
+	 * into its children until individual elements can be compared.
+	 *
+	 * @param a Old vector
+	 * @param b New vector
+	 * @param path Path to the vectors
+	 * @param handler Handler to receive changes
+	 */
+	public static <T extends ACell> void diff(AVector<T> a, AVector<T> b, AVector<ACell> path, IDiffHandler handler) {
+		if (a.getRef().equals(b.getRef())) return;
+		ArrayDeque<Segment> as = new ArrayDeque<>();
+		ArrayDeque<Segment> bs = new ArrayDeque<>();
+		as.add(new Segment(a.getRef(), 0, 0, a.count(), false));
+		bs.add(new Segment(b.getRef(), 0, 0, b.count(), false));
+
+		long pos = 0;
+		while (!as.isEmpty() && !bs.isEmpty()) {
+			Segment sa = as.peekFirst();
+			Segment sb = bs.peekFirst();
+			if (!sa.flat && !sb.flat && (sa.start == pos) && (sb.start == pos) && (sa.end == sb.end) && sa.ref.equals(sb.ref)) {
+				// identical subtrees
+				as.pollFirst();
+				bs.pollFirst();
+				pos = sa.end;
+				continue;
+			}
+
+			long ra = sa.end - pos;
+			long rb = sb.end - pos;
+			boolean ea = sa.isExpandable();
+			boolean eb = sb.isExpandable();
+			if (ea && ((ra >= rb) || !eb)) {
+				expand(as, pos);
+				continue;
+			}
+			if (eb) {
+				expand(bs, pos);
+				continue;
+			}
+
+			// both segments are flat, so compare elements in the overlapping range
+			long n = Math.min(ra, rb);
+			AVector<?> va = sa.ref.getValue();
+			AVector<?> vb = sb.ref.getValue();
+			for (long i = 0; i < n; i++) {
+				long ix = pos + i;
+				Ref<?> ea1 = va.getElementRef(ix - sa.base);
+				Ref<?> eb1 = vb.getElementRef(ix - sb.base);
+				if (ea1.equals(eb1)) continue;
+				handler.change(CHANGED, path.conj(CVMLong.create(ix)), ea1.getValue(), eb1.getValue());
+			}
+			pos += n;
+			if (sa.end == pos) as.pollFirst();
+			if (sb.end == pos) bs.pollFirst();
+		}
+
+		// any remaining elements are only present on one side
+		for (Segment s : as) {
+			AVector<?> v = s.ref.getValue();
+			for (long ix = Math.max(pos, s.start); ix < s.end; ix++) {
+				handler.change(REMOVED, path.conj(CVMLong.create(ix)), v.get(ix - s.base), null);
+			}
+		}
+		for (Segment s : bs) {
+			AVector<?> v = s.ref.getValue();
+			for (long ix = Math.max(pos, s.start); ix < s.end; ix++) {
+				handler.change(ADDED, path.conj(CVMLong.create(ix)), null, v.get(ix - s.base));
+			}
+		}
+	}
+
+	/**
+	 * Replaces the first segment in the queue with its child segments, excluding any
+	 * children that end before the given position.
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static void expand(ArrayDeque<Segment> queue, long pos) {
+		Segment s = queue.pollFirst();
+		AVector<?> v = s.ref.getValue();
+		if (v instanceof VectorTree) {
+			VectorTree<?> t = (VectorTree<?>) v;
+			long cs = t.childSize();
+			Ref[] children = t.children;
+			for (int i = children.length - 1; i >= 0; i--) {
+				long cStart = s.base + i * cs;
+				long cEnd = Math.min(cStart + cs, s.end);
+				if (cEnd <= pos) break;
+				queue.addFirst(new Segment(children[i], cStart, cStart, cEnd, false));
+			}
+		} else {
+			// VectorLeaf with prefix: items of this leaf follow the prefix vector
+			VectorLeaf<?> l = (VectorLeaf<?>) v;
+			long pl = s.base + l.prefixLength();
+			queue.addFirst(new Segment(s.ref, s.base, pl, s.end, true));
+			if (pos < pl) queue.addFirst(new Segment((Ref) l.prefix, s.base, s.base, pl, false));
+		}
+	}
+
+	/**
+	 * A vector segment covering a range of element positions in the vector being compared
+	 */
+	private static final class Segment {
+		final Ref<? extends AVector<?>> ref;
+
+		/**
+		 * Position of the first element of the referenced vector
+		 */
+		final long base;
+
+		/**
+		 * Range of positions covered by this segment
+		 */
+		final long start;
+		final long end;
+
+		/**
+		 * True if elements in this segment should be compared directly rather than expanded
+		 */
+		final boolean flat;
+
+		Segment(Ref<? extends AVector<?>> ref, long base, long start, long end, boolean flat) {
+			this.ref = ref;
+			this.base = base;
+			this.start = start;
+			this.end = end;
+			this.flat = flat;
+		}
+
+		boolean isExpandable() {
+			if (flat) return false;
+			AVector<?> v = ref.getValue();
+			if (v instanceof VectorTree) return true;
+			return (v instanceof VectorLeaf) && (((VectorLeaf<?>) v).prefixLength() > 0);
+		}
+	}
+}
@@ -0,0 +1,212 @@
+package convex.core.data;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Transient builder for hash maps, designed for constructing a large map from many
+ * individual entries without creating intermediate persistent maps.
+ *
+ * Entries are accumulated in a mutable Java map. When the map is produced, either the
+ * changes are applied to the base map (if only a few changes were made) or the canonical
+ * tree is constructed bottom-up in a single pass, creating each node exactly once.
+ *
+ * Not thread safe.
+ *
+ * @param <K> Type of keys
+ * @param <V> Type of values
+ */
+public class HashMapBuilder<K extends ACell, V extends ACell> {
+
+	/**
+	 * Ratio of base map size to changes below which changes are applied with persistent
+	 * operations rather than by rebuilding the whole map
+	 */
+	static final int INCREMENTAL_RATIO = 8;
+
+	/**
+	 * Base map, to which changes are applied
+	 */
+	protected AHashMap<K, V> base;
+
+	/**
+	 * Pending changes by key. A null entry indicates a removed key.
+	 */
+	protected final HashMap<ACell, MapEntry<K, V>> changes = new HashMap<>();
+
+	/**
+	 * Total count of entries in this builder
+	 */
+	protected long count;
+
+	public HashMapBuilder() {
+		this(Maps.empty());
+	}
+
+	public HashMapBuilder(AHashMap<K, V> base) {
+		this.base = base;
+		this.count = base.count();
+	}
+
+	/**
+	 * Associates a key with a value, replacing any existing value
+	 * @param key Key to add
+	 * @param value Value for key
+	 * @return This builder
+	 */
+	public HashMapBuilder<K, V> assoc(K key, V value) {
+		return assocEntry(MapEntry.create(key, value));
+	}
+
+	/**
+	 * Adds a map entry, replacing any existing entry with the same key
+	 * @param e Entry to add
+	 * @return This builder
+	 */
+	public HashMapBuilder<K, V> assocEntry(MapEntry<K, V> e) {
+		K key = e.getKey();
+		if (!containsKey(key)) count++;
+		changes.put(key, e);
+		return this;
+	}
+
+	/**
+	 * Removes a key, if present
+	 * @param key Key to remove
+	 * @return This builder
+	 */
+	public HashMapBuilder<K, V> dissoc(ACell key) {
+		if (!containsKey(key)) return this;
+		if (base.containsKey(key)) {
+			changes.put(key, null);
+		} else {
+			changes.remove(key);
+		}
+		count--;
+		return this;
+	}
+
+	/**
+	 * Adds all entries from a hash map, replacing existing entries with the same keys
+	 * @param m Map to merge into this builder
+	 * @return This builder
+	 */
+	public HashMapBuilder<K, V> merge(AHashMap<K, V> m) {
+		if (count == 0) {
+			// nothing to keep, so just take the whole map as the new base
+			changes.clear();
+			base = m;
+			count = m.count();
+			return this;
+		}
+		// walk the leaves directly, rather than indexing each entry from the root
+		m.allMatch(e -> {
+			assocEntry(e);
+			return true;
+		});
+		return this;
+	}
+
+	/**
+	 * Checks if this builder contains the given key
+	 * @param key Key to check
+	 * @return true if key is present, false otherwise
+	 */
+	public boolean containsKey(ACell key) {
+		if (changes.containsKey(key)) return changes.get(key) != null;
+		return base.containsKey(key);
+	}
+
+	/**
+	 * Gets the value for a key in this builder
+	 * @param key Key to look up
+	 * @return Value, or null if not present
+	 */
+	public V get(ACell key) {
+		if (changes.containsKey(key)) {
+			MapEntry<K, V> e = changes.get(key);
+			return (e == null) ? null : e.getValue();
+		}
+		return base.get(key);
+	}
+
+	/**
+	 * Gets the number of entries in this builder
+	 * @return Count of entries
+	 */
+	public long count() {
+		return count;
+	}
+
+	/**
+	 * Clears this builder
+	 */
+	public void clear() {
+		base = Maps.empty();
+		changes.clear();
+		count = 0;
+	}
+
+	/**
+	 * Produces a canonical persistent map containing all entries in this builder. The builder
+	 * may continue to be used afterwards.
+	 * @return Hash map
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public AHashMap<K, V> toMap() {
+		if (changes.isEmpty()) return base;
+		AHashMap<K, V> result;
+		long baseCount = base.count();
+		if ((long) changes.size() * INCREMENTAL_RATIO < baseCount) {
+			result = base;
+			for (Map.Entry<ACell, MapEntry<K, V>> me : changes.entrySet()) {
+				MapEntry<K, V> e = me.getValue();
+				result = (e == null) ? result.dissoc(me.getKey()) : result.assocEntry(e);
+			}
+		} else {
+			MapEntry<K, V>[] entries = new MapEntry[(int) count];
+			int[] ix = new int[1];
+			base.allMatch(e -> {
+				if (!changes.containsKey(e.getKey())) entries[ix[0]++] = e;
+				return true;
+			});
+			for (MapEntry<K, V> e : changes.values()) {
+				if (e != null) entries[ix[0]++] = e;
+			}
+			Arrays.sort(entries);
+			result = build(entries, 0, ix[0], 0);
+		}
+		base = result;
+		changes.clear();
+		return result;
+	}
+
+	/**
+	 * Builds a canonical map node from a range of entries sorted by key hash. All entries in
+	 * the range must share the same hash prefix up to the given shift.
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	static <K extends ACell, V extends ACell> AHashMap<K, V> build(MapEntry<K, V>[] entries, int start, int end, int shift) {
+		int n = end - start;
+		if (n == 0) return Maps.empty();
+		if (n <= MapLeaf.MAX_ENTRIES) {
+			return MapLeaf.unsafeCreate(Arrays.copyOfRange(entries, start, end));
+		}
+
+		// entries are sorted by hash, so each digit at this shift is a contiguous range
+		Ref<AHashMap<K, V>>[] children = new Ref[16];
+		int childCount = 0;
+		short mask = 0;
+		int i = start;
+		while (i < end) {
+			int digit = entries[i].getKeyHash().getHexDigit(shift);
+			int j = i + 1;
+			while ((j < end) && (entries[j].getKeyHash().getHexDigit(shift) == digit)) j++;
+			children[childCount++] = build(entries, i, j, shift + 1).getRef();
+			mask |= (short) (1 << digit);
+			i = j;
+		}
+		return MapTree.unsafeCreate(Arrays.copyOf(children, childCount), shift, mask, n);
+	}
+}
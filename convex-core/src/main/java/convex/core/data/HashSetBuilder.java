@@ -0,0 +1,191 @@
+package convex.core.data;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Transient builder for hash sets, designed for constructing a large set from many
+ * individual elements without creating intermediate persistent sets.
+ *
+ * Works in the same way as {@link HashMapBuilder}: elements are accumulated in a mutable
+ * Java map and the canonical tree is constructed bottom-up when the set is produced.
+ *
+ * Not thread safe.
+ *
+ * @param <T> Type of elements
+ */
+public class HashSetBuilder<T extends ACell> {
+
+	/**
+	 * Base set, to which changes are applied
+	 */
+	protected AHashSet<T> base;
+
+	/**
+	 * Pending changes by element. A null Ref indicates a removed element.
+	 */
+	protected final HashMap<ACell, Ref<T>> changes = new HashMap<>();
+
+	/**
+	 * Total count of elements in this builder
+	 */
+	protected long count;
+
+	public HashSetBuilder() {
+		this(Sets.empty());
+	}
+
+	public HashSetBuilder(AHashSet<T> base) {
+		this.base = base;
+		this.count = base.count();
+	}
+
+	/**
+	 * Adds an element to this builder
+	 * @param a Element to add
+	 * @return This builder
+	 */
+	public HashSetBuilder<T> conj(T a) {
+		return conjRef(Ref.get(a));
+	}
+
+	/**
+	 * Adds an element Ref to this builder
+	 * @param ref Ref to element to add
+	 * @return This builder
+	 */
+	public HashSetBuilder<T> conjRef(Ref<T> ref) {
+		T a = ref.getValue();
+		if (contains(a)) return this;
+		changes.put(a, ref);
+		count++;
+		return this;
+	}
+
+	/**
+	 * Adds all elements of a collection to this builder
+	 * @param elements Elements to add
+	 * @return This builder
+	 */
+	@SuppressWarnings("unchecked")
+	public HashSetBuilder<T> conjAll(ACollection<T> elements) {
+		if ((count == 0) && (elements instanceof AHashSet)) {
+			changes.clear();
+			base = (AHashSet<T>) elements;
+			count = base.count();
+			return this;
+		}
+		long n = elements.count();
+		for (long i = 0; i < n; i++) {
+			conjRef(elements.getElementRef(i));
+		}
+		return this;
+	}
+
+	/**
+	 * Removes an element from this builder, if present
+	 * @param a Element to remove
+	 * @return This builder
+	 */
+	public HashSetBuilder<T> disj(ACell a) {
+		if (!contains(a)) return this;
+		if (base.contains(a)) {
+			changes.put(a, null);
+		} else {
+			changes.remove(a);
+		}
+		count--;
+		return this;
+	}
+
+	/**
+	 * Checks if this builder contains the given element
+	 * @param a Element to check
+	 * @return true if element is present, false otherwise
+	 */
+	public boolean contains(ACell a) {
+		if (changes.containsKey(a)) return changes.get(a) != null;
+		return base.contains(a);
+	}
+
+	/**
+	 * Gets the number of elements in this builder
+	 * @return Count of elements
+	 */
+	public long count() {
+		return count;
+	}
+
+	/**
+	 * Clears this builder
+	 */
+	public void clear() {
+		base = Sets.empty();
+		changes.clear();
+		count = 0;
+	}
+
+	/**
+	 * Produces a canonical persistent set containing all elements in this builder. The builder
+	 * may continue to be used afterwards.
+	 * @return Hash set
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public AHashSet<T> toSet() {
+		if (changes.isEmpty()) return base;
+		AHashSet<T> result;
+		long baseCount = base.count();
+		if ((long) changes.size() * HashMapBuilder.INCREMENTAL_RATIO < baseCount) {
+			result = base;
+			for (Map.Entry<ACell, Ref<T>> me : changes.entrySet()) {
+				Ref<T> ref = me.getValue();
+				result = (ref == null) ? result.excludeRef(Ref.get((T) me.getKey())) : result.includeRef(ref);
+			}
+		} else {
+			Ref<T>[] refs = new Ref[(int) count];
+			int ix = 0;
+			for (long i = 0; i < baseCount; i++) {
+				Ref<T> ref = base.getElementRef(i);
+				if (changes.containsKey(ref.getValue())) continue;
+				refs[ix++] = ref;
+			}
+			for (Ref<T> ref : changes.values()) {
+				if (ref != null) refs[ix++] = ref;
+			}
+			Arrays.sort(refs);
+			result = build(refs, 0, ix, 0);
+		}
+		base = result;
+		changes.clear();
+		return result;
+	}
+
+	/**
+	 * Builds a canonical set node from a range of element Refs sorted by hash. All elements in
+	 * the range must share the same hash prefix up to the given shift.
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	static <T extends ACell> AHashSet<T> build(Ref<T>[] refs, int start, int end, int shift) {
+		int n = end - start;
+		if (n == 0) return Sets.empty();
+		if (n <= SetLeaf.MAX_ELEMENTS) {
+			return SetLeaf.unsafeCreate(Arrays.copyOfRange(refs, start, end));
+		}
+
+		// elements are sorted by hash, so each digit at this shift is a contiguous range
+		Ref<AHashSet<T>>[] children = new Ref[16];
+		int childCount = 0;
+		short mask = 0;
+		int i = start;
+		while (i < end) {
+			int digit = refs[i].getHash().getHexDigit(shift);
+			int j = i + 1;
+			while ((j < end) && (refs[j].getHash().getHexDigit(shift) == digit)) j++;
+			children[childCount++] = build(refs, i, j, shift + 1).getRef();
+			mask |= (short) (1 << digit);
+			i = j;
+		}
+		return SetTree.unsafeCreate(Arrays.copyOf(children, childCount), shift, mask, n);
+	}
+}
@@ -0,0 +1,19 @@
+package convex.core.data;
+
+/**
+ * Functional interface for receiving changes found by a structural diff
+ *
+ * @see Diffs
+ */
+@FunctionalInterface
+public interface IDiffHandler {
+
+	/**
+	 * Called for each difference found
+	 * @param type Type of change, one of {@link Diffs#ADDED}, {@link Diffs#REMOVED} or {@link Diffs#CHANGED}
+	 * @param path Path to the changed value, as a vector of keys / indexes
+	 * @param oldValue Previous value (null if added)
+	 * @param newValue New value (null if removed)
+	 */
+	public void change(int type, AVector<ACell> path, ACell oldValue, ACell newValue);
+}
@@ -1,6 +1,8 @@
 package convex.core.data;
 
+import java.lang.ref.WeakReference;
 import java.nio.ByteBuffer;
+import java.util.WeakHashMap;
 
 import convex.core.Constants;
 import convex.core.data.type.AType;
@@ -30,6 +32,11 @@ public class Keyword extends ASymbolic implements Comparable<Keyword> {
 		super(name);
 	}
 	
+	/**
+	 * Interning table for Keywords
+	 */
+	protected static final WeakHashMap<AString, WeakReference<Keyword>> cache = new WeakHashMap<>(100);
+	
 	public AType getType() {
 		return Types.KEYWORD;
 	}
@@ -74,7 +81,7 @@ public class Keyword extends ASymbolic implements Comparable<Keyword> {
 		if (!validateName(name)) {
 			return null;
 		}
-		return new Keyword(name);
+		return intern(cache, name, Keyword::new);
 	}
 
 	/**
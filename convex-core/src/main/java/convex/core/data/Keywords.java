@@ -16,6 +16,8 @@ public class Keywords {
 	public static final Keyword BELIEF = Keyword.create("belief");
 	public static final Keyword STATES = Keyword.create("states");
 	public static final Keyword RESULTS = Keyword.create("results");
+	public static final Keyword HISTORY = Keyword.create("history");
+	public static final Keyword OFFSET = Keyword.create("offset");
 	public static final Keyword PERSIST = Keyword.create("persist");
 	public static final Keyword POLL_DELAY = Keyword.create("poll-delay");
 
@@ -88,4 +90,13 @@ public class Keywords {
 	public static final Keyword TIMEOUT = Keyword.create("timeout");
 	public static final Keyword EVENT_HOOK = Keyword.create("event-hook");
 	public static final Keyword STATIC = Keyword.create("static");
+
+	public static final Keyword RETAIN_STATES = Keyword.create("retain-states");
+	public static final Keyword CHECKPOINT_BLOCKS = Keyword.create("checkpoint-blocks");
+	public static final Keyword CHECKPOINT_TIME = Keyword.create("checkpoint-time");
+	public static final Keyword PERSIST_BLOCKS = Keyword.create("persist-blocks");
+	public static final Keyword PERSIST_INTERVAL = Keyword.create("persist-interval");
+	public static final Keyword REACTORS = Keyword.create("reactors");
+	public static final Keyword DECODE_THREADS = Keyword.create("decode-threads");
+	public static final Keyword BUNDLE_SIZE = Keyword.create("bundle-size");
 }
@@ -9,6 +9,7 @@ import java.util.Set;
 import java.util.function.BiConsumer;
 import java.util.function.BiFunction;
 import java.util.function.Function;
+import java.util.function.Predicate;
 
 import convex.core.exceptions.BadFormatException;
 import convex.core.exceptions.InvalidDataException;
@@ -390,6 +391,14 @@ public class MapLeaf<K extends ACell, V extends ACell> extends AHashMap<K, V> {
 		}
 	}
 
+	@Override
+	public boolean allMatch(Predicate<? super MapEntry<K, V>> pred) {
+		for (MapEntry<K, V> e : entries) {
+			if (!pred.test(e)) return false;
+		}
+		return true;
+	}
+
 	@Override
 	public boolean isCanonical() {
 		return true;
@@ -497,6 +506,25 @@ public class MapLeaf<K extends ACell, V extends ACell> extends AHashMap<K, V> {
 		return entries[Utils.checkedInt(i)];
 	}
 
+	@Override
+	protected AHashMap<K, V> merge(AHashMap<K, V> m, int shift) {
+		if (m instanceof MapLeaf) {
+			AHashMap<K, V> result = this;
+			long n = m.count();
+			for (long i = 0; i < n; i++) {
+				result = result.assocEntry(m.entryAt(i), shift);
+			}
+			return result;
+		}
+		// other map is larger, so keep its structure and add any of our entries it lacks
+		AHashMap<K, V> result = m;
+		for (int i = 0; i < entries.length; i++) {
+			MapEntry<K, V> e = entries[i];
+			if (!m.containsKey(e.getKey())) result = result.assocEntry(e, shift);
+		}
+		return result;
+	}
+
 	@Override
 	public AHashMap<K, V> mergeWith(AHashMap<K, V> b, MergeFunction<V> func) {
 		return mergeWith(b, func, 0);
@@ -8,6 +8,7 @@ import java.util.Set;
 import java.util.function.BiConsumer;
 import java.util.function.BiFunction;
 import java.util.function.Function;
+import java.util.function.Predicate;
 
 import convex.core.exceptions.BadFormatException;
 import convex.core.exceptions.InvalidDataException;
@@ -30,19 +31,19 @@ public class MapTree<K extends ACell, V extends ACell> extends AHashMap<K, V> {
 	/**
 	 * Child maps, one for each present bit in the mask, max 16
 	 */
-	private final Ref<AHashMap<K, V>>[] children;
+	final Ref<AHashMap<K, V>>[] children;
 
 	/**
 	 * Shift position of this treemap node in number of hex digits
 	 */
-	private final int shift;
+	final int shift;
 
 	/**
 	 * Mask indicating which hex digits are present in the child array e.g. 0x0001
 	 * indicates all children are in the '0' digit. e.g. 0xFFFF indicates there are
 	 * children for every digit.
 	 */
-	private final short mask;
+	final short mask;
 
 	private MapTree(Ref<AHashMap<K, V>>[] blocks, int shift, short mask, long count) {
 		super(count);
@@ -51,6 +52,19 @@ public class MapTree<K extends ACell, V extends ACell> extends AHashMap<K, V> {
 		this.mask = mask;
 	}
 
+	/**
+	 * Creates a MapTree with raw child Refs. Can create an invalid Cell, caller is
+	 * responsible for canonical structure
+	 * @param children Refs to non-empty child maps, in digit order
+	 * @param shift Shift level of this node
+	 * @param mask Mask of digits present in children
+	 * @param count Total count of entries
+	 * @return MapTree instance, possibly invalid
+	 */
+	public static <K extends ACell, V extends ACell> MapTree<K, V> unsafeCreate(Ref<AHashMap<K, V>>[] children, int shift, short mask, long count) {
+		return new MapTree<K, V>(children, shift, mask, count);
+	}
+
 	/**
 	 * Computes the total count from an array of Refs to maps Ignores null Refs in
 	 * child array
@@ -472,6 +486,14 @@ public class MapTree<K extends ACell, V extends ACell> extends AHashMap<K, V> {
 		}
 	}
 
+	@Override
+	public boolean allMatch(Predicate<? super MapEntry<K, V>> pred) {
+		for (Ref<AHashMap<K, V>> sub : children) {
+			if (!sub.getValue().allMatch(pred)) return false;
+		}
+		return true;
+	}
+
 	@Override
 	public boolean isCanonical() {
 		if (count <= MapLeaf.MAX_ENTRIES) return false;
@@ -515,6 +537,49 @@ public class MapTree<K extends ACell, V extends ACell> extends AHashMap<K, V> {
 		return new MapTree<>(newChildren, shift, mask, count);
 	}
 
+	@SuppressWarnings("unchecked")
+	@Override
+	protected AHashMap<K, V> merge(AHashMap<K, V> m, int shift) {
+		if (m instanceof MapLeaf) {
+			AHashMap<K, V> result = this;
+			long n = m.count();
+			for (long i = 0; i < n; i++) {
+				result = result.assocEntry(m.entryAt(i), shift);
+			}
+			return result;
+		}
+		MapTree<K, V> b = (MapTree<K, V>) m;
+		int fullMask = mask | b.mask;
+		// We are going to build full child list only if needed
+		Ref<AHashMap<K, V>>[] newChildren = null;
+		for (int digit = 0; digit < 16; digit++) {
+			int bitMask = 1 << digit;
+			if ((fullMask & bitMask) == 0) continue;
+			Ref<AHashMap<K, V>> aref = childForDigit(digit);
+			Ref<AHashMap<K, V>> bref = b.childForDigit(digit);
+			Ref<AHashMap<K, V>> rref;
+			if (((b.mask & bitMask) == 0) || aref.isKnownEqual(bref)) {
+				rref = aref; // nothing to merge, or identical subtree
+			} else if ((mask & bitMask) == 0) {
+				rref = bref; // new subtree, can use unchanged
+			} else {
+				AHashMap<K, V> ac = aref.getValue();
+				AHashMap<K, V> rc = ac.merge(bref.getValue(), shift + 1);
+				rref = (rc == ac) ? aref : rc.getRef();
+			}
+			if ((rref != aref) && (newChildren == null)) {
+				newChildren = (Ref<AHashMap<K, V>>[]) new Ref<?>[16];
+				for (int ii = 0; ii < digit; ii++) { // copy existing children up to this point
+					int chi = Bits.indexForDigit(ii, mask);
+					if (chi >= 0) newChildren[ii] = children[chi];
+				}
+			}
+			if (newChildren != null) newChildren[digit] = rref;
+		}
+		if (newChildren == null) return this;
+		return createFull(newChildren, shift);
+	}
+
 	@Override
 	public AHashMap<K, V> mergeWith(AHashMap<K, V> b, MergeFunction<V> func) {
 		return mergeWith(b, func, this.shift);
@@ -695,7 +760,7 @@ public class MapTree<K extends ACell, V extends ACell> extends AHashMap<K, V> {
 	 * @return The child map for this digit, or an empty map if the child does not
 	 *         exist
 	 */
-	private Ref<AHashMap<K, V>> childForDigit(int digit) {
+	Ref<AHashMap<K, V>> childForDigit(int digit) {
 		int ix = Bits.indexForDigit(digit, mask);
 		if (ix < 0) return Maps.emptyRef();
 		return children[ix];
@@ -50,13 +50,13 @@ public class Maps {
 		if (keysAndValues.length != n * 2)
 			throw new IllegalArgumentException("Even number of values need for key-value pairs");
 
-		AMap<K, V> result = Maps.empty();
+		HashMapBuilder<K, V> builder = new HashMapBuilder<>();
 		for (int i = 0; i < n; i++) {
 			K key = (K) RT.cvm(keysAndValues[i * 2]);
 			V value = (V) RT.cvm(keysAndValues[i * 2 + 1]);
-			result = result.assoc(key, value);
+			builder.assoc(key, value);
 		}
-		return (R) result;
+		return (R) builder.toMap();
 	}
 	
 	/**
@@ -74,13 +74,13 @@ public class Maps {
 		if (keysAndValues.length != n * 2)
 			throw new IllegalArgumentException("Even number of values need for key-value pairs");
 
-		AMap<K, V> result = Maps.empty();
+		HashMapBuilder<K, V> builder = new HashMapBuilder<>();
 		for (int i = 0; i < n; i++) {
 			K key = (K) keysAndValues[i * 2];
 			V value = (V) keysAndValues[i * 2 + 1];
-			result = result.assoc(key, value);
+			builder.assoc(key, value);
 		}
-		return (R) result;
+		return (R) builder.toMap();
 	}
 
 	@SuppressWarnings("unchecked")
@@ -290,6 +290,20 @@ public abstract class Ref<T extends ACell> extends AObject implements Comparable
 		return hash;
 	}
 
+	/**
+	 * Checks if this Ref is known to refer to the same value as another Ref, without
+	 * computing any hashes or loading values from the store. A false result does not
+	 * imply that the values are different.
+	 * 
+	 * @param a Ref to compare with
+	 * @return true if the Refs are known to refer to the same value
+	 */
+	public final boolean isKnownEqual(Ref<T> a) {
+		if (this == a) return true;
+		if ((hash != null) && (a.hash != null)) return hash.equals(a.hash);
+		return isDirect() && a.isDirect() && (getValue() == a.getValue());
+	}
+
 	/**
 	 * Returns a direct Ref wrapping the given value. Does not perform any Ref
 	 * lookup in stores etc.
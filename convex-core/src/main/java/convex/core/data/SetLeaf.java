@@ -4,6 +4,7 @@ import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.function.BiFunction;
+import java.util.function.Predicate;
 
 import convex.core.exceptions.BadFormatException;
 import convex.core.exceptions.InvalidDataException;
@@ -396,7 +397,8 @@ public class SetLeaf<T extends ACell> extends AHashSet<T> {
 		return Sets.createWithShift(shift,results);
 	}
 
-	public <R> R reduceValues(BiFunction<? super R, ? super T, ? extends R> func, R initial) {
+	@Override
+	public <R> R reduce(BiFunction<? super R, ? super T, ? extends R> func, R initial) {
 		int n = size();
 		R result = initial;
 		for (int i = 0; i < n; i++) {
@@ -405,6 +407,14 @@ public class SetLeaf<T extends ACell> extends AHashSet<T> {
 		return result;
 	}
 
+	@Override
+	public boolean allMatch(Predicate<? super T> pred) {
+		for (Ref<T> e : elements) {
+			if (!pred.test(e.getValue())) return false;
+		}
+		return true;
+	}
+
 	@Override
 	public boolean equals(ASet<T> a) {
 		if (!(a instanceof SetLeaf)) return false;
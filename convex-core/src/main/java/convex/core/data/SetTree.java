@@ -1,6 +1,8 @@
 package convex.core.data;
 
 import java.nio.ByteBuffer;
+import java.util.function.BiFunction;
+import java.util.function.Predicate;
 
 import convex.core.exceptions.BadFormatException;
 import convex.core.exceptions.InvalidDataException;
@@ -22,7 +24,7 @@ public class SetTree<T extends ACell> extends AHashSet<T> {
 	/**
 	 * Child maps, one for each present bit in the mask, max 16
 	 */
-	private final Ref<AHashSet<T>>[] children;
+	final Ref<AHashSet<T>>[] children;
 
 	/**
 	 * Shift position of this @link SetTree node in number of hex digits. 0 at top level.
@@ -455,10 +457,15 @@ public class SetTree<T extends ACell> extends AHashSet<T> {
 		for (int digit = 0; digit < 16; digit++) {
 			int bitMask = 1 << digit;
 			if ((fullMask & bitMask) == 0) continue; // nothing to merge at this index
-			AHashSet<T> ac = childForDigit(digit).getValue();
-			AHashSet<T> bc = b.childForDigit(digit).getValue();
-			AHashSet<T> rc = ac.mergeWith(bc, setOp, shift + 1);
-			if (ac != rc) {
+			Ref<AHashSet<T>> aref = childForDigit(digit);
+			Ref<AHashSet<T>> bref = b.childForDigit(digit);
+			Ref<AHashSet<T>> rref = mergeChildRefs(aref, bref, (mask & bitMask) != 0, (b.mask & bitMask) != 0, setOp);
+			if (rref == null) {
+				AHashSet<T> ac = aref.getValue();
+				AHashSet<T> rc = ac.mergeWith(bref.getValue(), setOp, shift + 1);
+				rref = (ac == rc) ? aref : rc.getRef();
+			}
+			if (rref != aref) {
 				if (newChildren == null) {
 					newChildren = (Ref<AHashSet<T>>[]) new Ref<?>[16];
 					for (int ii = 0; ii < digit; ii++) { // copy existing children up to this point
@@ -467,12 +474,36 @@ public class SetTree<T extends ACell> extends AHashSet<T> {
 					}
 				}
 			}
-			if (newChildren != null) newChildren[digit] = rc.getRef();
+			if (newChildren != null) newChildren[digit] = rref;
 		}
 		if (newChildren == null) return this;
 		return createFull(newChildren, shift);
 	}
 
+	/**
+	 * Gets the result of a set operation on two child subtrees where this can be
+	 * determined without traversal, i.e. where the children are identical or one
+	 * is absent.
+	 * 
+	 * @return Ref to resulting child, or null if the children must be merged
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private Ref<AHashSet<T>> mergeChildRefs(Ref<AHashSet<T>> aref, Ref<AHashSet<T>> bref, boolean hasA, boolean hasB, int setOp) {
+		if (hasA && hasB) {
+			if (!aref.isKnownEqual(bref)) return null;
+			// identical children
+			return ((setOp == OP_UNION) || (setOp == OP_INTERSECTION)) ? aref : (Ref) Sets.emptyRef();
+		}
+		// one child absent, in which case the empty Ref is returned for that side
+		switch (setOp) {
+		case OP_UNION: return hasA ? aref : bref;
+		case OP_INTERSECTION: return hasA ? bref : aref;
+		case OP_DIFF_LEFT: return aref;
+		case OP_DIFF_RIGHT: return bref;
+		}
+		return null;
+	}
+
 	@SuppressWarnings("unchecked")
 	private AHashSet<T> mergeWith(SetLeaf<T> b, int setOp, int shift) {
 		Ref<AHashSet<T>>[] newChildren = null;
@@ -630,6 +661,23 @@ public class SetTree<T extends ACell> extends AHashSet<T> {
 		if (!isValidStructure()) throw new InvalidDataException("Bad structure", this);
 	}
 
+	@Override
+	public <R> R reduce(BiFunction<? super R, ? super T, ? extends R> func, R initial) {
+		R result = initial;
+		for (Ref<AHashSet<T>> child : children) {
+			result = child.getValue().reduce(func, result);
+		}
+		return result;
+	}
+
+	@Override
+	public boolean allMatch(Predicate<? super T> pred) {
+		for (Ref<AHashSet<T>> child : children) {
+			if (!child.getValue().allMatch(pred)) return false;
+		}
+		return true;
+	}
+
 	@Override
 	public boolean containsAll(ASet<T> b) {
 		if (b instanceof SetTree) {
@@ -37,22 +37,22 @@ public class Sets {
 	@SafeVarargs
 	public static <T extends ACell> ASet<T> of(Object... elements) {
 		int n=elements.length;
-		ASet<T> result=empty();
+		HashSetBuilder<T> builder=new HashSetBuilder<>();
 		for (int i=0; i<n; i++) {
-			result=(ASet<T>) result.conj(RT.cvm(elements[i]));
+			builder.conj((T)RT.cvm(elements[i]));
 		}
-		return result;
+		return builder.toSet();
 	}
 	
 	@SuppressWarnings("unchecked")
 	@SafeVarargs
 	public static <T extends ACell> ASet<T> of(ACell... elements) {
 		int n=elements.length;
-		ASet<T> result=empty();
+		HashSetBuilder<T> builder=new HashSetBuilder<>();
 		for (int i=0; i<n; i++) {
-			result=(ASet<T>) result.conj(elements[i]);
+			builder.conj((T)elements[i]);
 		}
-		return result;
+		return builder.toSet();
  	}
 
 	/**
@@ -1,5 +1,6 @@
 package convex.core.data;
 
+import java.lang.ref.WeakReference;
 import java.nio.ByteBuffer;
 import java.util.WeakHashMap;
 
@@ -36,7 +37,10 @@ public class Symbol extends ASymbolic {
 		return Types.SYMBOL;
 	}
 	
-	protected static final WeakHashMap<AString,Symbol> cache=new WeakHashMap<>(100);
+	/**
+	 * Interning table for Symbols
+	 */
+	protected static final WeakHashMap<AString,WeakReference<Symbol>> cache=new WeakHashMap<>(100);
 
 	/**
 	 * Creates a Symbol with the given name
@@ -56,17 +60,7 @@ public class Symbol extends ASymbolic {
 	 */
 	public static Symbol create(AString name) {
 		if (!validateName(name)) return null;
-		
-		Symbol sym= new Symbol(name);
-		
-		synchronized (cache) {
-			// TODO: figure out if caching Symbols is a net win or not
-			Symbol cached=cache.get(name);
-			if (cached!=null) return cached;
-			cache.put(name,sym);
-		}
-
-		return sym;
+		return intern(cache,name,Symbol::new);
 	}
 	
 	/**
@@ -99,6 +93,7 @@ public class Symbol extends ASymbolic {
 	 * @return true if Symbols are equal, false otherwise
 	 */
 	public boolean equals(Symbol sym) {
+		if (sym==this) return true;
 		return sym.name.equals(name);
 	}
 
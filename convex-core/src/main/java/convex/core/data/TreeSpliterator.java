@@ -0,0 +1,180 @@
+package convex.core.data;
+
+import java.util.ArrayDeque;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+import convex.core.util.Errors;
+
+/**
+ * Spliterator over the elements of a tree-structured data structure.
+ *
+ * Remaining elements are held as a queue of subtrees in order. Splitting divides the
+ * queue into two halves with approximately equal element counts, expanding a single
+ * remaining subtree into its children where necessary, so parallel streams divide work
+ * evenly along the tree structure. Since the count of every subtree is known, sizes
+ * are exact for both halves of any split.
+ *
+ * @param <T> Type of elements
+ */
+final class TreeSpliterator<T extends ACell> implements Spliterator<T> {
+
+	/**
+	 * Remaining subtrees, in element order
+	 */
+	private final ArrayDeque<ADataStructure<T>> parts;
+
+	/**
+	 * Number of elements already consumed from the first subtree
+	 */
+	private long pos;
+
+	/**
+	 * Number of elements remaining
+	 */
+	private long remaining;
+
+	private final int characteristics;
+
+	TreeSpliterator(ADataStructure<T> root, long position) {
+		long n = root.count();
+		if ((position < 0) || (position > n)) throw new IllegalArgumentException(Errors.illegalPosition(position));
+		this.parts = new ArrayDeque<>();
+		if (position < n) parts.add(root);
+		this.pos = position;
+		this.remaining = n - position;
+		int chars = Spliterator.IMMUTABLE | Spliterator.SIZED | Spliterator.SUBSIZED | Spliterator.ORDERED;
+		if (root instanceof AMap) chars |= Spliterator.DISTINCT | Spliterator.NONNULL;
+		if (root instanceof ASet) chars |= Spliterator.DISTINCT;
+		this.characteristics = chars;
+	}
+
+	private TreeSpliterator(ArrayDeque<ADataStructure<T>> parts, long pos, long remaining, int characteristics) {
+		this.parts = parts;
+		this.pos = pos;
+		this.remaining = remaining;
+		this.characteristics = characteristics;
+	}
+
+	@Override
+	public boolean tryAdvance(Consumer<? super T> action) {
+		while (!parts.isEmpty()) {
+			ADataStructure<T> p = parts.peekFirst();
+			if (pos >= p.count()) {
+				parts.pollFirst();
+				pos = 0;
+				continue;
+			}
+			if (expandFirst()) continue;
+			T value = p.get(pos++);
+			remaining--;
+			action.accept(value);
+			return true;
+		}
+		return false;
+	}
+
+	@Override
+	public void forEachRemaining(Consumer<? super T> action) {
+		while (!parts.isEmpty()) {
+			if ((pos > 0) && expandFirst()) continue;
+			ADataStructure<T> p = parts.pollFirst();
+			long n = p.count();
+			if (pos > 0) {
+				// partially consumed leaf
+				for (long i = pos; i < n; i++) {
+					action.accept(p.get(i));
+				}
+				remaining -= n - pos;
+				pos = 0;
+			} else {
+				remaining -= n;
+				p.allMatch(x -> {
+					action.accept(x);
+					return true;
+				});
+			}
+		}
+	}
+
+	@Override
+	public Spliterator<T> trySplit() {
+		if (remaining < 2) return null;
+		if (pos >= parts.peekFirst().count()) {
+			// first subtree already fully consumed
+			parts.pollFirst();
+			pos = 0;
+		}
+		while (parts.size() == 1) {
+			if (!expandFirst()) return null;
+		}
+
+		// take subtrees from the front until we have about half the remaining elements
+		long half = remaining / 2;
+		ArrayDeque<ADataStructure<T>> front = new ArrayDeque<>();
+		long taken = 0;
+		while (parts.size() > 1) {
+			ADataStructure<T> p = parts.peekFirst();
+			long c = p.count() - ((taken == 0) ? pos : 0);
+			if ((taken > 0) && (taken + c > half)) break;
+			front.add(parts.pollFirst());
+			taken += c;
+		}
+		TreeSpliterator<T> result = new TreeSpliterator<>(front, pos, taken, characteristics);
+		pos = 0;
+		remaining -= taken;
+		return result;
+	}
+
+	/**
+	 * Replaces the first subtree with its children, skipping any children already consumed.
+	 * @return true if expanded, false if the first subtree is a leaf
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private boolean expandFirst() {
+		ADataStructure<T> p = parts.peekFirst();
+		Ref[] children;
+		MapEntry entry = null;
+		if (p instanceof VectorTree) {
+			children = ((VectorTree) p).children;
+		} else if ((p instanceof VectorLeaf) && (((VectorLeaf) p).prefixLength() > 0)) {
+			VectorLeaf leaf = (VectorLeaf) p;
+			children = new Ref[] { leaf.prefix, new VectorLeaf(leaf.items).getRef() };
+		} else if (p instanceof MapTree) {
+			children = ((MapTree) p).children;
+		} else if (p instanceof SetTree) {
+			children = ((SetTree) p).children;
+		} else if ((p instanceof BlobMap) && (((BlobMap) p).children.length > 0)) {
+			children = ((BlobMap) p).children;
+			entry = ((BlobMap) p).entry;
+		} else {
+			return false;
+		}
+
+		parts.pollFirst();
+		for (int i = children.length - 1; i >= 0; i--) {
+			ADataStructure<T> c = (ADataStructure<T>) children[i].getValue();
+			if (c.count() > 0) parts.addFirst(c);
+		}
+		if (entry != null) parts.addFirst((ADataStructure<T>) BlobMap.create(entry));
+
+		// skip children that have already been consumed
+		while (pos > 0) {
+			long c = parts.peekFirst().count();
+			if (pos < c) break;
+			parts.pollFirst();
+			pos -= c;
+		}
+		return true;
+	}
+
+	@Override
+	public long estimateSize() {
+		return remaining;
+	}
+
+	@Override
+	public int characteristics() {
+		return characteristics;
+	}
+}
@@ -0,0 +1,135 @@
+package convex.core.data;
+
+import java.util.Arrays;
+
+import convex.core.data.prim.CVMByte;
+import convex.core.exceptions.InvalidDataException;
+import convex.core.util.Errors;
+
+/**
+ * Vector of CVM Bytes backed by a primitive byte array.
+ *
+ * Uses 1 byte of memory per element, rather than a Ref for each element as in a VectorTree.
+ * CVMByte values are cached, so no allocation is needed on access.
+ */
+public class VectorBytes extends APrimitiveVector<CVMByte> {
+
+	private final byte[] values;
+	private final int offset;
+
+	private VectorBytes(byte[] values, int offset, long count) {
+		super(count);
+		this.values = values;
+		this.offset = offset;
+	}
+
+	/**
+	 * Creates a vector of Bytes wrapping the given array, without copying.
+	 *
+	 * SECURITY: The array must not be modified after wrapping
+	 *
+	 * @param values Array of values
+	 * @param offset Offset into array
+	 * @param length Number of values to include
+	 * @return Vector of Bytes
+	 */
+	public static AVector<CVMByte> wrap(byte[] values, int offset, int length) {
+		if ((offset < 0) || (length < 0) || (offset + length > values.length)) {
+			throw new IndexOutOfBoundsException(Errors.badRange(offset, offset + length));
+		}
+		if (length <= Vectors.CHUNK_SIZE) {
+			ACell[] cells = new ACell[length];
+			for (int i = 0; i < length; i++) {
+				cells[i] = CVMByte.create(values[offset + i]);
+			}
+			return Vectors.create(cells);
+		}
+		return new VectorBytes(values, offset, length);
+	}
+
+	/**
+	 * Creates a vector of Bytes with a copy of the given values.
+	 *
+	 * @param values Values to include
+	 * @return Vector of Bytes
+	 */
+	public static AVector<CVMByte> create(byte... values) {
+		return wrap(values.clone(), 0, values.length);
+	}
+
+	/**
+	 * Creates a vector of Bytes containing the bytes of a Blob. Shares the
+	 * underlying array of flat Blobs.
+	 *
+	 * @param blob Blob containing bytes
+	 * @return Vector of Bytes
+	 */
+	public static AVector<CVMByte> create(ABlob blob) {
+		Blob b = blob.toFlatBlob();
+		return wrap(b.store, b.offset, (int) b.length);
+	}
+
+	@Override
+	public CVMByte get(long i) {
+		if ((i < 0) || (i >= count)) throw new IndexOutOfBoundsException(Errors.badIndex(i));
+		return CVMByte.create(values[offset + (int) i]);
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public <R extends ACell> AVector<R> subVector(long start, long length) {
+		checkRange(start, length);
+		if (length == count) return (AVector<R>) this;
+		return (AVector<R>) wrap(values, offset + (int) start, (int) length);
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public <R extends ACell> AVector<R> assoc(long i, R value) {
+		if ((i < 0) || (i >= count)) return null;
+		if (!(value instanceof CVMByte)) return super.assoc(i, value);
+		if (values[offset + (int) i] == ((CVMByte) value).byteValue()) return (AVector<R>) this;
+		int n = size();
+		byte[] newValues = Arrays.copyOfRange(values, offset, offset + n);
+		newValues[(int) i] = ((CVMByte) value).byteValue();
+		return (AVector<R>) new VectorBytes(newValues, 0, n);
+	}
+
+	@Override
+	public long longIndexOf(Object o) {
+		if (!(o instanceof CVMByte)) return -1L;
+		byte v = ((CVMByte) o).byteValue();
+		int n = size();
+		for (int i = 0; i < n; i++) {
+			if (values[offset + i] == v) return i;
+		}
+		return -1L;
+	}
+
+	@Override
+	public long longLastIndexOf(Object o) {
+		if (!(o instanceof CVMByte)) return -1L;
+		byte v = ((CVMByte) o).byteValue();
+		for (int i = size() - 1; i >= 0; i--) {
+			if (values[offset + i] == v) return i;
+		}
+		return -1L;
+	}
+
+	@Override
+	public boolean equals(ACell a) {
+		if (a instanceof VectorBytes) {
+			VectorBytes b = (VectorBytes) a;
+			if (b.count != count) return false;
+			int n = size();
+			return Arrays.equals(values, offset, offset + n, b.values, b.offset, b.offset + n);
+		}
+		return super.equals(a);
+	}
+
+	@Override
+	public void validateCell() throws InvalidDataException {
+		if (count <= Vectors.CHUNK_SIZE) throw new InvalidDataException("VectorBytes too small: " + count, this);
+		if (offset + count > values.length) throw new InvalidDataException("VectorBytes out of array bounds", this);
+	}
+}
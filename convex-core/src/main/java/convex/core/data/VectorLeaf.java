@@ -52,8 +52,8 @@ public class VectorLeaf<T extends ACell> extends AVector<T> {
 	/** Maximum size of a single VectorLeaf before a tail is required */
 	public static final int MAX_SIZE = Vectors.CHUNK_SIZE;
 
-	private final Ref<T>[] items;
-	private Ref<AVector<T>> prefix;
+	final Ref<T>[] items;
+	Ref<AVector<T>> prefix;
 
 	VectorLeaf(Ref<T>[] items, Ref<AVector<T>> prefix, long count) {
 		super(count);
@@ -470,12 +470,9 @@ public class VectorLeaf<T extends ACell> extends AVector<T> {
 
 	@Override
 	public void forEach(Consumer<? super T> action) {
-		if (prefix != null) {
-			prefix.getValue().forEach(action);
-
-			for (Ref<T> r : items) {
-				action.accept(r.getValue());
-			}
+		if (prefix != null) prefix.getValue().forEach(action);
+		for (Ref<T> r : items) {
+			action.accept(r.getValue());
 		}
 	}
 
@@ -533,44 +530,7 @@ public class VectorLeaf<T extends ACell> extends AVector<T> {
 
 	@Override
 	public Spliterator<T> spliterator(long position) {
-		return new ListVectorSpliterator(position);
-	}
-
-	private class ListVectorSpliterator implements Spliterator<T> {
-		long pos = 0;
-
-		public ListVectorSpliterator(long position) {
-			if ((position < 0) || (position > count))
-				throw new IllegalArgumentException(Errors.illegalPosition(position));
-			this.pos = position;
-		}
-
-		@Override
-		public boolean tryAdvance(Consumer<? super T> action) {
-			if (pos >= count) return false;
-			action.accept((T) get(pos++));
-			return true;
-		}
-
-		@Override
-		public Spliterator<T> trySplit() {
-			long tlength = prefixLength();
-			if (pos < tlength) {
-				pos = tlength;
-				return prefix.getValue().spliterator(pos);
-			}
-			return null;
-		}
-
-		@Override
-		public long estimateSize() {
-			return count;
-		}
-
-		@Override
-		public int characteristics() {
-			return Spliterator.IMMUTABLE | Spliterator.SIZED | Spliterator.SUBSIZED | Spliterator.ORDERED;
-		}
+		return new TreeSpliterator<T>(this, position);
 	}
 
 	@Override
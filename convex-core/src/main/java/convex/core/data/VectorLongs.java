@@ -0,0 +1,133 @@
+package convex.core.data;
+
+import java.util.Arrays;
+
+import convex.core.data.prim.CVMLong;
+import convex.core.exceptions.InvalidDataException;
+import convex.core.util.Errors;
+
+/**
+ * Vector of CVM Longs backed by a primitive long array.
+ *
+ * Uses 8 bytes of memory per element, rather than a Ref and a CVMLong instance for each element
+ * as in a VectorTree. CVMLong values are created on access.
+ */
+public class VectorLongs extends APrimitiveVector<CVMLong> {
+
+	private final long[] values;
+	private final int offset;
+
+	private VectorLongs(long[] values, int offset, long count) {
+		super(count);
+		this.values = values;
+		this.offset = offset;
+	}
+
+	/**
+	 * Creates a vector of Longs wrapping the given array, without copying.
+	 *
+	 * SECURITY: The array must not be modified after wrapping
+	 *
+	 * @param values Array of values
+	 * @param offset Offset into array
+	 * @param length Number of values to include
+	 * @return Vector of Longs
+	 */
+	public static AVector<CVMLong> wrap(long[] values, int offset, int length) {
+		if ((offset < 0) || (length < 0) || (offset + length > values.length)) {
+			throw new IndexOutOfBoundsException(Errors.badRange(offset, offset + length));
+		}
+		if (length <= Vectors.CHUNK_SIZE) {
+			ACell[] cells = new ACell[length];
+			for (int i = 0; i < length; i++) {
+				cells[i] = CVMLong.create(values[offset + i]);
+			}
+			return Vectors.create(cells);
+		}
+		return new VectorLongs(values, offset, length);
+	}
+
+	/**
+	 * Creates a vector of Longs with a copy of the given values.
+	 *
+	 * @param values Values to include
+	 * @return Vector of Longs
+	 */
+	public static AVector<CVMLong> create(long... values) {
+		return wrap(values.clone(), 0, values.length);
+	}
+
+	@Override
+	public CVMLong get(long i) {
+		if ((i < 0) || (i >= count)) throw new IndexOutOfBoundsException(Errors.badIndex(i));
+		return CVMLong.create(values[offset + (int) i]);
+	}
+
+	/**
+	 * Gets the primitive long value at the given position, without creating a cell
+	 * @param i Index of element
+	 * @return long value of element
+	 */
+	public long longAt(long i) {
+		if ((i < 0) || (i >= count)) throw new IndexOutOfBoundsException(Errors.badIndex(i));
+		return values[offset + (int) i];
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public <R extends ACell> AVector<R> subVector(long start, long length) {
+		checkRange(start, length);
+		if (length == count) return (AVector<R>) this;
+		return (AVector<R>) wrap(values, offset + (int) start, (int) length);
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public <R extends ACell> AVector<R> assoc(long i, R value) {
+		if ((i < 0) || (i >= count)) return null;
+		if (!(value instanceof CVMLong)) return super.assoc(i, value);
+		if (values[offset + (int) i] == ((CVMLong) value).longValue()) return (AVector<R>) this;
+		int n = size();
+		long[] newValues = Arrays.copyOfRange(values, offset, offset + n);
+		newValues[(int) i] = ((CVMLong) value).longValue();
+		return (AVector<R>) new VectorLongs(newValues, 0, n);
+	}
+
+	@Override
+	public long longIndexOf(Object o) {
+		if (!(o instanceof CVMLong)) return -1L;
+		long v = ((CVMLong) o).longValue();
+		int n = size();
+		for (int i = 0; i < n; i++) {
+			if (values[offset + i] == v) return i;
+		}
+		return -1L;
+	}
+
+	@Override
+	public long longLastIndexOf(Object o) {
+		if (!(o instanceof CVMLong)) return -1L;
+		long v = ((CVMLong) o).longValue();
+		for (int i = size() - 1; i >= 0; i--) {
+			if (values[offset + i] == v) return i;
+		}
+		return -1L;
+	}
+
+	@Override
+	public boolean equals(ACell a) {
+		if (a instanceof VectorLongs) {
+			VectorLongs b = (VectorLongs) a;
+			if (b.count != count) return false;
+			int n = size();
+			return Arrays.equals(values, offset, offset + n, b.values, b.offset, b.offset + n);
+		}
+		return super.equals(a);
+	}
+
+	@Override
+	public void validateCell() throws InvalidDataException {
+		if (count <= Vectors.CHUNK_SIZE) throw new InvalidDataException("VectorLongs too small: " + count, this);
+		if (offset + count > values.length) throw new InvalidDataException("VectorLongs out of array bounds", this);
+	}
+}
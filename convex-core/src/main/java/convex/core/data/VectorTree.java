@@ -49,7 +49,7 @@ public class VectorTree<T extends ACell> extends AVector<T> {
 
 	private final int shift; // bits in each child block
 
-	private final Ref<AVector<T>>[] children;
+	final Ref<AVector<T>>[] children;
 
 	private VectorTree(Ref<AVector<T>>[] children, long count) {
 		super(count);
@@ -255,7 +255,7 @@ public class VectorTree<T extends ACell> extends AVector<T> {
 	/**
 	 * Get the child size in number of chunks (for all except the last child)
 	 */
-	private final long childSize() {
+	final long childSize() {
 		return 1L << (shift);
 	}
 	
@@ -523,51 +523,7 @@ public class VectorTree<T extends ACell> extends AVector<T> {
 
 	@Override
 	public Spliterator<T> spliterator(long position) {
-		return new TreeVectorSpliterator(position);
-	}
-
-	private class TreeVectorSpliterator implements Spliterator<T> {
-		long pos = 0;
-
-		public TreeVectorSpliterator(long position) {
-			if ((position < 0) || (position > count))
-				throw new IllegalArgumentException(Errors.illegalPosition(position));
-			this.pos = position;
-		}
-
-		@Override
-		public boolean tryAdvance(Consumer<? super T> action) {
-			if (pos >= count) return false;
-			action.accept((T) get(pos++));
-			return true;
-		}
-
-		@Override
-		public Spliterator<T> trySplit() {
-			for (int i = 0; i < children.length; i++) {
-				long bpos = childIndex(i);
-				AVector<T> b = children[i].getValue();
-
-				long bcount = b.count();
-				long blockEnd = childIndex(i) + bcount;
-				if (pos < blockEnd) {
-					Spliterator<T> ss = b.spliterator(pos - bpos);
-					pos = blockEnd;
-					return ss;
-				}
-			}
-			return null;
-		}
-
-		@Override
-		public long estimateSize() {
-			return count;
-		}
-
-		@Override
-		public int characteristics() {
-			return Spliterator.IMMUTABLE | Spliterator.SIZED | Spliterator.SUBSIZED | Spliterator.ORDERED;
-		}
+		return new TreeSpliterator<T>(this, position);
 	}
 
 	@Override
@@ -5,6 +5,8 @@ import java.util.Collection;
 
 import org.bouncycastle.util.Arrays;
 
+import convex.core.data.prim.CVMByte;
+import convex.core.data.prim.CVMLong;
 import convex.core.exceptions.BadFormatException;
 import convex.core.lang.RT;
 import convex.core.util.Utils;
@@ -59,6 +61,42 @@ public class Vectors {
 		return create(elements, 0, elements.length);
 	}
 
+	/**
+	 * Create a vector from an array of elements, using a compact primitive-backed
+	 * representation if all elements are Longs or all elements are Bytes. The result
+	 * may not be canonical, but has the same encoding and hash as the canonical vector.
+	 * Not for CVM results, since compact vectors are not CVM values.
+	 * 
+	 * @param <T> Type of elements
+	 * @param elements Elements to include
+	 * @return New vector with the specified elements
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T extends ACell> AVector<T> createCompact(ACell[] elements) {
+		int n = elements.length;
+		if (n <= CHUNK_SIZE) return create(elements);
+		ACell first = elements[0];
+		if (first instanceof CVMLong) {
+			long[] values = new long[n];
+			for (int i = 0; i < n; i++) {
+				ACell e = elements[i];
+				if (!(e instanceof CVMLong)) return create(elements);
+				values[i] = ((CVMLong) e).longValue();
+			}
+			return (AVector<T>) VectorLongs.wrap(values, 0, n);
+		}
+		if (first instanceof CVMByte) {
+			byte[] values = new byte[n];
+			for (int i = 0; i < n; i++) {
+				ACell e = elements[i];
+				if (!(e instanceof CVMByte)) return create(elements);
+				values[i] = ((CVMByte) e).byteValue();
+			}
+			return (AVector<T>) VectorBytes.wrap(values, 0, n);
+		}
+		return create(elements);
+	}
+
 	/**
 	 * Coerces a collection to a vector. Not necessarily the most efficient.
 	 * Performs an unchecked cast.
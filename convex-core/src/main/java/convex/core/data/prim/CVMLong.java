@@ -17,20 +17,29 @@ import convex.core.exceptions.InvalidDataException;
  */
 public final class CVMLong extends APrimitive implements INumeric {
 
-	private static final int CACHE_SIZE = 256;
+	/**
+	 * Smallest cached value. Small negative values are common as deltas and offsets.
+	 */
+	private static final int CACHE_MIN = -128;
+	
+	/**
+	 * Number of cached values. Covers typical loop counters, indexes and small amounts.
+	 */
+	private static final int CACHE_SIZE = 1152;
 	private static final CVMLong[] CACHE= new CVMLong[CACHE_SIZE];
 
 	static {
-		for (int i=0; i<256; i++) {
-			CACHE[i]=new CVMLong(i);
+		for (int i=0; i<CACHE_SIZE; i++) {
+			CACHE[i]=new CVMLong(i+CACHE_MIN);
 		}
-		ZERO=CACHE[0];
-		ONE=CACHE[1];
+		ZERO=CACHE[-CACHE_MIN];
+		ONE=CACHE[1-CACHE_MIN];
+		MINUS_ONE=CACHE[-1-CACHE_MIN];
 	}
 	
 	public static final CVMLong ZERO;
 	public static final CVMLong ONE;
-	public static final CVMLong MINUS_ONE = CVMLong.create(-1L);
+	public static final CVMLong MINUS_ONE;
 	public static final CVMLong MAX_VALUE = CVMLong.create(Long.MAX_VALUE);
 	public static final CVMLong MIN_VALUE = CVMLong.create(Long.MIN_VALUE);
 	
@@ -43,8 +52,9 @@ public final class CVMLong extends APrimitive implements INumeric {
 	}
 
 	public static CVMLong create(long value) {
-		if ((value<CACHE_SIZE)&&(value>=0)) {
-			return CACHE[(int)value];
+		long ix=value-CACHE_MIN;
+		if ((ix<CACHE_SIZE)&&(ix>=0)) {
+			return CACHE[(int)ix];
 		}
 		return new CVMLong(value);
 	}
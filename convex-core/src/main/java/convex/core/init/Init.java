@@ -12,7 +12,7 @@ import convex.core.data.AVector;
 import convex.core.data.AccountKey;
 import convex.core.data.AccountStatus;
 import convex.core.data.Address;
-import convex.core.data.BlobMap;
+import convex.core.data.BlobMapBuilder;
 import convex.core.data.BlobMaps;
 import convex.core.data.PeerStatus;
 import convex.core.data.Vectors;
@@ -53,7 +53,7 @@ public class Init {
 
 	public static State createBaseState(List<AccountKey> genesisKeys) {
 		// accumulators for initial state maps
-		BlobMap<AccountKey, PeerStatus> peers = BlobMaps.empty();
+		BlobMapBuilder<AccountKey, PeerStatus> peers = new BlobMapBuilder<>();
 		AVector<AccountStatus> accts = Vectors.empty();
 
 		long supply = Constants.MAX_SUPPLY;
@@ -105,7 +105,7 @@ public class Init {
 		AVector<ACell> globals = Constants.INITIAL_GLOBALS;
 
 		// Create the inital state
-		State s = State.create(accts, peers, globals, BlobMaps.empty());
+		State s = State.create(accts, BlobMaps.empty(), globals, BlobMaps.empty());
 
 		// Add the static defined libraries at addresses: TRUST_ADDRESS, REGISTRY_ADDRESS
 		s = createStaticLibraries(s, TRUST_ADDRESS, REGISTRY_ADDRESS);
@@ -151,7 +151,7 @@ public class Init {
 				long peerStake = peerFunds / (keyCount-i);
 	
 	            // split peer funds between stake and account
-				peers = addPeer(peers, peerKey, peerController, peerStake);
+				addPeer(peers, peerKey, peerController, peerStake);
 				peerFunds -= peerStake;
 			}
 			assert(peerFunds == 0L);
@@ -161,7 +161,7 @@ public class Init {
 		// Add the new accounts to the state
 		s = s.withAccounts(accts);
 		// Add peers to the state
-		s = s.withPeers(peers);
+		s = s.withPeers(peers.toBlobMap());
 
 		{ // Test total funds after creating user / peer accounts
 			long total = s.computeTotalFunds();
@@ -307,10 +307,10 @@ public class Init {
 		return GENESIS_ADDRESS.offset(index+1);
 	}
 
-	private static BlobMap<AccountKey, PeerStatus> addPeer(BlobMap<AccountKey, PeerStatus> peers, AccountKey peerKey,
+	private static void addPeer(BlobMapBuilder<AccountKey, PeerStatus> peers, AccountKey peerKey,
 			Address owner, long initialStake) {
 		PeerStatus ps = PeerStatus.create(owner, initialStake, null);
-		return peers.assoc(peerKey, ps);
+		peers.assoc(peerKey, ps);
 	}
 
 	private static AVector<AccountStatus> addGovernanceAccount(AVector<AccountStatus> accts, Address a, long balance) {
@@ -1,11 +1,11 @@
 package convex.core.lang;
 
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.function.Predicate;
 
 import convex.core.Constants;
 import convex.core.ErrorCodes;
@@ -25,7 +25,7 @@ import convex.core.data.AVector;
 import convex.core.data.AccountKey;
 import convex.core.data.AccountStatus;
 import convex.core.data.Address;
-import convex.core.data.BlobMaps;
+import convex.core.data.BlobMapBuilder;
 import convex.core.data.Format;
 import convex.core.data.Hash;
 import convex.core.data.INumeric;
@@ -1006,17 +1006,17 @@ public class Core {
 			long juice = Juice.BUILD_DATA + len * Juice.BUILD_PER_ELEMENT;
 			if (!context.checkJuice(juice)) return context.withJuiceError();
 
-			ABlobMap<ABlob,ACell> r=BlobMaps.empty();
+			BlobMapBuilder<ABlob,ACell> builder=new BlobMapBuilder<>();
 			int n=len/2;
 			for (int i=0; i<n; i++) {
 				int ix=i*2;
 				ACell k=args[ix];
 				ACell v=args[ix+1];
-				r=r.assoc(k, v);
-				if (r==null) return context.withArgumentError("Cannot have a key of Type "+RT.getType(k) +" in blob-map"); // must be bad key type
+				if (!(k instanceof ABlob)) return context.withArgumentError("Cannot have a key of Type "+RT.getType(k) +" in blob-map");
+				builder.assoc((ABlob)k, v);
 			}
 
-			return context.withResult(juice, r);
+			return context.withResult(juice, builder.toBlobMap());
 		}
 	});
 
@@ -1686,7 +1686,7 @@ public class Core {
 		public  Context<APrimitive> invoke(Context context, ACell[] args) {
 			// All arities OK
 
-			APrimitive result = RT.plus(args);
+			APrimitive result = (args.length==2)?RT.plus(args[0],args[1]):RT.plus(args);
 			if (result == null) return context.withCastError(RT.findNonNumeric(args),args, Types.NUMBER);
 			return context.withResult(Juice.ARITHMETIC, result);
 		}
@@ -1697,7 +1697,7 @@ public class Core {
 		@Override
 		public  Context<APrimitive> invoke(Context context, ACell[] args) {
 			if (args.length < 1) return context.withArityError(minArityMessage(1, args.length));
-			APrimitive result = RT.minus(args);
+			APrimitive result = (args.length==2)?RT.minus(args[0],args[1]):RT.minus(args);
 			if (result == null) return context.withCastError(RT.findNonNumeric(args),args, Types.NUMBER);
 			return context.withResult(Juice.ARITHMETIC, result);
 		}
@@ -1708,7 +1708,7 @@ public class Core {
 		@Override
 		public  Context<APrimitive> invoke(Context context, ACell[] args) {
 			// All arities OK
-			APrimitive result = RT.times(args);
+			APrimitive result = (args.length==2)?RT.times(args[0],args[1]):RT.times(args);
 			if (result == null) return context.withCastError(RT.findNonNumeric(args),args, Types.NUMBER);
 			return context.withResult(Juice.ARITHMETIC, result);
 		}
@@ -2287,32 +2287,32 @@ public class Core {
 			// remaining arguments determine function arity to use
 			int fnArity = args.length - 1;
 			ACell[] xs = new ACell[fnArity];
-			ASequence<?>[] seqs = new ASequence[fnArity];
+			Iterator<?>[] seqs = new Iterator[fnArity];
 
 			int length = Integer.MAX_VALUE;
 			for (int i = 0; i < fnArity; i++) {
 				ACell maybeSeq = args[1 + i];
 				ASequence<?> seq = RT.sequence(maybeSeq);
 				if (seq == null) return context.withCastError(maybeSeq, Types.SEQUENCE);
-				seqs[i] = seq;
+				seqs[i] = seq.iterator(); // walks tree nodes directly rather than looking up each index
 				length = Math.min(length, seq.size());
 			}
 
 			final long juice = Juice.addMul(Juice.MAP, Juice.BUILD_DATA , length);
 			if (!context.checkJuice(juice)) return context.withJuiceError();
 
-			ArrayList<ACell> al = new ArrayList<>();
+			// length is known, so collect results directly without intermediate copies
+			ACell[] results = new ACell[length];
 			for (int i = 0; i < length; i++) {
 				for (int j = 0; j < fnArity; j++) {
-					xs[j] = seqs[j].get(i);
+					xs[j] = (ACell) seqs[j].next();
 				}
 				context = (Context) context.invoke(f, xs);
 				if (context.isExceptional()) return (Context<ASequence<?>>) context;
-				ACell r = context.getResult();
-				al.add(r);
+				results[i] = context.getResult();
 			}
 
-			ASequence<?> result = Vectors.create(al);
+			ASequence<?> result = Vectors.create(results);
 			return context.withResult(juice, result);
 		}
 	});
@@ -2352,23 +2352,50 @@ public class Core {
 				start = 1;
 			}
 
-			// Need to reduce over remaining elements
-			ACell[] xs = new ACell[2]; // accumulator, next element
-			for (long i = start; i < n; i++) {
-				xs[0] = result;
-				xs[1] = seq.get(i);
-				ctx = ctx.invoke(fn, xs);
-				if (ctx.isExceptional()) {
-					return reduceResult(ctx);
-				} else {
-					result=ctx.getResult();
-				}
-			}
+			// Need to reduce over remaining elements, walking the data structure directly
+			Reducer reducer = new Reducer(ctx, fn, result, start);
+			seq.allMatch(reducer);
+			ctx = reducer.ctx;
+			if (ctx.isExceptional()) return reduceResult(ctx);
 
-			return ctx.withResult(Juice.REDUCE, result);
+			return ctx.withResult(Juice.REDUCE, reducer.result);
 		}
 	});
 
+	/**
+	 * Predicate applying a reduction function to each element in turn. Stops if the
+	 * context becomes exceptional, e.g. due to a 'reduced' result or a juice error.
+	 */
+	private static final class Reducer implements Predicate<ACell> {
+		Context<ACell> ctx;
+		ACell result;
+		long skip; // number of initial elements to skip
+		final AFn<?> fn;
+		final ACell[] xs = new ACell[2]; // accumulator, next element
+
+		Reducer(Context<ACell> ctx, AFn<?> fn, ACell initial, long skip) {
+			this.ctx = ctx;
+			this.fn = fn;
+			this.result = initial;
+			this.skip = skip;
+		}
+
+		@SuppressWarnings("unchecked")
+		@Override
+		public boolean test(ACell x) {
+			if (skip > 0) {
+				skip--;
+				return true;
+			}
+			xs[0] = result;
+			xs[1] = x;
+			ctx = (Context<ACell>) ctx.invoke(fn, xs);
+			if (ctx.isExceptional()) return false;
+			result = ctx.getResult();
+			return true;
+		}
+	}
+
 	// Helper function for reduce
 	private static final Context<ACell> reduceResult(Context<?> ctx) {
 		Object ex=ctx.getValue(); // might be an ACell or Exception. We need to check for a Reduced result only
@@ -75,6 +75,12 @@ public class RT {
 
 	// Numerical comparison functions
 
+	/**
+	 * Comparison results used for NaN values, pre-boxed so comparisons don't allocate
+	 */
+	private static final Long NAN_HIGH = Long.MAX_VALUE;
+	private static final Long NAN_LOW = Long.MIN_VALUE;
+
 	/**
 	 * Check if the values passed are a short (length 0 or 1) array of numbers which
 	 * is a special case for comparison operations.
@@ -100,7 +106,7 @@ public class RT {
 		if (check)
 			return true;
 		for (int i = 0; i < values.length - 1; i++) {
-			Long comp = RT.compare(values[i], values[i + 1], Long.MAX_VALUE);
+			Long comp = RT.compare(values[i], values[i + 1], NAN_HIGH);
 			if (comp == null)
 				return null; // cast error
 			if (comp != 0)
@@ -116,7 +122,7 @@ public class RT {
 		if (check)
 			return true;
 		for (int i = 0; i < values.length - 1; i++) {
-			Long comp = RT.compare(values[i], values[i + 1], Long.MIN_VALUE);
+			Long comp = RT.compare(values[i], values[i + 1], NAN_LOW);
 			if (comp == null)
 				return null; // cast error
 			if (comp < 0)
@@ -132,7 +138,7 @@ public class RT {
 		if (check)
 			return true;
 		for (int i = 0; i < values.length - 1; i++) {
-			Long comp = RT.compare(values[i], values[i + 1], Long.MIN_VALUE);
+			Long comp = RT.compare(values[i], values[i + 1], NAN_LOW);
 			if (comp == null)
 				return null; // cast error
 			if (comp <= 0)
@@ -148,7 +154,7 @@ public class RT {
 		if (check)
 			return true;
 		for (int i = 0; i < values.length - 1; i++) {
-			Long comp = RT.compare(values[i], values[i + 1], Long.MAX_VALUE);
+			Long comp = RT.compare(values[i], values[i + 1], NAN_HIGH);
 			if (comp == null)
 				return null; // cast error
 			if (comp > 0)
@@ -164,7 +170,7 @@ public class RT {
 		if (check)
 			return true;
 		for (int i = 0; i < values.length - 1; i++) {
-			Long comp = RT.compare(values[i], values[i + 1], Long.MAX_VALUE);
+			Long comp = RT.compare(values[i], values[i + 1], NAN_HIGH);
 			if (comp == null)
 				return null; // cast error
 			if (comp >= 0)
@@ -194,6 +200,26 @@ public class RT {
 		return highestFound;
 	}
 
+	/**
+	 * Get the target common numeric type for two arguments. 
+	 * 
+	 * @param a First argument
+	 * @param b Second argument
+	 * 
+	 * @return The target numeric type, or null if either argument is non-numeric
+	 */
+	public static Class<?> commonNumericType(ACell a, ACell b) {
+		Class<?> ca = numericType(a);
+		if (ca == null)
+			return null;
+		Class<?> cb = numericType(b);
+		if (cb == null)
+			return null;
+		if ((ca == Double.class) || (cb == Double.class))
+			return Double.class;
+		return Long.class;
+	}
+
 	/**
 	 * Finds the first non-numeric value in an array. Used for error reporting.
 	 * 
@@ -223,6 +249,25 @@ public class RT {
 		return null;
 	}
 
+	/**
+	 * Adds two numeric values. Avoids intermediate allocation for the common case of two Longs.
+	 * 
+	 * @param a First argument
+	 * @param b Second argument
+	 * @return Sum of the arguments, or null if either argument is not numeric
+	 */
+	public static APrimitive plus(ACell a, ACell b) {
+		if ((a instanceof CVMLong)&&(b instanceof CVMLong)) {
+			return CVMLong.create(((CVMLong)a).longValue()+((CVMLong)b).longValue());
+		}
+		Class<?> type = commonNumericType(a,b);
+		if (type == null)
+			return null;
+		if (type == Double.class)
+			return CVMDouble.create(doubleValue(a)+doubleValue(b));
+		return CVMLong.create(longValue(a)+longValue(b));
+	}
+
 	public static APrimitive plus(ACell[] args) {
 		Class<?> type = commonNumericType(args);
 		if (type == null)
@@ -244,6 +289,26 @@ public class RT {
 		return CVMDouble.create(result);
 	}
 
+	/**
+	 * Subtracts one numeric value from another. Avoids intermediate allocation for the 
+	 * common case of two Longs.
+	 * 
+	 * @param a First argument
+	 * @param b Second argument
+	 * @return Difference of the arguments, or null if either argument is not numeric
+	 */
+	public static APrimitive minus(ACell a, ACell b) {
+		if ((a instanceof CVMLong)&&(b instanceof CVMLong)) {
+			return CVMLong.create(((CVMLong)a).longValue()-((CVMLong)b).longValue());
+		}
+		Class<?> type = commonNumericType(a,b);
+		if (type == null)
+			return null;
+		if (type == Double.class)
+			return CVMDouble.create(doubleValue(a)-doubleValue(b));
+		return CVMLong.create(longValue(a)-longValue(b));
+	}
+
 	public static APrimitive minus(ACell[] args) {
 		Class<?> type = commonNumericType(args);
 		if (type == null)
@@ -271,6 +336,25 @@ public class RT {
 		return CVMDouble.create(result);
 	}
 
+	/**
+	 * Multiplies two numeric values. Avoids intermediate allocation for the common case of two Longs.
+	 * 
+	 * @param a First argument
+	 * @param b Second argument
+	 * @return Product of the arguments, or null if either argument is not numeric
+	 */
+	public static APrimitive times(ACell a, ACell b) {
+		if ((a instanceof CVMLong)&&(b instanceof CVMLong)) {
+			return CVMLong.create(((CVMLong)a).longValue()*((CVMLong)b).longValue());
+		}
+		Class<?> type = commonNumericType(a,b);
+		if (type == null)
+			return null;
+		if (type == Double.class)
+			return CVMDouble.create(doubleValue(a)*doubleValue(b));
+		return CVMLong.create(longValue(a)*longValue(b));
+	}
+
 	public static APrimitive times(ACell[] args) {
 		Class<?> type = commonNumericType(args);
 		if (type == null)
@@ -294,18 +378,18 @@ public class RT {
 
 	public static CVMDouble divide(ACell[] args) {
 		int n = args.length;
-		CVMDouble arg0 = ensureDouble(args[0]);
-		if (arg0 == null)
+		ACell arg0 = args[0];
+		if (numericType(arg0) == null)
 			return null;
-		double result = arg0.doubleValue();
+		double result = doubleValue(arg0);
 
 		if (n == 1)
 			return CVMDouble.create(1.0 / result);
 		for (int i = 1; i < args.length; i++) {
-			CVMDouble v = ensureDouble(args[i]);
-			if (v == null)
+			ACell v = args[i];
+			if (numericType(v) == null)
 				return null;
-			result = result / v.doubleValue();
+			result = result / doubleValue(v);
 		}
 		return CVMDouble.create(result);
 	}
@@ -460,6 +544,9 @@ public class RT {
 	 *         equals b
 	 */
 	public static Long compare(ACell a, ACell b, Long nanValue) {
+		if ((a instanceof CVMLong)&&(b instanceof CVMLong)) {
+			return RT.compare(((CVMLong)a).longValue(), ((CVMLong)b).longValue());
+		}
 		Class<?> ca = numericType(a);
 		if (ca == null)
 			return null;
@@ -84,6 +84,15 @@ public abstract class AStore {
 	 */
 	public abstract void setRootHash(Hash h) throws IOException;
 
+	/**
+	 * Ensures all data written to this Store is durable. Does nothing by default,
+	 * stores with persistent storage should override.
+	 * @throws IOException In case of store IO error
+	 */
+	public void flush() throws IOException {
+		// nothing to do by default
+	}
+
 	/**
 	 * Closes this store and frees associated resources
 	 */
@@ -230,6 +230,7 @@ public class EtchStore extends AStore {
 	 * Ensure the store is fully persisted to disk
 	 * @throws IOException If an IO error occurs
 	 */
+	@Override
 	public void flush() throws IOException  {
 		etch.flush();
 		Etch target=this.target;
@@ -4,14 +4,21 @@ import static convex.test.Assertions.assertNobodyError;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
 
 import org.junit.jupiter.api.Test;
 
+import convex.core.data.AVector;
 import convex.core.data.AccountKey;
 import convex.core.data.PeerStatus;
 import convex.core.data.RecordTest;
 import convex.core.data.prim.CVMLong;
 import convex.core.exceptions.BadSignatureException;
+import convex.core.exceptions.InvalidDataException;
+import convex.core.init.Init;
 import convex.core.init.InitTest;
 import convex.core.lang.RT;
 import convex.core.lang.Reader;
@@ -115,4 +122,38 @@ public class PeerTest {
 		assertEquals(5, p.asOfRange(initialTimestamp, 1000 * 60, 5).count());
 	}
 
+	@Test
+	public void testRetention() throws BadSignatureException, InvalidDataException {
+		State genesis = Init.createState(List.of(InitTest.FIRST_PEER_KEY));
+		Peer p = Peer.create(InitTest.FIRST_PEER_KEYPAIR, genesis);
+		p = p.withRetention(Peer.Retention.create(10, 5, 0));
+
+		long ts = genesis.getTimeStamp().longValue();
+		for (int i = 1; i <= 40; i++) {
+			p = p.proposeBlock(Block.of(ts + i * 1000));
+			p = p.mergeBeliefs();
+		}
+		long cp = p.getConsensusPoint();
+		assertTrue(cp > 20);
+
+		// Recent window is bounded, and current state is retained
+		assertTrue(p.getStates().count() <= 13);
+		assertEquals(cp, p.getStateOffset() + p.getStates().count() - 1);
+		assertSame(p.getConsensusState(), p.getState(cp));
+		assertNotNull(p.getBlockResult(cp - 1));
+		assertNull(p.getBlockResult(0));
+		assertNull(p.getState(1));
+
+		// Genesis is always available
+		assertSame(genesis, p.getGenesisState());
+		assertEquals(genesis.getHash(), p.getNetworkID());
+		assertEquals(genesis, p.asOf(genesis.getTimeStamp()));
+
+		// Older timestamps resolve to checkpoints
+		AVector<State> history = p.getHistory();
+		assertTrue(history.count() > 1);
+		State cp5 = history.get(1);
+		assertEquals(cp5, p.asOf(cp5.getTimeStamp()));
+		assertEquals(cp5, p.asOf(CVMLong.create(cp5.getTimeStamp().longValue() + 1)));
+	}
 }
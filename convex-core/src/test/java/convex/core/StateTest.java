@@ -5,15 +5,23 @@ import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.util.ArrayList;
+
 import org.junit.jupiter.api.Test;
 
+import convex.core.data.ABlob;
 import convex.core.data.ACell;
 import convex.core.data.AVector;
 import convex.core.data.AccountStatus;
 import convex.core.data.Blob;
+import convex.core.data.BlobMap;
+import convex.core.data.BlobMaps;
 import convex.core.data.Format;
+import convex.core.data.LongBlob;
 import convex.core.data.RecordTest;
 import convex.core.data.Ref;
+import convex.core.data.Vectors;
+import convex.core.data.prim.CVMLong;
 import convex.core.exceptions.BadFormatException;
 import convex.core.exceptions.InvalidDataException;
 import convex.core.init.InitTest;
@@ -69,4 +77,60 @@ public class StateTest {
 		RecordTest.doRecordTests(s2);
 		RecordTest.doRecordTests(as);
 	}
+
+	@Test
+	public void testDequeueSchedule() throws InvalidDataException {
+		BlobMap<ABlob, AVector<ACell>> sched = BlobMaps.empty();
+		for (long t = 1; t <= 10; t++) {
+			sched = sched.assoc(LongBlob.create(t), Vectors.of(t * 10, t * 10 + 1, t * 10 + 2));
+		}
+
+		// nothing due yet
+		ArrayList<ACell> al = new ArrayList<>();
+		assertSame(sched, State.dequeueSchedule(sched, 0, Long.MAX_VALUE, al));
+		assertTrue(al.isEmpty());
+
+		// all entries due at or before time 5
+		BlobMap<ABlob, AVector<ACell>> s2 = State.dequeueSchedule(sched, 5, Long.MAX_VALUE, al);
+		s2.validate();
+		assertEquals(15, al.size());
+		assertEquals(CVMLong.create(10), al.get(0));
+		assertEquals(5, s2.count());
+		assertEquals(sched.removeLeadingEntries(5), s2);
+
+		// no per-block limit, so a large due entry is taken in full
+		al.clear();
+		BlobMap<ABlob, AVector<ACell>> big = sched.assoc(LongBlob.create(3), Vectors.of(new Object[250]));
+		BlobMap<ABlob, AVector<ACell>> s3 = State.dequeueSchedule(big, 10, Long.MAX_VALUE, al);
+		assertEquals(277, al.size());
+		assertTrue(s3.isEmpty());
+	}
+
+	@Test
+	public void testScheduleLimit() throws InvalidDataException {
+		// no limit before activation, so existing Blocks replay unchanged
+		assertEquals(Long.MAX_VALUE, State.scheduleLimit(Constants.INITIAL_TIMESTAMP));
+		assertEquals(Long.MAX_VALUE, State.scheduleLimit(Constants.SCHEDULE_LIMIT_ACTIVATION - 1));
+		assertEquals(Constants.MAX_SCHEDULED_TRANSACTIONS_PER_BLOCK, State.scheduleLimit(Constants.SCHEDULE_LIMIT_ACTIVATION));
+
+		BlobMap<ABlob, AVector<ACell>> sched = BlobMaps.empty();
+		for (long t = 1; t <= 10; t++) {
+			sched = sched.assoc(LongBlob.create(t), Vectors.of(t * 10, t * 10 + 1, t * 10 + 2));
+		}
+
+		// limit reached part way through a timestamp, remainder stays scheduled
+		ArrayList<ACell> al = new ArrayList<>();
+		BlobMap<ABlob, AVector<ACell>> s3 = State.dequeueSchedule(sched, 10, 7, al);
+		s3.validate();
+		assertEquals(7, al.size());
+		assertEquals(CVMLong.create(30), al.get(6));
+		assertEquals(8, s3.count());
+		assertEquals(Vectors.of(31, 32), s3.get(LongBlob.create(3)));
+
+		// limit reached exactly at the end of a timestamp
+		al.clear();
+		BlobMap<ABlob, AVector<ACell>> s4 = State.dequeueSchedule(sched, 10, 6, al);
+		assertEquals(6, al.size());
+		assertEquals(sched.removeLeadingEntries(2), s4);
+	}
 }
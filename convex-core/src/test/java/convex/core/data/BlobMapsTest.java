@@ -7,6 +7,7 @@ import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import org.junit.jupiter.api.Test;
@@ -16,6 +17,7 @@ import convex.core.data.type.Types;
 import convex.core.exceptions.InvalidDataException;
 import convex.core.init.InitTest;
 import convex.core.lang.RT;
+import convex.core.util.Utils;
 import convex.test.Samples;
 
 public class BlobMapsTest {
@@ -267,6 +269,26 @@ public class BlobMapsTest {
 
 		assertSame(m, m.removeLeadingEntries(0));
 		assertSame(BlobMaps.empty(), m.removeLeadingEntries(7));
+		assertThrows(IndexOutOfBoundsException.class, () -> m.removeLeadingEntries(8));
+	}
+
+	@Test
+	public void testRemoveLeadingEntries() throws InvalidDataException {
+		BlobMap<ABlob, CVMLong> m = BlobMaps.empty();
+		for (long i = 0; i < 200; i++) {
+			// keys of varying lengths, including prefixes of other keys
+			ABlob k = CVMLong.create(i * 7919).getEncoding();
+			if ((i % 3) == 0) k = k.slice(0, k.count() / 2 + 1);
+			m = m.assoc(k, CVMLong.create(i));
+		}
+
+		BlobMap<ABlob, CVMLong> expected = m;
+		for (long n = 0; n <= m.count(); n++) {
+			BlobMap<ABlob, CVMLong> r = m.removeLeadingEntries(n);
+			r.validate();
+			assertEquals(expected, r);
+			if (n < m.count()) expected = expected.dissoc(expected.entryAt(0).getKey());
+		}
 	}
 
 	@Test
@@ -294,4 +316,31 @@ public class BlobMapsTest {
 
 		CollectionsTest.doMapTests(m);
 	}
+
+	@Test
+	public void testMergeDifferences() throws InvalidDataException {
+		BlobMap<ABlob, CVMLong> base = BlobMaps.empty();
+		for (long i = 0; i < 300; i++) {
+			base = base.assoc(Blob.fromHex(Utils.toHexString(i * 7919)), CVMLong.create(i));
+		}
+		assertSame(base, base.mergeDifferences(base, (x, y) -> null));
+
+		BlobMap<ABlob, CVMLong> a = base.assoc(Blob.fromHex("01"), CVMLong.ONE).dissoc(Blob.fromHex(Utils.toHexString(7919L)));
+		BlobMap<ABlob, CVMLong> b = base.assoc(Blob.fromHex("0102"), CVMLong.ONE).assoc(Blob.fromHex(Utils.toHexString(0L)), CVMLong.ONE);
+
+		// prefer values from b, and drop keys only in a
+		BlobMap<ABlob, CVMLong> m = a.mergeDifferences(b, (x, y) -> y);
+		m.validate();
+		assertEquals(b, m);
+
+		// keep a, add anything new from b
+		BlobMap<ABlob, CVMLong> u = a.mergeDifferences(b, (x, y) -> (x == null) ? y : x);
+		u.validate();
+		assertEquals(a.count() + 2, u.count());
+		assertEquals(CVMLong.ZERO, u.get(Blob.fromHex(Utils.toHexString(0L))));
+
+		// everything removed
+		assertSame(BlobMaps.empty(), a.mergeDifferences(BlobMaps.empty(), (x, y) -> y));
+		assertEquals(a, BlobMaps.<BlobMap<ABlob, CVMLong>, ABlob, CVMLong>empty().mergeDifferences(a, (x, y) -> y));
+	}
 }
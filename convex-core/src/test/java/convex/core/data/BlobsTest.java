@@ -358,6 +358,48 @@ public class BlobsTest {
 		doBlobTests(bb);
 	}
 
+	@Test
+	public void testBlobTreeSlicing() {
+		int n = 300000;
+		Blob flat = Blob.createRandom(new Random(1234), n);
+		BlobTree tree = BlobTree.create(flat);
+		int C = Blob.CHUNK_LENGTH;
+		long[][] ranges = new long[][] { { 0, 70000 }, { 0, 65536 * 2 }, { 0, n - 1 }, { C, n }, { C * 3, C * 40 + 7 },
+				{ C * 17, C * 19 }, { 65536, 65536 + C + 1 }, { 1, n }, { 4000, 9000 }, { C * 2, C * 2 }, { C - 1, C + 1 } };
+		for (long[] r : ranges) {
+			long start = r[0];
+			long end = r[1];
+			ABlob slice = tree.slice(start, end);
+			ABlob expected = Blobs.toCanonical(flat.slice(start, end));
+			assertEquals(expected, slice);
+			assertEquals(expected.getEncoding(), slice.getEncoding());
+
+			// aligned slices share existing chunks
+			if (((start % C) == 0) && (end - start >= 2 * C)) {
+				assertSame(tree.getChunk(start / C), slice.getChunk(0));
+				assertSame(tree.getChunk(start / C + 1), slice.getChunk(1));
+			}
+		}
+
+		// chunk aligned concatenation shares chunks of the appended Blob
+		ABlob joined = tree.slice(0, C * 20).append(tree);
+		assertEquals(Blobs.toCanonical(flat.slice(0, C * 20).append(flat)), joined);
+		assertSame(tree.getChunk(5), joined.getChunk(25));
+
+		ABlob joinedChunk = tree.getChunk(0).append(tree);
+		assertEquals(tree.count() + C, joinedChunk.count());
+		assertSame(tree.getChunk(7), joinedChunk.getChunk(8));
+
+		BlobBuilder bb = new BlobBuilder();
+		bb.append(tree.slice(0, C * 3));
+		bb.append(tree);
+		bb.append(Blob.fromHex("cafe"));
+		ABlob built = bb.toBlob();
+		assertEquals(C * 3 + n + 2, built.count());
+		assertSame(tree.getChunk(10), built.getChunk(13));
+		assertEquals(Blobs.toCanonical(built.toFlatBlob()).getEncoding(), built.getEncoding());
+	}
+
 	@Test
 	public void testBlobTreeOutOfRange() {
 		assertThrows(IndexOutOfBoundsException.class, () -> Samples.BIG_BLOB_TREE.byteAt(Samples.BIG_BLOB_LENGTH));
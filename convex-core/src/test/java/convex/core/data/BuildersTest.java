@@ -0,0 +1,124 @@
+package convex.core.data;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import convex.core.data.prim.CVMLong;
+import convex.core.exceptions.InvalidDataException;
+
+/**
+ * Tests for transient builders, checking results are identical to persistent construction
+ */
+public class BuildersTest {
+
+	@Test
+	public void testHashMapBuilder() throws InvalidDataException {
+		for (int n : new int[] {0, 1, 8, 9, 100, 1000}) {
+			HashMapBuilder<CVMLong, CVMLong> b = new HashMapBuilder<>();
+			AHashMap<CVMLong, CVMLong> m = Maps.empty();
+			for (long i = 0; i < n; i++) {
+				b.assoc(CVMLong.create(i), CVMLong.create(i * i));
+				m = m.assoc(CVMLong.create(i), CVMLong.create(i * i));
+			}
+			assertEquals(n, b.count());
+			AHashMap<CVMLong, CVMLong> r = b.toMap();
+			r.validate();
+			assertEquals(m, r);
+			assertEquals(m.getHash(), r.getHash());
+		}
+		assertSame(Maps.empty(), new HashMapBuilder<>().toMap());
+	}
+
+	@Test
+	public void testHashMapBuilderChanges() throws InvalidDataException {
+		AHashMap<CVMLong, CVMLong> m = Maps.empty();
+		for (long i = 0; i < 100; i++) {
+			m = m.assoc(CVMLong.create(i), CVMLong.create(i));
+		}
+
+		// small changes applied incrementally
+		HashMapBuilder<CVMLong, CVMLong> b = new HashMapBuilder<>(m);
+		b.assoc(CVMLong.create(1), CVMLong.create(17));
+		b.dissoc(CVMLong.create(2));
+		b.dissoc(CVMLong.create(1000));
+		assertEquals(99, b.count());
+		assertEquals(CVMLong.create(17), b.get(CVMLong.create(1)));
+		assertFalse(b.containsKey(CVMLong.create(2)));
+		AHashMap<CVMLong, CVMLong> expected = m.assoc(CVMLong.create(1), CVMLong.create(17)).dissoc(CVMLong.create(2));
+		assertEquals(expected, b.toMap());
+
+		// large changes rebuild
+		for (long i = 0; i < 100; i += 2) {
+			b.dissoc(CVMLong.create(i));
+			expected = expected.dissoc(CVMLong.create(i));
+		}
+		b.assoc(CVMLong.create(2), CVMLong.create(2));
+		expected = expected.assoc(CVMLong.create(2), CVMLong.create(2));
+		AHashMap<CVMLong, CVMLong> r = b.toMap();
+		r.validate();
+		assertEquals(expected, r);
+		assertEquals(expected.count(), b.count());
+
+		// merge
+		assertEquals(m, new HashMapBuilder<CVMLong, CVMLong>().merge(r).merge(m).toMap());
+	}
+
+	@Test
+	public void testHashSetBuilder() throws InvalidDataException {
+		for (int n : new int[] {0, 1, 16, 17, 100, 1000}) {
+			HashSetBuilder<CVMLong> b = new HashSetBuilder<>();
+			AHashSet<CVMLong> s = Sets.empty();
+			for (long i = 0; i < n; i++) {
+				b.conj(CVMLong.create(i));
+				b.conj(CVMLong.create(i));
+				s = s.include(CVMLong.create(i));
+			}
+			assertEquals(n, b.count());
+			AHashSet<CVMLong> r = b.toSet();
+			r.validate();
+			assertEquals(s, r);
+		}
+
+		HashSetBuilder<ACell> b = new HashSetBuilder<>();
+		b.conj(null);
+		b.conj(CVMLong.ONE);
+		b.disj(CVMLong.ONE);
+		assertTrue(b.contains(null));
+		assertEquals(Sets.of((ACell) null), b.toSet());
+	}
+
+	@Test
+	public void testBlobMapBuilder() throws InvalidDataException {
+		BlobMapBuilder<ABlob, CVMLong> b = new BlobMapBuilder<>();
+		BlobMap<ABlob, CVMLong> m = BlobMaps.empty();
+		for (long i = 0; i < 300; i++) {
+			// keys of varying lengths, including prefixes of other keys
+			ABlob k = CVMLong.create(i * 7919).getEncoding();
+			if ((i & 1) == 0) k = k.slice(0, k.count() / 2 + 1);
+			b.assoc(k, CVMLong.create(i));
+			m = m.assoc(k, CVMLong.create(i));
+		}
+		b.assoc(Blob.EMPTY, CVMLong.ZERO);
+		m = m.assoc(Blob.EMPTY, CVMLong.ZERO);
+
+		assertEquals(m.count(), b.count());
+		BlobMap<ABlob, CVMLong> r = b.toBlobMap();
+		r.validate();
+		assertEquals(m, r);
+		assertEquals(m.getHash(), r.getHash());
+
+		// incremental changes
+		b.dissoc(Blob.EMPTY);
+		b.assoc(Blob.fromHex("1234"), CVMLong.ONE);
+		assertEquals(m.dissoc(Blob.EMPTY).assoc(Blob.fromHex("1234"), CVMLong.ONE), b.toBlobMap());
+
+		assertSame(BlobMaps.empty(), new BlobMapBuilder<>().toBlobMap());
+		BlobMap<ABlob, CVMLong> single = new BlobMapBuilder<ABlob, CVMLong>().assoc(Blob.fromHex("ab"), CVMLong.ONE).toBlobMap();
+		single.validate();
+		assertEquals(BlobMap.create(Blob.fromHex("ab"), CVMLong.ONE), single);
+	}
+}
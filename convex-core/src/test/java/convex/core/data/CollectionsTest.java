@@ -7,12 +7,14 @@ import static org.junit.jupiter.api.Assertions.assertNotSame;
 import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.util.Iterator;
 import java.util.ListIterator;
 import java.util.Map;
 
 import convex.core.lang.RT;
+import convex.core.util.Utils;
 
 /**
  * Tests for general collection types
@@ -84,6 +86,16 @@ public class CollectionsTest {
 		assertSame(Keywords.FOO,a.get(UNLIKELY_KEYWORD,Keywords.FOO));
 		
 		assertEquals(n,a.size());
+		
+		// allMatch should visit elements in index order, stopping at first failure
+		long[] ix = new long[1];
+		assertTrue(a.allMatch(e -> Utils.equals(e, a.get(ix[0]++))));
+		assertEquals(n, ix[0]);
+		if (n > 1) {
+			ix[0] = 0;
+			assertFalse(a.allMatch(e -> ++ix[0] < 2));
+			assertEquals(2, ix[0]);
+		}
 
 		doCountableTests(a);
 	}
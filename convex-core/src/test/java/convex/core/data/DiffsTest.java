@@ -0,0 +1,148 @@
+package convex.core.data;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import convex.core.State;
+import convex.core.data.prim.CVMLong;
+import convex.core.init.InitTest;
+
+/**
+ * Tests for structural diffs between cells
+ */
+public class DiffsTest {
+
+	/**
+	 * Collects changes by path, checking each path is reported only once
+	 */
+	private static class Collector implements IDiffHandler {
+		final HashMap<AVector<ACell>, Integer> types = new HashMap<>();
+		final HashMap<AVector<ACell>, ACell> values = new HashMap<>();
+
+		@Override
+		public void change(int type, AVector<ACell> path, ACell oldValue, ACell newValue) {
+			assertTrue(types.put(path, type) == null, "Duplicate path " + path);
+			values.put(path, (type == Diffs.REMOVED) ? oldValue : newValue);
+		}
+	}
+
+	private static AVector<CVMLong> range(long n) {
+		VectorBuilder<CVMLong> vb = new VectorBuilder<>();
+		for (long i = 0; i < n; i++) vb.conj(CVMLong.create(i));
+		return vb.toVector();
+	}
+
+	@Test
+	public void testVectorDiffs() {
+		long[] sizes = new long[] { 0, 1, 15, 16, 17, 100, 1000, 1008, 4096, 4100 };
+		for (long an : sizes) {
+			for (long bn : sizes) {
+				AVector<CVMLong> a = range(an);
+				AVector<CVMLong> b = range(bn);
+				if (bn > 10) b = b.assoc(10, CVMLong.create(-1));
+				if (bn > 999) b = b.assoc(999, CVMLong.create(-2));
+
+				Collector c = new Collector();
+				Diffs.diff(a, b, Vectors.empty(), c);
+
+				// check against element-wise comparison
+				int expected = 0;
+				for (long i = 0; i < Math.max(an, bn); i++) {
+					AVector<ACell> path = Vectors.of(i);
+					if (i >= an) {
+						assertEquals(Diffs.ADDED, c.types.get(path));
+					} else if (i >= bn) {
+						assertEquals(Diffs.REMOVED, c.types.get(path));
+					} else if (!a.get(i).equals(b.get(i))) {
+						assertEquals(Diffs.CHANGED, c.types.get(path));
+						assertEquals(b.get(i), c.values.get(path));
+					} else {
+						continue;
+					}
+					expected++;
+				}
+				assertEquals(expected, c.types.size(), "Sizes " + an + " / " + bn);
+			}
+		}
+	}
+
+	@Test
+	public void testMapDiffs() {
+		AHashMap<CVMLong, CVMLong> a = Maps.empty();
+		for (long i = 0; i < 1000; i++) {
+			a = a.assoc(CVMLong.create(i), CVMLong.create(i));
+		}
+		AHashMap<CVMLong, CVMLong> b = a.assoc(CVMLong.create(7), CVMLong.ZERO).dissoc(CVMLong.create(8)).assoc(CVMLong.create(2000), CVMLong.ONE);
+
+		Collector c = new Collector();
+		Diffs.diff(a, b, Vectors.of(Keywords.FOO), c);
+		assertEquals(3, c.types.size());
+		assertEquals(Diffs.CHANGED, c.types.get(Vectors.of(Keywords.FOO, 7)));
+		assertEquals(Diffs.REMOVED, c.types.get(Vectors.of(Keywords.FOO, 8)));
+		assertEquals(Diffs.ADDED, c.types.get(Vectors.of(Keywords.FOO, 2000)));
+
+		// small map against large map
+		c = new Collector();
+		Diffs.diff(Maps.of(1, 2), b, Vectors.empty(), c);
+		assertEquals(b.count(), c.types.size());
+		assertEquals(Diffs.CHANGED, c.types.get(Vectors.of(1)));
+
+		c = new Collector();
+		Diffs.diff(b, b, Vectors.empty(), c);
+		assertEquals(0, c.types.size());
+	}
+
+	@Test
+	public void testBlobMapDiffs() {
+		BlobMap<ABlob, CVMLong> a = BlobMaps.empty();
+		for (long i = 0; i < 300; i++) {
+			ABlob k = CVMLong.create(i * 7919).getEncoding();
+			if ((i & 1) == 0) k = k.slice(0, k.count() / 2 + 1);
+			a = a.assoc(k, CVMLong.create(i));
+		}
+		ABlob k0 = a.entryAt(0).getKey();
+		ABlob k1 = a.entryAt(150).getKey();
+		ABlob kNew = Blob.fromHex("cafebabe");
+		BlobMap<ABlob, CVMLong> b = a.assoc(k0, CVMLong.create(-1)).dissoc(k1).assoc(kNew, CVMLong.ONE);
+
+		Collector c = new Collector();
+		Diffs.diff(a, b, Vectors.empty(), c);
+		assertEquals(3, c.types.size());
+		assertEquals(Diffs.CHANGED, c.types.get(Vectors.of(k0)));
+		assertEquals(Diffs.REMOVED, c.types.get(Vectors.of(k1)));
+		assertEquals(Diffs.ADDED, c.types.get(Vectors.of(kNew)));
+		assertEquals(CVMLong.ONE, c.values.get(Vectors.of(kNew)));
+
+		// diff with empty map reports every entry
+		c = new Collector();
+		Diffs.diff(BlobMaps.empty(), a, Vectors.empty(), c);
+		assertEquals(a.count(), c.types.size());
+	}
+
+	@Test
+	public void testStateDiffs() {
+		State s = InitTest.STATE;
+		Collector c = new Collector();
+		Diffs.diff(s, s, c);
+		assertEquals(0, c.types.size());
+
+		Address hero = InitTest.HERO;
+		State s2 = s.withBalance(hero, 12345);
+		Diffs.diff(s, s2, c);
+		assertEquals(1, c.types.size());
+		Map.Entry<AVector<ACell>, Integer> e = c.types.entrySet().iterator().next();
+		assertEquals(Vectors.of(Keywords.ACCOUNTS, hero.longValue()), e.getKey());
+		assertEquals(Diffs.CHANGED, e.getValue());
+		assertEquals(s2.getAccount(hero), c.values.get(e.getKey()));
+
+		// generic diff dispatches to State diff
+		c = new Collector();
+		Diffs.diff((ACell) s2, (ACell) s, Vectors.empty(), c);
+		assertEquals(1, c.types.size());
+	}
+}
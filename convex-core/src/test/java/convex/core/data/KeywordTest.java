@@ -2,7 +2,9 @@ package convex.core.data;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
 import java.nio.ByteBuffer;
@@ -91,4 +93,17 @@ public class KeywordTest {
 		
 		ObjectsTest.doAnyValueTests(k);
 	}
+
+	@Test
+	public void testInterning() throws BadFormatException {
+		Keyword k=Keyword.create("interned-kw");
+		assertSame(k,Keyword.create(Strings.create("interned-kw")));
+		assertSame(k,Keyword.read(k.getEncoding().slice(1).toByteBuffer()));
+		assertSame(Keywords.FOO,Keyword.create("foo"));
+		
+		// unsafe creation is not interned, but still equal
+		Keyword u=Keyword.unsafeCreate("interned-kw");
+		assertNotSame(k,u);
+		assertEquals(k,u);
+	}
 }
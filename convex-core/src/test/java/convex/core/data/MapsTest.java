@@ -358,4 +358,38 @@ public class MapsTest {
 		CollectionsTest.doMapTests(m);
 		CollectionsTest.doMapTests(m2);
 	}
+
+	@Test
+	public void testStructuralMerge() throws InvalidDataException {
+		AHashMap<CVMLong, CVMLong> base = Maps.empty();
+		for (long i = 0; i < 1000; i++) {
+			base = base.assoc(CVMLong.create(i), CVMLong.create(i));
+		}
+		assertSame(base, base.merge(base));
+
+		// maps derived from the same base share most subtrees
+		AHashMap<CVMLong, CVMLong> a = base.assoc(CVMLong.create(1), CVMLong.create(-1)).assoc(CVMLong.create(2000), null);
+		AHashMap<CVMLong, CVMLong> b = base.assoc(CVMLong.create(1), null).assoc(CVMLong.create(3000), CVMLong.ONE);
+		AHashMap<CVMLong, CVMLong> m = a.merge(b);
+		m.validate();
+		assertEquals(1002, m.count());
+		assertNull(m.get(CVMLong.create(1)));
+		assertTrue(m.containsKey(CVMLong.create(1)));
+		assertTrue(m.containsKey(CVMLong.create(2000)));
+		assertEquals(CVMLong.ONE, m.get(CVMLong.create(3000)));
+
+		// same result as merging entry by entry
+		AHashMap<CVMLong, CVMLong> expected = a;
+		for (long i = 0; i < b.count(); i++) {
+			expected = expected.assocEntry(b.entryAt(i));
+		}
+		assertEquals(expected, m);
+
+		// small maps merge into large maps in either direction
+		AHashMap<CVMLong, CVMLong> sm = Maps.of(1, 2, 5000, 6000);
+		assertEquals(1001, base.merge(sm).count());
+		assertEquals(CVMLong.create(2), base.merge(sm).get(CVMLong.create(1)));
+		assertEquals(CVMLong.create(1), sm.merge(base).get(CVMLong.create(1)));
+		assertEquals(1001, sm.merge(base).count());
+	}
 }
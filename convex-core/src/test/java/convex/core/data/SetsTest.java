@@ -206,4 +206,32 @@ public class SetsTest {
 		
 		CollectionsTest.doSetTests(a);
 	}
+
+	@Test
+	public void testStructuralSetOps() throws InvalidDataException {
+		ASet<CVMLong> base = Sets.empty();
+		for (long i = 0; i < 1000; i++) {
+			base = base.include(CVMLong.create(i));
+		}
+		ASet<CVMLong> a = base.include(CVMLong.create(-1)).exclude(CVMLong.create(7));
+		ASet<CVMLong> b = base.include(CVMLong.create(-2)).exclude(CVMLong.create(8));
+
+		assertSame(base, base.includeAll(base));
+		assertSame(base, base.intersectAll(base));
+		assertTrue(base.excludeAll(base).isEmpty());
+
+		ASet<CVMLong> union = a.includeAll(b);
+		union.validate();
+		assertEquals(1002, union.count());
+		assertTrue(union.contains(CVMLong.create(7)));
+
+		ASet<CVMLong> inter = a.intersectAll(b);
+		inter.validate();
+		assertEquals(998, inter.count());
+		assertFalse(inter.contains(CVMLong.create(-1)));
+
+		ASet<CVMLong> diff = a.excludeAll(b);
+		diff.validate();
+		assertEquals(Sets.of(-1L, 8L), diff);
+	}
 }
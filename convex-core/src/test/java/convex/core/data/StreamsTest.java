@@ -1,8 +1,11 @@
 package convex.core.data;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Spliterator;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -30,4 +33,74 @@ public class StreamsTest {
 
 	}
 
+	@Test
+	public void testParallelStreams() {
+		for (long n : new long[] {0, 1, 17, 300, 1000, 4100}) {
+			VectorBuilder<CVMLong> vb = new VectorBuilder<>();
+			AHashMap<CVMLong, CVMLong> m = Maps.empty();
+			AHashSet<CVMLong> set = Sets.empty();
+			BlobMap<ABlob, CVMLong> bm = BlobMaps.empty();
+			for (long i = 0; i < n; i++) {
+				CVMLong x = CVMLong.create(i);
+				vb.conj(x);
+				m = m.assoc(x, x);
+				set = set.include(x);
+				bm = bm.assoc(x.getEncoding(), x);
+			}
+			AVector<CVMLong> v = vb.toVector();
+			long expected = n * (n - 1) / 2;
+
+			assertEquals(expected, v.parallelStream().mapToLong(CVMLong::longValue).sum());
+			assertEquals(expected, m.parallelStream().mapToLong(e -> e.getValue().longValue()).sum());
+			assertEquals(expected, set.parallelStream().mapToLong(CVMLong::longValue).sum());
+			assertEquals(expected, bm.parallelStream().mapToLong(e -> e.getValue().longValue()).sum());
+			assertEquals(v, Vectors.create(v.parallelStream().collect(Collectors.toList())));
+
+			doSplitTests(v);
+			doSplitTests(m);
+			doSplitTests(set);
+			doSplitTests(bm);
+		}
+	}
+
+	/**
+	 * Recursively splits a Spliterator, checking sizes are exact and element order is preserved
+	 */
+	private static <T extends ACell> void doSplitTests(ADataStructure<T> a) {
+		ArrayList<T> list = new ArrayList<>();
+		Spliterator<T> sp = a.spliterator();
+		assertTrue(sp.hasCharacteristics(Spliterator.SIZED | Spliterator.SUBSIZED));
+		collectSplits(sp, list);
+		assertEquals(a.count(), list.size());
+		for (int i = 0; i < list.size(); i++) {
+			assertEquals(a.get(i), list.get(i));
+		}
+
+		// splits after partial consumption
+		if (a.count() > 2) {
+			list.clear();
+			sp = a.spliterator();
+			sp.tryAdvance(list::add);
+			collectSplits(sp, list);
+			assertEquals(a.count(), list.size());
+			assertEquals(a.get(a.count() - 1), list.get(list.size() - 1));
+		}
+	}
+
+	private static <T extends ACell> void collectSplits(Spliterator<T> sp, List<T> list) {
+		long size = sp.estimateSize();
+		Spliterator<T> front = sp.trySplit();
+		if (front == null) {
+			sp.forEachRemaining(list::add);
+			return;
+		}
+		long frontSize = front.estimateSize();
+		assertEquals(size, frontSize + sp.estimateSize());
+		assertTrue(frontSize > 0);
+
+		int start = list.size();
+		collectSplits(front, list);
+		assertEquals(frontSize, list.size() - start);
+		collectSplits(sp, list);
+	}
 }
@@ -3,6 +3,7 @@ package convex.core.data;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import org.junit.jupiter.api.Test;
@@ -73,6 +74,17 @@ public class StringsTest {
 		AString span=twoChunk.slice(4000, 4200);
 		assertEquals(200,span.count());
 		doStringTest(span);
+		
+		// Chunk aligned slices and concatenation share chunks
+		AString two=Strings.create(src+src);
+		AString big=two.append(two).append(two);
+		AString tail=big.slice(4096, big.count());
+		assertEquals(Strings.create(src+src+src+src+src),tail);
+		assertSame(big.toBlob().getChunk(3),tail.toBlob().getChunk(2));
+		AString joined=tail.append(two);
+		assertEquals(big.count()+4096,joined.count());
+		assertSame(two.toBlob().getChunk(1),joined.toBlob().getChunk(6));
+		doStringTest(tail);
 	}
 	
 	@Test public void testStringSplit() {
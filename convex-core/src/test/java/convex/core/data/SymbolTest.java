@@ -2,7 +2,9 @@ package convex.core.data;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
@@ -62,4 +64,17 @@ public class SymbolTest {
 		assertEquals(7, k.getEncoding().length); // tag(1) + length(1) + name(5)
 
 	}
+
+	@Test
+	public void testInterning() throws BadFormatException {
+		Symbol s=Symbol.create("interned-sym");
+		assertSame(s,Symbol.create(Strings.create("interned-sym")));
+		assertSame(s,Symbol.read(s.getEncoding().slice(1).toByteBuffer()));
+		assertSame(Symbols.FOO,Symbol.create("foo"));
+		
+		// unsafe creation is not interned, but still equal
+		Symbol u=Symbol.unsafeCreate("interned-sym");
+		assertNotSame(s,u);
+		assertEquals(s,u);
+	}
 }
@@ -15,6 +15,7 @@ import java.util.concurrent.atomic.AtomicLong;
 
 import org.junit.jupiter.api.Test;
 
+import convex.core.data.prim.CVMByte;
 import convex.core.data.prim.CVMLong;
 import convex.core.exceptions.BadFormatException;
 import convex.core.lang.RT;
@@ -64,6 +65,56 @@ public class VectorsTest {
 		assertSame(Vectors.empty(), VectorLeaf.create(new ACell[10], 3, 0));
 	}
 	
+	@Test
+	public void testCompactVectors() {
+		long[] ls = new long[300];
+		for (int i = 0; i < 300; i++) ls[i] = i;
+		AVector<CVMLong> lv = VectorLongs.create(ls);
+		AVector<CVMLong> canonical = Samples.INT_VECTOR_300;
+		assertEquals(VectorLongs.class, lv.getClass());
+		assertFalse(lv.isCanonical());
+		assertFalse(lv.isCVMValue());
+		assertEquals(canonical, lv);
+		assertEquals(lv, canonical);
+		assertEquals(canonical.getEncoding(), lv.getEncoding());
+		assertEquals(canonical.getHash(), lv.getHash());
+		assertEquals(canonical.getMemorySize(), lv.getMemorySize());
+		assertEquals(CVMLong.create(299), lv.get(299));
+
+		// hashing does not pin the canonical tree to the compact vector
+		assertTrue((lv.cachedRef == null) || (lv.cachedRef.getValue() == lv));
+		assertEquals(256, lv.commonPrefixLength(Samples.INT_VECTOR_256));
+
+		// small slices are canonical, larger ones stay compact
+		assertEquals(VectorLeaf.class, lv.subVector(10, Vectors.CHUNK_SIZE).getClass());
+		assertEquals(VectorLongs.class, lv.subVector(10, 100).getClass());
+		assertEquals(canonical.subVector(10, 100), lv.subVector(10, 100));
+
+		// updates
+		assertEquals(VectorLongs.class, lv.assoc(5, CVMLong.create(-1)).getClass());
+		assertEquals(canonical.assoc(5, CVMLong.create(-1)), lv.assoc(5, CVMLong.create(-1)));
+		assertEquals(canonical.assoc(5, Keywords.FOO), lv.assoc(5, Keywords.FOO));
+		assertNull(lv.assoc(300, CVMLong.ONE));
+		assertEquals(canonical.append(CVMLong.ONE), lv.append(CVMLong.ONE));
+		assertEquals(canonical.concat(canonical), lv.concat(lv));
+		assertEquals(canonical.map(x -> CVMLong.create(x.longValue() * 2)), lv.map(x -> CVMLong.create(x.longValue() * 2)));
+
+		doVectorTests(lv);
+		doVectorTests(lv.subVector(17, 33));
+
+		Blob blob = Blob.createRandom(new java.util.Random(1234), 1000);
+		AVector<CVMByte> bv = VectorBytes.create(blob);
+		assertEquals(VectorBytes.class, bv.getClass());
+		assertEquals(Vectors.create(bv.toCellArray()), bv);
+		assertEquals(CVMByte.create(blob.byteAt(999)), bv.get(999));
+		assertEquals(Vectors.create(bv.toCellArray()).getHash(), bv.getHash());
+		CollectionsTest.doSequenceTests(bv);
+
+		// compact creation falls back to canonical vectors for mixed elements
+		assertEquals(VectorLongs.class, Vectors.createCompact(canonical.toCellArray()).getClass());
+		assertTrue(Vectors.createCompact(canonical.assoc(7, Keywords.FOO).toCellArray()).isCanonical());
+	}
+
 	@Test 
 	public void testUnsafeCreate() {
 		doVectorTests(VectorTree.unsafeCreate(32, Samples.INT_VECTOR_16,Samples.INT_VECTOR_16));
@@ -20,7 +20,12 @@ public class LongTest {
 	@Test 
 	public void cacheTest() {
 		assertSame(CVMLong.create(255),CVMLong.create(255));
-		assertNotSame(CVMLong.create(666),CVMLong.create(666));
+		assertSame(CVMLong.create(1023),CVMLong.create(1023));
+		assertSame(CVMLong.create(-128),CVMLong.create(-128));
+		assertSame(CVMLong.MINUS_ONE,CVMLong.create(-1));
+		assertNotSame(CVMLong.create(1024),CVMLong.create(1024));
+		assertNotSame(CVMLong.create(-129),CVMLong.create(-129));
+		assertNotSame(CVMLong.create(6666),CVMLong.create(6666));
 	}
 	
 	@Test public void testLongSamples() {
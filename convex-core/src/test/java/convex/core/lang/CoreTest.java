@@ -973,6 +973,9 @@ public class CoreTest extends ACVMTest {
 		assertSame(Vectors.empty(), eval("(vec (blob-map))"));
 
 		assertEquals( eval("[\\a \\b \\c]"), eval("(vec \"abc\")"));
+		assertEquals(Vectors.of(CVMByte.create(1),CVMByte.create(2)), eval("(vec 0x0102)"));
+		assertTrue(eval("(vec 0x000102030405060708090a0b0c0d0e0f10)").isCanonical());
+		assertEquals(CVMByte.create(16), eval("(last (vec 0x000102030405060708090a0b0c0d0e0f10))"));
 
 		assertEquals(Vectors.of(1,2,3,4), eval("(vec (list 1 2 3 4))"));
 		assertEquals(Vectors.of(MapEntry.of(1,2)), eval("(vec {1,2})"));
@@ -1629,6 +1632,13 @@ public class CoreTest extends ACVMTest {
 		assertEquals(Vectors.of(3L), eval("(map + [1 2 3] [2])"));
 		assertEquals(Vectors.of(1L, 2L, 3L), eval("(map identity [1 2 3])"));
 
+		// CVM results are canonical, never compact primitive vectors
+		AVector<CVMLong> big=eval("(map inc (map identity [0 1 2 3 4 5 6 7 8 9 10 11 12 13 14 15 16 17 18 19]))");
+		assertTrue(big.isCanonical());
+		assertEquals(CVMLong.create(20), big.get(19));
+		assertEquals(big.getHash(), eval("[1 2 3 4 5 6 7 8 9 10 11 12 13 14 15 16 17 18 19 20]").getHash());
+		assertEquals(eval("[1 2 3 4 5 6 7 8 9 10 11 12 13 14 15 16 17 18 19 20 0]"), big.conj(CVMLong.ZERO));
+
 		assertCastError(step("(map 1 [1])"));
 		assertCastError(step("(map 1 [] [] [])"));
 		assertCastError(step("(map inc 1)"));
@@ -1719,6 +1729,12 @@ public class CoreTest extends ACVMTest {
 
 		assertEquals(Lists.of(3,2,1), eval("(reduce conj '() '(1 2 3))"));
 
+		// sets, blob maps and larger tree structures
+		assertEquals(6L, evalL("(reduce + 0 #{1 2 3})"));
+		assertEquals(3L, evalL("(reduce (fn [acc [k v]] (+ acc v)) 0 (blob-map 0x01 1 0x0102 2))"));
+		assertEquals(5050L, evalL("(reduce + (loop [v [] i 1] (if (<= i 100) (recur (conj v i) (inc i)) v)))"));
+		assertEquals(5050L, evalL("(reduce + (loop [s #{} i 1] (if (<= i 100) (recur (conj s i) (inc i)) s)))"));
+
 		// 2-arg reduce forms
 		assertEquals(24L, evalL("(reduce * [1 2 3 4])"));
 		assertEquals(1L, evalL("(reduce * nil)"));
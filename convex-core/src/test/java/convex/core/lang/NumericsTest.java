@@ -13,8 +13,11 @@ import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import org.junit.jupiter.api.Test;
 
+import convex.core.data.ACell;
+import convex.core.data.Keywords;
 import convex.core.data.prim.CVMByte;
 import convex.core.data.prim.CVMDouble;
+import convex.core.data.prim.CVMLong;
 
 /**
  * 
@@ -67,6 +70,29 @@ public class NumericsTest {
 		assertCastError(step("(+ 1.0 nil 2)"));
 	}
 
+	@Test
+	public void testBinaryArithmetic() {
+		ACell[] vals = new ACell[] { CVMLong.ZERO, CVMLong.create(-7), CVMLong.create(1000), CVMLong.MAX_VALUE,
+				CVMByte.create(3), CVMDouble.create(2.5), CVMDouble.NaN, Keywords.FOO, null };
+		for (ACell a : vals) {
+			for (ACell b : vals) {
+				ACell[] args = new ACell[] { a, b };
+				// two argument fast paths must agree with general case
+				assertEquals(RT.plus(args), RT.plus(a, b));
+				assertEquals(RT.minus(args), RT.minus(a, b));
+				assertEquals(RT.times(args), RT.times(a, b));
+			}
+		}
+
+		// small results shouldn't allocate
+		assertSame(CVMLong.create(-100), RT.plus(CVMLong.create(-50), CVMLong.create(-50)));
+		assertSame(CVMLong.create(1000), RT.times(CVMLong.create(10), CVMLong.create(100)));
+		assertEquals(-1L, evalL("(- 1 2)"));
+		assertEquals(6.0, evalD("(* 2.0 3)"));
+		assertCastError(step("(* 2 :foo)"));
+		assertCastError(step("(- nil 2)"));
+	}
+
 	@Test
 	public void testMinus() {
 		assertEquals(1L, evalL("(- -1)"));
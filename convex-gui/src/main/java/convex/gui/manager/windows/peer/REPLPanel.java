@@ -8,6 +8,7 @@ import java.awt.event.KeyEvent;
 import java.awt.event.KeyListener;
 import java.net.InetSocketAddress;
 import java.util.ArrayList;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
@@ -221,6 +222,13 @@ public class REPLPanel extends JPanel {
 				handleResult(future.get(5000, TimeUnit.MILLISECONDS));
 			} catch (TimeoutException t) {
 				outputArea.append(" TIMEOUT waiting for result");
+			} catch (ExecutionException t) {
+				if (t.getCause() instanceof TimeoutException) {
+					outputArea.append(" TIMEOUT waiting for result");
+				} else {
+					outputArea.append(" SEND ERROR: ");
+					outputArea.append(t.getMessage() + "\n");
+				}
 			} catch (Throwable t) {
 				outputArea.append(" SEND ERROR: ");
 				outputArea.append(t.getMessage() + "\n");
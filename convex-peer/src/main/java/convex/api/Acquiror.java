@@ -0,0 +1,384 @@
+package convex.api;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import convex.core.data.ACell;
+import convex.core.data.AVector;
+import convex.core.data.Hash;
+import convex.core.data.Ref;
+import convex.core.data.Vectors;
+import convex.core.exceptions.MissingDataException;
+import convex.core.store.AStore;
+import convex.core.store.Stores;
+import convex.core.util.Utils;
+import convex.net.Connection;
+
+/**
+ * Acquisition of a complete persistent data structure from a remote Peer.
+ *
+ * Missing cells are discovered breadth-first from the root, and requested in
+ * batches of hashes per MISSING_DATA message. At most a fixed window of hashes is
+ * in flight at any time. Progress is driven by arriving DATA messages, which
+ * expand the missing frontier and refill the window. A shared timer re-requests
+ * hashes that have not arrived within a timeout.
+ *
+ * @param <T> Type of cell being acquired
+ */
+public class Acquiror<T extends ACell> {
+
+	private static final Logger log = LoggerFactory.getLogger(Acquiror.class.getName());
+
+	/**
+	 * Maximum number of hashes outstanding at any time
+	 */
+	public static final int DEFAULT_WINDOW = 1024;
+
+	/**
+	 * Maximum number of hashes in a single MISSING_DATA request. Kept small enough
+	 * that the request vector is encoded as a single cell.
+	 */
+	public static final int MAX_REQUEST_HASHES = 16;
+
+	/**
+	 * Time in milliseconds after which an outstanding hash is requested again
+	 */
+	public static final long RETRY_TIMEOUT = 1000;
+
+	/**
+	 * Interval in milliseconds between checks for outstanding requests
+	 */
+	private static final long RETRY_INTERVAL = 200;
+
+	private static final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+		Thread t = new Thread(r, "Acquire timer");
+		t.setDaemon(true);
+		return t;
+	});
+
+	private final Hash hash;
+	private final AStore store;
+	private final Connection connection;
+	private final CompletableFuture<T> future = new CompletableFuture<>();
+	private final int window;
+
+	/**
+	 * Hashes awaiting request, in breadth-first order
+	 */
+	private final ArrayDeque<Hash> frontier = new ArrayDeque<>();
+
+	/**
+	 * Hashes requested and not yet received, with time of request
+	 */
+	private final HashMap<Hash, Long> inFlight = new HashMap<>();
+
+	/**
+	 * All hashes ever queued or expanded by this acquisition
+	 */
+	private final HashSet<Hash> seen = new HashSet<>();
+
+	private ScheduledFuture<?> retryTask;
+
+	private final long startTime = Utils.getCurrentTimestamp();
+	private volatile long endTime = 0;
+	private volatile long requestCount = 0;
+	private volatile long receivedCount = 0;
+	private volatile long receivedBytes = 0;
+
+	private Acquiror(Hash hash, AStore store, Connection connection, int window) {
+		this.hash = hash;
+		this.store = store;
+		this.connection = connection;
+		this.window = window;
+		future.whenComplete((v, e) -> finish());
+	}
+
+	/**
+	 * Creates an Acquiror. Acquisition does not begin until {@link #start()} is called.
+	 *
+	 * @param <T>        Type of cell being acquired
+	 * @param hash       Hash of root cell to acquire
+	 * @param store      Store to persist acquired data to
+	 * @param connection Connection to the Peer providing data
+	 * @return New Acquiror instance
+	 */
+	public static <T extends ACell> Acquiror<T> create(Hash hash, AStore store, Connection connection) {
+		return new Acquiror<T>(hash, store, connection, DEFAULT_WINDOW);
+	}
+
+	/**
+	 * Starts this acquisition. Completes immediately if the data is already
+	 * fully persisted in the store.
+	 *
+	 * @return This Acquiror
+	 */
+	public Acquiror<T> start() {
+		AStore temp = Stores.current();
+		try {
+			Stores.setCurrent(store);
+			synchronized (this) {
+				Ref<T> ref = store.refForHash(hash);
+				if (ref == null) {
+					enqueue(hash);
+				} else {
+					seen.add(hash);
+					expand(ref.getValue());
+				}
+				update();
+			}
+			if (!future.isDone()) {
+				retryTask = timer.scheduleWithFixedDelay(this::retry, RETRY_INTERVAL, RETRY_INTERVAL, TimeUnit.MILLISECONDS);
+			}
+		} catch (Throwable t) {
+			future.completeExceptionally(t);
+		} finally {
+			Stores.setCurrent(temp);
+		}
+		return this;
+	}
+
+	/**
+	 * Notifies this acquisition that a cell has been received and stored.
+	 *
+	 * @param ref Ref to the stored cell
+	 */
+	public void onData(Ref<?> ref) {
+		if (future.isDone()) return;
+		Hash h = ref.getHash();
+		AStore temp = Stores.current();
+		try {
+			Stores.setCurrent(store);
+			synchronized (this) {
+				boolean requested = (inFlight.remove(h) != null);
+				if (!requested && !frontier.remove(h)) return;
+				ACell cell = ref.getValue();
+				receivedCount++;
+				receivedBytes += cell.getEncodingLength();
+				expand(cell);
+				update();
+			}
+		} catch (Throwable t) {
+			future.completeExceptionally(t);
+		} finally {
+			Stores.setCurrent(temp);
+		}
+	}
+
+	/**
+	 * Adds missing children of a cell to the frontier. Embedded children are
+	 * scanned directly, since they have no separate storage.
+	 */
+	private void expand(ACell cell) {
+		if (cell == null) return;
+		int n = cell.getRefCount();
+		for (int i = 0; i < n; i++) {
+			Ref<ACell> r = cell.getRef(i);
+			if (r.getStatus() >= Ref.PERSISTED) continue;
+			if (r.isEmbedded()) {
+				expand(r.getValue());
+				continue;
+			}
+			Hash h = r.getHash();
+			if (seen.contains(h)) continue;
+			Ref<ACell> stored = store.refForHash(h);
+			if (stored == null) {
+				enqueue(h);
+			} else if (stored.getStatus() < Ref.PERSISTED) {
+				seen.add(h);
+				expand(stored.getValue());
+			}
+		}
+	}
+
+	private void enqueue(Hash h) {
+		if (seen.add(h)) frontier.add(h);
+	}
+
+	/**
+	 * Sends requests to fill the window, or completes the acquisition if nothing
+	 * remains outstanding. Must be called while holding the lock.
+	 */
+	private void update() throws IOException {
+		if (frontier.isEmpty() && inFlight.isEmpty()) {
+			tryComplete();
+			return;
+		}
+		long now = Utils.getCurrentTimestamp();
+		while (!frontier.isEmpty() && (inFlight.size() < window)) {
+			int n = Math.min(MAX_REQUEST_HASHES, Math.min(frontier.size(), window - inFlight.size()));
+			ArrayList<Hash> batch = new ArrayList<>(n);
+			for (int i = 0; i < n; i++) {
+				batch.add(frontier.poll());
+			}
+			if (!request(batch)) {
+				// send buffer full, put back and retry later
+				for (int i = n - 1; i >= 0; i--) {
+					frontier.addFirst(batch.get(i));
+				}
+				break;
+			}
+			for (Hash h : batch) {
+				inFlight.put(h, now);
+			}
+		}
+	}
+
+	private boolean request(ArrayList<Hash> batch) throws IOException {
+		AVector<Hash> v = Vectors.create(batch.toArray(new ACell[batch.size()]));
+		boolean sent = connection.sendMissingData(v);
+		if (sent) requestCount += batch.size();
+		return sent;
+	}
+
+	/**
+	 * Attempts to complete the acquisition by fully persisting the root. If any
+	 * data is still missing, it is added to the frontier instead.
+	 */
+	private void tryComplete() throws IOException {
+		Ref<T> ref = store.refForHash(hash);
+		if (ref == null) {
+			enqueue(hash);
+			return;
+		}
+		try {
+			ref = ref.persist();
+			endTime = Utils.getCurrentTimestamp();
+			log.debug("Acquired {} with {} cells in {} ms", hash, receivedCount, endTime - startTime);
+			future.complete(ref.getValue());
+		} catch (MissingDataException e) {
+			Hash missing = e.getMissingHash();
+			seen.remove(missing);
+			enqueue(missing);
+			update();
+		}
+	}
+
+	/**
+	 * Re-requests hashes that have been outstanding for too long, and refills the
+	 * window if a previous send was blocked.
+	 */
+	private void retry() {
+		if (future.isDone()) return;
+		if (connection.isClosed()) {
+			future.completeExceptionally(new IOException("Connection closed during acquire"));
+			return;
+		}
+		AStore temp = Stores.current();
+		try {
+			Stores.setCurrent(store);
+			synchronized (this) {
+				long now = Utils.getCurrentTimestamp();
+				ArrayList<Hash> stale = new ArrayList<>();
+				Iterator<Map.Entry<Hash, Long>> it = inFlight.entrySet().iterator();
+				while (it.hasNext()) {
+					Map.Entry<Hash, Long> me = it.next();
+					if ((me.getValue() + RETRY_TIMEOUT) >= now) continue;
+					it.remove();
+					stale.add(me.getKey());
+				}
+				if (!stale.isEmpty()) log.debug("Re-requesting {} hashes for {}", stale.size(), hash);
+				for (int i = stale.size() - 1; i >= 0; i--) {
+					frontier.addFirst(stale.get(i));
+				}
+				update();
+			}
+		} catch (Throwable t) {
+			future.completeExceptionally(t);
+		} finally {
+			Stores.setCurrent(temp);
+		}
+	}
+
+	private void finish() {
+		ScheduledFuture<?> task = retryTask;
+		if (task != null) task.cancel(false);
+		if (endTime == 0) endTime = Utils.getCurrentTimestamp();
+	}
+
+	/**
+	 * Gets the future for the acquired value
+	 * @return Future completing with the acquired value
+	 */
+	public CompletableFuture<T> getFuture() {
+		return future;
+	}
+
+	/**
+	 * Gets the hash of the root cell being acquired
+	 * @return Root hash
+	 */
+	public Hash getHash() {
+		return hash;
+	}
+
+	/**
+	 * Gets the number of hashes requested, including re-requests
+	 * @return Request count
+	 */
+	public long getRequestCount() {
+		return requestCount;
+	}
+
+	/**
+	 * Gets the number of requested cells received
+	 * @return Received cell count
+	 */
+	public long getReceivedCount() {
+		return receivedCount;
+	}
+
+	/**
+	 * Gets the total encoding length of requested cells received
+	 * @return Received bytes
+	 */
+	public long getReceivedBytes() {
+		return receivedBytes;
+	}
+
+	/**
+	 * Gets the number of hashes currently outstanding
+	 * @return In-flight count
+	 */
+	public synchronized int getInFlightCount() {
+		return inFlight.size();
+	}
+
+	/**
+	 * Gets the number of known missing hashes not yet requested
+	 * @return Frontier size
+	 */
+	public synchronized int getFrontierSize() {
+		return frontier.size();
+	}
+
+	/**
+	 * Gets the elapsed time of this acquisition in milliseconds
+	 * @return Elapsed time
+	 */
+	public long getElapsedTime() {
+		long end = (endTime == 0) ? Utils.getCurrentTimestamp() : endTime;
+		return end - startTime;
+	}
+
+	/**
+	 * Gets the throughput of this acquisition in cells per second
+	 * @return Cells received per second
+	 */
+	public double getThroughput() {
+		long elapsed = Math.max(1, getElapsedTime());
+		return (receivedCount * 1000.0) / elapsed;
+	}
+}
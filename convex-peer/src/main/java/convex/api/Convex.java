@@ -2,13 +2,21 @@ package convex.api;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Consumer;
 
 import org.slf4j.Logger;
@@ -85,33 +93,78 @@ public abstract class Convex {
 	 * Sequence number for this client, or null if not yet known. Used to number new
 	 * transactions if not otherwise specified.
 	 */
-	protected Long sequence = null;
+	protected volatile Long sequence = null;
 
 	/**
-	 * Map of results awaiting completion. May be pending missing data.
+	 * Epoch of the current sequence number window. Incremented whenever the
+	 * sequence number is reset, so that failures of transactions numbered in an
+	 * earlier window do not reset the sequence again.
 	 */
-	protected HashMap<Long, CompletableFuture<Result>> awaiting = new HashMap<>();
+	private final AtomicLong sequenceEpoch = new AtomicLong();
+
+	/**
+	 * Interval in milliseconds between sweeps for timed out results
+	 */
+	private static final long AWAITING_SWEEP_INTERVAL = 100;
+
+	private static final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+		Thread t = new Thread(r, "Client timeout timer");
+		t.setDaemon(true);
+		return t;
+	});
+
+	/**
+	 * A result awaited by this client, with its deadline and sequence epoch
+	 */
+	private static final class AwaitInfo {
+		final CompletableFuture<Result> future;
+		final long deadline;
+		final long epoch;
+
+		AwaitInfo(CompletableFuture<Result> future, long deadline, long epoch) {
+			this.future = future;
+			this.deadline = deadline;
+			this.epoch = epoch;
+		}
+	}
+
+	/**
+	 * Map of results awaiting completion, by message ID. May be pending missing
+	 * data. Lock free, so no lock is held while sending or completing results.
+	 */
+	private final ConcurrentHashMap<Long, AwaitInfo> awaiting = new ConcurrentHashMap<>();
+
+	private final AtomicBoolean sweepScheduled = new AtomicBoolean();
+
+	/**
+	 * Map of listeners for active subscriptions, by subscription ID
+	 */
+	protected final ConcurrentHashMap<Long, Consumer<Result>> subscriptions = new ConcurrentHashMap<>();
 
 	protected final Consumer<Message> internalHandler = new ResultConsumer() {
 		@Override
-		protected synchronized void handleResult(long id, Result v) {
+		protected void handleResult(long id, Result v) {
+			if (deliverSubscription(id, v)) return;
 
-			if ((v != null) && (ErrorCodes.SEQUENCE.equals(v.getErrorCode()))) {
-				// We probably got a wrong sequence number. Kill the stored value.
-				sequence = null;
+			AwaitInfo info = awaiting.remove(id);
+			if (info == null) {
+				log.debug("Ignored Result received for unexpected message ID: {}", id);
+				return;
 			}
 
-			// TODO: maybe extract method?
-			synchronized (awaiting) {
-				CompletableFuture<Result> cf = awaiting.get(id);
-				if (cf != null) {
-					awaiting.remove(id);
-					cf.complete(v);
-					log.debug("Completed Result received for message ID: {}", id);
-				} else {
-					log.debug("Ignored Result received for unexpected message ID: {}", id);
-				}
+			if ((v != null) && (ErrorCodes.SEQUENCE.equals(v.getErrorCode()))) {
+				// We probably got a wrong sequence number. Kill the stored value,
+				// unless already reset since this request was sent.
+				resetSequence(info.epoch);
 			}
+
+			info.future.complete(v);
+			log.debug("Completed Result received for message ID: {}", id);
+		}
+
+		@Override
+		protected void handleDataReceived(Ref<?> ref) {
+			Convex.this.handleDataReceived(ref);
 		}
 
 		@Override
@@ -130,6 +183,15 @@ public abstract class Convex {
 
 	private Consumer<Message> delegatedHandler = null;
 
+	/**
+	 * Handler for cells received from the connected Peer. May be overridden.
+	 *
+	 * @param ref Ref to the received cell, already stored
+	 */
+	protected void handleDataReceived(Ref<?> ref) {
+		// nothing to do by default
+	}
+
 	protected Convex(Address address, AKeyPair keyPair) {
 		this.keyPair = keyPair;
 		this.address = address;
@@ -206,7 +268,7 @@ public abstract class Convex {
 			return;
 		this.address = address;
 		// clear sequence, since we don't know the new account sequence number yet
-		sequence = null;
+		resetSequence(sequenceEpoch.get());
 	}
 
 	/**
@@ -241,6 +303,25 @@ public abstract class Convex {
 		this.sequence = nextSequence - 1L;
 	}
 
+	/**
+	 * Sets the default timeout for requests made by this client. Outstanding
+	 * results not received within this time complete with a TIMEOUT error.
+	 *
+	 * @param timeout Timeout in milliseconds
+	 */
+	public void setTimeout(long timeout) {
+		this.timeout = timeout;
+	}
+
+	/**
+	 * Gets the default timeout for requests made by this client
+	 *
+	 * @return Timeout in milliseconds
+	 */
+	public long getTimeout() {
+		return timeout;
+	}
+
 	public void setHandler(Consumer<Message> handler) {
 		this.delegatedHandler = handler;
 	}
@@ -328,25 +409,53 @@ public abstract class Convex {
 	private synchronized ATransaction applyNextSequence(ATransaction t) {
 		if (sequence != null) {
 			// if already we know the next sequence number to be applied, set it
-			return t.withSequence(++sequence);
+			long next = sequence + 1;
+			sequence = next;
+			return t.withSequence(next);
 		} else {
 			return t.withSequence(getIncrementedSequence());
 		}
 	}
 
+	/**
+	 * Resets the sequence number, so that it will be acquired from the network
+	 * before the next transaction. Does nothing if the sequence has already been
+	 * reset since the given epoch, so a window of failed transactions causes only
+	 * a single reset.
+	 *
+	 * @param epoch Sequence epoch at the time the failed request was made
+	 */
+	private void resetSequence(long epoch) {
+		if (sequenceEpoch.compareAndSet(epoch, epoch + 1)) {
+			sequence = null;
+		}
+	}
+
 	/**
 	 * Submits a transaction to the Convex network, returning a future once the
 	 * transaction has been successfully queued. Signs the transaction with the
 	 * currently set key pair
 	 *
-	 * Should be thread safe as long as multiple clients do not attempt to submit
-	 * transactions for the same account concurrently.
+	 * Thread safe, and does not block while other transactions are in flight, as
+	 * long as multiple clients do not attempt to submit transactions for the same
+	 * account concurrently.
 	 *
 	 * @param transaction Transaction to execute
 	 * @return A Future for the result of the transaction
 	 * @throws IOException If the connection is broken, or the send buffer is full
 	 */
-	public synchronized CompletableFuture<Result> transact(ATransaction transaction) throws IOException {
+	public CompletableFuture<Result> transact(ATransaction transaction) throws IOException {
+		return transact(prepareTransaction(transaction));
+	}
+
+	/**
+	 * Prepares a transaction for submission, setting the origin and sequence
+	 * number if required, and signing it with the currently set key pair.
+	 *
+	 * @param transaction Transaction to prepare
+	 * @return Signed transaction
+	 */
+	private SignedData<ATransaction> prepareTransaction(ATransaction transaction) {
 		if (transaction.getOrigin() == null) {
 			transaction = transaction.withOrigin(address);
 		}
@@ -358,8 +467,40 @@ public abstract class Convex {
 				// ignore??
 			}
 		}
-		SignedData<ATransaction> signed = keyPair.signData(transaction);
-		return transact(signed);
+		return keyPair.signData(transaction);
+	}
+
+	/**
+	 * Submits a batch of transactions to the Convex network. Each transaction is
+	 * prepared and signed as for {@link #transact(ATransaction)}, but the batch is
+	 * sent with much lower per-transaction overhead where supported.
+	 *
+	 * @param transactions Transactions to execute
+	 * @return A Future for the result of each transaction, in the same order
+	 * @throws IOException If the connection is broken
+	 */
+	public List<CompletableFuture<Result>> transactBatch(List<ATransaction> transactions) throws IOException {
+		ArrayList<SignedData<ATransaction>> signed = new ArrayList<>(transactions.size());
+		for (ATransaction t : transactions) {
+			signed.add(prepareTransaction(t));
+		}
+		return transactSignedBatch(signed);
+	}
+
+	/**
+	 * Submits a batch of signed transactions to the Convex network. By default,
+	 * submits each transaction individually.
+	 *
+	 * @param signed Signed transactions to execute
+	 * @return A Future for the result of each transaction, in the same order
+	 * @throws IOException If the connection is broken
+	 */
+	public List<CompletableFuture<Result>> transactSignedBatch(List<SignedData<ATransaction>> signed) throws IOException {
+		ArrayList<CompletableFuture<Result>> results = new ArrayList<>(signed.size());
+		for (SignedData<ATransaction> st : signed) {
+			results.add(transact(st));
+		}
+		return results;
 	}
 
 	/**
@@ -369,14 +510,14 @@ public abstract class Convex {
 	 * @return A Future for the result of the transaction
 	 * @throws IOException If the connection is broken, or the send buffer is full
 	 */
-	public synchronized CompletableFuture<Result> transact(String code) throws IOException {
+	public CompletableFuture<Result> transact(String code) throws IOException {
 		ATransaction trans = buildTransaction(code);
 		return transact(trans);
 	}
 
 	private ATransaction buildTransaction(String code) {
 		ACell form = buildCodeForm(code);
-		return Invoke.create(getAddress(), getIncrementedSequence(), form);
+		return applyNextSequence(Invoke.create(getAddress(), 0, form));
 	}
 
 	private ACell buildCodeForm(String code) {
@@ -399,7 +540,7 @@ public abstract class Convex {
 	 *                          full
 	 * @throws TimeoutException If the transaction times out
 	 */
-	public synchronized Result transactSync(String code) throws IOException, TimeoutException {
+	public Result transactSync(String code) throws IOException, TimeoutException {
 		ATransaction trans = buildTransaction(code);
 		return transactSync(trans);
 	}
@@ -491,11 +632,7 @@ public abstract class Convex {
 		// adjust timeout if time elapsed to submit transaction
 		long now = Utils.getTimeMillis();
 		timeout = Math.max(0L, timeout - (now - start));
-		try {
-			result = cf.get(timeout, TimeUnit.MILLISECONDS);
-		} catch (InterruptedException | ExecutionException e) {
-			throw new Error("Not possible? Since there is no Thread for the future....", e);
-		}
+		result = awaitSync(cf, timeout);
 		return result;
 	}
 
@@ -521,11 +658,7 @@ public abstract class Convex {
 		// adjust timeout if time elapsed to submit transaction
 		long now = Utils.getTimeMillis();
 		timeout = Math.max(0L, timeout - (now - start));
-		try {
-			result = cf.get(timeout, TimeUnit.MILLISECONDS);
-		} catch (InterruptedException | ExecutionException e) {
-			throw new Error("Not possible? Since there is no Thread for the future....", e);
-		}
+		result = awaitSync(cf, timeout);
 		return result;
 	}
 
@@ -554,6 +687,35 @@ public abstract class Convex {
 		return query(form, getAddress());
 	}
 
+	/**
+	 * Submits a batch of queries to the Convex network, using the current Address.
+	 * All queries in a batch are executed against the same state where supported.
+	 *
+	 * @param queries Queries to execute, as Forms or Ops
+	 * @return A Future for the result of each query, in the same order
+	 * @throws IOException If the connection is broken
+	 */
+	public List<CompletableFuture<Result>> queryBatch(List<ACell> queries) throws IOException {
+		return queryBatch(queries, getAddress());
+	}
+
+	/**
+	 * Submits a batch of queries to the Convex network. By default, submits each
+	 * query individually.
+	 *
+	 * @param queries Queries to execute, as Forms or Ops
+	 * @param address Address to use for the queries
+	 * @return A Future for the result of each query, in the same order
+	 * @throws IOException If the connection is broken
+	 */
+	public List<CompletableFuture<Result>> queryBatch(List<ACell> queries, Address address) throws IOException {
+		ArrayList<CompletableFuture<Result>> results = new ArrayList<>(queries.size());
+		for (ACell q : queries) {
+			results.add(query(q, address));
+		}
+		return results;
+	}
+
 	/**
 	 * Attempts to acquire a complete persistent data structure for the given hash
 	 * from the remote peer. Uses the current store configured for the calling
@@ -593,11 +755,7 @@ public abstract class Convex {
 	 */
 	public Result requestStatusSync(long timeoutMillis) throws IOException, TimeoutException {
 		Future<Result> statusFuture = requestStatus();
-		try {
-			return statusFuture.get(timeoutMillis, TimeUnit.MILLISECONDS);
-		} catch (InterruptedException | ExecutionException e) {
-			throw new Error("Unable to get network status ", e);
-		}
+		return awaitSync(statusFuture, timeoutMillis);
 	}
 
 	/**
@@ -609,18 +767,173 @@ public abstract class Convex {
 	public abstract CompletableFuture<Result> requestStatus();
 
 	/**
-	 * Method to start waiting for a complete result. Should be called with lock on
-	 * `awaiting` map to prevent risk of missing results before it is called.
+	 * Method to start waiting for a complete result. Should be called before the
+	 * request is sent, to prevent risk of missing results that arrive quickly.
+	 * The future completes exceptionally with a TimeoutException if the result
+	 * is not received within the timeout for this client.
 	 * 
 	 * @param id ID of result message to await
-	 * @return
+	 * @return Future for the Result
 	 */
 	protected CompletableFuture<Result> awaitResult(long id) {
 		CompletableFuture<Result> cf = new CompletableFuture<Result>();
-		awaiting.put(id, cf);
+		long deadline = Utils.getTimeMillis() + timeout;
+		awaiting.put(id, new AwaitInfo(cf, deadline, sequenceEpoch.get()));
+		scheduleSweep();
 		return cf;
 	}
 
+	/**
+	 * Stops waiting for a result, e.g. because the request could not be sent
+	 *
+	 * @param id ID of result message no longer awaited
+	 */
+	protected void cancelAwait(long id) {
+		awaiting.remove(id);
+	}
+
+	/**
+	 * Stops waiting for all outstanding results, e.g. because the client is closed
+	 */
+	protected void cancelAllAwaits() {
+		awaiting.clear();
+	}
+
+	/**
+	 * Gets the number of results currently awaited by this client
+	 *
+	 * @return Count of outstanding requests
+	 */
+	public int getAwaitingCount() {
+		return awaiting.size();
+	}
+
+	/**
+	 * Gets a snapshot of the futures for results currently awaited by this
+	 * client, by message ID
+	 *
+	 * @return Map of awaited futures
+	 */
+	protected Map<Long, CompletableFuture<Result>> getAwaiting() {
+		HashMap<Long, CompletableFuture<Result>> result = new HashMap<>();
+		awaiting.forEach((id, a) -> result.put(id, a.future));
+		return result;
+	}
+
+	private void scheduleSweep() {
+		if (sweepScheduled.compareAndSet(false, true)) {
+			timer.schedule(this::sweepAwaiting, AWAITING_SWEEP_INTERVAL, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * Completes awaited results that have passed their deadline exceptionally
+	 * with a TimeoutException, consistent with the synchronous request methods.
+	 * Reschedules itself while any results remain outstanding.
+	 */
+	private void sweepAwaiting() {
+		long now = Utils.getTimeMillis();
+		for (Map.Entry<Long, AwaitInfo> me : awaiting.entrySet()) {
+			AwaitInfo a = me.getValue();
+			if (a.deadline >= now) continue;
+			// only the thread that removes the entry completes it
+			if (!awaiting.remove(me.getKey(), a)) continue;
+			a.future.completeExceptionally(new TimeoutException("Result not received within timeout"));
+		}
+		sweepScheduled.set(false);
+		if (!awaiting.isEmpty()) scheduleSweep();
+	}
+
+	/**
+	 * Waits for a result, rethrowing a TimeoutException if the result timed out
+	 * while awaited.
+	 *
+	 * @param cf      Future for the Result
+	 * @param timeout Number of milliseconds to wait
+	 * @return Result received
+	 * @throws TimeoutException If the Result is not received in time
+	 */
+	private static Result awaitSync(Future<Result> cf, long timeout) throws TimeoutException {
+		try {
+			return cf.get(timeout, TimeUnit.MILLISECONDS);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof TimeoutException) throw (TimeoutException) e.getCause();
+			throw new Error("Unexpected failure awaiting Result", e);
+		} catch (InterruptedException e) {
+			throw new Error("Not possible? Since there is no Thread for the future....", e);
+		}
+	}
+
+	/**
+	 * Subscribes to changes in the consensus State, using the current Address.
+	 *
+	 * @param target   Address, Symbol or query form to subscribe to
+	 * @param listener Listener to receive Results
+	 * @return ID of the subscription
+	 * @throws IOException If the connection is broken
+	 * @see #subscribe(ACell, Address, Consumer)
+	 */
+	public long subscribe(ACell target, Consumer<Result> listener) throws IOException {
+		return subscribe(target, getAddress(), listener);
+	}
+
+	/**
+	 * Subscribes to changes in the consensus State. The target may be:
+	 * <ul>
+	 * <li>An Address, to watch the status of that account</li>
+	 * <li>A Symbol, to watch its value in the environment of the given Address</li>
+	 * <li>Any other form, to watch the result of a query with the given Address</li>
+	 * </ul>
+	 *
+	 * The listener receives a Result with the current value once the subscription
+	 * is accepted, and again whenever the value changes in a new consensus State.
+	 * If the subscription is rejected, the listener receives an error Result and
+	 * no further updates.
+	 *
+	 * @param target   Address, Symbol or query form to subscribe to
+	 * @param address  Address for Symbol lookup and query execution
+	 * @param listener Listener to receive Results. Called on a network thread, so
+	 *                 should not block
+	 * @return ID of the subscription
+	 * @throws IOException If the connection is broken
+	 */
+	public abstract long subscribe(ACell target, Address address, Consumer<Result> listener) throws IOException;
+
+	/**
+	 * Cancels a subscription. Does nothing if the subscription is not active.
+	 *
+	 * @param id ID of the subscription
+	 * @throws IOException If the connection is broken
+	 */
+	public abstract void unsubscribe(long id) throws IOException;
+
+	/**
+	 * Gets the number of subscriptions currently active for this client
+	 *
+	 * @return Count of subscriptions
+	 */
+	public int getSubscriptionCount() {
+		return subscriptions.size();
+	}
+
+	/**
+	 * Delivers a Result to the listener for a subscription, if any
+	 *
+	 * @param id ID of result message
+	 * @param r  Result received
+	 * @return true if the Result was for an active subscription, false otherwise
+	 */
+	protected boolean deliverSubscription(long id, Result r) {
+		Consumer<Result> listener = subscriptions.get(id);
+		if (listener == null) return false;
+		try {
+			listener.accept(r);
+		} catch (Throwable t) {
+			log.warn("Exception thrown in subscription listener: {}", t);
+		}
+		return true;
+	}
+
 	/**
 	 * Request a challenge. This is request is made by any peer that needs to find
 	 * out if another peer can be trusted.
@@ -712,11 +1025,7 @@ public abstract class Convex {
 	public Result querySync(ACell query, Address address, long timeoutMillis) throws TimeoutException, IOException {
 		Future<Result> cf = query(query, address);
 		Result result;
-		try {
-			result = cf.get(timeoutMillis, TimeUnit.MILLISECONDS);
-		} catch (InterruptedException | ExecutionException e) {
-			throw new Error("Not possible? Since there is no Thread for the future....", e);
-		}
+		result = awaitSync(cf, timeoutMillis);
 		return result;
 	}
 
@@ -15,6 +15,7 @@ import convex.core.data.SignedData;
 import convex.core.data.Vectors;
 import convex.core.data.prim.CVMLong;
 import convex.core.exceptions.MissingDataException;
+import convex.core.lang.RT;
 import convex.core.store.AStore;
 import convex.core.transactions.ATransaction;
 import convex.net.MessageType;
@@ -84,6 +85,35 @@ public class ConvexLocal extends Convex {
 		return makeMessageFuture(MessageType.QUERY,Vectors.of(makeID(),query,address));
 	}
 	
+	/**
+	 * Handler for all subscription Results pushed by the local Server
+	 */
+	private final Consumer<Result> subscriptionHandler = r -> {
+		deliverSubscription(RT.ensureLong(r.getID()).longValue(), r);
+	};
+
+	@Override
+	public long subscribe(ACell target, Address address, Consumer<Result> listener) {
+		long id = makeID();
+		subscriptions.put(id, listener);
+		queueLocal(MessageLocal.create(MessageType.SUBSCRIBE, Vectors.of(id, target, address), server, subscriptionHandler));
+		return id;
+	}
+
+	@Override
+	public void unsubscribe(long id) {
+		if (subscriptions.remove(id) == null) return;
+		queueLocal(MessageLocal.create(MessageType.UNSUBSCRIBE, Vectors.of(id), server, subscriptionHandler));
+	}
+
+	private void queueLocal(MessageLocal ml) {
+		try {
+			server.queueMessage(ml);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
 	private long idCounter=0;
 	
 	private long makeID() {
@@ -2,16 +2,20 @@ package convex.api;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
-import java.util.HashSet;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import convex.core.ErrorCodes;
 import convex.core.Result;
 import convex.core.State;
 import convex.core.crypto.AKeyPair;
@@ -21,13 +25,14 @@ import convex.core.data.Address;
 import convex.core.data.Hash;
 import convex.core.data.Ref;
 import convex.core.data.SignedData;
-import convex.core.exceptions.MissingDataException;
+import convex.core.data.Strings;
+import convex.core.data.Vectors;
 import convex.core.lang.RT;
 import convex.core.store.AStore;
-import convex.core.store.Stores;
 import convex.core.transactions.ATransaction;
 import convex.core.util.Utils;
 import convex.net.Connection;
+import convex.peer.Server;
 
 public class ConvexRemote extends Convex {
 	/**
@@ -37,6 +42,11 @@ public class ConvexRemote extends Convex {
 	
 	private static final Logger log = LoggerFactory.getLogger(ConvexRemote.class.getName());
 
+	/**
+	 * Acquisitions in progress on this connection
+	 */
+	private final CopyOnWriteArrayList<Acquiror<?>> acquisitions = new CopyOnWriteArrayList<>();
+
 	
 	/**
 	 * Gets the Internet address of the currently connected remote
@@ -77,6 +87,20 @@ public class ConvexRemote extends Convex {
 		return connection;
 	}
 	
+	/**
+	 * Opts in to DATA_BUNDLE messages on the connection to the Peer, so that
+	 * novelty is sent in bundles in both directions. Only use with Peers known to
+	 * support DATA_BUNDLE.
+	 *
+	 * @return true if bundles were enabled, false otherwise
+	 * @throws IOException If an IO error occurs
+	 */
+	public boolean enableBundles() throws IOException {
+		Connection conn = connection;
+		if ((conn == null) || conn.isClosed()) return false;
+		return conn.enableBundles();
+	}
+
 	/**
 	 * Checks if this Convex client instance has an open remote connection.
 	 *
@@ -120,59 +144,158 @@ public class ConvexRemote extends Convex {
 		}
 	}
 	
-	@Override
-	public synchronized CompletableFuture<Result> transact(SignedData<ATransaction> signed) throws IOException {
-		CompletableFuture<Result> cf;
-		long id = -1;
+	/**
+	 * Sends a request with a given message ID
+	 */
+	@FunctionalInterface
+	private interface RequestSender {
+		boolean send(Connection conn, long id) throws IOException;
+	}
 
-		synchronized (awaiting) {
-			// loop until request is queued
-			while (id < 0) {
-				id = connection.sendTransaction(signed);
-				if (id < 0) {
-					try {
-						Thread.sleep(10);
-					} catch (InterruptedException e) {
-						// Ignore
-					}
-				}
-			}
+	/**
+	 * Sends a request, registering for the result before sending so that no lock
+	 * is needed. If the send queue is full, waits for space rather than failing,
+	 * up to the timeout for this client.
+	 *
+	 * @param sender Function to send the request with an allocated ID
+	 * @return Future for the Result
+	 * @throws IOException If the connection is closed, or space is not available in time
+	 */
+	private CompletableFuture<Result> sendRequest(RequestSender sender) throws IOException {
+		Connection conn = connection;
+		if (conn == null) throw new IOException("Not connected");
+		long id = Connection.nextID();
+		CompletableFuture<Result> cf = awaitResult(id);
+		try {
+			awaitSend(conn, sender, id);
+		} catch (IOException | RuntimeException e) {
+			cancelAwait(id);
+			throw e;
+		}
+		return cf;
+	}
 
-			// Store future for completion by result message
-			cf = awaitResult(id);
+	/**
+	 * Sends a request with the given ID, waiting for space in the send queue if
+	 * necessary, up to the timeout for this client.
+	 */
+	private void awaitSend(Connection conn, RequestSender sender, long id) throws IOException {
+		try {
+			while (!sender.send(conn, id)) {
+				// wait for space in the send queue rather than polling
+				conn.whenWritable().get(timeout, TimeUnit.MILLISECONDS);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting to send request", e);
+		} catch (ExecutionException | TimeoutException e) {
+			throw new IOException("Unable to send request", e);
 		}
+	}
 
-		log.debug("Sent transaction with message ID: {} awaiting count = {}", id, awaiting.size());
+	@Override
+	public CompletableFuture<Result> transact(SignedData<ATransaction> signed) throws IOException {
+		CompletableFuture<Result> cf = sendRequest((c, id) -> c.sendTransaction(id, signed));
+		log.debug("Sent transaction, awaiting count = {}", getAwaitingCount());
 		return cf;
 	}
 	
 	@Override
 	public CompletableFuture<Result> query(ACell query, Address address) throws IOException {
-		synchronized (awaiting) {
-			long id = connection.sendQuery(query, address);
-			if (id < 0) {
-				throw new IOException("Failed to send query due to full buffer");
+		return sendRequest((c, id) -> c.sendQuery(id, query, address));
+	}
+	
+	@Override
+	public List<CompletableFuture<Result>> transactSignedBatch(List<SignedData<ATransaction>> signed) throws IOException {
+		Connection conn = connection;
+		if (conn == null) throw new IOException("Not connected");
+		int n = signed.size();
+		ArrayList<CompletableFuture<Result>> results = new ArrayList<>(n);
+		for (int start = 0; start < n; start += Server.MAX_BATCH_SIZE) {
+			int end = Math.min(n, start + Server.MAX_BATCH_SIZE);
+			int count = end - start;
+			AVector<SignedData<ATransaction>> batch = Vectors.create(signed.subList(start, end));
+
+			// transaction i in the batch gets message ID base+i
+			long base = Connection.nextIDs(count);
+			for (int i = 0; i < count; i++) {
+				results.add(awaitResult(base + i));
 			}
+			try {
+				awaitSend(conn, (c, id) -> c.sendTransactionBatch(id, batch), base);
+			} catch (IOException | RuntimeException e) {
+				for (int i = 0; i < count; i++) {
+					cancelAwait(base + i);
+				}
+				throw e;
+			}
+		}
+		log.debug("Sent batch of {} transactions, awaiting count = {}", n, getAwaitingCount());
+		return results;
+	}
 
-			return awaitResult(id);
+	@Override
+	public List<CompletableFuture<Result>> queryBatch(List<ACell> queries, Address address) throws IOException {
+		int n = queries.size();
+		ArrayList<CompletableFuture<Result>> results = new ArrayList<>(n);
+		for (int start = 0; start < n; start += Server.MAX_BATCH_SIZE) {
+			int end = Math.min(n, start + Server.MAX_BATCH_SIZE);
+			AVector<ACell> batch = Vectors.create(queries.subList(start, end));
+			CompletableFuture<Result> cf = sendRequest((c, id) -> c.sendQueryBatch(id, batch, address));
+			for (int i = 0; i < (end - start); i++) {
+				final int pos = i;
+				results.add(cf.thenApply(r -> batchResult(r, pos)));
+			}
 		}
+		return results;
 	}
-	
+
+	/**
+	 * Extracts the Result for a single item from the Result of a batch
+	 */
+	private static Result batchResult(Result r, int pos) {
+		// an error for the whole batch applies to every item
+		if (r.isError()) return r;
+		ACell v = r.getValue();
+		if (v instanceof AVector) {
+			AVector<?> rs = (AVector<?>) v;
+			if (pos < rs.count()) {
+				ACell item = rs.get(pos);
+				if (item instanceof Result) return (Result) item;
+			}
+		}
+		return Result.create(RT.ensureLong(r.getID()), Strings.create("Bad batch result"), ErrorCodes.FORMAT);
+	}
+
+	@Override
+	public long subscribe(ACell target, Address address, Consumer<Result> listener) throws IOException {
+		Connection conn = connection;
+		if (conn == null) throw new IOException("Not connected");
+		long id = Connection.nextID();
+		// register before sending, since the initial value may arrive quickly
+		subscriptions.put(id, listener);
+		try {
+			awaitSend(conn, (c, i) -> c.sendSubscribe(i, target, address), id);
+		} catch (IOException | RuntimeException e) {
+			subscriptions.remove(id);
+			throw e;
+		}
+		return id;
+	}
+
+	@Override
+	public void unsubscribe(long id) throws IOException {
+		if (subscriptions.remove(id) == null) return;
+		Connection conn = connection;
+		if ((conn == null) || conn.isClosed()) return;
+		awaitSend(conn, (c, i) -> c.sendUnsubscribe(i), id);
+	}
+
 	@Override
 	public CompletableFuture<Result> requestStatus() {
 		try {
-			synchronized (awaiting) {
-				long id = connection.sendStatusRequest();
-				if (id < 0) {
-					return CompletableFuture.failedFuture(new IOException("Failed to send status request due to full buffer"));
-				}
-	
-				// TODO: ensure status is fully loaded
-				// Store future for completion by result message
-				CompletableFuture<Result> cf = awaitResult(id);
-	
-				return cf;
-			}
+			// TODO: ensure status is fully loaded
+			return sendRequest((c, id) -> c.sendStatusRequest(id));
 		} catch (Throwable t) {
 			return CompletableFuture.failedFuture(t);
 		}
@@ -180,81 +303,39 @@ public class ConvexRemote extends Convex {
 	
 	@Override
 	public CompletableFuture<Result> requestChallenge(SignedData<ACell> data) throws IOException {
-		synchronized (awaiting) {
-			long id = connection.sendChallenge(data);
-			if (id < 0) {
-				// TODO: too fragile?
-				throw new IOException("Failed to send challenge due to full buffer");
-			}
-
-			// Store future for completion by result message
-			return awaitResult(id);
-		}
+		// registers for the result before sending, and cancels if the send fails
+		return sendRequest((c, id) -> c.sendChallenge(id, data));
 	}
 	
 	@Override
 	public <T extends ACell> CompletableFuture<T> acquire(Hash hash, AStore store) {
-		CompletableFuture<T> f = new CompletableFuture<T>();
-		new Thread(new Runnable() {
-			@Override
-			public void run() {
-				Stores.setCurrent(store); // use store for calling thread
-				try {
-					Ref<T> ref = store.refForHash(hash);
-					HashSet<Hash> missingSet = new HashSet<>();
+		Acquiror<T> acquiror = startAcquire(hash, store);
+		return acquiror.getFuture();
+	}
 
-					// Loop until future is complete or cancelled
-					while (!f.isDone()) {
-						missingSet.clear();
+	/**
+	 * Starts acquisition of a complete persistent data structure for the given hash
+	 * from the connected Peer. The returned Acquiror can be used to monitor progress.
+	 *
+	 * @param <T>   Type of cell being acquired
+	 * @param hash  Hash of value to acquire
+	 * @param store Store to acquire the persistent data to
+	 * @return Acquiror for the data being acquired
+	 */
+	public <T extends ACell> Acquiror<T> startAcquire(Hash hash, AStore store) {
+		Acquiror<T> acquiror = Acquiror.create(hash, store, connection);
+		acquisitions.add(acquiror);
+		acquiror.getFuture().whenComplete((v, e) -> acquisitions.remove(acquiror));
+		return acquiror.start();
+	}
 
-						if (ref == null) {
-							missingSet.add(hash);
-						} else {
-							if (ref.getStatus() >= Ref.PERSISTED) {
-								// we have everything!
-								f.complete(ref.getValue());
-								return;
-							}
-							ref.findMissing(missingSet);
-						}
-						for (Hash h : missingSet) {
-							// send missing data requests until we fill pipeline
-							log.debug("Request missing data: {}", h);
-							boolean sent = connection.sendMissingData(h);
-							if (!sent) {
-								log.debug("Send Queue full!");
-								break;
-							}
-						}
-						// if too low, can send multiple requests, and then block the peer
-						Thread.sleep(100);
-						ref = store.refForHash(hash);
-						if (ref != null) {
-							if (ref.getStatus() >= Ref.PERSISTED) {
-								// we have everything!
-								f.complete(ref.getValue());
-								return;
-							}
-							// maybe complete, but not sure
-							try {
-								ref = ref.persist();
-								f.complete(ref.getValue());
-							} catch (MissingDataException e) {
-								Hash missing = e.getMissingHash();
-								log.debug("Still missing: {}", missing);
-								connection.sendMissingData(missing);
-							}
-						}
-					}
-				} catch (Throwable t) {
-					// catch any errors, probably IO?
-					f.completeExceptionally(t);
-				}
-			}
-		}).start();
-		return f;
+	@Override
+	protected void handleDataReceived(Ref<?> ref) {
+		for (Acquiror<?> acquiror : acquisitions) {
+			acquiror.onData(ref);
+		}
 	}
-	
+
 	/**
 	 * Disconnects the client from the network, closing the underlying connection.
 	 */
@@ -264,7 +345,7 @@ public class ConvexRemote extends Convex {
 			c.close();
 		}
 		connection = null;
-		awaiting.clear();
+		cancelAllAwaits();
 	}
 
 	/**
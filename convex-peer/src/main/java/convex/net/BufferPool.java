@@ -0,0 +1,167 @@
+package convex.net;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import convex.core.data.Format;
+
+/**
+ * Pool of fixed size direct ByteBuffers, shared between Connections.
+ *
+ * Connections acquire buffers only while a message is being received or sent, so
+ * idle Connections hold no buffer memory. Released buffers are retained for reuse
+ * up to a maximum count, beyond which they are left for garbage collection.
+ *
+ * Buffers must not be referenced after release. In particular, decoded cells must
+ * never wrap pooled memory, since cells retain their encodings indefinitely.
+ */
+public class BufferPool {
+
+	/**
+	 * Size of buffers for single message frames, including message header
+	 */
+	public static final int FRAME_BUFFER_SIZE = Format.LIMIT_ENCODING_LENGTH + 20;
+
+	/**
+	 * Shared pool of buffers for single message frames
+	 */
+	public static final BufferPool FRAMES = create(FRAME_BUFFER_SIZE, 4096);
+
+	/**
+	 * Size of buffers for small outgoing message frames, including message header
+	 */
+	public static final int SMALL_FRAME_BUFFER_SIZE = 512;
+
+	/**
+	 * Shared pool of buffers for small outgoing message frames, so that queued
+	 * small messages don't each hold a full size frame buffer
+	 */
+	public static final BufferPool SMALL_FRAMES = create(SMALL_FRAME_BUFFER_SIZE, 16384);
+
+	private final int bufferSize;
+	private final int maxPooled;
+
+	private final ConcurrentLinkedQueue<ByteBuffer> free = new ConcurrentLinkedQueue<>();
+	private final AtomicInteger pooledCount = new AtomicInteger();
+	private final AtomicInteger inUseCount = new AtomicInteger();
+	private final AtomicLong allocatedCount = new AtomicLong();
+
+	private BufferPool(int bufferSize, int maxPooled) {
+		this.bufferSize = bufferSize;
+		this.maxPooled = maxPooled;
+	}
+
+	/**
+	 * Creates a BufferPool
+	 * @param bufferSize Size of each buffer in bytes
+	 * @param maxPooled Maximum number of free buffers retained for reuse
+	 * @return New BufferPool instance
+	 */
+	public static BufferPool create(int bufferSize, int maxPooled) {
+		return new BufferPool(bufferSize, maxPooled);
+	}
+
+	/**
+	 * Acquires a cleared buffer from this pool, allocating a new one if none are free
+	 * @return Buffer ready for writing
+	 */
+	public ByteBuffer acquire() {
+		ByteBuffer b = free.poll();
+		if (b == null) {
+			b = ByteBuffer.allocateDirect(bufferSize);
+			allocatedCount.incrementAndGet();
+		} else {
+			pooledCount.decrementAndGet();
+			b.clear();
+		}
+		inUseCount.incrementAndGet();
+		return b;
+	}
+
+	/**
+	 * Acquires a cleared frame buffer large enough for a frame of the given size,
+	 * from the smallest suitable frame pool
+	 * @param frameSize Size of frame in bytes, including message header
+	 * @return Buffer ready for writing
+	 */
+	public static ByteBuffer acquireFrame(int frameSize) {
+		if (frameSize <= SMALL_FRAME_BUFFER_SIZE) return SMALL_FRAMES.acquire();
+		return FRAMES.acquire();
+	}
+
+	/**
+	 * Releases a buffer acquired with acquireFrame back to its pool. The caller must not
+	 * use the buffer afterwards.
+	 * @param b Buffer to release. Ignored if null or not from a frame pool.
+	 */
+	public static void releaseFrame(ByteBuffer b) {
+		if (b == null) return;
+		if (b.capacity() == SMALL_FRAME_BUFFER_SIZE) {
+			SMALL_FRAMES.release(b);
+		} else {
+			FRAMES.release(b);
+		}
+	}
+
+	/**
+	 * Releases a buffer back to this pool. The caller must not use the buffer
+	 * afterwards.
+	 *
+	 * @param b Buffer to release. Ignored if null or not from this pool.
+	 */
+	public void release(ByteBuffer b) {
+		if ((b == null) || (b.capacity() != bufferSize) || !b.isDirect()) return;
+		inUseCount.decrementAndGet();
+		if (pooledCount.get() < maxPooled) {
+			pooledCount.incrementAndGet();
+			free.add(b);
+		}
+	}
+
+	/**
+	 * Gets the size of buffers in this pool
+	 * @return Buffer size in bytes
+	 */
+	public int getBufferSize() {
+		return bufferSize;
+	}
+
+	/**
+	 * Gets the number of buffers currently acquired and not yet released
+	 * @return In use count
+	 */
+	public int getInUseCount() {
+		return inUseCount.get();
+	}
+
+	/**
+	 * Gets the number of free buffers retained for reuse
+	 * @return Pooled count
+	 */
+	public int getPooledCount() {
+		return pooledCount.get();
+	}
+
+	/**
+	 * Gets the total number of buffers allocated by this pool
+	 * @return Allocated count
+	 */
+	public long getAllocatedCount() {
+		return allocatedCount.get();
+	}
+
+	/**
+	 * Gets the memory currently held by this pool, in use or free
+	 * @return Memory size in bytes
+	 */
+	public long getMemorySize() {
+		return ((long) bufferSize) * (inUseCount.get() + pooledCount.get());
+	}
+
+	@Override
+	public String toString() {
+		return "BufferPool[size=" + bufferSize + ", inUse=" + getInUseCount() + ", pooled=" + getPooledCount() + "]";
+	}
+}
@@ -12,10 +12,15 @@ import java.nio.channels.ClosedChannelException;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Consumer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -26,6 +31,7 @@ import convex.core.data.ACell;
 import convex.core.data.AccountKey;
 import convex.core.data.AVector;
 import convex.core.data.Address;
+import convex.core.data.Blob;
 import convex.core.data.Format;
 import convex.core.data.Hash;
 import convex.core.data.IRefFunction;
@@ -66,7 +72,7 @@ public class Connection {
 	/**
 	 * Counter for IDs of all messages sent from this JVM
 	 */
-	private static long idCounter = 0;
+	private static final AtomicLong idCounter = new AtomicLong();
 
 	/**
 	 * Store to use for this connection. Required for responding to incoming
@@ -81,22 +87,56 @@ public class Connection {
 
 	private static final Logger log = LoggerFactory.getLogger(Connection.class.getName());
 
+	private final MessageReceiver receiver;
+	private final MessageSender sender;
+
 	/**
-	 * Pre-allocated direct buffer for message sending TODO: is one per connection
-	 * OK? Users should synchronise on this briefly while building message.
+	 * Selector that owns the write state of this Connection
 	 */
-	private final ByteBuffer frameBuf = ByteBuffer.allocateDirect(Format.LIMIT_ENCODING_LENGTH + 20);
+	private final Selector ownerSelector;
 
-	private final MessageReceiver receiver;
-	private final MessageSender sender;
+	/**
+	 * Default maximum size in bytes of the body of a DATA_BUNDLE message. This is
+	 * the largest body that fits in a single message frame.
+	 */
+	public static final int DEFAULT_MAX_BUNDLE_SIZE = Format.LIMIT_ENCODING_LENGTH - 1;
+
+	/**
+	 * Maximum size in bytes of DATA_BUNDLE message bodies sent on this
+	 * Connection. Zero disables bundling, sending one DATA message per cell.
+	 *
+	 * Bundling is off until one side opts in with enableBundles, since older peers
+	 * can't decode DATA_BUNDLE. The other side then enables bundling in return when
+	 * it receives the announcement, see enableRemoteBundles.
+	 */
+	private volatile int maxBundleSize = 0;
+
+	/**
+	 * Local limit on the size of DATA_BUNDLE message bodies, applied when bundling
+	 * is enabled. Zero prevents bundling on this Connection.
+	 */
+	private volatile int bundleLimit = DEFAULT_MAX_BUNDLE_SIZE;
+
+	/**
+	 * Maximum number of asynchronous sends waiting for space in the send queue.
+	 * A remote that does not read fast enough is disconnected once this is
+	 * exceeded, rather than accumulating unbounded pending messages.
+	 */
+	public static final int MAX_PENDING_ASYNC_SENDS = 1024;
+
+	/**
+	 * Number of asynchronous sends currently waiting for space in the send queue
+	 */
+	private final AtomicInteger pendingAsyncSends = new AtomicInteger();
 
 	private Connection(ByteChannel clientChannel, Consumer<Message> receiveAction, AStore store,
-			AccountKey trustedPeerKey) {
+			AccountKey trustedPeerKey, Selector ownerSelector) {
 		this.channel = clientChannel;
 		receiver = new MessageReceiver(receiveAction, this);
 		sender = new MessageSender(clientChannel);
 		this.store = store;
 		this.trustedPeerKey = trustedPeerKey;
+		this.ownerSelector = ownerSelector;
 	}
 
 	/**
@@ -116,7 +156,26 @@ public class Connection {
 		// Needed in case server has incoming connections but no outbound?
 		ensureSelectorLoop(); 
 	
-		return new Connection(channel, receiveAction, store, trustedPeerKey);
+		return new Connection(channel, receiveAction, store, trustedPeerKey, selector);
+	}
+
+	/**
+	 * Create a Connection using an existing channel, owned by a given Selector. The
+	 * Selector's thread is responsible for writes to the channel, and the channel
+	 * must already be registered with it.
+	 *
+	 * @param channel        Socket channel to wrap
+	 * @param receiveAction  Consumer to be called when a Message is received
+	 * @param store          Store to use when receiving messages.
+	 * @param trustedPeerKey Trusted peer account key if this is a trusted
+	 *                       connection, if not then null
+	 * @param ownerSelector  Selector owning this Connection
+	 * @return New Connection instance
+	 * @throws IOException If IO error occurs
+	 */
+	public static Connection create(SocketChannel channel, Consumer<Message> receiveAction, AStore store,
+			AccountKey trustedPeerKey, Selector ownerSelector) throws IOException {
+		return new Connection(channel, receiveAction, store, trustedPeerKey, ownerSelector);
 	}
 	
 	/**
@@ -124,7 +183,27 @@ public class Connection {
 	 * @return Message ID counter for last message sent
 	 */
 	public static long getCounter() {
-		return idCounter;
+		return idCounter.get();
+	}
+
+	/**
+	 * Allocates a new message ID, unique within this JVM. Lock free, so may be
+	 * called concurrently by any number of threads.
+	 *
+	 * @return New message ID, greater than zero
+	 */
+	public static long nextID() {
+		return idCounter.incrementAndGet();
+	}
+
+	/**
+	 * Allocates a contiguous range of message IDs, as used by batch messages.
+	 *
+	 * @param n Number of IDs to allocate
+	 * @return First message ID in the range
+	 */
+	public static long nextIDs(int n) {
+		return idCounter.getAndAdd(n) + 1;
 	}
 
 	/**
@@ -287,6 +366,18 @@ public class Connection {
 		return sendObject(MessageType.MISSING_DATA, value);
 	}
 
+	/**
+	 * Sends a MISSING_DATA Message requesting multiple hashes on this connection.
+	 *
+	 * @param hashes Vector of hashes requested
+	 * @return true if buffered successfully, false otherwise (not sent)
+	 * @throws IOException If IO error occurs
+	 */
+	public boolean sendMissingData(AVector<Hash> hashes) throws IOException {
+		log.trace("Requested missing data for {} hashes with store {}", hashes.count(), Stores.current());
+		return sendObject(MessageType.MISSING_DATA, hashes);
+	}
+
 	/**
 	 * Sends a QUERY Message on this connection with a null Address
 	 *
@@ -307,16 +398,27 @@ public class Connection {
 	 * @throws IOException If IO error occurs
 	 */
 	public long sendQuery(ACell form, Address address) throws IOException {
+		long id = nextID();
+		return sendQuery(id, form, address) ? id : -1;
+	}
+
+	/**
+	 * Sends a QUERY Message on this connection with a pre-allocated message ID.
+	 *
+	 * @param id      Message ID, as allocated by {@link #nextID()}
+	 * @param form    A data object representing the query form
+	 * @param address The address with which to run the query, which may be null
+	 * @return true if queued successfully, false if send buffer is full.
+	 * @throws IOException If IO error occurs
+	 */
+	public boolean sendQuery(long id, ACell form, Address address) throws IOException {
 		AStore temp = Stores.current();
 		try {
-			long id = ++idCounter;
 			AVector<ACell> v = Vectors.of(id, form, address);
-			boolean sent = sendObject(MessageType.QUERY, v);
-			return sent ? id : -1;
+			return sendObject(MessageType.QUERY, v);
 		} finally {
 			Stores.setCurrent(temp);
 		}
-
 	}
 
 	/**
@@ -326,12 +428,24 @@ public class Connection {
 	 * @throws IOException If IO error occurs
 	 */
 	public long sendStatusRequest() throws IOException {
+		long id = nextID();
+		sendStatusRequest(id);
+		return id;
+	}
+
+	/**
+	 * Sends a STATUS Request Message on this connection with a pre-allocated
+	 * message ID.
+	 *
+	 * @param id Message ID, as allocated by {@link #nextID()}
+	 * @return true if queued successfully, false if send buffer is full.
+	 * @throws IOException If IO error occurs
+	 */
+	public boolean sendStatusRequest(long id) throws IOException {
 		AStore temp = Stores.current();
 		try {
-			long id = ++idCounter;
 			CVMLong idPayload = CVMLong.create(id);
-			sendObject(MessageType.STATUS, idPayload);
-			return id;
+			return sendObject(MessageType.STATUS, idPayload);
 		} finally {
 			Stores.setCurrent(temp);
 		}
@@ -348,11 +462,23 @@ public class Connection {
 	 *
 	 */
 	public long sendChallenge(SignedData<ACell> challenge) throws IOException {
+		long id = nextID();
+		return sendChallenge(id, challenge) ? id : -1;
+	}
+
+	/**
+	 * Sends a CHALLENGE Request Message on this connection with a pre-allocated
+	 * message ID.
+	 *
+	 * @param id        Message ID, as allocated by {@link #nextID()}
+	 * @param challenge Challenge a Vector that has been signed by the sending peer.
+	 * @return true if queued successfully, false if send buffer is full.
+	 * @throws IOException If IO error occurs
+	 */
+	public boolean sendChallenge(long id, SignedData<ACell> challenge) throws IOException {
 		AStore temp = Stores.current();
 		try {
-			long id = ++idCounter;
-			boolean sent = sendObject(MessageType.CHALLENGE, challenge);
-			return (sent) ? id : -1;
+			return sendObject(MessageType.CHALLENGE, challenge);
 		} finally {
 			Stores.setCurrent(temp);
 		}
@@ -370,7 +496,7 @@ public class Connection {
 	public long sendResponse(SignedData<ACell> response) throws IOException {
 		AStore temp = Stores.current();
 		try {
-			long id = ++idCounter;
+			long id = nextID();
 			boolean sent = sendObject(MessageType.RESPONSE, response);
 			return (sent) ? id : -1;
 		} finally {
@@ -392,18 +518,99 @@ public class Connection {
 	 * @throws IOException In the event of an IO error, e.g. closed connection
 	 */
 	public long sendTransaction(SignedData<ATransaction> signed) throws IOException {
+		long id = nextID();
+		return sendTransaction(id, signed) ? id : -1;
+	}
+
+	/**
+	 * Sends a transaction with a pre-allocated message ID. Allows the caller to
+	 * register interest in the result before the transaction is sent.
+	 *
+	 * @param id     Message ID, as allocated by {@link #nextID()}
+	 * @param signed Signed transaction
+	 * @return true if queued successfully, false if send buffer is full.
+	 * @throws IOException In the event of an IO error, e.g. closed connection
+	 */
+	public boolean sendTransaction(long id, SignedData<ATransaction> signed) throws IOException {
 		AStore temp = Stores.current();
 		try {
 			Stores.setCurrent(store);
-			long id = ++idCounter;
 			AVector<ACell> v = Vectors.of(id, signed);
-			boolean sent = sendObject(MessageType.TRANSACT, v);
-			return (sent) ? id : -1;
+			return sendObject(MessageType.TRANSACT, v);
+		} finally {
+			Stores.setCurrent(temp);
+		}
+	}
+
+	/**
+	 * Sends a batch of transactions in a single TRANSACT_BATCH message. The
+	 * transaction at position i in the batch is assigned the message ID id+i.
+	 *
+	 * @param id     First message ID, as allocated by {@link #nextIDs(int)}
+	 * @param signed Vector of signed transactions
+	 * @return true if queued successfully, false if send buffer is full.
+	 * @throws IOException In the event of an IO error, e.g. closed connection
+	 */
+	public boolean sendTransactionBatch(long id, AVector<SignedData<ATransaction>> signed) throws IOException {
+		AStore temp = Stores.current();
+		try {
+			Stores.setCurrent(store);
+			AVector<ACell> v = Vectors.of(id, signed);
+			return sendObject(MessageType.TRANSACT_BATCH, v);
+		} finally {
+			Stores.setCurrent(temp);
+		}
+	}
+
+	/**
+	 * Sends a batch of queries in a single QUERY_BATCH message.
+	 *
+	 * @param id      Message ID, as allocated by {@link #nextID()}
+	 * @param forms   Vector of query forms
+	 * @param address The address with which to run the queries, which may be null
+	 * @return true if queued successfully, false if send buffer is full.
+	 * @throws IOException If IO error occurs
+	 */
+	public boolean sendQueryBatch(long id, AVector<ACell> forms, Address address) throws IOException {
+		AStore temp = Stores.current();
+		try {
+			AVector<ACell> v = Vectors.of(id, forms, address);
+			return sendObject(MessageType.QUERY_BATCH, v);
 		} finally {
 			Stores.setCurrent(temp);
 		}
 	}
 
+	/**
+	 * Sends a SUBSCRIBE Message on this connection.
+	 *
+	 * @param id      ID for the subscription
+	 * @param target  Address, Symbol or query form to subscribe to
+	 * @param address Address for Symbol lookup and query execution. May be null
+	 * @return true if message queued successfully, false otherwise
+	 * @throws IOException If IO error occurs
+	 */
+	public boolean sendSubscribe(long id, ACell target, Address address) throws IOException {
+		AStore temp = Stores.current();
+		try {
+			AVector<ACell> v = Vectors.of(id, target, address);
+			return sendObject(MessageType.SUBSCRIBE, v);
+		} finally {
+			Stores.setCurrent(temp);
+		}
+	}
+
+	/**
+	 * Sends an UNSUBSCRIBE Message on this connection.
+	 *
+	 * @param id ID of the subscription to cancel
+	 * @return true if message queued successfully, false otherwise
+	 * @throws IOException If IO error occurs
+	 */
+	public boolean sendUnsubscribe(long id) throws IOException {
+		return sendObject(MessageType.UNSUBSCRIBE, Vectors.of(id));
+	}
+
 	/**
 	 * Sends a RESULT Message on this connection with no error code (i.e. a success)
 	 *
@@ -427,18 +634,24 @@ public class Connection {
 	 */
 	public boolean sendResult(CVMLong id, ACell value, ACell errorCode) throws IOException {
 		Result result = Result.create(id, value, errorCode);
-		return sendObject(MessageType.RESULT, result);
+		return sendResult(result);
 	}
 
 	/**
 	 * Sends a RESULT Message on this connection.
 	 *
+	 * Results are not dropped if the send queue is full, since the recipient
+	 * would otherwise wait for them until timeout. Instead they are queued as soon
+	 * as space becomes available. If too many sends are already waiting, the
+	 * Connection is closed.
+	 *
 	 * @param result Result data structure
 	 * @return true if message queued successfully, false otherwise
 	 * @throws IOException If IO error occurs
 	 */
 	public boolean sendResult(Result result) throws IOException {
-		return sendObject(MessageType.RESULT, result);
+		CompletableFuture<Void> sent = sendObjectAsync(MessageType.RESULT, result);
+		return !sent.isCompletedExceptionally();
 	}
 
 	private IRefFunction sender() {
@@ -493,15 +706,7 @@ public class Connection {
 		// data messages using the current thread store
 		// We pre-send any novelty to the destination
 		ACell sendVal = payload;
-		ACell.createPersisted(sendVal, r -> {
-			try {
-				ACell data = r.getValue();
-				if (data==sendVal) return; // skip sending top payload
-				if (!Format.isEmbedded(data)) sendData(data);
-			} catch (IOException e) {
-				throw Utils.sneakyThrow(e);
-			}
-		});
+		sendNovelty(sendVal);
 
 		ByteBuffer buf = Format.encodedBuffer(sendVal);
 		if (log.isTraceEnabled()) {
@@ -512,6 +717,155 @@ public class Connection {
 		return sent;
 	}
 
+	/**
+	 * Persists a payload, sending any novelty to the destination ahead of the
+	 * payload itself. Novelty is grouped into DATA_BUNDLE messages where possible,
+	 * in the child-first order it is discovered.
+	 *
+	 * @param payload Payload value to be sent
+	 * @throws IOException If IO error occurs
+	 */
+	private void sendNovelty(ACell payload) throws IOException {
+		int limit = maxBundleSize;
+		ArrayList<ACell> bundle = new ArrayList<>();
+		int[] bundleSize = new int[1];
+		int[] failed = new int[1];
+		ACell.createPersisted(payload, r -> {
+			try {
+				ACell data = r.getValue();
+				if ((data==payload)||data.equals(payload)) return; // skip sending top payload, which may be a persisted copy
+				if (Format.isEmbedded(data)) return;
+				if (limit <= 0) {
+					if (!sendData(data)) failed[0]++;
+					return;
+				}
+				int len = (int) data.getEncodingLength();
+				int size = Format.getVLCLength(len) + len;
+				if ((bundleSize[0] + size) > limit) {
+					failed[0] += sendBundle(bundle);
+					bundleSize[0] = 0;
+				}
+				bundle.add(data);
+				bundleSize[0] += size;
+			} catch (IOException e) {
+				throw Utils.sneakyThrow(e);
+			}
+		});
+		failed[0] += sendBundle(bundle);
+		if (failed[0] > 0) {
+			// cells are already marked as announced, so the remote must request them as MISSING_DATA
+			log.debug("Failed to send {} novelty cells to {}", failed[0], getRemoteAddress());
+		}
+	}
+
+	/**
+	 * Sends and clears a bundle of data cells. A single cell is sent as an
+	 * ordinary DATA message. If the bundle can't be queued, falls back to sending
+	 * cells individually, since smaller frames may still fit in the send queue.
+	 *
+	 * @param cells Cells to send, in child-first order
+	 * @return Number of cells that could not be sent
+	 * @throws IOException If IO error occurs
+	 */
+	private int sendBundle(ArrayList<ACell> cells) throws IOException {
+		int n = cells.size();
+		if (n == 0) return 0;
+		int failed = 0;
+		if ((n == 1) || !sendDataBundle(cells)) {
+			for (ACell c : cells) {
+				if (!sendData(c)) failed++;
+			}
+		}
+		cells.clear();
+		return failed;
+	}
+
+	/**
+	 * Sends a DATA_BUNDLE Message containing multiple cells on this connection.
+	 * Total size of the bundle must not exceed the maximum frame size.
+	 *
+	 * @param cells Cells to send, in child-first order
+	 * @return true if buffered successfully, false otherwise (not sent)
+	 * @throws IOException If IO error occurs
+	 */
+	public boolean sendDataBundle(List<ACell> cells) throws IOException {
+		int size = 0;
+		for (ACell c : cells) {
+			int len = (int) c.getEncodingLength();
+			size += Format.getVLCLength(len) + len;
+		}
+		ByteBuffer buf = ByteBuffer.allocate(size);
+		for (ACell c : cells) {
+			Blob enc = c.getEncoding();
+			Format.writeVLCLong(buf, enc.count());
+			enc.writeToBuffer(buf);
+		}
+		buf.flip();
+		log.trace("Sending data bundle of {} cells", cells.size());
+		return sendBuffer(MessageType.DATA_BUNDLE, buf);
+	}
+
+	/**
+	 * Sets the maximum size of DATA_BUNDLE message bodies sent on this
+	 * Connection. Use this when the remote side is known to support DATA_BUNDLE,
+	 * setting the smaller of the local and remote limits. Always capped at the
+	 * largest body that fits in a single message frame. Also sets the bundle
+	 * limit, so the size is no longer changed by enableRemoteBundles.
+	 *
+	 * @param size Maximum bundle size in bytes, or zero to disable bundling
+	 */
+	public void setMaxBundleSize(int size) {
+		size = Math.max(0, Math.min(size, DEFAULT_MAX_BUNDLE_SIZE));
+		bundleLimit = size;
+		maxBundleSize = size;
+	}
+
+	/**
+	 * Sets the local limit on DATA_BUNDLE message bodies for this Connection,
+	 * without enabling bundling. Reduces the current bundle size if necessary.
+	 *
+	 * @param size Bundle limit in bytes, or zero to prevent bundling
+	 */
+	public void setBundleLimit(int size) {
+		size = Math.max(0, Math.min(size, DEFAULT_MAX_BUNDLE_SIZE));
+		bundleLimit = size;
+		if (maxBundleSize > size) maxBundleSize = size;
+	}
+
+	/**
+	 * Opts in to DATA_BUNDLE messages on this Connection, up to the bundle limit.
+	 * Announces support to the remote with an empty DATA_BUNDLE, so that it can
+	 * send bundles in return. Only use if the remote is known to support
+	 * DATA_BUNDLE, since older peers can't decode it.
+	 *
+	 * @return true if bundling was enabled and announced, false otherwise
+	 * @throws IOException If IO error occurs
+	 */
+	public boolean enableBundles() throws IOException {
+		int limit = bundleLimit;
+		if (limit <= 0) return false;
+		maxBundleSize = limit;
+		return sendBuffer(MessageType.DATA_BUNDLE, ByteBuffer.allocate(0));
+	}
+
+	/**
+	 * Records that the remote side supports DATA_BUNDLE messages, enabling bundling
+	 * on this Connection up to the bundle limit. Called when a DATA_BUNDLE is
+	 * received, which only peers that support bundles can send.
+	 */
+	public void enableRemoteBundles() {
+		maxBundleSize = bundleLimit;
+	}
+
+	/**
+	 * Gets the maximum size of DATA_BUNDLE message bodies sent on this Connection
+	 *
+	 * @return Maximum bundle size in bytes, zero if bundling is disabled
+	 */
+	public int getMaxBundleSize() {
+		return maxBundleSize;
+	}
+
 	/**
 	 * Sends a message with the given message type and data buffer.
 	 *
@@ -521,64 +875,159 @@ public class Connection {
 	 * @throws IOException
 	 */
 	private boolean sendBuffer(MessageType type, ByteBuffer buf) throws IOException {
+		return sendBuffer(type, buf, null);
+	}
+
+	/**
+	 * Sends a message with the given message type and data buffer, completing the
+	 * given future once the message is written to the channel.
+	 *
+	 * The frame is queued without copying. The selector is only woken, and write
+	 * interest only registered, when the send queue changes from empty to non-empty:
+	 * while frames are already queued the selector thread will pick up new frames
+	 * in the same gathering write.
+	 *
+	 * @param type MessageType value
+	 * @param buf  Buffer containing raw wire data for the message
+	 * @param done Future to complete when the message is written, or null
+	 * @return true if message queued, false otherwise
+	 * @throws IOException
+	 */
+	private boolean sendBuffer(MessageType type, ByteBuffer buf, CompletableFuture<Void> done) throws IOException {
 		int dataLength = buf.remaining();
 
 		// Total length field is message code + encoded object length
 		int messageLength = dataLength + 1;
-		boolean sent;
-		int headerLength;
-
-		// synchronize in case we are sending messages from different threads
-		// This is OK but need to avoid corrupted messages.
-		synchronized (frameBuf) {
-			// ensure frameBuf is clear and ready for writing
-			frameBuf.clear();
-
-			// write message header
-			Format.writeMessageLength(frameBuf, messageLength);
-			frameBuf.put(type.getMessageCode());
-			headerLength = frameBuf.position();
-
-			// now write message
-			frameBuf.put(buf);
-			frameBuf.flip(); // ensure frameBuf is ready to write to channel
 
-			sent = sender.bufferMessage(frameBuf);
-		}
-
-		if (sent) {
-			if (channel instanceof SocketChannel) {
-				SocketChannel chan = (SocketChannel) channel;
-				// register interest in both reads and writes
+		// Build frame in a pooled buffer, so concurrent senders don't conflict
+		// Sized by message length, so small queued messages don't hold full size buffers
+		ByteBuffer frameBuf = BufferPool.acquireFrame(messageLength + Format.MAX_VLC_LONG_LENGTH);
+		Format.writeMessageLength(frameBuf, messageLength);
+		frameBuf.put(type.getMessageCode());
+		frameBuf.put(buf);
+		frameBuf.flip(); // ensure frameBuf is ready to write to channel
+
+		int queued;
+		synchronized (sender) {
+			queued = sender.offer(frameBuf, done);
+			if ((queued > 0) && (channel instanceof SocketChannel)) {
+				// queue was empty, so register interest in writes
 				try {
-					chan.register(selector, SelectionKey.OP_WRITE | SelectionKey.OP_READ, this);
+					changeInterest(SelectionKey.OP_WRITE, 0);
 				} catch (CancelledKeyException e) {
 					// ignore. Must have got cancelled elsewhere?
 				}
-				// wake up selector
-				selector.wakeup();
 			}
+		}
 
-			if (log.isTraceEnabled()) {
-				log.trace("Sent message " + type + " of length: " + dataLength + " Connection ID: "
-						+ System.identityHashCode(this));
-			}
-		} else {
+		if (queued < 0) {
+			// sender did not take ownership of the frame
+			BufferPool.releaseFrame(frameBuf);
 			log.debug("sendBuffer failed with message {} of length: {} Connection ID: {}"
 						, type, dataLength, System.identityHashCode(this));
+			return false;
 		}
-		return sent;
+
+		// wake up selector only if it may not already be writing
+		if (queued > 0) {
+			if (channel instanceof SocketChannel) ownerSelector.wakeup();
+		}
+
+		if (log.isTraceEnabled()) {
+			log.trace("Sent message " + type + " of length: " + dataLength + " Connection ID: "
+					+ System.identityHashCode(this));
+		}
+		return true;
 	}
 
-	public synchronized void close() {
-		SocketChannel chan = (SocketChannel) channel;
-		if (chan != null) {
+	/**
+	 * Sends a payload for the given message type asynchronously. If the send queue
+	 * is full, the message is queued as soon as space becomes available rather
+	 * than failing. If more than {@link #MAX_PENDING_ASYNC_SENDS} messages are
+	 * already waiting, the Connection is closed and the future fails.
+	 *
+	 * @param type    Type of message
+	 * @param payload Payload value for message
+	 * @return Future completing when the message has been written to the channel
+	 */
+	public CompletableFuture<Void> sendObjectAsync(MessageType type, ACell payload) {
+		CompletableFuture<Void> done = new CompletableFuture<>();
+		try {
+			ACell sendVal = payload;
+			sendNovelty(sendVal);
+			ByteBuffer buf = Format.encodedBuffer(sendVal);
+			Counters.sendCount++;
+			if (sendBuffer(type, buf.duplicate(), done)) return done;
+
+			// queue full, so wait for space if within the pending limit
+			if (pendingAsyncSends.incrementAndGet() > MAX_PENDING_ASYNC_SENDS) {
+				pendingAsyncSends.decrementAndGet();
+				log.debug("Closing connection to {} with too many pending sends", getRemoteAddress());
+				close();
+				done.completeExceptionally(new IOException("Too many pending sends on Connection"));
+				return done;
+			}
+			awaitSendAsync(type, buf, done);
+		} catch (Throwable t) {
+			done.completeExceptionally(t);
+		}
+		return done;
+	}
+
+	/**
+	 * Waits for space in the send queue, then sends. The caller must have counted
+	 * this send in pendingAsyncSends, which is released once the message is
+	 * queued or fails.
+	 */
+	private void awaitSendAsync(MessageType type, ByteBuffer buf, CompletableFuture<Void> done) {
+		whenWritable().whenComplete((v, e) -> {
 			try {
-				chan.close();
-			} catch (IOException e) {
-				// TODO OK to ignore?
+				if (e != null) throw e;
+				if (!sendBuffer(type, buf.duplicate(), done)) {
+					awaitSendAsync(type, buf, done);
+					return;
+				}
+				pendingAsyncSends.decrementAndGet();
+			} catch (Throwable t) {
+				pendingAsyncSends.decrementAndGet();
+				done.completeExceptionally(t);
+			}
+		});
+	}
+
+	/**
+	 * Gets the number of asynchronous sends waiting for space in the send queue
+	 *
+	 * @return Count of pending sends
+	 */
+	public int getPendingAsyncSends() {
+		return pendingAsyncSends.get();
+	}
+
+	/**
+	 * Gets a future that completes when the send queue for this Connection has
+	 * space for another message. Use this to wait for space rather than polling
+	 * when a send fails because the queue is full.
+	 *
+	 * @return Future signalling available space, failing if the Connection is closed
+	 */
+	public CompletableFuture<Void> whenWritable() {
+		return sender.whenWritable();
+	}
+
+	public void close() {
+		synchronized (this) {
+			Channel chan = channel;
+			if (chan != null) {
+				try {
+					chan.close();
+				} catch (IOException e) {
+					// TODO OK to ignore?
+				}
 			}
 		}
+		// release queued frames. Outside connection lock to preserve lock order
+		sender.close();
 	}
 
 	/**
@@ -735,14 +1184,75 @@ public class Connection {
 	 */
 	static void selectWrite(SelectionKey key) throws IOException {
 		Connection pc = (Connection) key.attachment();
-		boolean allSent = pc.sender.maybeSendBytes();
+		synchronized (pc.sender) {
+			boolean allSent = pc.sender.maybeSendBytes();
+
+			if (allSent) {
+				// deregister interest in writing. Under sender lock, so a concurrent
+				// send will see an empty queue and register interest again
+				pc.changeInterest(0, SelectionKey.OP_WRITE);
+			} else {
+				// we want to continue writing
+			}
+		}
+		// complete send futures outside the sender lock
+		pc.sender.runCompletions();
+	}
 
-		if (allSent) {
-			// deregister interest in writing
-			key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+	/**
+	 * True if reads on this Connection are paused for backpressure
+	 */
+	private boolean readPaused = false;
+
+	/**
+	 * Updates selector interest ops for this Connection with its owning selector,
+	 * registering the channel if necessary. OP_READ is never set while reads are
+	 * paused.
+	 *
+	 * @param set Interest ops to set
+	 * @param clear Interest ops to clear
+	 * @throws ClosedChannelException If the channel is closed
+	 */
+	private synchronized void changeInterest(int set, int clear) throws ClosedChannelException {
+		if (!(channel instanceof SocketChannel)) return;
+		SocketChannel chan = (SocketChannel) channel;
+		int readOp = readPaused ? 0 : SelectionKey.OP_READ;
+		SelectionKey key = chan.keyFor(ownerSelector);
+		if ((key == null) || !key.isValid()) {
+			if (!chan.isOpen()) return;
+			chan.register(ownerSelector, (set & ~clear) | readOp, this);
 		} else {
-			// we want to continue writing
+			int ops = ((key.interestOps() | set) & ~clear & ~SelectionKey.OP_READ) | readOp;
+			key.interestOps(ops);
+		}
+	}
+
+	/**
+	 * Enables or disables reads on this Connection. Used to apply backpressure
+	 * when received messages cannot be handled quickly enough.
+	 *
+	 * @param enabled True to enable reads, false to pause them
+	 */
+	public void setReadEnabled(boolean enabled) {
+		synchronized (this) {
+			readPaused = !enabled;
+			try {
+				changeInterest(0, 0);
+			} catch (ClosedChannelException | CancelledKeyException e) {
+				// connection closed, nothing to do
+				return;
+			}
 		}
+		if (enabled) ownerSelector.wakeup();
+	}
+
+	/**
+	 * Sets the decoder for messages received on this Connection
+	 *
+	 * @param decoder Decoder to use, or null to decode on the selector thread
+	 */
+	public void setDecoder(MessageDecoder decoder) {
+		receiver.setDecoder(decoder);
 	}
 
 	/**
@@ -0,0 +1,151 @@
+package convex.net;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Decode stage between NIO reads and message handling.
+ *
+ * Raw message frames read by a selector thread are handed to a pool of worker
+ * threads for decoding and delivery to the receive action. Frames from a single
+ * Connection are always decoded and delivered in order, by at most one worker at a
+ * time.
+ *
+ * If too many frames are pending for a Connection, reads on that Connection are
+ * paused by clearing OP_READ, and resumed once the backlog drains. The selector
+ * thread therefore never blocks on a slow consumer.
+ */
+public class MessageDecoder {
+
+	private static final Logger log = LoggerFactory.getLogger(MessageDecoder.class.getName());
+
+	/**
+	 * Default number of decode worker threads
+	 */
+	public static final int DEFAULT_THREADS = 2;
+
+	/**
+	 * Number of pending frames for a Connection at which reads are paused
+	 */
+	public static final int HIGH_WATERMARK = 64;
+
+	/**
+	 * Number of pending frames for a Connection at which paused reads are resumed
+	 */
+	public static final int LOW_WATERMARK = 16;
+
+	/**
+	 * Maximum number of frames decoded for one Connection before yielding the
+	 * worker to other Connections
+	 */
+	static final int MAX_BATCH = 32;
+
+	private final ExecutorService executor;
+
+	private final AtomicInteger queuedCount = new AtomicInteger();
+	private final AtomicLong decodedCount = new AtomicLong();
+	private final AtomicLong pausedCount = new AtomicLong();
+
+	private MessageDecoder(int threads) {
+		AtomicInteger n = new AtomicInteger();
+		executor = Executors.newFixedThreadPool(threads, r -> {
+			Thread t = new Thread(r, "Message decoder " + n.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		});
+	}
+
+	/**
+	 * Creates a MessageDecoder with the given number of worker threads
+	 * @param threads Number of worker threads
+	 * @return New MessageDecoder instance
+	 */
+	public static MessageDecoder create(int threads) {
+		return new MessageDecoder(Math.max(1, threads));
+	}
+
+	/**
+	 * Submits a raw frame for decoding. Called on the selector thread.
+	 *
+	 * @param receiver Receiver for the Connection the frame arrived on
+	 * @param frame Frame received
+	 */
+	void submit(MessageReceiver receiver, MessageReceiver.Frame frame) {
+		int pending = receiver.enqueue(frame);
+		queuedCount.incrementAndGet();
+		if ((pending >= HIGH_WATERMARK) && (receiver.updateReads() > 0)) {
+			pausedCount.incrementAndGet();
+			log.debug("Pausing reads with {} pending frames", pending);
+		}
+		schedule(receiver);
+	}
+
+	private void schedule(MessageReceiver receiver) {
+		if (receiver.claimDecoding()) {
+			try {
+				executor.execute(() -> drain(receiver));
+			} catch (RejectedExecutionException e) {
+				// decoder has been closed, so frame will not be delivered
+				receiver.releaseDecoding();
+			}
+		}
+	}
+
+	private void drain(MessageReceiver receiver) {
+		int done = 0;
+		MessageReceiver.Frame frame;
+		while ((done < MAX_BATCH) && ((frame = receiver.poll()) != null)) {
+			queuedCount.decrementAndGet();
+			int pending = receiver.decode(frame);
+			decodedCount.incrementAndGet();
+			done++;
+			if ((pending <= LOW_WATERMARK) && (receiver.updateReads() < 0)) {
+				log.debug("Resuming reads with {} pending frames", pending);
+			}
+		}
+		receiver.releaseDecoding();
+		if (receiver.hasPending()) {
+			schedule(receiver);
+		} else if (receiver.updateReads() < 0) {
+			// a pause decided before the queue drained may have landed after our last check
+			log.debug("Resuming reads after draining all frames");
+		}
+	}
+
+	/**
+	 * Shuts down the worker threads for this decoder
+	 */
+	public void close() {
+		executor.shutdownNow();
+	}
+
+	/**
+	 * Gets the number of frames awaiting decode across all Connections
+	 * @return Queued frame count
+	 */
+	public int getQueuedCount() {
+		return queuedCount.get();
+	}
+
+	/**
+	 * Gets the total number of frames decoded
+	 * @return Decoded frame count
+	 */
+	public long getDecodedCount() {
+		return decodedCount.get();
+	}
+
+	/**
+	 * Gets the number of times reads have been paused on a Connection due to backlog
+	 * @return Pause count
+	 */
+	public long getPausedCount() {
+		return pausedCount.get();
+	}
+}
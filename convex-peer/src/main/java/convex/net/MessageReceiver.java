@@ -1,9 +1,14 @@
 package convex.net;
 
 import java.io.IOException;
+import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
 import java.nio.channels.ClosedChannelException;
 import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
 
 import org.slf4j.Logger;
@@ -12,9 +17,13 @@ import org.slf4j.LoggerFactory;
 import convex.core.Constants;
 import convex.core.data.ABlob;
 import convex.core.data.ACell;
+import convex.core.data.AVector;
 import convex.core.data.Blob;
 import convex.core.data.Format;
+import convex.core.data.Vectors;
 import convex.core.exceptions.BadFormatException;
+import convex.core.store.AStore;
+import convex.core.store.Stores;
 import convex.net.message.Message;
 
 /**
@@ -23,7 +32,8 @@ import convex.net.message.Message;
  * ByteBuffers received must be passed in via @receiveFromChannel
  *
  * Passes any successfully received objects to a specified Consumer, using the same thread on which the
- * MessageReceiver was called.
+ * MessageReceiver was called. If a MessageDecoder is set, complete frames are instead handed to the
+ * decoder, which decodes and delivers them in order on a worker thread.
  *
  * <blockquote>
  *   <p>"There are only two hard problems in distributed systems: 2. Exactly-once
@@ -41,14 +51,45 @@ public class MessageReceiver {
 	/**
 	 * Buffer for receiving partial messages. Maintained ready for writing.
 	 * 
-	 * Maybe use a direct buffer since we are copying from the socket channel? But probably doesn't make any difference.
+	 * Acquired from the frame buffer pool when a message starts, and released once
+	 * the message is complete, so idle connections hold no buffer. Null if no
+	 * message is in progress.
 	 */
-	private ByteBuffer buffer = ByteBuffer.allocate(RECEIVE_BUFFER_SIZE);
+	private ByteBuffer buffer = null;
 
 	private final Consumer<Message> action;
 	private final Connection connection;
 
-	private long receivedMessageCount = 0;
+	private volatile long receivedMessageCount = 0;
+
+	/**
+	 * Decoder for received frames, or null to decode on the receiving thread
+	 */
+	private MessageDecoder decoder = null;
+
+	/**
+	 * A complete raw message frame awaiting decode
+	 */
+	static final class Frame {
+		final MessageType type;
+		final Blob encoding;
+
+		Frame(MessageType type, Blob encoding) {
+			this.type = type;
+			this.encoding = encoding;
+		}
+	}
+
+	private final ConcurrentLinkedQueue<Frame> frames = new ConcurrentLinkedQueue<>();
+	private final AtomicInteger pendingFrames = new AtomicInteger();
+	private final AtomicBoolean decoding = new AtomicBoolean();
+
+	/**
+	 * Lock for pausing and resuming reads, so that each decision and the
+	 * resulting change to OP_READ happen together
+	 */
+	private final Object readLock = new Object();
+	private boolean readsPaused = false;
 
 	private static final Logger log = LoggerFactory.getLogger(MessageReceiver.class.getName());
 
@@ -61,6 +102,22 @@ public class MessageReceiver {
 		return action;
 	}
 
+	/**
+	 * Sets the decoder used for frames received by this Receiver
+	 * @param decoder Decoder to use, or null to decode on the receiving thread
+	 */
+	public void setDecoder(MessageDecoder decoder) {
+		this.decoder = decoder;
+	}
+
+	/**
+	 * Gets the number of received frames awaiting decode
+	 * @return Count of pending frames
+	 */
+	public int getPendingCount() {
+		return pendingFrames.get();
+	}
+
 	/**
 	 * Get the number of messages received in total by this Receiver
 	 * @return Count of messages received
@@ -89,6 +146,7 @@ public class MessageReceiver {
 	 */
 	public synchronized int receiveFromChannel(ReadableByteChannel chan) throws IOException, BadFormatException {
 		int numRead=0;
+		if (buffer==null) buffer=BufferPool.FRAMES.acquire();
 
 		// first read a message length
 		if (buffer.position()<2) {
@@ -96,26 +154,43 @@ public class MessageReceiver {
 			numRead = chan.read(buffer);
 
 			if (numRead < 0) {
+				releaseBuffer();
 				chan.close();
 			    throw new ClosedChannelException();
 			}
 
 			// exit if we don't have at least 2 bytes for message length (may also be a message code)
-			if (buffer.position()<2) return numRead;
+			if (buffer.position()<2) {
+				if (buffer.position()==0) releaseBuffer(); // nothing in progress
+				return numRead;
+			}
 		}
 
 		// peek message length at start of buffer. May throw BFE.
-		int len = Format.peekMessageLength(buffer);
+		int len;
+		try {
+			len = Format.peekMessageLength(buffer);
+		} catch (BadFormatException e) {
+			releaseBuffer();
+			throw e;
+		}
 		int lengthLength = (len < 64) ? 1 : 2;
 
 		// limit buffer to total message frame size including length
 		int totalFrameSize=lengthLength + len;
+		if (totalFrameSize>buffer.capacity()) {
+			releaseBuffer();
+			throw new BadFormatException("Message too long: "+len);
+		}
 		buffer.limit(totalFrameSize);
 
 		// try to read more bytes up to limit of total message size
 		{
 			int n=chan.read(buffer);
-			if (n < 0) throw new ClosedChannelException();
+			if (n < 0) {
+				releaseBuffer();
+				throw new ClosedChannelException();
+			}
 			numRead+=n;
 		}
 
@@ -131,18 +206,155 @@ public class MessageReceiver {
 		byte mType=buffer.get();
 		MessageType type=MessageType.decode(mType);
 		
+		// Copy out of the pooled buffer, since decoded cells retain their encoding
 		byte[] bs=new byte[len-1]; // message length after type byte
 		buffer.get(bs);
 		assert(!buffer.hasRemaining()); // should consume entire buffer!
+		releaseBuffer();
 		Blob encoding=Blob.wrap(bs);
 
-		receiveMessage(type, encoding);
+		MessageDecoder d=decoder;
+		if (d!=null) {
+			d.submit(this, new Frame(type,encoding));
+		} else {
+			receiveMessage(type, encoding);
+		}
 
-		// clear buffer
-		buffer.clear();
 		return numRead;
 	}
 
+	/**
+	 * Decodes the body of a DATA_BUNDLE message into a Vector of cells. An empty
+	 * bundle is valid, and is used to announce support for bundles.
+	 *
+	 * @param store Store used for decoding
+	 * @param encoding Message body, excluding message type
+	 * @return Vector of decoded cells, in bundle order
+	 * @throws BadFormatException If the bundle is badly formatted
+	 */
+	static AVector<ACell> decodeBundle(AStore store, ABlob encoding) throws BadFormatException {
+		ByteBuffer bb = encoding.toByteBuffer();
+		ArrayList<ACell> cells = new ArrayList<>();
+		try {
+			while (bb.hasRemaining()) {
+				long len = Format.readVLCLong(bb);
+				int start = bb.position();
+				if ((len <= 0) || (len > bb.remaining())) {
+					throw new BadFormatException("Bad cell length in data bundle: " + len);
+				}
+				int end = start + (int) len;
+				cells.add(store.decode(encoding.slice(start, end)));
+				bb.position(end);
+			}
+		} catch (BufferUnderflowException e) {
+			throw new BadFormatException("Truncated data bundle");
+		}
+		return Vectors.create(cells);
+	}
+
+	private void releaseBuffer() {
+		BufferPool.FRAMES.release(buffer);
+		buffer=null;
+	}
+
+	/**
+	 * Adds a received frame to the queue awaiting decode
+	 * @param frame Frame to add
+	 * @return Number of frames pending, including this one
+	 */
+	int enqueue(Frame frame) {
+		frames.add(frame);
+		return pendingFrames.incrementAndGet();
+	}
+
+	/**
+	 * Takes the next frame awaiting decode
+	 * @return Next frame, or null if none pending
+	 */
+	Frame poll() {
+		return frames.poll();
+	}
+
+	/**
+	 * Checks if any frames are awaiting decode
+	 * @return true if frames are pending
+	 */
+	boolean hasPending() {
+		return !frames.isEmpty();
+	}
+
+	/**
+	 * Claims the right to decode frames for this Receiver, so that frames from a single
+	 * connection are decoded by at most one worker at a time, in order.
+	 * @return true if claimed, false if another worker is already decoding
+	 */
+	boolean claimDecoding() {
+		return decoding.compareAndSet(false, true);
+	}
+
+	/**
+	 * Releases a claim made with claimDecoding()
+	 */
+	void releaseDecoding() {
+		decoding.set(false);
+	}
+
+	/**
+	 * Pauses or resumes reading from the connection's channel according to the
+	 * number of frames pending now. Since the count is read under the same lock as
+	 * the change is made, a resume can't be lost to a pause based on a stale count.
+	 *
+	 * @return 1 if reads were paused by this call, -1 if resumed, 0 otherwise
+	 */
+	int updateReads() {
+		synchronized (readLock) {
+			int pending = pendingFrames.get();
+			if (!readsPaused && (pending >= MessageDecoder.HIGH_WATERMARK)) {
+				readsPaused = true;
+				connection.setReadEnabled(false);
+				return 1;
+			}
+			if (readsPaused && (pending <= MessageDecoder.LOW_WATERMARK)) {
+				readsPaused = false;
+				connection.setReadEnabled(true);
+				return -1;
+			}
+			return 0;
+		}
+	}
+
+	/**
+	 * Checks if reads are currently paused due to pending frames
+	 * @return true if paused
+	 */
+	boolean isReadPaused() {
+		synchronized (readLock) {
+			return readsPaused;
+		}
+	}
+
+	/**
+	 * Decodes and delivers a frame. Called on a decoder worker thread.
+	 *
+	 * @param frame Frame to decode
+	 * @return Number of frames still pending after this one
+	 */
+	int decode(Frame frame) {
+		AStore tempStore = Stores.current();
+		try {
+			Stores.setCurrent(connection.getStore());
+			receiveMessage(frame.type, frame.encoding);
+		} catch (BadFormatException e) {
+			log.warn("Closing connection: Bad data format from: {} message: {}", connection.getRemoteAddress(), e.getMessage());
+			connection.close();
+		} catch (Throwable t) {
+			log.warn("Unexpected error decoding message: {}", t);
+		} finally {
+			Stores.setCurrent(tempStore);
+		}
+		return pendingFrames.decrementAndGet();
+	}
+
 	/**
 	 * Reads exactly one message from the ByteBuffer, checking that the position is
 	 * advanced as expected. Buffer must contain sufficient bytes for given message length.
@@ -158,7 +370,19 @@ public class MessageReceiver {
 	 */
 	private void receiveMessage(MessageType type, ABlob encoding) throws BadFormatException {
 		
-		ACell payload = connection.getStore().decode(encoding);
+		ACell payload;
+		if (type == MessageType.DATA_BUNDLE) {
+			payload = decodeBundle(connection.getStore(), encoding);
+			// remote evidently supports bundles, so we can send them too
+			connection.enableRemoteBundles();
+			if (((AVector<?>) payload).isEmpty()) {
+				// announcement only, nothing to deliver
+				receivedMessageCount++;
+				return;
+			}
+		} else {
+			payload = connection.getStore().decode(encoding);
+		}
 
 		Message message = Message.create(connection, type, payload);
 		receivedMessageCount++;
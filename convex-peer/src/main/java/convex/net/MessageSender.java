@@ -3,6 +3,12 @@ package convex.net;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.ByteChannel;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.GatheringByteChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -10,20 +16,68 @@ import org.slf4j.LoggerFactory;
 import convex.core.Constants;
 
 /**
- * Message sender responsible for moving bytes from a ByteBuffer to a ByteChannel
- * 
- * Must call maybeSendBytes to attempt to flush buffer to channel.
+ * Message sender responsible for moving message frames to a ByteChannel
+ *
+ * Frames are queued without copying, and written with a single gathering write
+ * where the channel supports it. The queue is bounded both in frame buffer capacity
+ * and in number of frames. Must call maybeSendBytes to attempt to flush queued frames
+ * to the channel.
+ *
+ * Methods are synchronised on this MessageSender. Futures are never completed while
+ * holding the lock: completions are deferred until runCompletions is called by the
+ * lock holder, so that user continuations can't run under the sender lock.
  */
 public class MessageSender {
 	public static final int SEND_BUFFER_SIZE = Constants.SEND_BUFFER_SIZE;
 
+	/**
+	 * Maximum number of frames queued for sending
+	 */
+	public static final int MAX_QUEUED_FRAMES = 256;
+
+	/**
+	 * Maximum number of frames passed to a single gathering write
+	 */
+	static final int MAX_GATHER = 64;
+
 	private final ByteChannel channel;
 
+	private static final class Frame {
+		final ByteBuffer buffer;
+		final CompletableFuture<Void> done;
+
+		Frame(ByteBuffer buffer, CompletableFuture<Void> done) {
+			this.buffer = buffer;
+			this.done = done;
+		}
+	}
+
+	/**
+	 * Queue of frames awaiting send. Each frame buffer is ready for reading.
+	 */
+	private final ArrayDeque<Frame> queue = new ArrayDeque<>();
+
+	/**
+	 * Futures waiting for space in the queue
+	 */
+	private final ArrayList<CompletableFuture<Void>> spaceWaiters = new ArrayList<>();
+
+	private long queuedBytes = 0;
+
+	/**
+	 * Total capacity of queued frame buffers. This is the direct memory held by the
+	 * queue, and is what bounds its size.
+	 */
+	private long queuedCapacity = 0;
+
 	/**
-	 * Buffer for send bytes. Retained in a state ready for reading, so we flip on
-	 * initialisation. Must be accessed holding lock on buffer.
+	 * Future completions deferred until the sender lock is released
 	 */
-	private final ByteBuffer buffer = ByteBuffer.allocate(SEND_BUFFER_SIZE).flip();
+	private final ArrayList<Runnable> completions = new ArrayList<>();
+
+	private boolean closed = false;
+
+	private final ByteBuffer[] gather = new ByteBuffer[MAX_GATHER];
 
 	protected static final Logger log = LoggerFactory.getLogger(MessageSender.class.getName());
 
@@ -32,50 +86,171 @@ public class MessageSender {
 	}
 
 	/**
-	 * Buffers a message for sending.
-	 * 
-	 * @param messageFrame Source ByteBuffer containing complete message bytes (including length)
-	 * @return True if successfully buffered, false otherwise (insufficient send buffer
-	 *         size)
+	 * Queues a pooled message frame for sending. On success, ownership of the frame
+	 * passes to this MessageSender, which releases it to the frame buffer pool once
+	 * sent.
+	 *
+	 * @param messageFrame Pooled ByteBuffer containing complete message bytes (including length)
+	 * @param done Future to complete once the frame is written to the channel, or null
+	 * @return 1 if queued and the queue was previously empty, 0 if queued, or -1 if the
+	 *         queue is full (frame not taken)
 	 */
-	public boolean bufferMessage(ByteBuffer messageFrame) {
-		synchronized (buffer) {
-			// compact buffer, ready for writing			
-			buffer.compact();
-			
-			// return false if insufficient space to send
-			if (buffer.remaining() < messageFrame.remaining()) {
-				// flip to maintain readiness for writing
-				buffer.flip();
-				return false;
-			}
-			buffer.put(messageFrame);
-			// flip so ready for reading once again
-			buffer.flip();
-		}
-		return true;
+	public synchronized int offer(ByteBuffer messageFrame, CompletableFuture<Void> done) {
+		int n = messageFrame.remaining();
+		if (closed || !hasSpace(messageFrame.capacity())) return -1;
+		boolean wasEmpty = queue.isEmpty();
+		queue.add(new Frame(messageFrame, done));
+		queuedBytes += n;
+		queuedCapacity += messageFrame.capacity();
+		return wasEmpty ? 1 : 0;
+	}
+
+	private boolean hasSpace(int capacity) {
+		if (queue.isEmpty()) return true;
+		return (queue.size() < MAX_QUEUED_FRAMES) && ((queuedCapacity + capacity) <= SEND_BUFFER_SIZE);
 	}
 
 	/**
-	 * Try to send bytes on the outbound channel.
-	 * 
-	 * @return True if all bytes have been sent, false otherwise.
+	 * Try to send queued frames on the outbound channel. Futures for sent frames are
+	 * completed before returning, unless the caller holds the sender lock, in which
+	 * case the caller must call runCompletions after releasing it.
+	 *
+	 * @return True if all frames have been sent, false otherwise.
 	 * @throws IOException If IO error occurs
 	 */
 	public boolean maybeSendBytes() throws IOException {
-		synchronized (buffer) {
-			if (!buffer.hasRemaining()) return true;
+		try {
+			return sendQueued();
+		} finally {
+			if (!Thread.holdsLock(this)) runCompletions();
+		}
+	}
 
-			// write to channel if possible. May write zero or more bytes
-			channel.write(buffer);
+	private synchronized boolean sendQueued() throws IOException {
+		while (!queue.isEmpty()) {
+			long offered = 0;
+			long written;
+			if (channel instanceof GatheringByteChannel) {
+				int n = 0;
+				for (Frame f : queue) {
+					gather[n++] = f.buffer;
+					offered += f.buffer.remaining();
+					if (n == MAX_GATHER) break;
+				}
+				written = ((GatheringByteChannel) channel).write(gather, 0, n);
+				Arrays.fill(gather, 0, n, null);
+			} else {
+				ByteBuffer head = queue.peek().buffer;
+				offered = head.remaining();
+				written = channel.write(head);
+			}
+			queuedBytes -= written;
+			removeSent();
+			if (written < offered) break; // channel can't take any more for now
+		}
+		notifySpace();
 
-			if (buffer.hasRemaining()) {
-				log.debug("Send buffer full!");
-				return false;
+		if (queue.isEmpty()) return true;
+		log.debug("Send buffer full!");
+		return false;
+	}
+
+	/**
+	 * Removes fully sent frames from the head of the queue, releasing their buffers
+	 */
+	private void removeSent() {
+		while (!queue.isEmpty()) {
+			Frame f = queue.peek();
+			if (f.buffer.hasRemaining()) return;
+			queue.poll();
+			queuedCapacity -= f.buffer.capacity();
+			BufferPool.releaseFrame(f.buffer);
+			if (f.done != null) completions.add(() -> f.done.complete(null));
+		}
+	}
+
+	private void notifySpace() {
+		if (spaceWaiters.isEmpty()) return;
+		if (!closed && !hasSpace(BufferPool.FRAME_BUFFER_SIZE)) return;
+		for (CompletableFuture<Void> w : spaceWaiters) {
+			if (closed) {
+				completions.add(() -> w.completeExceptionally(new ClosedChannelException()));
 			} else {
-				return true;
+				// completed in order, so that waiting senders retry in FIFO order
+				completions.add(() -> w.complete(null));
+			}
+		}
+		spaceWaiters.clear();
+	}
+
+	/**
+	 * Completes futures for frames sent and waiters notified since the last call.
+	 * Must be called without holding the sender lock.
+	 */
+	public void runCompletions() {
+		Runnable[] rs;
+		synchronized (this) {
+			if (completions.isEmpty()) return;
+			rs = completions.toArray(new Runnable[completions.size()]);
+			completions.clear();
+		}
+		for (Runnable r : rs) {
+			try {
+				r.run();
+			} catch (Throwable t) {
+				log.warn("Exception completing send future: {}", t);
+			}
+		}
+	}
+
+	/**
+	 * Gets a future that completes when the queue has space for another frame.
+	 * Completes exceptionally if the sender is closed.
+	 *
+	 * @return Future signalling available space
+	 */
+	public synchronized CompletableFuture<Void> whenWritable() {
+		if (closed) return CompletableFuture.failedFuture(new ClosedChannelException());
+		if (hasSpace(BufferPool.FRAME_BUFFER_SIZE)) return CompletableFuture.completedFuture(null);
+		CompletableFuture<Void> f = new CompletableFuture<>();
+		spaceWaiters.add(f);
+		return f;
+	}
+
+	/**
+	 * Checks if there are frames awaiting send
+	 * @return true if the queue is empty
+	 */
+	public synchronized boolean isEmpty() {
+		return queue.isEmpty();
+	}
+
+	/**
+	 * Gets the number of bytes queued for sending
+	 * @return Queued bytes
+	 */
+	public synchronized long getQueuedBytes() {
+		return queuedBytes;
+	}
+
+	/**
+	 * Closes this sender, releasing all queued frames and failing any pending futures
+	 */
+	public void close() {
+		synchronized (this) {
+			if (closed) return;
+			closed = true;
+			Frame f;
+			while ((f = queue.poll()) != null) {
+				BufferPool.releaseFrame(f.buffer);
+				CompletableFuture<Void> done = f.done;
+				if (done != null) completions.add(() -> done.completeExceptionally(new ClosedChannelException()));
 			}
+			queuedBytes = 0;
+			queuedCapacity = 0;
+			notifySpace();
 		}
+		if (!Thread.holdsLock(this)) runCompletions();
 	}
 
 }
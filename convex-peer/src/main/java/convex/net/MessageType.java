@@ -100,8 +100,75 @@ public enum MessageType {
 	 * Payload is the message ID as a Long.
 	 *
 	 * Expected Result is a Vector: [signed-belief-hash states-hash initial-state-hash peer-key consensus-state-hash]
+	 *
+	 * states-hash is the hash of the States vector retained by the Peer. For a Peer
+	 * retaining all history this covers every State since genesis, as in earlier
+	 * versions. For a Peer with a history retention policy it covers only the
+	 * retained window starting at the Peer's state offset, so it changes as the
+	 * window is trimmed and is not comparable between Peers with different
+	 * retention. Use consensus-state-hash to compare consensus between Peers.
+	 */
+	STATUS(11),
+
+	/**
+	 * A message relaying a bundle of data cells in a single frame.
+	 *
+	 * On the wire, the message body is a sequence of cell encodings, each
+	 * preceded by its length as a VLC long. Cells are ordered child-first, so each
+	 * cell can be stored before any cell that refers to it.
+	 *
+	 * The decoded payload is a Vector of the cells, in the order received.
+	 *
+	 * An empty bundle announces that the sender supports bundles, and invites the
+	 * receiver to send bundles in return. Bundles must not be sent to a remote
+	 * that has not announced support unless it is known to support them.
+	 */
+	DATA_BUNDLE(12),
+
+	/**
+	 * A message requesting a batch of transactions be performed by the receiving
+	 * peer.
+	 *
+	 * Payload is: [id [signed-data ...]]
+	 *
+	 * Each transaction in the batch is assigned the message ID id+i, where i is
+	 * its position in the batch, and its result is returned in a separate RESULT
+	 * message with that ID.
+	 */
+	TRANSACT_BATCH(13),
+
+	/**
+	 * A request to perform a batch of queries and return results. All queries are
+	 * executed against the same state.
+	 *
+	 * Payload is: [id [form ...] address?]
+	 *
+	 * Receiver responds with a single RESULT message, with a Vector of Results
+	 * for the individual queries as its value.
+	 */
+	QUERY_BATCH(14),
+
+	/**
+	 * A request to subscribe to changes in part of the consensus State.
+	 *
+	 * Payload is: [id target address?]
+	 *
+	 * Where target is an Address (account status), a Symbol (value in the
+	 * environment of the given address) or any other form (query executed with
+	 * the given address). Receiver responds with a RESULT containing the current
+	 * value, and pushes a further RESULT with the same ID whenever the value
+	 * changes in a new consensus State.
+	 */
+	SUBSCRIBE(15),
+
+	/**
+	 * A request to cancel a subscription.
+	 *
+	 * Payload is: [id]
+	 *
+	 * Where id is the ID of the original SUBSCRIBE message. No result is returned.
 	 */
-	STATUS(11);
+	UNSUBSCRIBE(16);
 
 	private final byte messageCode;
 
@@ -133,6 +200,16 @@ public enum MessageType {
 			return GOODBYE;
 		case 11:
 			return STATUS;
+		case 12:
+			return DATA_BUNDLE;
+		case 13:
+			return TRANSACT_BATCH;
+		case 14:
+			return QUERY_BATCH;
+		case 15:
+			return SUBSCRIBE;
+		case 16:
+			return UNSUBSCRIBE;
 		}
 		throw new BadFormatException("Invalid message code: " + i);
 	}
@@ -12,9 +12,12 @@ import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
+import java.util.Arrays;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Set;
-import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -22,48 +25,60 @@ import org.slf4j.LoggerFactory;
 import convex.core.Constants;
 import convex.core.exceptions.BadFormatException;
 import convex.core.store.Stores;
-import convex.net.message.Message;
 import convex.peer.Server;
 
 /**
  * NIO Server implementation that handles incoming messages on a given port.
  *
- * Allocates a single thread for the selector.
+ * Uses one or more reactor threads, each with its own selector. The first reactor
+ * also accepts new connections, and distributes each accepted channel to the
+ * reactor with the fewest connections. A reactor owns the read and write state of
+ * all connections assigned to it.
  *
- * Incoming messages are associated with a Connection (which is created if
- * required), then placed on the receive message queue. This will block if the
- * receive queue is full (thereby applying back-pressure to clients)
+ * Incoming message frames are associated with a Connection, then passed to a
+ * MessageDecoder which decodes them on worker threads and places them on the
+ * receive message queue. If the receive queue is full, decoding blocks and reads
+ * are paused on Connections with a backlog (thereby applying back-pressure to
+ * clients) without blocking the reactor threads.
  *
  */
 public class NIOServer implements Closeable {
 	public static final int DEFAULT_PORT = 18888;
 
+	/**
+	 * Default number of reactor threads
+	 */
+	public static final int DEFAULT_REACTORS = 1;
+
+	/**
+	 * Minimum interval in milliseconds between recounts of reactor connections
+	 */
+	static final long RECOUNT_INTERVAL = 100;
+
 	private static final Logger log = LoggerFactory.getLogger(NIOServer.class.getName());
 
 	private ServerSocketChannel ssc = null;
 
-	private BlockingQueue<Message> receiveQueue;
+	private Reactor[] reactors = new Reactor[0];
 
-	private Selector selector = null;
+	private MessageDecoder decoder = null;
 
-	private boolean running = false;
+	private volatile boolean running = false;
 
 	private final Server server;
 
-	private NIOServer(Server server, BlockingQueue<Message> receiveQueue) {
+	private NIOServer(Server server) {
 		this.server = server;
-		this.receiveQueue = receiveQueue;
 	}
 
 	/**
 	 * Creates a new unlaunched NIO server
 	 * 
 	 * @param server       Peer Server instance for this NIOServer
-	 * @param receiveQueue Queue for received messages
 	 * @return New NIOServer instance
 	 */
-	public static NIOServer create(Server server, BlockingQueue<Message> receiveQueue) {
-		return new NIOServer(server, receiveQueue);
+	public static NIOServer create(Server server) {
+		return new NIOServer(server);
 	}
 
 	public void launch(Integer port) {
@@ -71,8 +86,22 @@ public class NIOServer implements Closeable {
 	}
 
 	public void launch(String bindAddress, Integer port) {
+		launch(bindAddress, port, DEFAULT_REACTORS, MessageDecoder.DEFAULT_THREADS);
+	}
+
+	/**
+	 * Launches this NIO server
+	 * 
+	 * @param bindAddress  Address to bind to, or null for localhost
+	 * @param port         Port to listen on, or null / 0 to allocate a free port
+	 * @param reactorCount Number of reactor threads to use
+	 * @param decodeThreads Number of message decoder threads to use
+	 */
+	public void launch(String bindAddress, Integer port, int reactorCount, int decodeThreads) {
 		if (port == null)
 			port = 0;
+		if (reactorCount < 1)
+			reactorCount = 1;
 
 		try {
 			ssc = ServerSocketChannel.open();
@@ -87,36 +116,71 @@ public class NIOServer implements Closeable {
 			ssc.configureBlocking(false);
 			port = ssc.socket().getLocalPort();
 
-			// Register for accept. Do this before selection loop starts and
-			// before we return from launch!
-			selector = Selector.open();
-			ssc.register(selector, SelectionKey.OP_ACCEPT);
+			decoder = MessageDecoder.create(decodeThreads);
+
+			Reactor[] rs = new Reactor[reactorCount];
+			for (int i = 0; i < reactorCount; i++) {
+				rs[i] = new Reactor(i, Selector.open());
+			}
+			reactors = rs;
+
+			// Register for accept on the first reactor. Do this before selection loop
+			// starts and before we return from launch!
+			ssc.register(rs[0].selector, SelectionKey.OP_ACCEPT);
 
 			// set running status now, so that loops don't terminate
 			running = true;
 
-			Thread selectorThread = new Thread(selectorLoop, "NIO Server selector loop on port: " + port);
-			selectorThread.setDaemon(true);
-			selectorThread.start();
-			log.info("NIO server started on port {}", port);
+			for (Reactor r : rs) {
+				Thread selectorThread = new Thread(r, "NIO Server selector loop " + r.index + " on port: " + port);
+				selectorThread.setDaemon(true);
+				selectorThread.start();
+			}
+			log.info("NIO server started on port {} with {} reactor(s)", port, reactorCount);
 		} catch (Exception e) {
 			throw new Error("Can't bind NIOServer to port: " + port, e);
 		}
 	}
 
 	/**
-	 * Runnable class for accepting socket connections and incoming data, one per
-	 * peer If this gets maxed out, rely on backpressure to throttle clients.
+	 * Reactor handling socket events for a subset of connections on a dedicated
+	 * selector thread. If this gets maxed out, rely on backpressure to throttle
+	 * clients.
 	 */
-	private Runnable selectorLoop = new Runnable() {
+	public final class Reactor implements Runnable {
+		private final int index;
+		private final Selector selector;
+
+		/**
+		 * Channels accepted by another reactor, awaiting registration with this one
+		 */
+		private final ConcurrentLinkedQueue<SocketChannel> pending = new ConcurrentLinkedQueue<>();
+
+		private final AtomicInteger connectionCount = new AtomicInteger();
+		private volatile Thread thread;
+		private volatile long selectCount = 0;
+		private volatile long readCount = 0;
+		private volatile long writeCount = 0;
+		private volatile long bytesRead = 0;
+		private long lastRecount = 0;
+
+		private Reactor(int index, Selector selector) {
+			this.index = index;
+			this.selector = selector;
+		}
+
 		@Override
 		public void run() {
+			thread = Thread.currentThread();
 			// Use the store configured for the owning server.
 			Stores.setCurrent(server.getStore());
 			try {
 
 				while (running) {
 					selector.select(1000);
+					selectCount++;
+					registerPending();
+					recountConnections();
 
 					Set<SelectionKey> keys = selector.selectedKeys();
 					Iterator<SelectionKey> it = keys.iterator();
@@ -125,26 +189,27 @@ public class NIOServer implements Closeable {
 						it.remove();
 
 						try {
-							// Just do one op on each key
 							if (key.isAcceptable()) {
-								accept(selector);
-							} else if (key.isReadable()) {
+								accept();
+								continue;
+							}
+							if (key.isReadable()) {
 								selectRead(key);
-							} else if (key.isWritable()) {
+							}
+							if (key.isValid() && key.isWritable()) {
 								selectWrite(key);
 							}
 						} catch (ClosedChannelException e) {
 							// channel was closed, just lose the key?
 							log.debug("Client closed channel");
-							key.cancel();
+							cancel(key);
 						} catch (IOException e) {
 							log.warn("Unexpected IOException, canceling key: {}", e);
 							// e.printStackTrace();
-							key.cancel();
+							cancel(key);
 						} catch (CancelledKeyException e) {
-							log.warn("Cancelled key: {}", e);
-							// e.printStackTrace();
-							key.cancel();
+							log.debug("Cancelled key: {}", e);
+							cancel(key);
 						}
 					}
 					// keys.clear();
@@ -159,16 +224,16 @@ public class NIOServer implements Closeable {
 					for (SelectionKey key : selector.keys()) {
 						key.channel().close();
 					}
+					for (SocketChannel sc : pending) {
+						sc.close();
+					}
 					selector.close();
-					selector = null;
 				} catch (IOException e) {
 					log.error("IOException while closing NIO server");
 					e.printStackTrace();
-				} finally {
-					selector = null;
 				}
 
-				if (ssc != null) {
+				if ((index == 0) && (ssc != null)) {
 					try {
 						ssc.close();
 					} catch (IOException e) {
@@ -179,10 +244,152 @@ public class NIOServer implements Closeable {
 					}
 				}
 
-				log.info("Selector loop ended on port: " + getPort());
+				log.info("Selector loop {} ended", index);
 			}
 		}
-	};
+
+		private void registerPending() throws IOException {
+			SocketChannel sc;
+			while ((sc = pending.poll()) != null) {
+				register(sc);
+			}
+		}
+
+		private void register(SocketChannel sc) throws IOException {
+			try {
+				SelectionKey key = sc.register(selector, SelectionKey.OP_READ);
+				Connection pc = createPC(sc, selector);
+				key.attach(pc);
+			} catch (ClosedChannelException e) {
+				connectionCount.decrementAndGet();
+			}
+		}
+
+		/**
+		 * Recounts connections from the selector keys. Channels may be closed outside
+		 * the reactor (e.g. by Connection.close()), which cancels their keys without
+		 * going through cancel(key), so the incremental count alone would drift.
+		 */
+		private void recountConnections() {
+			long now = System.currentTimeMillis();
+			if (now < lastRecount + RECOUNT_INTERVAL) return;
+			lastRecount = now;
+			int n = pending.size();
+			for (SelectionKey key : selector.keys()) {
+				if (!(key.attachment() instanceof Connection)) continue;
+				if (key.isValid()) {
+					n++;
+				} else {
+					key.attach(null);
+				}
+			}
+			connectionCount.set(n);
+		}
+
+		private void assign(SocketChannel sc) throws IOException {
+			connectionCount.incrementAndGet();
+			if (Thread.currentThread() == thread) {
+				register(sc);
+			} else {
+				pending.add(sc);
+				selector.wakeup();
+			}
+		}
+
+		private void cancel(SelectionKey key) {
+			if (key.attachment() instanceof Connection) {
+				key.attach(null);
+				connectionCount.decrementAndGet();
+			}
+			key.cancel();
+		}
+
+		protected void selectRead(SelectionKey key) throws IOException {
+
+			// log.info("Connection read from: "+sc.getRemoteAddress()+" with key:"+key);
+			Connection conn = (Connection) key.attachment();
+			if (conn == null)
+				throw new Error("No PeerConnection specified");
+			try {
+				int n = conn.handleChannelRecieve();
+				readCount++;
+				bytesRead += n;
+				if (n == 0) {
+					log.debug("No bytes received for key: {}", key);
+				}
+			} catch (ClosedChannelException | SocketException e) {
+				log.debug("Channel closed from: {}", conn.getRemoteAddress());
+				cancel(key);
+			} catch (BadFormatException e) {
+				log.warn("Cancelled connection: Bad data format from: {} message: {}", conn.getRemoteAddress(),
+						e.getMessage());
+				// TODO: blacklist peer?
+				cancel(key);
+			}
+		}
+
+		protected void selectWrite(SelectionKey key) throws IOException {
+			writeCount++;
+			Connection.selectWrite(key);
+		}
+
+		/**
+		 * Gets the index of this reactor
+		 * @return Reactor index
+		 */
+		public int getIndex() {
+			return index;
+		}
+
+		/**
+		 * Gets the number of connections currently owned by this reactor
+		 * @return Connection count
+		 */
+		public int getConnectionCount() {
+			return connectionCount.get();
+		}
+
+		/**
+		 * Gets the number of select loop iterations performed by this reactor
+		 * @return Select count
+		 */
+		public long getSelectCount() {
+			return selectCount;
+		}
+
+		/**
+		 * Gets the number of read events handled by this reactor
+		 * @return Read count
+		 */
+		public long getReadCount() {
+			return readCount;
+		}
+
+		/**
+		 * Gets the number of write events handled by this reactor
+		 * @return Write count
+		 */
+		public long getWriteCount() {
+			return writeCount;
+		}
+
+		/**
+		 * Gets the total number of bytes read by this reactor
+		 * @return Bytes read
+		 */
+		public long getBytesRead() {
+			return bytesRead;
+		}
+	}
+
+	/**
+	 * Gets the reactors for this server. Empty if not launched.
+	 * 
+	 * @return List of reactors
+	 */
+	public List<Reactor> getReactors() {
+		return Arrays.asList(reactors);
+	}
 
 	/**
 	 * Gets the port that this server instance is listening on.
@@ -198,48 +405,21 @@ public class NIOServer implements Closeable {
 		return socket.getLocalPort();
 	}
 
-	protected void selectWrite(SelectionKey key) throws IOException {
-		// attach a Connection if needed for this client
-		ensureConnection(key);
-
-		Connection.selectWrite(key);
-	}
-
-	private Connection ensureConnection(SelectionKey key) throws IOException {
-		Connection pc = (Connection) key.attachment();
-		if (pc != null)
-			return pc;
-		SocketChannel sc = (SocketChannel) key.channel();
-		assert (!sc.isBlocking());
-		pc = createPC(sc, receiveQueue);
-		key.attach(pc);
+	private Connection createPC(SocketChannel sc, Selector selector) throws IOException {
+		Connection pc = Connection.create(sc, server.getReceiveAction(), server.getStore(), null, selector);
+		pc.setDecoder(decoder);
+		// bundles are only sent once the remote announces support
+		pc.setBundleLimit(server.getBundleSize());
 		return pc;
 	}
 
-	private Connection createPC(SocketChannel sc, BlockingQueue<Message> queue) throws IOException {
-		return Connection.create(sc, server.getReceiveAction(), server.getStore(), null);
-	}
-
-	protected void selectRead(SelectionKey key) throws IOException {
-
-		// log.info("Connection read from: "+sc.getRemoteAddress()+" with key:"+key);
-		Connection conn = ensureConnection(key);
-		if (conn == null)
-			throw new Error("No PeerConnection specified");
-		try {
-			int n = conn.handleChannelRecieve();
-			if (n == 0) {
-				log.debug("No bytes received for key: {}", key);
-			}
-		} catch (ClosedChannelException | SocketException e) {
-			log.debug("Channel closed from: {}", conn.getRemoteAddress());
-			key.cancel();
-		} catch (BadFormatException e) {
-			log.warn("Cancelled connection: Bad data format from: {} message: {}", conn.getRemoteAddress(),
-					e.getMessage());
-			// TODO: blacklist peer?
-			key.cancel();
-		}
+	/**
+	 * Gets the message decoder for this server, or null if not launched
+	 * 
+	 * @return MessageDecoder instance
+	 */
+	public MessageDecoder getDecoder() {
+		return decoder;
 	}
 
 	@Override
@@ -250,13 +430,15 @@ public class NIOServer implements Closeable {
 	@Override
 	public void close() {
 		running = false;
-		if (selector != null) {
-			selector.wakeup();
+		for (Reactor r : reactors) {
+			r.selector.wakeup();
+		}
+		if (decoder != null) {
+			decoder.close();
 		}
-
 	}
 
-	private void accept(Selector selector) throws IOException, ClosedChannelException {
+	private void accept() throws IOException, ClosedChannelException {
 		SocketChannel socketChannel = ssc.accept();
 		if (socketChannel == null)
 			return; // false alarm? Nobody there?
@@ -266,7 +448,13 @@ public class NIOServer implements Closeable {
 		// TODO: Confirm we don't want Nagle?
 		// Generally, we want to send packets as fast as possible.
 		socketChannel.setOption(StandardSocketOptions.TCP_NODELAY, true);
-		socketChannel.register(selector, SelectionKey.OP_READ);
+
+		// Assign to least loaded reactor
+		Reactor target = reactors[0];
+		for (Reactor r : reactors) {
+			if (r.getConnectionCount() < target.getConnectionCount()) target = r;
+		}
+		target.assign(socketChannel);
 	}
 
 	/**
@@ -7,10 +7,13 @@ import java.util.function.Consumer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import convex.api.Acquiror;
 import convex.core.Result;
 import convex.core.data.ACell;
+import convex.core.data.AVector;
 import convex.core.data.Hash;
 import convex.core.data.Ref;
+import convex.core.exceptions.BadFormatException;
 import convex.core.exceptions.MissingDataException;
 import convex.core.lang.RT;
 import convex.core.store.Stores;
@@ -36,6 +39,10 @@ public abstract class ResultConsumer implements Consumer<Message> {
 					handleDataProvided(m);
 					break;
 				}
+				case DATA_BUNDLE: {
+					handleDataBundle(m);
+					break;
+				}
 				case MISSING_DATA: {
 					handleMissingDataRequest(m);
 					break;
@@ -48,6 +55,8 @@ public abstract class ResultConsumer implements Consumer<Message> {
 					log.error("Message type ignored: ", type);
 				}
 			}
+		} catch (BadFormatException e) {
+			log.debug("Bad format message rejected: {}",e.getMessage());
 		} catch (Throwable t) {
 			log.warn("Failed to accept message! {}",t);
 			t.printStackTrace();
@@ -55,22 +64,56 @@ public abstract class ResultConsumer implements Consumer<Message> {
 	}
 
 	private void handleDataProvided(Message m) {
+		storeData(m.getPayload());
+	}
+
+	private void handleDataBundle(Message m) {
+		AVector<ACell> cells = m.getPayload();
+		long n = cells.count();
+		for (long i = 0; i < n; i++) {
+			storeData(cells.get(i));
+		}
+	}
+
+	private void storeData(ACell o) {
 		// Just store the data, can't guarantee full persistence yet
 		try {
-			ACell o = m.getPayload();
 			Ref<?> r = Ref.get(o);
 			r.persistShallow();
 			Hash h=r.getHash();
 			log.trace("Recieved DATA for hash {}",h);
 			unbuffer(h);
+			handleDataReceived(r);
 		} catch (MissingDataException e) {
 			// ignore?
 		}
 	}
 
-	private void handleMissingDataRequest(Message m) {
+	/**
+	 * Method called when a DATA message has been received and stored. May be overridden.
+	 *
+	 * @param ref Ref to the stored cell
+	 */
+	protected void handleDataReceived(Ref<?> ref) {
+		// nothing to do by default
+	}
+
+	private void handleMissingDataRequest(Message m) throws BadFormatException {
 		// try to be helpful by returning sent data
-		Hash h = RT.ensureHash(m.getPayload());
+		ACell payload = m.getPayload();
+		if (payload instanceof AVector) {
+			AVector<?> v = (AVector<?>) payload;
+			long n = v.count();
+			if (n > Acquiror.MAX_REQUEST_HASHES) throw new BadFormatException("Too many hashes in missing data request: " + n);
+			for (long i = 0; i < n; i++) {
+				provideData(m, RT.ensureHash(v.get(i)));
+			}
+		} else {
+			provideData(m, RT.ensureHash(payload));
+		}
+	}
+
+	private void provideData(Message m, Hash h) {
 		if (h==null) return; // not a valid payload so ignore
 		
 		Ref<?> r = Stores.current().refForHash(h);
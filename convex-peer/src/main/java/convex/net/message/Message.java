@@ -95,7 +95,11 @@ public abstract class Message {
 		switch (type) {
 			// Query and transact use a vector [ID ...]
 			case QUERY:
-			case TRANSACT: return (CVMLong) ((AVector<?>)payload).get(0);
+			case TRANSACT:
+			case QUERY_BATCH:
+			case TRANSACT_BATCH:
+			case SUBSCRIBE:
+			case UNSUBSCRIBE: return (CVMLong) ((AVector<?>)payload).get(0);
 
 			// Result is a special record type
 			case RESULT: return (CVMLong)((Result)payload).getID();
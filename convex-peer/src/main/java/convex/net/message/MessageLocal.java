@@ -38,6 +38,14 @@ public class MessageLocal extends Message {
 		return new MessageLocal(type,payload,server,handler);
 	}
 
+	/**
+	 * Gets the handler to which Results for this message are reported
+	 * @return Result handler
+	 */
+	public Consumer<Result> getResultHandler() {
+		return resultHandler;
+	}
+
 	@Override
 	public boolean reportResult(Result res) {
 		resultHandler.accept(res);
@@ -76,9 +76,11 @@ public class ConnectionManager {
 	private final HashSet<InetSocketAddress> plannedConnections = new HashSet<>();
 
 	/**
-	 * The list of outgoing challenges that are being made to remote peers
+	 * The outgoing challenges that are being made to remote peers, by the
+	 * connection on which each challenge was sent. Inbound connections from peers
+	 * are challenged as well as outbound ones, so that both can become trusted.
 	 */
-	private HashMap<AccountKey, ChallengeRequest> challengeList = new HashMap<>();
+	private HashMap<Connection, ChallengeRequest> challengeList = new HashMap<>();
 
 	private Thread connectionThread = null;
 
@@ -178,6 +180,8 @@ public class ConnectionManager {
 	protected void maintainConnections() {
 		State s=server.getPeer().getConsensusState();
 
+		pruneChallenges();
+
 		long millisSinceLastUpdate=Math.max(0,Utils.getCurrentTimestamp()-lastUpdate);
 
 		int targetPeerCount=getTargetPeerCount();
@@ -445,6 +449,15 @@ public class ConnectionManager {
 				log.warn("Failed sending response from challenge to ", pc.getRemoteAddress());
 			}
 
+			// Challenge back if this is a staked peer, so that an inbound connection can
+			// be trusted. The challenge we received can't prove this, since it could be replayed.
+			if (!pc.isTrusted()) {
+				PeerStatus ps=thisPeer.getConsensusState().getPeer(fromPeer);
+				if ((ps!=null)&&(ps.getTotalStake()>Constants.MINIMUM_EFFECTIVE_STAKE)) {
+					requestChallenge(fromPeer, pc, thisPeer);
+				}
+			}
+
 		} catch (Throwable t) {
 			log.error("Challenge Error: {}" ,t);
 			// t.printStackTrace();
@@ -492,15 +505,17 @@ public class ConnectionManager {
 			// get who sent this challenge
 			AccountKey fromPeer = signedData.getAccountKey();
 
+			// responses arrive on the connection the challenge was sent on
+			Connection connection = ((MessageRemote)m).getConnection();
 
-			if ( !challengeList.containsKey(fromPeer)) {
-				log.warn( "response from an unkown challenge");
-				return null;
-			}
 			synchronized(challengeList) {
 
-				// get the challenge data we sent out for this peer
-				ChallengeRequest challengeRequest = challengeList.get(fromPeer);
+				// get the challenge data we sent out on this connection
+				ChallengeRequest challengeRequest = challengeList.get(connection);
+				if (challengeRequest == null) {
+					log.warn( "response from an unkown challenge");
+					return null;
+				}
 
 				Hash challengeToken = challengeRequest.getToken();
 				if (!challengeToken.equals(token)) {
@@ -521,13 +536,10 @@ public class ConnectionManager {
 					return null;
 				}
 				// remove from list incase this fails, we can generate another challenge
-				challengeList.remove(fromPeer);
+				challengeList.remove(connection);
 
-				Connection connection = getConnection(fromPeer);
-				if (connection != null) {
-					connection.setTrustedPeerKey(fromPeer);
-					server.raiseServerChange("trusted connection");
-				}
+				connection.setTrustedPeerKey(fromPeer);
+				server.raiseServerChange("trusted connection");
 
 				// return the trusted peer key
 				return fromPeer;
@@ -554,23 +566,34 @@ public class ConnectionManager {
 				return;
 			}
 			// skip if a challenge is already being sent
-			if (challengeList.containsKey(toPeerKey)) {
-				if (!challengeList.get(toPeerKey).isTimedout()) {
+			if (challengeList.containsKey(connection)) {
+				if (!challengeList.get(connection).isTimedout()) {
 					// not timed out, then continue to wait
 					return;
 				}
 				// remove the old timed out request
-				challengeList.remove(toPeerKey);
+				challengeList.remove(connection);
 			}
 			ChallengeRequest request = ChallengeRequest.create(toPeerKey);
 			if (request.send(connection, thisPeer)>=0) {
-				challengeList.put(toPeerKey, request);
+				challengeList.put(connection, request);
 			} else {
 				// TODO: check OK to do nothing and send later?
 			}
 		}
 	}
 
+	/**
+	 * Removes challenges that have timed out or were sent on connections since
+	 * closed, e.g. inbound connections that were never trusted.
+	 */
+	private void pruneChallenges() {
+		synchronized(challengeList) {
+			challengeList.values().removeIf(r -> r.isTimedout());
+			challengeList.keySet().removeIf(c -> c.isClosed());
+		}
+	}
+
 	/**
 	 *
 	 * @param msg Message to broadcast
@@ -618,6 +641,9 @@ public class ConnectionManager {
 			synchronized(connections) {
 				// reopen with connection to the peer and handle server messages
 				newConn = Connection.connect(hostAddress, server.peerReceiveAction, server.getStore(), null,Constants.SOCKET_PEER_BUFFER_SIZE,Constants.SOCKET_PEER_BUFFER_SIZE);
+				// opt in to bundles, the remote enables them in return when it sees the announcement
+				newConn.setBundleLimit(server.getBundleSize());
+				newConn.enableBundles();
 				connections.put(peerKey, newConn);
 			}
 			server.raiseServerChange("connection");
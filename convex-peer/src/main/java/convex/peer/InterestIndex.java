@@ -0,0 +1,274 @@
+package convex.peer;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import convex.core.ErrorCodes;
+import convex.core.Result;
+import convex.core.data.Hash;
+import convex.core.data.Strings;
+import convex.core.util.Utils;
+import convex.net.Connection;
+import convex.net.message.Message;
+import convex.net.message.MessageRemote;
+
+/**
+ * Index of client interests in transaction results, keyed by signed transaction hash.
+ *
+ * Interests are registered when a transaction is submitted, and removed when the
+ * result is delivered. Interests expire after a time-to-live, and are culled early
+ * if the originating connection closes. The number of pending interests for any
+ * single connection is capped, so that a client cannot grow the index without limit.
+ *
+ * Thread safe: interests are registered on the receiver thread and delivered on the
+ * update thread.
+ */
+public class InterestIndex {
+
+	static final Logger log = LoggerFactory.getLogger(InterestIndex.class.getName());
+
+	/**
+	 * Default time-to-live for interests in milliseconds
+	 */
+	public static final long DEFAULT_TTL = 60000;
+
+	/**
+	 * Default maximum number of pending interests for a single connection
+	 */
+	public static final int DEFAULT_CONNECTION_LIMIT = 10000;
+
+	private static class Interest {
+		final Message message;
+		final Connection connection;
+		final long created;
+
+		Interest(Message message, Connection connection, long created) {
+			this.message = message;
+			this.connection = connection;
+			this.created = created;
+		}
+	}
+
+	private final ConcurrentHashMap<Hash, Interest> interests = new ConcurrentHashMap<>();
+
+	/**
+	 * Count of pending interests per connection
+	 */
+	private final ConcurrentHashMap<Connection, AtomicInteger> connectionCounts = new ConcurrentHashMap<>();
+
+	private final long ttl;
+	private final int connectionLimit;
+
+	private final AtomicLong deliveredCount = new AtomicLong();
+	private final AtomicLong expiredCount = new AtomicLong();
+	private final AtomicLong droppedCount = new AtomicLong();
+	private final AtomicLong rejectedCount = new AtomicLong();
+	private final AtomicLong totalLatency = new AtomicLong();
+	private volatile long maxLatency = 0;
+
+	private InterestIndex(long ttl, int connectionLimit) {
+		this.ttl = ttl;
+		this.connectionLimit = connectionLimit;
+	}
+
+	/**
+	 * Creates an InterestIndex
+	 * @param ttl Time-to-live for interests in milliseconds
+	 * @param connectionLimit Maximum pending interests per connection
+	 * @return New InterestIndex instance
+	 */
+	public static InterestIndex create(long ttl, int connectionLimit) {
+		return new InterestIndex(ttl, connectionLimit);
+	}
+
+	/**
+	 * Creates an InterestIndex with default settings
+	 * @return New InterestIndex instance
+	 */
+	public static InterestIndex create() {
+		return create(DEFAULT_TTL, DEFAULT_CONNECTION_LIMIT);
+	}
+
+	private static Connection getConnection(Message m) {
+		if (m instanceof MessageRemote) return ((MessageRemote) m).getConnection();
+		return null;
+	}
+
+	/**
+	 * Registers interest in the result of a transaction
+	 * @param hash Hash of signed transaction
+	 * @param m Message to which the result should be reported
+	 * @return true if registered, false if the connection has too many pending interests
+	 */
+	public boolean register(Hash hash, Message m) {
+		Connection conn = getConnection(m);
+		if (conn != null) {
+			boolean[] accepted = new boolean[1];
+			connectionCounts.compute(conn, (k, c) -> {
+				if (c == null) c = new AtomicInteger();
+				if (c.get() < connectionLimit) {
+					c.incrementAndGet();
+					accepted[0] = true;
+				}
+				return (c.get() == 0) ? null : c;
+			});
+			if (!accepted[0]) {
+				rejectedCount.incrementAndGet();
+				return false;
+			}
+		}
+		Interest old = interests.put(hash, new Interest(m, conn, Utils.getCurrentTimestamp()));
+		if (old != null) release(old);
+		return true;
+	}
+
+	/**
+	 * Removes and returns the Message interested in a transaction result, if any.
+	 * Counts as a delivery for latency metrics.
+	 *
+	 * @param hash Hash of signed transaction
+	 * @return Interested Message, or null if none registered
+	 */
+	public Message remove(Hash hash) {
+		if (interests.isEmpty()) return null;
+		Interest interest = interests.remove(hash);
+		if (interest == null) return null;
+		release(interest);
+		long latency = Utils.getCurrentTimestamp() - interest.created;
+		deliveredCount.incrementAndGet();
+		totalLatency.addAndGet(latency);
+		if (latency > maxLatency) maxLatency = latency;
+		return interest.message;
+	}
+
+	/**
+	 * Removes and returns the Message interested in a transaction that will never
+	 * produce a result, e.g. because it was dropped from the transaction pool.
+	 * Counts as a drop, not a delivery.
+	 *
+	 * @param hash Hash of signed transaction
+	 * @return Interested Message, or null if none registered
+	 */
+	public Message drop(Hash hash) {
+		if (interests.isEmpty()) return null;
+		Interest interest = interests.remove(hash);
+		if (interest == null) return null;
+		release(interest);
+		droppedCount.incrementAndGet();
+		return interest.message;
+	}
+
+	private void release(Interest interest) {
+		Connection conn = interest.connection;
+		if (conn == null) return;
+		// Decrement and removal must be atomic with respect to register
+		connectionCounts.computeIfPresent(conn, (k, c) -> (c.decrementAndGet() <= 0) ? null : c);
+	}
+
+	/**
+	 * Culls expired interests and interests from closed connections. Clients with
+	 * expired interests are sent a TIMEOUT error result on a best efforts basis.
+	 *
+	 * @return Number of interests removed
+	 */
+	public int sweep() {
+		long now = Utils.getCurrentTimestamp();
+		int removed = 0;
+		Iterator<Map.Entry<Hash, Interest>> it = interests.entrySet().iterator();
+		while (it.hasNext()) {
+			Map.Entry<Hash, Interest> me = it.next();
+			Interest interest = me.getValue();
+			boolean closed = (interest.connection != null) && interest.connection.isClosed();
+			boolean expired = (interest.created + ttl) < now;
+			if (!(closed || expired)) continue;
+			if (!interests.remove(me.getKey(), interest)) continue;
+			release(interest);
+			removed++;
+			expiredCount.incrementAndGet();
+			if (!closed) {
+				Message m = interest.message;
+				try {
+					m.reportResult(Result.create(m.getID(), Strings.create("Transaction result not available"), ErrorCodes.TIMEOUT));
+				} catch (Throwable t) {
+					log.debug("Failed to report interest timeout: {}", t.getMessage());
+				}
+			}
+		}
+		if (removed > 0) log.debug("Culled {} transaction interests", removed);
+		return removed;
+	}
+
+	/**
+	 * Gets the number of pending interests
+	 * @return Count of pending interests
+	 */
+	public int count() {
+		return interests.size();
+	}
+
+	/**
+	 * Gets the number of pending interests for a given connection
+	 * @param conn Connection
+	 * @return Count of pending interests
+	 */
+	public int count(Connection conn) {
+		AtomicInteger c = connectionCounts.get(conn);
+		return (c == null) ? 0 : c.get();
+	}
+
+	/**
+	 * Gets the number of results delivered to interested clients
+	 * @return Delivered count
+	 */
+	public long getDeliveredCount() {
+		return deliveredCount.get();
+	}
+
+	/**
+	 * Gets the number of interests culled due to expiry or closed connections
+	 * @return Expired count
+	 */
+	public long getExpiredCount() {
+		return expiredCount.get();
+	}
+
+	/**
+	 * Gets the number of interests removed because the transaction was dropped
+	 * @return Dropped count
+	 */
+	public long getDroppedCount() {
+		return droppedCount.get();
+	}
+
+	/**
+	 * Gets the number of registrations rejected due to the per-connection limit
+	 * @return Rejected count
+	 */
+	public long getRejectedCount() {
+		return rejectedCount.get();
+	}
+
+	/**
+	 * Gets the average delivery latency in milliseconds, from registration to result delivery
+	 * @return Average latency, or 0.0 if nothing delivered yet
+	 */
+	public double getAverageLatency() {
+		long n = deliveredCount.get();
+		if (n == 0) return 0.0;
+		return ((double) totalLatency.get()) / n;
+	}
+
+	/**
+	 * Gets the maximum observed delivery latency in milliseconds
+	 * @return Maximum latency
+	 */
+	public long getMaxLatency() {
+		return maxLatency;
+	}
+}
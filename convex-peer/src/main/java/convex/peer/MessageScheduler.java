@@ -0,0 +1,595 @@
+package convex.peer;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import convex.core.ErrorCodes;
+import convex.core.Result;
+import convex.core.data.ACell;
+import convex.core.data.AVector;
+import convex.core.data.Hash;
+import convex.core.data.Strings;
+import convex.core.data.prim.CVMLong;
+import convex.core.util.Utils;
+import convex.net.Connection;
+import convex.net.MessageType;
+import convex.net.message.Message;
+import convex.net.message.MessageRemote;
+
+/**
+ * Scheduler for messages received by a Server, replacing a single FIFO queue.
+ *
+ * Each source (remote Connection, or local clients) has its own queue, so
+ * messages from a single source are always processed in order. Sources are
+ * served by weighted deficit round robin, so one busy source cannot delay the
+ * others. Peer sources (connections trusted after a successful challenge, which
+ * staked peers run on inbound as well as outbound connections) are always
+ * served before client sources, so that consensus traffic is not delayed by
+ * client load. Sending a BELIEF does not make a connection a peer source, since
+ * any client could do so.
+ *
+ * Untrusted remote sources are rate limited with a token bucket for each
+ * message category, except for data that the Server is awaiting in reply to its
+ * own MISSING_DATA requests. Messages that exceed the rate limit, or that arrive from an
+ * untrusted source when its queue is full, are rejected with a LOAD error Result
+ * where the message has an ID, or otherwise dropped. Trusted sources instead
+ * wait for space when the scheduler is full, for at most OFFER_TIMEOUT so that
+ * the receive thread is never blocked indefinitely.
+ *
+ * Thread safe: messages are offered by network threads and polled by the
+ * receiver thread.
+ */
+public class MessageScheduler {
+
+	static final Logger log = LoggerFactory.getLogger(MessageScheduler.class.getName());
+
+	/**
+	 * Categories of message for rate limiting
+	 */
+	public enum Category {
+		/**
+		 * Peer to peer messages: BELIEF, CHALLENGE, RESPONSE, GOODBYE
+		 */
+		PEER,
+
+		/**
+		 * Data transfer and other messages: DATA, DATA_BUNDLE, MISSING_DATA etc.
+		 */
+		DATA,
+
+		/**
+		 * Read only requests: QUERY, QUERY_BATCH, STATUS, SUBSCRIBE, UNSUBSCRIBE
+		 */
+		QUERY,
+
+		/**
+		 * Transaction requests: TRANSACT, TRANSACT_BATCH
+		 */
+		TRANSACT;
+
+		/**
+		 * Gets the Category for a message type
+		 * @param type Message type
+		 * @return Category of message
+		 */
+		public static Category of(MessageType type) {
+			switch (type) {
+			case BELIEF:
+			case CHALLENGE:
+			case RESPONSE:
+			case GOODBYE:
+				return PEER;
+			case QUERY:
+			case QUERY_BATCH:
+			case STATUS:
+			case SUBSCRIBE:
+			case UNSUBSCRIBE:
+				return QUERY;
+			case TRANSACT:
+			case TRANSACT_BATCH:
+				return TRANSACT;
+			default:
+				return DATA;
+			}
+		}
+	}
+
+	private static final Category[] CATEGORIES = Category.values();
+
+	/**
+	 * Default maximum number of messages queued in total
+	 */
+	public static final int DEFAULT_CAPACITY = 10000;
+
+	/**
+	 * Default maximum number of messages queued for a single client source
+	 */
+	public static final int DEFAULT_SOURCE_LIMIT = 1000;
+
+	/**
+	 * Default rate limits in messages per second for each Category, for untrusted
+	 * sources. Batch messages count once per item.
+	 */
+	private static final double[] DEFAULT_RATES = { 1000, 10000, 2000, 2000 };
+
+	/**
+	 * Default burst sizes for each Category, i.e. the maximum number of messages
+	 * accepted at once from an idle source
+	 */
+	private static final double[] DEFAULT_BURSTS = { 2000, 20000, 4000, 4000 };
+
+	/**
+	 * Scheduling weight for trusted peer connections and local clients
+	 */
+	public static final int TRUSTED_WEIGHT = 4;
+
+	/**
+	 * Scheduling weight for other sources
+	 */
+	public static final int DEFAULT_WEIGHT = 1;
+
+	/**
+	 * Credit given to a source per unit of weight on each round
+	 */
+	static final int QUANTUM = 8;
+
+	/**
+	 * Time in milliseconds after which an idle source is forgotten. Token buckets
+	 * are full again by this time at default rates.
+	 */
+	static final long IDLE_TIMEOUT = 60000;
+
+	/**
+	 * Maximum time in milliseconds a trusted source waits for space before its
+	 * message is dropped
+	 */
+	static final long OFFER_TIMEOUT = 100;
+
+	private static final class TokenBucket {
+		final double rate;
+		final double burst;
+		double tokens;
+		long lastRefill;
+
+		TokenBucket(double rate, double burst, long now) {
+			this.rate = rate;
+			this.burst = burst;
+			this.tokens = burst;
+			this.lastRefill = now;
+		}
+
+		boolean tryTake(int n, long now) {
+			long elapsed = now - lastRefill;
+			if (elapsed > 0) {
+				tokens = Math.min(burst, tokens + (elapsed * rate / 1000.0));
+				lastRefill = now;
+			}
+			if (tokens < n) return false;
+			tokens -= n;
+			return true;
+		}
+	}
+
+	private static final class Source {
+		final Connection connection;
+		final ArrayDeque<Message> queue = new ArrayDeque<>();
+		final TokenBucket[] buckets;
+		boolean active = false;
+		long deficit = 0;
+		int weight;
+		long lastActive;
+
+		Source(Connection connection, TokenBucket[] buckets, long now) {
+			this.connection = connection;
+			this.buckets = buckets;
+			this.lastActive = now;
+		}
+
+		boolean isTrusted() {
+			return (connection == null) || connection.isTrusted();
+		}
+
+		boolean isPeer() {
+			return (connection != null) && connection.isTrusted();
+		}
+	}
+
+	private final HashMap<Connection, Source> sources = new HashMap<>();
+
+	/**
+	 * Source for local messages, which are never rate limited
+	 */
+	private final Source localSource = new Source(null, null, 0);
+
+	private final ArrayDeque<Source> activePeers = new ArrayDeque<>();
+	private final ArrayDeque<Source> activeClients = new ArrayDeque<>();
+
+	private final int capacity;
+	private final int sourceLimit;
+	private final double[] rates = DEFAULT_RATES.clone();
+	private final double[] bursts = DEFAULT_BURSTS.clone();
+
+	private int count = 0;
+	private int waitingProducers = 0;
+
+	/**
+	 * Test for hashes of data awaited by the Server, or null if none
+	 */
+	private volatile Predicate<Hash> awaitedData = null;
+
+	private final AtomicLong[] throttledCounts = new AtomicLong[CATEGORIES.length];
+	private final AtomicLong droppedCount = new AtomicLong();
+	private final AtomicLong peerCount = new AtomicLong();
+	private final AtomicLong clientCount = new AtomicLong();
+
+	private MessageScheduler(int capacity, int sourceLimit) {
+		this.capacity = capacity;
+		this.sourceLimit = sourceLimit;
+		for (int i = 0; i < throttledCounts.length; i++) {
+			throttledCounts[i] = new AtomicLong();
+		}
+	}
+
+	/**
+	 * Creates a MessageScheduler
+	 * @param capacity Maximum number of messages queued in total
+	 * @param sourceLimit Maximum number of messages queued for a single client source
+	 * @return New MessageScheduler instance
+	 */
+	public static MessageScheduler create(int capacity, int sourceLimit) {
+		return new MessageScheduler(capacity, sourceLimit);
+	}
+
+	/**
+	 * Creates a MessageScheduler with default settings
+	 * @return New MessageScheduler instance
+	 */
+	public static MessageScheduler create() {
+		return create(DEFAULT_CAPACITY, DEFAULT_SOURCE_LIMIT);
+	}
+
+	/**
+	 * Sets the rate limit for a Category of messages from untrusted sources.
+	 * Applies to sources first seen after this call.
+	 *
+	 * @param category Message category
+	 * @param rate Messages per second, or a negative value for no limit
+	 * @param burst Maximum messages accepted at once from an idle source
+	 */
+	public synchronized void setRateLimit(Category category, double rate, double burst) {
+		rates[category.ordinal()] = rate;
+		bursts[category.ordinal()] = burst;
+	}
+
+	/**
+	 * Sets the test for data awaited by the Server. DATA messages providing awaited
+	 * data are accepted from untrusted sources even when over the rate limit, since
+	 * they answer our own requests.
+	 *
+	 * @param awaited Test for hashes of awaited data, or null for none
+	 */
+	public void setAwaitedData(Predicate<Hash> awaited) {
+		this.awaitedData = awaited;
+	}
+
+	/**
+	 * Checks if a message provides data awaited by the Server. A DATA_BUNDLE is
+	 * sent child first, so the requested cell is the last one.
+	 */
+	private boolean isAwaitedData(Message m) {
+		Predicate<Hash> awaited = awaitedData;
+		if (awaited == null) return false;
+		ACell data;
+		switch (m.getType()) {
+		case DATA:
+			data = m.getPayload();
+			break;
+		case DATA_BUNDLE: {
+			ACell payload = m.getPayload();
+			if (!(payload instanceof AVector)) return false;
+			AVector<?> v = (AVector<?>) payload;
+			if (v.isEmpty()) return false;
+			data = v.get(v.count() - 1);
+			break;
+		}
+		default:
+			return false;
+		}
+		return awaited.test(Hash.compute(data));
+	}
+
+	/**
+	 * Gets the cost of a message for rate limiting and scheduling. Batch messages
+	 * cost one unit per item.
+	 */
+	static int cost(Message m) {
+		MessageType type = m.getType();
+		if ((type == MessageType.TRANSACT_BATCH) || (type == MessageType.QUERY_BATCH)) {
+			ACell payload = m.getPayload();
+			if (payload instanceof AVector) {
+				AVector<?> v = (AVector<?>) payload;
+				if ((v.count() > 1) && (v.get(1) instanceof AVector)) {
+					return (int) Math.max(1, Math.min(Server.MAX_BATCH_SIZE, ((AVector<?>) v.get(1)).count()));
+				}
+			}
+		}
+		return 1;
+	}
+
+	private Source getSource(Message m, long now) {
+		Connection conn = (m instanceof MessageRemote) ? ((MessageRemote) m).getConnection() : null;
+		if (conn == null) return localSource;
+		Source s = sources.get(conn);
+		if (s == null) {
+			TokenBucket[] buckets = new TokenBucket[CATEGORIES.length];
+			for (int i = 0; i < buckets.length; i++) {
+				if (rates[i] >= 0) buckets[i] = new TokenBucket(rates[i], bursts[i], now);
+			}
+			s = new Source(conn, buckets, now);
+			sources.put(conn, s);
+		}
+		return s;
+	}
+
+	/**
+	 * Offers a received message for processing. May block for up to OFFER_TIMEOUT
+	 * if the scheduler is full and the message is from a trusted source. Messages
+	 * that are rejected are reported to the sender with a LOAD error, if they have
+	 * an ID.
+	 *
+	 * @param m Message received
+	 * @return true if queued, false if rejected
+	 * @throws InterruptedException If interrupted while waiting for space
+	 */
+	public boolean offer(Message m) throws InterruptedException {
+		String rejection = null;
+		synchronized (this) {
+			long now = Utils.getTimeMillis();
+			Source s = getSource(m, now);
+			Category cat = Category.of(m.getType());
+
+			if (!s.isTrusted()) {
+				TokenBucket b = s.buckets[cat.ordinal()];
+				if ((b != null) && !b.tryTake(cost(m), now) && !isAwaitedData(m)) {
+					throttledCounts[cat.ordinal()].incrementAndGet();
+					rejection = "Rate limit exceeded";
+				}
+			}
+
+			if (rejection == null) {
+				if (s.isTrusted()) {
+					// apply back pressure to trusted sources rather than dropping messages,
+					// but only briefly since this blocks the receive thread
+					long deadline = now + OFFER_TIMEOUT;
+					while (count >= capacity) {
+						long remaining = deadline - Utils.getTimeMillis();
+						if (remaining <= 0) break;
+						waitingProducers++;
+						try {
+							wait(remaining);
+						} finally {
+							waitingProducers--;
+						}
+					}
+					if (count >= capacity) {
+						droppedCount.incrementAndGet();
+						rejection = "Server overloaded";
+					}
+				} else if ((count >= capacity) || (s.queue.size() >= sourceLimit)) {
+					droppedCount.incrementAndGet();
+					rejection = "Server overloaded";
+				}
+			}
+
+			if (rejection == null) {
+				enqueue(s, m, now);
+				return true;
+			}
+		}
+		reject(m, rejection);
+		return false;
+	}
+
+	/**
+	 * Re-queues a message that was previously accepted, e.g. a partial message
+	 * now complete. Bypasses rate limits and never blocks.
+	 *
+	 * @param m Message to re-queue
+	 * @return true if queued, false if the scheduler is full
+	 */
+	public synchronized boolean requeue(Message m) {
+		if (count >= capacity) {
+			droppedCount.incrementAndGet();
+			return false;
+		}
+		long now = Utils.getTimeMillis();
+		enqueue(getSource(m, now), m, now);
+		return true;
+	}
+
+	private void enqueue(Source s, Message m, long now) {
+		s.queue.add(m);
+		s.lastActive = now;
+		count++;
+		if (!s.active) {
+			s.active = true;
+			s.deficit = 0;
+			s.weight = s.isTrusted() ? TRUSTED_WEIGHT : DEFAULT_WEIGHT;
+			if (s.isPeer()) {
+				activePeers.add(s);
+			} else {
+				activeClients.add(s);
+			}
+		}
+		if (count == 1) notifyAll();
+	}
+
+	private static void reject(Message m, String reason) {
+		try {
+			CVMLong id = m.getID();
+			if (id == null) return;
+			m.reportResult(Result.create(id, Strings.create(reason), ErrorCodes.LOAD));
+		} catch (Exception e) {
+			// ignore, probably bad message format or connection closed
+		}
+	}
+
+	/**
+	 * Gets the next message to process, waiting if necessary. Peer sources are
+	 * served before client sources.
+	 *
+	 * @param timeout Maximum time to wait
+	 * @param unit Unit of timeout
+	 * @return Next message, or null if none available before timeout
+	 * @throws InterruptedException If interrupted while waiting
+	 */
+	public synchronized Message poll(long timeout, TimeUnit unit) throws InterruptedException {
+		long deadline = Utils.getTimeMillis() + unit.toMillis(timeout);
+		while (count == 0) {
+			long remaining = deadline - Utils.getTimeMillis();
+			if (remaining <= 0) return null;
+			wait(remaining);
+		}
+		Message m = next(activePeers);
+		if (m != null) {
+			peerCount.incrementAndGet();
+		} else {
+			m = next(activeClients);
+			if (m == null) {
+				log.warn("Scheduler queue count inconsistent: {}", count);
+				count = 0;
+				return null;
+			}
+			clientCount.incrementAndGet();
+		}
+		count--;
+		if (waitingProducers > 0) notifyAll();
+		return m;
+	}
+
+	/**
+	 * Takes the next message from a set of active sources by deficit round robin
+	 */
+	private Message next(ArrayDeque<Source> active) {
+		while (!active.isEmpty()) {
+			Source s = active.peekFirst();
+			Message head = s.queue.peekFirst();
+			if (head == null) {
+				deactivate(active);
+				continue;
+			}
+			int cost = cost(head);
+			if (s.deficit >= cost) {
+				s.queue.pollFirst();
+				s.deficit -= cost;
+				if (s.queue.isEmpty()) deactivate(active);
+				return head;
+			}
+			// out of credit, so top up and move to the back of the round
+			s.deficit += ((long) s.weight) * QUANTUM;
+			if (active.size() > 1) active.addLast(active.pollFirst());
+		}
+		return null;
+	}
+
+	private static void deactivate(ArrayDeque<Source> active) {
+		Source s = active.pollFirst();
+		s.active = false;
+		s.deficit = 0;
+	}
+
+	/**
+	 * Removes state for closed connections and sources idle for a long time.
+	 * Queued messages from closed connections are discarded.
+	 *
+	 * @return Number of sources removed
+	 */
+	public synchronized int sweep() {
+		long now = Utils.getTimeMillis();
+		int removed = 0;
+		Iterator<Source> it = sources.values().iterator();
+		while (it.hasNext()) {
+			Source s = it.next();
+			boolean closed = s.connection.isClosed();
+			if (closed) {
+				count -= s.queue.size();
+				s.queue.clear();
+			} else if (s.active || ((s.lastActive + IDLE_TIMEOUT) > now)) {
+				continue;
+			}
+			// inactive sources are dropped from the round by next()
+			it.remove();
+			removed++;
+		}
+		if ((removed > 0) && (waitingProducers > 0)) notifyAll();
+		return removed;
+	}
+
+	/**
+	 * Gets the number of messages currently queued
+	 * @return Queued message count
+	 */
+	public synchronized int size() {
+		return count;
+	}
+
+	/**
+	 * Gets the number of remote sources currently tracked
+	 * @return Source count
+	 */
+	public synchronized int getSourceCount() {
+		return sources.size();
+	}
+
+	/**
+	 * Gets the number of messages rejected due to rate limits for a Category
+	 * @param category Message category
+	 * @return Throttled count
+	 */
+	public long getThrottledCount(Category category) {
+		return throttledCounts[category.ordinal()].get();
+	}
+
+	/**
+	 * Gets the total number of messages rejected due to rate limits
+	 * @return Throttled count
+	 */
+	public long getThrottledCount() {
+		long n = 0;
+		for (AtomicLong c : throttledCounts) {
+			n += c.get();
+		}
+		return n;
+	}
+
+	/**
+	 * Gets the number of messages dropped because queues were full
+	 * @return Dropped count
+	 */
+	public long getDroppedCount() {
+		return droppedCount.get();
+	}
+
+	/**
+	 * Gets the number of messages delivered from peer sources
+	 * @return Peer message count
+	 */
+	public long getPeerCount() {
+		return peerCount.get();
+	}
+
+	/**
+	 * Gets the number of messages delivered from client sources
+	 * @return Client message count
+	 */
+	public long getClientCount() {
+		return clientCount.get();
+	}
+}
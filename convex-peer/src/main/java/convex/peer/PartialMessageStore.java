@@ -0,0 +1,344 @@
+package convex.peer;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import convex.core.ErrorCodes;
+import convex.core.Result;
+import convex.core.data.ACell;
+import convex.core.data.Hash;
+import convex.core.data.Ref;
+import convex.core.data.Strings;
+import convex.core.data.prim.CVMLong;
+import convex.core.util.Utils;
+import convex.net.Connection;
+import convex.net.message.Message;
+import convex.net.message.MessageRemote;
+
+/**
+ * Store of partial messages, i.e. received messages that cannot be processed until
+ * missing data arrives.
+ *
+ * Each pending message tracks the set of hashes it is still missing, and becomes
+ * ready for re-dispatch once all of them have been received. Pending messages
+ * expire after a time-to-live, and are culled early if the originating connection
+ * closes. The total number of pending messages, and the number for any single
+ * connection, are capped so that a client cannot grow the store without limit.
+ *
+ * Thread safe: messages are registered and completed on the receiver thread, and
+ * swept on the update thread.
+ */
+public class PartialMessageStore {
+
+	static final Logger log = LoggerFactory.getLogger(PartialMessageStore.class.getName());
+
+	/**
+	 * Default time-to-live for partial messages in milliseconds
+	 */
+	public static final long DEFAULT_TTL = 30000;
+
+	/**
+	 * Default maximum number of partial messages for a single connection
+	 */
+	public static final int DEFAULT_CONNECTION_LIMIT = 100;
+
+	/**
+	 * Default maximum number of partial messages in total
+	 */
+	public static final int DEFAULT_LIMIT = 10000;
+
+	/**
+	 * Maximum number of missing hashes tracked for a single message. Any further
+	 * missing data is discovered when the message is re-dispatched.
+	 */
+	public static final int MAX_MISSING = 64;
+
+	private static class Pending {
+		final Message message;
+		final Connection connection;
+		final long created;
+		final HashSet<Hash> missing;
+
+		Pending(Message message, Connection connection, long created, HashSet<Hash> missing) {
+			this.message = message;
+			this.connection = connection;
+			this.created = created;
+			this.missing = missing;
+		}
+	}
+
+	/**
+	 * Pending messages indexed by each missing hash
+	 */
+	private final HashMap<Hash, ArrayList<Pending>> waiting = new HashMap<>();
+
+	/**
+	 * All pending messages
+	 */
+	private final HashSet<Pending> pending = new HashSet<>();
+
+	/**
+	 * Count of pending messages per connection
+	 */
+	private final HashMap<Connection, Integer> connectionCounts = new HashMap<>();
+
+	private final long ttl;
+	private final int connectionLimit;
+	private final int limit;
+
+	private long registeredCount = 0;
+	private long completedCount = 0;
+	private long expiredCount = 0;
+	private long rejectedCount = 0;
+
+	private PartialMessageStore(long ttl, int connectionLimit, int limit) {
+		this.ttl = ttl;
+		this.connectionLimit = connectionLimit;
+		this.limit = limit;
+	}
+
+	/**
+	 * Creates a PartialMessageStore
+	 * @param ttl Time-to-live for partial messages in milliseconds
+	 * @param connectionLimit Maximum partial messages per connection
+	 * @param limit Maximum partial messages in total
+	 * @return New PartialMessageStore instance
+	 */
+	public static PartialMessageStore create(long ttl, int connectionLimit, int limit) {
+		return new PartialMessageStore(ttl, connectionLimit, limit);
+	}
+
+	/**
+	 * Creates a PartialMessageStore with default settings
+	 * @return New PartialMessageStore instance
+	 */
+	public static PartialMessageStore create() {
+		return create(DEFAULT_TTL, DEFAULT_CONNECTION_LIMIT, DEFAULT_LIMIT);
+	}
+
+	private static Connection getConnection(Message m) {
+		if (m instanceof MessageRemote) return ((MessageRemote) m).getConnection();
+		return null;
+	}
+
+	/**
+	 * Finds the hashes of data missing from the payload of a message, in the
+	 * current store.
+	 *
+	 * @param m Message to check
+	 * @param knownMissing Hash already known to be missing, or null
+	 * @return Set of up to MAX_MISSING missing hashes
+	 */
+	public static HashSet<Hash> findMissing(Message m, Hash knownMissing) {
+		HashSet<Hash> missing = new HashSet<>();
+		if (knownMissing != null) missing.add(knownMissing);
+		ACell payload = m.getPayload();
+		if (payload != null) {
+			Ref<ACell> ref = Ref.get(payload);
+			ref.findMissing(missing);
+		}
+		if (missing.size() <= MAX_MISSING) return missing;
+
+		// keep the known missing hash, plus enough others to reach the limit
+		HashSet<Hash> result = new HashSet<>();
+		if (knownMissing != null) result.add(knownMissing);
+		for (Hash h : missing) {
+			if (result.size() >= MAX_MISSING) break;
+			result.add(h);
+		}
+		return result;
+	}
+
+	/**
+	 * Registers a partial message, to be re-dispatched once all the given missing
+	 * data has been received.
+	 *
+	 * @param m Partial message
+	 * @param missing Set of missing hashes. Must not be empty.
+	 * @return true if registered, false if rejected due to limits
+	 */
+	public synchronized boolean register(Message m, Set<Hash> missing) {
+		if (missing.isEmpty()) return false;
+		Connection conn = getConnection(m);
+		if (pending.size() >= limit) {
+			rejectedCount++;
+			return false;
+		}
+		if (conn != null) {
+			int c = connectionCounts.getOrDefault(conn, 0);
+			if (c >= connectionLimit) {
+				rejectedCount++;
+				return false;
+			}
+			connectionCounts.put(conn, c + 1);
+		}
+
+		Pending p = new Pending(m, conn, Utils.getCurrentTimestamp(), new HashSet<>(missing));
+		pending.add(p);
+		for (Hash h : p.missing) {
+			waiting.computeIfAbsent(h, k -> new ArrayList<>(1)).add(p);
+		}
+		registeredCount++;
+		return true;
+	}
+
+	/**
+	 * Notifies this store that data for a hash has been received.
+	 *
+	 * @param hash Hash of received data
+	 * @return List of messages for which all missing data is now available, to be
+	 *         re-dispatched by the caller. May be empty.
+	 */
+	public synchronized List<Message> dataReceived(Hash hash) {
+		if (waiting.isEmpty()) return List.of();
+		ArrayList<Pending> ps = waiting.remove(hash);
+		if (ps == null) return List.of();
+		ArrayList<Message> ready = new ArrayList<>();
+		for (Pending p : ps) {
+			p.missing.remove(hash);
+			if (!p.missing.isEmpty()) continue;
+			if (!pending.remove(p)) continue;
+			release(p);
+			completedCount++;
+			ready.add(p.message);
+		}
+		return ready;
+	}
+
+	private void removePending(Pending p) {
+		pending.remove(p);
+		for (Hash h : p.missing) {
+			ArrayList<Pending> ps = waiting.get(h);
+			if (ps == null) continue;
+			ps.remove(p);
+			if (ps.isEmpty()) waiting.remove(h);
+		}
+		release(p);
+	}
+
+	private void release(Pending p) {
+		Connection conn = p.connection;
+		if (conn == null) return;
+		Integer c = connectionCounts.get(conn);
+		if (c == null) return;
+		if (c <= 1) {
+			connectionCounts.remove(conn);
+		} else {
+			connectionCounts.put(conn, c - 1);
+		}
+	}
+
+	/**
+	 * Culls expired partial messages and those from closed connections. Senders of
+	 * expired messages with an ID are sent a TIMEOUT error result on a best
+	 * efforts basis.
+	 *
+	 * @return Number of messages removed
+	 */
+	public int sweep() {
+		ArrayList<Pending> expired = new ArrayList<>();
+		synchronized (this) {
+			if (pending.isEmpty()) return 0;
+			long now = Utils.getCurrentTimestamp();
+			Iterator<Pending> it = pending.iterator();
+			while (it.hasNext()) {
+				Pending p = it.next();
+				boolean closed = (p.connection != null) && p.connection.isClosed();
+				boolean timedOut = (p.created + ttl) < now;
+				if (closed || timedOut) expired.add(p);
+			}
+			for (Pending p : expired) {
+				removePending(p);
+			}
+			expiredCount += expired.size();
+		}
+
+		// report outside lock, since sending may block
+		for (Pending p : expired) {
+			if ((p.connection != null) && p.connection.isClosed()) continue;
+			Message m = p.message;
+			try {
+				CVMLong id = m.getID();
+				if (id == null) continue;
+				m.reportResult(Result.create(id, Strings.create("Missing data not received"), ErrorCodes.TIMEOUT));
+			} catch (Throwable t) {
+				log.debug("Failed to report partial message timeout: {}", t.getMessage());
+			}
+		}
+		if (!expired.isEmpty()) log.debug("Culled {} partial messages", expired.size());
+		return expired.size();
+	}
+
+	/**
+	 * Gets the number of pending partial messages
+	 * @return Count of partial messages
+	 */
+	public synchronized int count() {
+		return pending.size();
+	}
+
+	/**
+	 * Gets the number of pending partial messages for a given connection
+	 * @param conn Connection
+	 * @return Count of partial messages
+	 */
+	public synchronized int count(Connection conn) {
+		return connectionCounts.getOrDefault(conn, 0);
+	}
+
+	/**
+	 * Checks if data for a hash is awaited by any partial message
+	 * @param hash Hash of data
+	 * @return true if awaited, false otherwise
+	 */
+	public synchronized boolean isAwaiting(Hash hash) {
+		return waiting.containsKey(hash);
+	}
+
+	/**
+	 * Gets the number of distinct missing hashes awaited
+	 * @return Count of missing hashes
+	 */
+	public synchronized int getMissingCount() {
+		return waiting.size();
+	}
+
+	/**
+	 * Gets the number of partial messages registered
+	 * @return Registered count
+	 */
+	public synchronized long getRegisteredCount() {
+		return registeredCount;
+	}
+
+	/**
+	 * Gets the number of partial messages completed and released for re-dispatch
+	 * @return Completed count
+	 */
+	public synchronized long getCompletedCount() {
+		return completedCount;
+	}
+
+	/**
+	 * Gets the number of partial messages culled due to expiry or closed connections
+	 * @return Expired count
+	 */
+	public synchronized long getExpiredCount() {
+		return expiredCount;
+	}
+
+	/**
+	 * Gets the number of registrations rejected due to limits
+	 * @return Rejected count
+	 */
+	public synchronized long getRejectedCount() {
+		return rejectedCount;
+	}
+}
@@ -5,6 +5,7 @@ import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
@@ -16,7 +17,9 @@ import java.util.function.Consumer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import convex.api.Acquiror;
 import convex.api.Convex;
+import convex.api.ConvexRemote;
 import convex.core.Belief;
 import convex.core.Block;
 import convex.core.BlockResult;
@@ -56,9 +59,12 @@ import convex.core.transactions.ATransaction;
 import convex.core.transactions.Invoke;
 import convex.core.util.Shutdown;
 import convex.core.util.Utils;
+import convex.net.Connection;
 import convex.net.MessageType;
+import convex.net.MessageDecoder;
 import convex.net.NIOServer;
 import convex.net.message.Message;
+import convex.net.message.MessageRemote;
 
 
 /**
@@ -83,21 +89,30 @@ import convex.net.message.Message;
 public class Server implements Closeable {
 	public static final int DEFAULT_PORT = 18888;
 
-	private static final int RECEIVE_QUEUE_SIZE = 10000;
-
 	private static final int EVENT_QUEUE_SIZE = 1000;
 
 	// Maximum Pause for each iteration of Server update loop.
 	private static final long SERVER_UPDATE_PAUSE = 5L;
 
+	// Interval between sweeps for expired transaction interests
+	private static final long INTEREST_SWEEP_INTERVAL = 1000L;
+
+	// Maximum number of transactions to include in a single Block
+	private static final int MAX_BLOCK_TRANSACTIONS = 1024;
+
+	/**
+	 * Maximum number of items in a TRANSACT_BATCH or QUERY_BATCH message
+	 */
+	public static final int MAX_BATCH_SIZE = 256;
+
 	static final Logger log = LoggerFactory.getLogger(Server.class.getName());
 
 	// private static final Level LEVEL_MESSAGE = Level.FINER;
 
 	/**
-	 * Queue for received messages to be processed by this Peer Server
+	 * Scheduler for received messages to be processed by this Peer Server
 	 */
-	private BlockingQueue<Message> receiveQueue = new ArrayBlockingQueue<Message>(RECEIVE_QUEUE_SIZE);
+	private final MessageScheduler receiveQueue = MessageScheduler.create();
 
 	/**
 	 * Queue for received events (Beliefs, Transactions) to be processed
@@ -139,11 +154,19 @@ public class Server implements Closeable {
 	private NIOServer nio;
 	private Thread receiverThread = null;
 	private Thread updateThread = null;
+	private Thread persistThread = null;
+
+	/**
+	 * Flag for background persistence. The persist thread is woken via persistLock
+	 * rather than interrupted, so that it is never interrupted part way through a write.
+	 */
+	private volatile boolean isPersisting = false;
+	private final Object persistLock = new Object();
 
 	/**
 	 * The Peer instance current state for this server. Will be updated based on peer events.
 	 */
-	private Peer peer;
+	private volatile Peer peer;
 
 	/**
 	 * The Peer Controller Address
@@ -151,18 +174,23 @@ public class Server implements Closeable {
 	private Address controller;
 
 	/**
-	 * The list of new transactions to be added to the next Block. Accessed only in update loop
+	 * Pool of new transactions to be added to future Blocks. Accessed only in update loop
 	 *
 	 * Must all have been fully persisted.
 	 */
-	private ArrayList<SignedData<ATransaction>> newTransactions = new ArrayList<>();
+	private final TransactionPool transactionPool = TransactionPool.create(TransactionPool.DEFAULT_MEMORY_LIMIT, this::reportDroppedTransaction);
 
 	/**
 	 * The set of queued partial messages pending missing data.
 	 *
 	 * Delivery will be re-attempted when missing data is provided
 	 */
-	private HashMap<Hash, Message> partialMessages = new HashMap<Hash, Message>();
+	private final PartialMessageStore partials = PartialMessageStore.create();
+
+	/**
+	 * Client subscriptions to consensus State changes
+	 */
+	private final SubscriptionIndex subscriptions = SubscriptionIndex.create();
 
 	/**
 	 * The list of new beliefs received from remote peers the block being created
@@ -198,11 +226,14 @@ public class Server implements Closeable {
 			// now setup the connection manager
 			this.manager = new ConnectionManager(this);
 
-			this.peer = establishPeer();
+			// data we requested is not subject to client rate limits
+			receiveQueue.setAwaitedData(partials::isAwaiting);
+
+			this.peer = establishPeer().withRetention(establishRetention());
 
 			establishController();
 
-			nio = NIOServer.create(this, receiveQueue);
+			nio = NIOServer.create(this);
 
 		} finally {
 			Stores.setCurrent(savedStore);
@@ -245,7 +276,7 @@ public class Server implements Closeable {
 			if (Utils.bool(source)) {
 				// Peer sync case
 				InetSocketAddress sourceAddr=Utils.toInetSocketAddress(source);
-				Convex convex=Convex.connect(sourceAddr);
+				ConvexRemote convex=Convex.connect(sourceAddr);
 				log.info("Attempting Peer Sync with: "+sourceAddr);
 				long timeout = establishTimeout();
 				
@@ -264,16 +295,17 @@ public class Server implements Closeable {
 				// Belief acquisition
 				log.info("Attempting to obtain peer Belief: "+beliefHash);
 				SignedData<Belief> belF=null;
-				long timeElapsed=0;
+				Acquiror<SignedData<Belief>> acquiror=convex.startAcquire(beliefHash, Stores.current());
 				while (belF==null) {
 					try {
-						belF=(SignedData<Belief>) convex.acquire(beliefHash).get(timeout,TimeUnit.MILLISECONDS);
+						belF=acquiror.getFuture().get(timeout,TimeUnit.MILLISECONDS);
 					} catch (TimeoutException te) {
-						timeElapsed+=timeout;
-						log.info("Still waiting for Belief sync after "+timeElapsed/1000+"s");
+						log.info("Still waiting for Belief sync after {}s: {} cells received, {} in flight, {} queued, {} cells/s",
+								acquiror.getElapsedTime()/1000,acquiror.getReceivedCount(),acquiror.getInFlightCount(),
+								acquiror.getFrontierSize(),(long)acquiror.getThroughput());
 					}
 				}
-				log.info("Retreived Peer Signed Belief: "+beliefHash+ " with memory size: "+belF.getMemorySize());
+				log.info("Retreived Peer Signed Belief: "+beliefHash+ " with memory size: "+belF.getMemorySize()+" in "+acquiror.getElapsedTime()+"ms");
 
 				Peer peer=Peer.create(keyPair, genF, belF.getValue());
 				return peer;
@@ -305,6 +337,38 @@ public class Server implements Closeable {
 		}
 	}
 
+	/**
+	 * Gets the State history retention policy from the Server config
+	 * @return Retention policy
+	 */
+	private Peer.Retention establishRetention() {
+		long states=configLong(Keywords.RETAIN_STATES,Constants.PEER_RETAIN_STATES);
+		long blocks=configLong(Keywords.CHECKPOINT_BLOCKS,Constants.PEER_CHECKPOINT_BLOCKS);
+		long time=configLong(Keywords.CHECKPOINT_TIME,Constants.PEER_CHECKPOINT_TIME);
+		return Peer.Retention.create(states, blocks, time);
+	}
+
+	private long configLong(Keyword key, long defaultValue) {
+		Object v=getConfig().get(key);
+		if (v==null) return defaultValue;
+		if (v instanceof Number) return ((Number)v).longValue();
+		if (v instanceof String) return Long.parseLong((String)v);
+		CVMLong lv=(v instanceof ACell)?RT.ensureLong((ACell)v):null;
+		if (lv==null) throw new IllegalArgumentException("Config value "+key+" is not a long: "+v);
+		return lv.longValue();
+	}
+
+	/**
+	 * Gets the DATA_BUNDLE size limit for connections from the Server config.
+	 * Outgoing peer connections opt in to bundles by default. Other connections
+	 * only use bundles once the remote announces support. Set to zero to disable
+	 * bundles, e.g. in a network with older peers that can't decode them.
+	 * @return Bundle size limit in bytes
+	 */
+	public int getBundleSize() {
+		return (int)configLong(Keywords.BUNDLE_SIZE,Connection.DEFAULT_MAX_BUNDLE_SIZE);
+	}
+
 	private long establishTimeout() {
 		Object maybeTimeout=getConfig().get(Keywords.TIMEOUT);
 		if (maybeTimeout==null) return Constants.PEER_SYNC_TIMEOUT;
@@ -365,7 +429,9 @@ public class Server implements Closeable {
 			Object p = config.get(Keywords.PORT);
 			Integer port = (p == null) ? null : Utils.toInt(p);
 
-			nio.launch((String)config.get(Keywords.BIND_ADDRESS), port);
+			int reactors=(int)configLong(Keywords.REACTORS,NIOServer.DEFAULT_REACTORS);
+			int decodeThreads=(int)configLong(Keywords.DECODE_THREADS,MessageDecoder.DEFAULT_THREADS);
+			nio.launch((String)config.get(Keywords.BIND_ADDRESS), port, reactors, decodeThreads);
 			port = nio.getPort(); // Get the actual port (may be auto-allocated)
 
 			if (getConfig().containsKey(Keywords.URL)) {
@@ -392,6 +458,16 @@ public class Server implements Closeable {
 			updateThread.setDaemon(true);
 			updateThread.start();
 
+			// Start background persistence of Peer data if required
+			if (Utils.bool(getConfig().get(Keywords.PERSIST))) {
+				persistBlocks=configLong(Keywords.PERSIST_BLOCKS,Constants.PEER_PERSIST_BLOCKS);
+				persistInterval=configLong(Keywords.PERSIST_INTERVAL,Constants.PEER_PERSIST_INTERVAL);
+				isPersisting = true;
+				persistThread = new Thread(persistLoop, "Persist Loop on port: " + port);
+				persistThread.setDaemon(true);
+				persistThread.start();
+			}
+
 
 			// Close server on shutdown, should be before Etch stores in priority
 			Shutdown.addHook(Shutdown.SERVER, new Runnable() {
@@ -456,6 +532,9 @@ public class Server implements Closeable {
 			case DATA:
 				processData(m);
 				break;
+			case DATA_BUNDLE:
+				processDataBundle(m);
+				break;
 			case MISSING_DATA:
 				processMissingData(m);
 				break;
@@ -467,6 +546,16 @@ public class Server implements Closeable {
 			case TRANSACT:
 				processTransact(m);
 				break;
+			case TRANSACT_BATCH:
+				processTransactBatch(m);
+				break;
+			case QUERY_BATCH:
+				processQueryBatch(m);
+				break;
+			case SUBSCRIBE:
+			case UNSUBSCRIBE:
+				processSubscription(m);
+				break;
 			case GOODBYE:
 				processClose(m);
 				break;
@@ -484,8 +573,6 @@ public class Server implements Closeable {
 			log.trace("Missing data: {} in message of type {}" , missingHash,type);
 			try {
 				registerPartialMessage(missingHash, m);
-				m.sendMissingData(missingHash);
-				log.trace("Requested missing data {} for partial message",missingHash);
 			} catch (Exception ex) {
 				log.warn( "Exception while requesting missing data: {}" + ex);
 			}
@@ -501,11 +588,28 @@ public class Server implements Closeable {
 	 * @param m
 	 * @throws BadFormatException
 	 */
+	@SuppressWarnings("unchecked")
 	private void processMissingData(Message m) throws BadFormatException {
-		// payload for a missing data request should be a valid Hash
-		Hash h = RT.ensureHash(m.getPayload());
-		if (h == null) throw new BadFormatException("Hash required for missing data message");
+		// payload for a missing data request should be a valid Hash, or a vector of Hashes
+		ACell payload = m.getPayload();
+		if (payload instanceof AVector) {
+			AVector<ACell> v = (AVector<ACell>) payload;
+			long n = v.count();
+			// bound the DATA sent in reply to a single request
+			if (n > Acquiror.MAX_REQUEST_HASHES) throw new BadFormatException("Too many hashes in missing data request: " + n);
+			for (long i = 0; i < n; i++) {
+				Hash h = RT.ensureHash(v.get(i));
+				if (h == null) throw new BadFormatException("Hash required for missing data message");
+				provideMissingData(m, h);
+			}
+		} else {
+			Hash h = RT.ensureHash(payload);
+			if (h == null) throw new BadFormatException("Hash required for missing data message");
+			provideMissingData(m, h);
+		}
+	}
 
+	private void provideMissingData(Message m, Hash h) {
 		Ref<?> r = store.refForHash(h);
 		if (r != null) {
 			try {
@@ -554,7 +658,11 @@ public class Server implements Closeable {
 			return;
 		}
 
-		registerInterest(sd.getHash(), m);
+		if (!registerInterest(sd.getHash(), m)) {
+			Result r=Result.create(m.getID(), Strings.create("Too many pending transactions"), ErrorCodes.LOAD);
+			m.reportResult(r);
+			return;
+		}
 		try {
 			eventQueue.put(sd);
 		} catch (InterruptedException e) {
@@ -562,6 +670,43 @@ public class Server implements Closeable {
 		}
 	}
 
+	/**
+	 * Process a batch of transactions. The batch is persisted once as a whole,
+	 * then each transaction is handled as an individual TRANSACT message with
+	 * ID id+i, so results are reported as each transaction is finalised.
+	 *
+	 * @param m TRANSACT_BATCH message
+	 */
+	@SuppressWarnings("unchecked")
+	private void processTransactBatch(Message m) {
+		// batch is a vector [id , [signed-object ...]]
+		AVector<ACell> v = m.getPayload();
+		CVMLong id = m.getID();
+		ACell items = v.get(1);
+		if (!(items instanceof AVector) || (((AVector<?>) items).count() > MAX_BATCH_SIZE) || !(m instanceof MessageRemote)) {
+			Result r=Result.create(id, Strings.create("Bad transaction batch"), ErrorCodes.ARGUMENT);
+			m.reportResult(r);
+			return;
+		}
+		AVector<ACell> txs = (AVector<ACell>) items;
+
+		// Persist the whole batch at once. Might throw MissingDataException
+		ACell.createPersisted(txs);
+
+		Connection conn = ((MessageRemote) m).getConnection();
+		long base = id.longValue();
+		long n = txs.count();
+		for (long i = 0; i < n; i++) {
+			ACell item = txs.get(i);
+			Message tm = Message.create(conn, MessageType.TRANSACT, Vectors.of(base + i, item));
+			if (!(item instanceof SignedData)) {
+				tm.reportResult(Result.create(tm.getID(), Strings.BAD_FORMAT, ErrorCodes.FORMAT));
+				continue;
+			}
+			processTransact(tm);
+		}
+	}
+
 	/**
 	 * Called by a remote peer to close connections to the remote peer.
 	 *
@@ -574,56 +719,76 @@ public class Server implements Closeable {
 	}
 
 	/**
-	 * Checks if received data fulfils the requirement for a partial message If so,
-	 * process the message again.
+	 * Checks if received data completes any partial messages. If so, re-queue them
+	 * for processing.
 	 *
-	 * @param hash
-	 * @return true if the data request resulted in a re-queued message, false
-	 *         otherwise
+	 * @param hash Hash of received data
+	 * @return true if any message was re-queued, false otherwise
 	 */
 	private boolean maybeProcessPartial(Hash hash) {
-		Message m;
-		synchronized (partialMessages) {
-			m = partialMessages.get(hash);
-
-			if (m != null) {
-				log.trace( "Attempting to re-queue partial message due to received hash: ",hash);
-				if (receiveQueue.offer(m)) {
-					partialMessages.remove(hash);
-					return true;
-				} else {
-					log.warn( "Queue full for message with received hash: {}", hash);
-				}
+		List<Message> ready = partials.dataReceived(hash);
+		boolean requeued = false;
+		for (Message m : ready) {
+			log.trace("Re-queueing partial message completed by received hash: {}", hash);
+			if (receiveQueue.requeue(m)) {
+				requeued = true;
+			} else {
+				// already removed from partials, so tell the sender rather than losing it silently
+				log.warn("Queue full for partial message completed by hash: {}", hash);
+				reportLoadError(m, "Server overloaded, message not processed");
 			}
 		}
-		return false;
+		return requeued;
 	}
 
 	/**
-	 * Stores a partial message for potential later handling.
+	 * Reports a LOAD error to the sender of a message, if it expects a Result
+	 * @param m Message that could not be processed
+	 * @param reason Reason to report
+	 */
+	private void reportLoadError(Message m, String reason) {
+		try {
+			CVMLong id = m.getID();
+			if (id == null) return;
+			m.reportResult(Result.create(id, Strings.create(reason), ErrorCodes.LOAD));
+		} catch (Throwable t) {
+			log.debug("Failed to report load error: {}", t.getMessage());
+		}
+	}
+
+	/**
+	 * Stores a partial message for later handling, and requests any data it is
+	 * missing.
 	 *
 	 * @param missingHash Hash of missing data dependency
 	 * @param m           Message to re-attempt later when missing data is received.
 	 */
 	private void registerPartialMessage(Hash missingHash, Message m) {
-		synchronized (partialMessages) {
-			log.trace( "Registering partial message with missing hash: " ,missingHash);
-			partialMessages.put(missingHash, m);
+		HashSet<Hash> missing = PartialMessageStore.findMissing(m, missingHash);
+		if (!partials.register(m, missing)) {
+			log.debug("Rejected partial message of type {} with {} missing hashes", m.getType(), missing.size());
+			reportLoadError(m, "Too many messages awaiting missing data");
+			return;
+		}
+		log.trace("Registered partial message with {} missing hashes", missing.size());
+		for (Hash h : missing) {
+			m.sendMissingData(h);
 		}
 	}
 
 	/**
 	 * Register of client interests in receiving transaction responses
 	 */
-	private HashMap<Hash, Message> interests = new HashMap<>();
+	private final InterestIndex interests = InterestIndex.create();
 
 	/**
 	 * Register interest in receiving a result for a transaction
 	 * @param signedTransactionHash
 	 * @param m
+	 * @return true if interest registered, false if the client has too many pending transactions
 	 */
-	private void registerInterest(Hash signedTransactionHash, Message m) {
-		interests.put(signedTransactionHash, m);
+	private boolean registerInterest(Hash signedTransactionHash, Message m) {
+		return interests.register(signedTransactionHash, m);
 	}
 
 	/**
@@ -664,13 +829,23 @@ public class Server implements Closeable {
 			for (long i = oldConsensusPoint; i < newConsensusPoint; i++) {
 				SignedData<Block> block = peer.getPeerOrder().getBlock(i);
 				BlockResult br = peer.getBlockResult(i);
-				reportTransactions(block.getValue(), br);
+				if (br == null) {
+					// State no longer retained, so results can't be reported
+					reportUnretainedTransactions(block.getValue());
+				} else {
+					reportTransactions(block.getValue(), br);
+				}
 			}
 		}
 
 		return true;
 	}
 
+	/**
+	 * Time of last sweep for expired interests
+	 */
+	private long lastInterestSweep=0;
+
 	/**
 	 * Time of last belief broadcast
 	 */
@@ -724,11 +899,10 @@ public class Server implements Closeable {
 		if ((lastBlockPublishedTime+Constants.MIN_BLOCK_TIME)>timestamp) return false;
 
 		Block block=null;
-		int n = newTransactions.size();
-		if (n == 0) return false;
-		// TODO: smaller block if too many transactions?
-		block = Block.create(timestamp, (List<SignedData<ATransaction>>) newTransactions);
-		newTransactions.clear();
+		if (transactionPool.isEmpty()) return false;
+		List<SignedData<ATransaction>> newTransactions = transactionPool.select(peer.getConsensusState(), MAX_BLOCK_TRANSACTIONS);
+		if (newTransactions.isEmpty()) return false;
+		block = Block.create(timestamp, newTransactions);
 
 		ACell.createPersisted(block);
 
@@ -770,11 +944,14 @@ public class Server implements Closeable {
 	}
 	
 	/**
-	 * Queues a message for processing by this Server. May block briefly.
+	 * Queues a message for processing by this Server. May block briefly. The
+	 * message may be rejected due to rate limits or load, in which case the
+	 * sender is notified with a LOAD error.
 	 * @param m Message to queue
+	 * @return true if queued, false if rejected
 	 */
-	public void queueMessage(Message m) throws InterruptedException {
-		receiveQueue.put(m);
+	public boolean queueMessage(Message m) throws InterruptedException {
+		return receiveQueue.offer(m);
 	}
 
 	/**
@@ -816,7 +993,7 @@ public class Server implements Closeable {
 			}
 			ACell message = Reader.read(code);
 			ATransaction transaction = Invoke.create(address, as.getSequence()+1, message);
-			newTransactions.add(getKeyPair().signData(transaction));
+			transactionPool.add(getKeyPair().signData(transaction));
 		}
 	}
 
@@ -874,8 +1051,9 @@ public class Server implements Closeable {
 
 			Peer peer=this.getPeer();
 			Hash beliefHash=peer.getSignedBelief().getHash();
+			// Hash of retained State window only, see MessageType.STATUS
 			Hash stateHash=peer.getStates().getHash();
-			Hash initialStateHash=peer.getStates().get(0).getHash();
+			Hash initialStateHash=peer.getNetworkID();
 			AccountKey peerKey=getPeerKey();
 			Hash consensusHash=peer.getConsensusState().getHash();
 
@@ -922,6 +1100,58 @@ public class Server implements Closeable {
 		}
 	}
 
+	/**
+	 * Process a batch of queries, executing all against the same Peer state and
+	 * returning a single Result containing a Vector of the individual Results.
+	 *
+	 * @param m QUERY_BATCH message
+	 */
+	@SuppressWarnings("unchecked")
+	private void processQueryBatch(Message m) {
+		try {
+			// batch is a vector [id , [form ...], address?]
+			AVector<ACell> v = m.getPayload();
+			CVMLong id = m.getID();
+			ACell items = v.get(1);
+			if (!(items instanceof AVector) || (((AVector<?>) items).count() > MAX_BATCH_SIZE)) {
+				m.reportResult(Result.create(id, Strings.create("Bad query batch"), ErrorCodes.ARGUMENT));
+				return;
+			}
+			AVector<ACell> forms = (AVector<ACell>) items;
+			Address address = RT.ensureAddress(v.get(2));
+
+			Peer p = peer;
+			int n = Utils.checkedInt(forms.count());
+			Result[] results = new Result[n];
+			for (int i = 0; i < n; i++) {
+				Context<ACell> ctx = p.executeQuery(forms.get(i), address);
+				results[i] = Result.fromContext(CVMLong.create(id.longValue() + i), ctx);
+			}
+
+			boolean resultReturned = m.reportResult(Result.create(id, Vectors.create(results)));
+			if (!resultReturned) {
+				log.warn("Failed to send query batch result back to client with ID: {}", id);
+			}
+		} catch (MissingDataException e) {
+			throw e;
+		} catch (Throwable t) {
+			log.warn("Query Batch Error: {}", t);
+		}
+	}
+
+	/**
+	 * Process a SUBSCRIBE or UNSUBSCRIBE message. The message is queued for the
+	 * update thread, which applies subscription changes in order and pushes
+	 * values to subscribers as the consensus State changes.
+	 *
+	 * @param m Subscription message
+	 */
+	private void processSubscription(Message m) {
+		// Ensure the payload is complete. Might throw MissingDataException
+		ACell.createPersisted(m.getPayload());
+		subscriptions.queue(m);
+	}
+
 	private void processData(Message m) {
 		ACell payload = m.getPayload();
 
@@ -938,6 +1168,27 @@ public class Server implements Closeable {
 		maybeProcessPartial(r.getHash());
 	}
 
+	/**
+	 * Process a bundle of data cells. All cells are stored first, in the
+	 * child-first order sent, before checking for partial messages that may now
+	 * be complete.
+	 *
+	 * @param m DATA_BUNDLE message
+	 */
+	private void processDataBundle(Message m) {
+		AVector<ACell> cells = m.getPayload();
+		int n = Utils.checkedInt(cells.count());
+		Hash[] hashes = new Hash[n];
+		for (int i = 0; i < n; i++) {
+			Ref<?> r = Ref.get(cells.get(i)).persistShallow();
+			hashes[i] = r.getHash();
+		}
+		log.trace("Processed DATA_BUNDLE with {} cells", n);
+		for (int i = 0; i < n; i++) {
+			maybeProcessPartial(hashes[i]);
+		}
+	}
+
 	/**
 	 * Process an incoming message that represents a Belief
 	 *
@@ -1023,6 +1274,9 @@ public class Server implements Closeable {
 						raiseServerChange("consensus");
 					}
 
+					// Push any changes to subscribers
+					subscriptions.update(peer);
+
 					long timestamp=Utils.getCurrentTimestamp();
 
 					// Broadcast Belief if changed or otherwise not done recently
@@ -1033,6 +1287,15 @@ public class Server implements Closeable {
 						}
 					}
 
+					// Cull expired client interests occasionally
+					if ((lastInterestSweep+INTEREST_SWEEP_INTERVAL)<timestamp) {
+						interests.sweep();
+						partials.sweep();
+						subscriptions.sweep();
+						receiveQueue.sweep();
+						lastInterestSweep=timestamp;
+					}
+
 					// Maybe sleep a bit, wait for some new events to accumulate
 					awaitEvents();
 				}
@@ -1046,6 +1309,72 @@ public class Server implements Closeable {
 		}
 	};
 
+	/**
+	 * Number of Blocks between background persistence of Peer data
+	 */
+	private long persistBlocks=Constants.PEER_PERSIST_BLOCKS;
+
+	/**
+	 * Interval in milliseconds between background persistence of Peer data
+	 */
+	private long persistInterval=Constants.PEER_PERSIST_INTERVAL;
+
+	/**
+	 * Maximum pause between checks in the persist loop
+	 */
+	private static final long PERSIST_POLL_PAUSE=1000;
+	private static final long PERSIST_JOIN_TIMEOUT=10000;
+
+	/**
+	 * Stops the background persist thread, waiting for any persist in progress to complete
+	 */
+	private void stopPersistThread() {
+		Thread pt = persistThread;
+		if (pt == null) return;
+		synchronized (persistLock) {
+			isPersisting = false;
+			persistLock.notifyAll();
+		}
+		try {
+			pt.join(PERSIST_JOIN_TIMEOUT);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		if (pt.isAlive()) log.warn("Persist thread did not terminate on close");
+		persistThread = null;
+	}
+
+	/**
+	 * Runnable loop that periodically persists Peer data, so that the Peer can be
+	 * restored from a recent checkpoint after a crash.
+	 */
+	private final Runnable persistLoop = new Runnable() {
+		@Override
+		public void run() {
+			Stores.setCurrent(getStore()); // ensure the loop uses this Server's store
+			try {
+				while (isRunning) {
+					synchronized (persistLock) {
+						if (!isPersisting) break;
+						persistLock.wait(Math.max(1,Math.min(persistInterval, PERSIST_POLL_PAUSE)));
+						if (!isPersisting) break;
+					}
+					Peer p=peer;
+					if ((p==null)||(p==persistedPeer)) continue;
+					long cp=p.getConsensusPoint();
+					long elapsed=Utils.getCurrentTimestamp()-lastPersistTime;
+					boolean due=((persistBlocks>0)&&(cp>=persistedConsensusPoint+persistBlocks))
+							||((persistInterval>0)&&(elapsed>=persistInterval));
+					if (due) persistPeerData();
+				}
+			} catch (InterruptedException e) {
+				log.debug("Terminating Server persistence due to interrupt");
+			} catch (Throwable e) {
+				log.error("Unexpected exception in server persist loop: {}", e);
+			}
+		}
+	};
+
 	@SuppressWarnings("unchecked")
 	private void awaitEvents() throws InterruptedException {
 		SignedData<?> firstEvent=eventQueue.poll(SERVER_UPDATE_PAUSE, TimeUnit.MILLISECONDS);
@@ -1057,7 +1386,7 @@ public class Server implements Closeable {
 			ACell event=signedEvent.getValue();
 			if (event instanceof ATransaction) {
 				SignedData<ATransaction> receivedTrans=(SignedData<ATransaction>)signedEvent;
-				newTransactions.add(receivedTrans);
+				transactionPool.add(receivedTrans, peer.getConsensusState());
 			} else if (event instanceof Belief) {
 				SignedData<Belief> receivedBelief=(SignedData<Belief>)signedEvent;
 				AccountKey addr = receivedBelief.getAccountKey();
@@ -1079,21 +1408,22 @@ public class Server implements Closeable {
 	}
 
 	private void reportTransactions(Block block, BlockResult br) {
-		// TODO: consider culling old interests after some time period
+		// Skip the whole block if nobody is waiting for results
+		if (interests.count()==0) return;
+		AVector<SignedData<ATransaction>> transactions=block.getTransactions();
+		AVector<Result> results=br.getResults();
 		int nTrans = block.length();
 		for (long j = 0; j < nTrans; j++) {
 			try {
-				SignedData<ATransaction> t = block.getTransactions().get(j);
+				SignedData<ATransaction> t = transactions.get(j);
 				Hash h = t.getHash();
-				Message m = interests.get(h);
+				Message m = interests.remove(h);
 				if (m != null) {
 					ACell id = m.getID();
 					log.trace("Returning tranaction result ID {} to {}", id,m.getOriginString());
-					Result res = br.getResults().get(j);
+					Result res = results.get(j);
 
 					m.reportResult(res);
-					
-					interests.remove(h);
 				}
 			} catch (Throwable e) {
 				log.warn("Exception while sending Result: ",e);
@@ -1102,6 +1432,78 @@ public class Server implements Closeable {
 		}
 	}
 
+	/**
+	 * Reports an error to interested clients for transactions in a Block whose
+	 * results are no longer retained, so that clients do not wait until timeout
+	 * @param block Block containing transactions
+	 */
+	private void reportUnretainedTransactions(Block block) {
+		if (interests.count()==0) return;
+		AVector<SignedData<ATransaction>> transactions=block.getTransactions();
+		int nTrans = block.length();
+		for (long j = 0; j < nTrans; j++) {
+			Message m = interests.drop(transactions.get(j).getHash());
+			if (m == null) continue;
+			try {
+				m.reportResult(Result.create(m.getID(), Strings.create("Transaction result no longer retained by Peer"), ErrorCodes.STATE));
+			} catch (Throwable e) {
+				log.warn("Exception while sending Result: ",e);
+			}
+		}
+	}
+
+	/**
+	 * Reports a transaction dropped from the transaction pool to any interested client
+	 * @param st Signed transaction dropped
+	 * @param code Error code indicating reason for drop
+	 */
+	private void reportDroppedTransaction(SignedData<ATransaction> st, Keyword code) {
+		Message m = interests.drop(st.getHash());
+		if (m == null) return;
+		Result res = Result.create(m.getID(), Strings.create("Transaction not included in Block: " + code), code);
+		m.reportResult(res);
+	}
+
+	/**
+	 * Gets the index of client interests in transaction results for this Server
+	 * @return InterestIndex instance
+	 */
+	public InterestIndex getInterestIndex() {
+		return interests;
+	}
+
+	/**
+	 * Gets the transaction pool for this Server
+	 * @return TransactionPool instance
+	 */
+	public TransactionPool getTransactionPool() {
+		return transactionPool;
+	}
+
+	/**
+	 * Gets the store of partial messages awaiting missing data for this Server
+	 * @return PartialMessageStore instance
+	 */
+	public PartialMessageStore getPartialMessageStore() {
+		return partials;
+	}
+
+	/**
+	 * Gets the scheduler for received messages for this Server
+	 * @return MessageScheduler instance
+	 */
+	public MessageScheduler getMessageScheduler() {
+		return receiveQueue;
+	}
+
+	/**
+	 * Gets the index of client subscriptions to consensus State changes for this Server
+	 * @return SubscriptionIndex instance
+	 */
+	public SubscriptionIndex getSubscriptionIndex() {
+		return subscriptions;
+	}
+
 	/**
 	 * Gets the port that this Server is currently accepting connections on
 	 * @return Port number
@@ -1115,29 +1517,67 @@ public class Server implements Closeable {
 		close();
 	}
 
+	/**
+	 * Last Peer persisted to the store, or null if not yet persisted
+	 */
+	private volatile Peer persistedPeer=null;
+	private volatile long persistedConsensusPoint=0;
+	private volatile long lastPersistTime=0;
+	private volatile long persistCount=0;
+
 	/**
 	 * Writes the Peer data to the configured store.
 	 *
+	 * Only novelty since the last write is persisted, since existing persisted
+	 * cells are skipped. The store is flushed before the root hash is updated, so
+	 * the root hash always refers to complete Peer data.
+	 *
 	 * This will overwrite any previously persisted peer data.
 	 */
-	public void persistPeerData() {
+	public synchronized void persistPeerData() {
 		AStore tempStore = Stores.current();
 		try {
 			Stores.setCurrent(store);
-			ACell peerData = peer.toData();
+			Peer p = peer;
+			ACell peerData = p.toData();
 			Ref<?> peerRef = ACell.createPersisted(peerData);
 			Hash peerHash = peerRef.getHash();
+			store.flush();
 			store.setRootHash(peerHash);
-			log.info( "Stored peer data for Server with hash: {}", peerHash.toHexString());
+			persistedPeer = p;
+			persistedConsensusPoint = p.getConsensusPoint();
+			lastPersistTime = Utils.getCurrentTimestamp();
+			persistCount++;
+			log.debug( "Stored peer data for Server with hash: {}", peerHash.toHexString());
 		} catch (Throwable e) {
-			log.warn("Failed to persist peer state when closing server: {}" ,e.getMessage());
+			log.warn("Failed to persist peer state: {}" ,e.getMessage());
 		} finally {
 			Stores.setCurrent(tempStore);
 		}
 	}
 
+	/**
+	 * Gets the consensus point of the last Peer data persisted by this Server
+	 * @return Consensus point of last persisted Peer
+	 */
+	public long getPersistedConsensusPoint() {
+		return persistedConsensusPoint;
+	}
+
+	/**
+	 * Gets the number of times Peer data has been persisted by this Server
+	 * @return Count of Peer data writes
+	 */
+	public long getPersistCount() {
+		return persistCount;
+	}
+
 	@Override
 	public void close() {
+		// stop background persistence before the final persist, so nothing
+		// writes to the store after close
+		stopPersistThread();
+
 		// persist peer state if necessary
 		if ((peer != null) && Utils.bool(getConfig().get(Keywords.PERSIST))) {
 			try {
@@ -1185,6 +1625,15 @@ public class Server implements Closeable {
 		return nio.getHostAddress();
 	}
 
+	/**
+	 * Gets the NIO server handling network connections for this Server
+	 *
+	 * @return NIOServer instance
+	 */
+	public NIOServer getNIOServer() {
+		return nio;
+	}
+
 	/**
 	 * Returns the Keypair for this peer server
 	 *
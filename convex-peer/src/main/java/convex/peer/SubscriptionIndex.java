@@ -0,0 +1,531 @@
+package convex.peer;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import convex.core.ErrorCodes;
+import convex.core.Peer;
+import convex.core.Result;
+import convex.core.State;
+import convex.core.data.ACell;
+import convex.core.data.AVector;
+import convex.core.data.AccountStatus;
+import convex.core.data.Address;
+import convex.core.data.Hash;
+import convex.core.data.Strings;
+import convex.core.data.Symbol;
+import convex.core.data.Vectors;
+import convex.core.data.prim.CVMLong;
+import convex.core.lang.Context;
+import convex.core.lang.RT;
+import convex.core.util.Utils;
+import convex.net.Connection;
+import convex.net.MessageType;
+import convex.net.message.Message;
+import convex.net.message.MessageLocal;
+import convex.net.message.MessageRemote;
+
+/**
+ * Index of client subscriptions to parts of the consensus State.
+ *
+ * A subscription targets either an account (by Address), a Symbol in an account
+ * environment, or an arbitrary query form. The subscriber receives a RESULT with
+ * the subscription ID containing the current value when it subscribes, and again
+ * each time the value changes in a new consensus State.
+ *
+ * Account and Symbol targets are checked by comparing the hash of the relevant
+ * State subtree, so no CVM execution is needed. Query targets are executed at
+ * most once per query interval, with a limited number of queries per update, and
+ * pushed only if the hash of the result changes. The initial value of a query
+ * target is the last result computed for it, or otherwise comes from the same
+ * rate limited check. Query subscriptions have a much smaller quota than other
+ * subscriptions. Subscribers to the same target share a single check.
+ *
+ * Subscribers whose connection has too many sends waiting are dropped rather
+ * than pushed further updates.
+ *
+ * Thread safe: subscribe and unsubscribe requests are queued on the receiver
+ * thread, and applied in order on the update thread, which performs all checks.
+ */
+public class SubscriptionIndex {
+
+	static final Logger log = LoggerFactory.getLogger(SubscriptionIndex.class.getName());
+
+	/**
+	 * Default maximum number of subscriptions for a single connection
+	 */
+	public static final int DEFAULT_CONNECTION_LIMIT = 100;
+
+	/**
+	 * Default maximum number of subscriptions in total
+	 */
+	public static final int DEFAULT_LIMIT = 10000;
+
+	/**
+	 * Maximum number of query subscriptions for a single connection
+	 */
+	public static final int DEFAULT_CONNECTION_QUERY_LIMIT = 5;
+
+	/**
+	 * Maximum number of query subscriptions in total
+	 */
+	public static final int DEFAULT_QUERY_LIMIT = 500;
+
+	/**
+	 * Default minimum interval in milliseconds between executions of a query target
+	 */
+	public static final long DEFAULT_QUERY_INTERVAL = 1000;
+
+	/**
+	 * Maximum number of query targets executed in a single update
+	 */
+	public static final int MAX_QUERY_CHECKS = 16;
+
+	/**
+	 * Maximum number of queued subscribe and unsubscribe messages applied in a
+	 * single update
+	 */
+	public static final int MAX_PENDING_UPDATES = 256;
+
+	/**
+	 * Maximum number of sends waiting on a subscriber's connection before the
+	 * subscription is dropped
+	 */
+	public static final int MAX_SUBSCRIBER_BACKLOG = 64;
+
+	private static final CVMLong BASE_ID = CVMLong.ZERO;
+
+	private static class Subscriber {
+		final Message message;
+		final Object owner;
+		final long id;
+		final Watch watch;
+		Hash lastHash = null;
+
+		Subscriber(Message message, Object owner, long id, Watch watch) {
+			this.message = message;
+			this.owner = owner;
+			this.id = id;
+			this.watch = watch;
+		}
+	}
+
+	private static class Watch {
+		final AVector<ACell> key;
+		final ACell target;
+		final Address address;
+		final ArrayList<Subscriber> subscribers = new ArrayList<>(1);
+		final boolean isQuery;
+		boolean dirty = false;
+		long lastChecked = 0;
+
+		/**
+		 * Last result computed for this target, or null if not yet computed
+		 */
+		Result lastResult = null;
+
+		Watch(AVector<ACell> key, ACell target, Address address) {
+			this.key = key;
+			this.target = target;
+			this.address = address;
+			this.isQuery = !((target instanceof Address) || (target instanceof Symbol));
+		}
+
+		/**
+		 * Computes the current value of this target as a Result with a placeholder ID
+		 */
+		Result compute(Peer peer) {
+			if (target instanceof Address) {
+				State s = peer.getConsensusState();
+				return Result.create(BASE_ID, s.getAccount((Address) target));
+			}
+			if (target instanceof Symbol) {
+				State s = peer.getConsensusState();
+				AccountStatus as = s.getAccount(address);
+				ACell value = (as == null) ? null : as.getEnvironmentValue((Symbol) target);
+				return Result.create(BASE_ID, value);
+			}
+			Context<ACell> ctx = peer.executeQuery(target, address);
+			return Result.fromContext(BASE_ID, ctx);
+		}
+	}
+
+	/**
+	 * Subscribe and unsubscribe messages awaiting processing on the update thread
+	 */
+	private final ConcurrentLinkedQueue<Message> pending = new ConcurrentLinkedQueue<>();
+
+	/**
+	 * Watched targets, keyed by [target address], in order of first subscription
+	 */
+	private final LinkedHashMap<AVector<ACell>, Watch> watches = new LinkedHashMap<>();
+
+	/**
+	 * Query watches awaiting execution since the consensus State changed
+	 */
+	private final ArrayDeque<Watch> dirtyQueries = new ArrayDeque<>();
+
+	/**
+	 * Subscribers by owner (Connection or local result handler), then by subscription ID
+	 */
+	private final HashMap<Object, HashMap<Long, Subscriber>> owners = new HashMap<>();
+
+	private final int connectionLimit;
+	private final int limit;
+
+	private volatile int count = 0;
+	private int queryCount = 0;
+	private long queryInterval = DEFAULT_QUERY_INTERVAL;
+	private State lastState = null;
+
+	private final AtomicLong pushedCount = new AtomicLong();
+	private final AtomicLong checkCount = new AtomicLong();
+	private final AtomicLong rejectedCount = new AtomicLong();
+	private final AtomicLong droppedCount = new AtomicLong();
+
+	private SubscriptionIndex(int connectionLimit, int limit) {
+		this.connectionLimit = connectionLimit;
+		this.limit = limit;
+	}
+
+	/**
+	 * Creates a SubscriptionIndex
+	 * @param connectionLimit Maximum subscriptions per connection
+	 * @param limit Maximum subscriptions in total
+	 * @return New SubscriptionIndex instance
+	 */
+	public static SubscriptionIndex create(int connectionLimit, int limit) {
+		return new SubscriptionIndex(connectionLimit, limit);
+	}
+
+	/**
+	 * Creates a SubscriptionIndex with default settings
+	 * @return New SubscriptionIndex instance
+	 */
+	public static SubscriptionIndex create() {
+		return create(DEFAULT_CONNECTION_LIMIT, DEFAULT_LIMIT);
+	}
+
+	/**
+	 * Sets the minimum interval between executions of each query target
+	 * @param millis Interval in milliseconds
+	 */
+	public void setQueryInterval(long millis) {
+		this.queryInterval = millis;
+	}
+
+	private static Object getOwner(Message m) {
+		if (m instanceof MessageRemote) return ((MessageRemote) m).getConnection();
+		if (m instanceof MessageLocal) return ((MessageLocal) m).getResultHandler();
+		return null;
+	}
+
+	/**
+	 * Queues a SUBSCRIBE or UNSUBSCRIBE message for processing on the next update
+	 * @param m Message to queue
+	 */
+	public void queue(Message m) {
+		pending.add(m);
+	}
+
+	/**
+	 * Checks if there are queued subscription changes
+	 * @return true if update is needed to process queued messages
+	 */
+	public boolean hasPending() {
+		return !pending.isEmpty();
+	}
+
+	/**
+	 * Applies queued subscription changes, and pushes changed values to subscribers
+	 * if the consensus State has changed since the last update. Should be called
+	 * only on the update thread.
+	 *
+	 * @param peer Peer with current consensus State
+	 * @return Number of results pushed to subscribers
+	 */
+	public int update(Peer peer) {
+		int pushed = 0;
+		Message m;
+		for (int i = 0; (i < MAX_PENDING_UPDATES) && ((m = pending.poll()) != null); i++) {
+			try {
+				if (m.getType() == MessageType.UNSUBSCRIBE) {
+					processUnsubscribe(m);
+				} else {
+					pushed += processSubscribe(m, peer);
+				}
+			} catch (ClassCastException | IndexOutOfBoundsException | NullPointerException e) {
+				log.debug("Bad subscription message: {}", e.getMessage());
+			}
+		}
+
+		State s = peer.getConsensusState();
+		if (s != lastState) {
+			lastState = s;
+			for (Watch w : watches.values().toArray(new Watch[watches.size()])) {
+				if (w.isQuery) {
+					// queries need CVM execution, so defer to the rate limited check
+					markDirty(w);
+				} else {
+					pushed += check(w, peer);
+				}
+			}
+		}
+		pushed += checkQueries(peer);
+		pushedCount.addAndGet(pushed);
+		return pushed;
+	}
+
+	private void markDirty(Watch w) {
+		if (w.dirty) return;
+		w.dirty = true;
+		dirtyQueries.add(w);
+	}
+
+	/**
+	 * Executes changed query targets, up to MAX_QUERY_CHECKS per update. Targets
+	 * checked within the query interval are deferred to a later update.
+	 */
+	private int checkQueries(Peer peer) {
+		int pushed = 0;
+		long now = Utils.getTimeMillis();
+		int n = Math.min(MAX_QUERY_CHECKS, dirtyQueries.size());
+		for (int i = 0; i < n; i++) {
+			Watch w = dirtyQueries.poll();
+			if (w.subscribers.isEmpty()) continue; // removed since marked
+			if ((now - w.lastChecked) < queryInterval) {
+				dirtyQueries.add(w);
+				continue;
+			}
+			w.dirty = false;
+			pushed += check(w, peer);
+		}
+		return pushed;
+	}
+
+	private int processSubscribe(Message m, Peer peer) {
+		// payload is [id target address?]
+		AVector<ACell> v = m.getPayload();
+		CVMLong id = m.getID();
+		ACell target = v.get(1);
+		Address address = (v.count() > 2) ? RT.ensureAddress(v.get(2)) : null;
+		if ((target instanceof Symbol) && (address == null)) {
+			m.reportResult(Result.create(id, Strings.create("Address required for Symbol subscription"), ErrorCodes.ARGUMENT));
+			return 0;
+		}
+
+		Object owner = getOwner(m);
+		HashMap<Long, Subscriber> subs = owners.get(owner);
+
+		// replace any existing subscription with the same ID, keeping the watch (and
+		// its last result) if the target is unchanged
+		AVector<ACell> key = Vectors.of(target, address);
+		Watch w = watches.get(key);
+		if (subs != null) remove(subs.get(id.longValue()));
+
+		boolean isRemote = (owner instanceof Connection);
+		int ownerCount = (subs == null) ? 0 : subs.size();
+		if ((count >= limit) || (isRemote && (ownerCount >= connectionLimit))) {
+			rejectedCount.incrementAndGet();
+			m.reportResult(Result.create(id, Strings.create("Too many subscriptions"), ErrorCodes.LOAD));
+			return 0;
+		}
+		boolean isQuery = !((target instanceof Address) || (target instanceof Symbol));
+		if (isQuery && ((queryCount >= DEFAULT_QUERY_LIMIT) || (isRemote && (countQueries(subs) >= DEFAULT_CONNECTION_QUERY_LIMIT)))) {
+			rejectedCount.incrementAndGet();
+			m.reportResult(Result.create(id, Strings.create("Too many query subscriptions"), ErrorCodes.LOAD));
+			return 0;
+		}
+
+		if (w == null) w = new Watch(key, target, address);
+		watches.put(key, w);
+		Subscriber sub = new Subscriber(m, owner, id.longValue(), w);
+		w.subscribers.add(sub);
+		owners.computeIfAbsent(owner, k -> new HashMap<>()).put(sub.id, sub);
+		count++;
+		if (w.isQuery) queryCount++;
+
+		// send initial value. Queries are never executed here, to stay within the
+		// per update limit: a new subscriber gets the last result if there is one,
+		// and is pushed the next result computed otherwise
+		Result r = w.isQuery ? w.lastResult : compute(w, peer);
+		if (r == null) {
+			markDirty(w);
+			return 0;
+		}
+		return push(sub, r) ? 1 : 0;
+	}
+
+	private static int countQueries(HashMap<Long, Subscriber> subs) {
+		if (subs == null) return 0;
+		int n = 0;
+		for (Subscriber sub : subs.values()) {
+			if (sub.watch.isQuery) n++;
+		}
+		return n;
+	}
+
+	private void processUnsubscribe(Message m) {
+		// payload is [id]
+		AVector<ACell> v = m.getPayload();
+		CVMLong id = RT.ensureLong(v.get(0));
+		if (id == null) return;
+		HashMap<Long, Subscriber> subs = owners.get(getOwner(m));
+		if (subs == null) return;
+		remove(subs.get(id.longValue()));
+	}
+
+	private void remove(Subscriber sub) {
+		if (sub == null) return;
+		Watch w = sub.watch;
+		if (!w.subscribers.remove(sub)) return;
+		if (w.subscribers.isEmpty()) watches.remove(w.key);
+		HashMap<Long, Subscriber> subs = owners.get(sub.owner);
+		if (subs != null) {
+			subs.remove(sub.id);
+			if (subs.isEmpty()) owners.remove(sub.owner);
+		}
+		count--;
+		if (w.isQuery) queryCount--;
+	}
+
+	private Result compute(Watch w, Peer peer) {
+		checkCount.incrementAndGet();
+		w.lastChecked = Utils.getTimeMillis();
+		Result r;
+		try {
+			r = w.compute(peer);
+		} catch (Exception e) {
+			log.debug("Failed to compute subscription value: {}", e.getMessage());
+			r = Result.create(BASE_ID, Strings.create("Subscription failed"), ErrorCodes.UNEXPECTED);
+		}
+		if (w.isQuery) w.lastResult = r;
+		return r;
+	}
+
+	private int check(Watch w, Peer peer) {
+		Result r = compute(w, peer);
+		Hash h = r.getHash();
+		int pushed = 0;
+		for (Subscriber sub : w.subscribers.toArray(new Subscriber[w.subscribers.size()])) {
+			if ((sub.lastHash != null) && h.equals(sub.lastHash)) continue;
+			if (push(sub, r)) pushed++;
+		}
+		return pushed;
+	}
+
+	/**
+	 * Pushes a value to a subscriber. Removes the subscriber if the result could
+	 * not be sent, e.g. because the connection is closed, or if the connection
+	 * already has too many sends waiting.
+	 */
+	private boolean push(Subscriber sub, Result r) {
+		if ((sub.owner instanceof Connection) && (((Connection) sub.owner).getPendingAsyncSends() > MAX_SUBSCRIBER_BACKLOG)) {
+			log.debug("Dropping subscription {} for slow subscriber", sub.id);
+			droppedCount.incrementAndGet();
+			remove(sub);
+			return false;
+		}
+		sub.lastHash = r.getHash();
+		boolean sent;
+		try {
+			sent = sub.message.reportResult(r.withID(CVMLong.create(sub.id)));
+		} catch (Exception e) {
+			sent = false;
+		}
+		if (!sent) {
+			log.debug("Dropping subscription {} after failed push", sub.id);
+			remove(sub);
+		}
+		return sent;
+	}
+
+	/**
+	 * Removes subscriptions from closed connections. Should be called only on the
+	 * update thread.
+	 *
+	 * @return Number of subscriptions removed
+	 */
+	public int sweep() {
+		int removed = 0;
+		ArrayList<Subscriber> closed = new ArrayList<>();
+		for (Map.Entry<Object, HashMap<Long, Subscriber>> me : owners.entrySet()) {
+			Object owner = me.getKey();
+			if ((owner instanceof Connection) && ((Connection) owner).isClosed()) {
+				closed.addAll(me.getValue().values());
+			}
+		}
+		for (Subscriber sub : closed) {
+			remove(sub);
+			removed++;
+		}
+		if (removed > 0) log.debug("Culled {} subscriptions", removed);
+		return removed;
+	}
+
+	/**
+	 * Gets the number of active subscriptions
+	 * @return Count of subscriptions
+	 */
+	public int count() {
+		return count;
+	}
+
+	/**
+	 * Gets the number of distinct targets being watched. Should be called only on
+	 * the update thread.
+	 * @return Count of watched targets
+	 */
+	public int getWatchCount() {
+		return watches.size();
+	}
+
+	/**
+	 * Gets the number of results pushed to subscribers
+	 * @return Pushed count
+	 */
+	public long getPushedCount() {
+		return pushedCount.get();
+	}
+
+	/**
+	 * Gets the number of target values computed, across all subscribers
+	 * @return Check count
+	 */
+	public long getCheckCount() {
+		return checkCount.get();
+	}
+
+	/**
+	 * Gets the number of active query subscriptions. Should be called only on the
+	 * update thread.
+	 * @return Count of query subscriptions
+	 */
+	public int getQueryCount() {
+		return queryCount;
+	}
+
+	/**
+	 * Gets the number of subscriptions dropped because the subscriber was too slow
+	 * @return Dropped count
+	 */
+	public long getDroppedCount() {
+		return droppedCount.get();
+	}
+
+	/**
+	 * Gets the number of subscriptions rejected due to limits
+	 * @return Rejected count
+	 */
+	public long getRejectedCount() {
+		return rejectedCount.get();
+	}
+}
@@ -0,0 +1,442 @@
+package convex.peer;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.function.BiConsumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import convex.core.ErrorCodes;
+import convex.core.State;
+import convex.core.data.AccountKey;
+import convex.core.data.AccountStatus;
+import convex.core.data.Address;
+import convex.core.data.Hash;
+import convex.core.data.Keyword;
+import convex.core.data.SignedData;
+import convex.core.transactions.ATransaction;
+import convex.core.util.Utils;
+
+/**
+ * Pool of pending transactions received by a Peer, awaiting inclusion in a Block.
+ *
+ * Transactions are deduplicated by hash and queued per origin Address in sequence
+ * number order. Only transactions that carry the next expected sequence number for
+ * their Account are selected for a Block, so gapped sequences are held back until
+ * the missing transactions arrive.
+ *
+ * Where a consensus State is available, transactions not signed with the current
+ * Account key are rejected before they can take a sequence slot, so that forged
+ * transactions cannot block genuine ones. A key-valid transaction also replaces
+ * an unchecked transaction holding the same sequence number.
+ *
+ * The pool has a memory budget. If exceeded, transactions with the highest sequence
+ * numbers from the longest queues are evicted first, since they are the least
+ * likely to be executable soon. Queues are kept ordered by size for this.
+ *
+ * Methods are synchronised, but the pool is intended to be driven from the Server
+ * update loop. Metric getters may be called from any thread.
+ */
+public class TransactionPool {
+
+	static final Logger log = LoggerFactory.getLogger(TransactionPool.class.getName());
+
+	/**
+	 * Default memory budget for pooled transactions, in bytes
+	 */
+	public static final long DEFAULT_MEMORY_LIMIT = 100000000L;
+
+	/**
+	 * Number of recently selected transaction hashes retained for deduplication
+	 */
+	static final int RECENT_HASH_COUNT = 10000;
+
+	/**
+	 * Time in milliseconds after which an in-flight sequence that has not reached
+	 * consensus is abandoned, and selection restarts from the consensus sequence.
+	 */
+	static final long IN_FLIGHT_TIMEOUT = 30000;
+
+	/**
+	 * Queue of transactions for a single origin Address
+	 */
+	private static class AccountQueue {
+		/**
+		 * Unique ID, to order queues of equal size
+		 */
+		final long id;
+
+		final TreeMap<Long, SignedData<ATransaction>> pending = new TreeMap<>();
+
+		/**
+		 * Transactions added since the last selection, not yet checked against the Account key
+		 */
+		final HashSet<SignedData<ATransaction>> unchecked = new HashSet<>();
+
+		/**
+		 * Next sequence number expected after transactions already selected for
+		 * a Block, or zero if nothing is in flight.
+		 */
+		long nextSequence = 0;
+
+		/**
+		 * Time of last selection from this queue
+		 */
+		long selectTime = 0;
+
+		AccountQueue(long id) {
+			this.id = id;
+		}
+	}
+
+	private static final Comparator<AccountQueue> SIZE_ORDER = Comparator
+			.comparingInt((AccountQueue q) -> q.pending.size())
+			.thenComparingLong(q -> q.id);
+
+	private final HashMap<Address, AccountQueue> queues = new HashMap<>();
+
+	/**
+	 * Queues in order of size, for eviction. A queue must be removed before its
+	 * size changes, and added back afterwards.
+	 */
+	private final TreeSet<AccountQueue> bySize = new TreeSet<>(SIZE_ORDER);
+
+	private long nextQueueID = 0;
+
+	/**
+	 * Hashes of all transactions currently held in the pool
+	 */
+	private final HashMap<Hash, SignedData<ATransaction>> pooled = new HashMap<>();
+
+	/**
+	 * Hashes of recently selected transactions. Used to ignore duplicates that
+	 * arrive after a transaction has been included in a Block.
+	 */
+	private final LinkedHashMap<Hash, Boolean> recent = new LinkedHashMap<>(16, 0.75f, false) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Hash, Boolean> eldest) {
+			return size() > RECENT_HASH_COUNT;
+		}
+	};
+
+	private final long memoryLimit;
+
+	/**
+	 * Handler for transactions dropped from the pool, together with an error code
+	 */
+	private final BiConsumer<SignedData<ATransaction>, Keyword> dropHandler;
+
+	private volatile long memorySize = 0;
+	private volatile int count = 0;
+
+	private volatile long duplicateCount = 0;
+	private volatile long evictedCount = 0;
+	private volatile long rejectedCount = 0;
+
+	private TransactionPool(long memoryLimit, BiConsumer<SignedData<ATransaction>, Keyword> dropHandler) {
+		this.memoryLimit = memoryLimit;
+		this.dropHandler = dropHandler;
+	}
+
+	/**
+	 * Creates a new TransactionPool
+	 *
+	 * @param memoryLimit Memory budget for pooled transactions in bytes
+	 * @param dropHandler Handler called for transactions dropped from the pool, with
+	 *                    an error code indicating the reason. May be null.
+	 * @return New TransactionPool instance
+	 */
+	public static TransactionPool create(long memoryLimit, BiConsumer<SignedData<ATransaction>, Keyword> dropHandler) {
+		return new TransactionPool(memoryLimit, dropHandler);
+	}
+
+	/**
+	 * Adds a signed transaction to the pool without checking its signer. Duplicates
+	 * of transactions already pooled or recently selected are ignored.
+	 *
+	 * @param st Signed transaction to add
+	 * @return true if the transaction was added, false if it was a duplicate or was
+	 *         evicted immediately
+	 */
+	public boolean add(SignedData<ATransaction> st) {
+		return add(st, null);
+	}
+
+	/**
+	 * Adds a signed transaction to the pool. Duplicates of transactions already
+	 * pooled or recently selected are ignored. If a State is given, the transaction
+	 * is rejected unless signed with the origin's Account key in that State.
+	 *
+	 * @param st Signed transaction to add
+	 * @param state Current consensus State for checking the signer, or null to
+	 *              defer the check until selection
+	 * @return true if the transaction was added, false if it was a duplicate,
+	 *         rejected or evicted immediately
+	 */
+	public synchronized boolean add(SignedData<ATransaction> st, State state) {
+		Hash h = st.getHash();
+		if (pooled.containsKey(h) || recent.containsKey(h)) {
+			duplicateCount++;
+			return false;
+		}
+
+		ATransaction t = st.getValue();
+		Address origin = t.getOrigin();
+		boolean checked = false;
+		if (state != null) {
+			AccountStatus as = state.getAccount(origin);
+			AccountKey key = (as == null) ? null : as.getAccountKey();
+			if (!st.getAccountKey().equals(key)) {
+				drop(st, (key == null) ? ErrorCodes.NOBODY : ErrorCodes.SIGNATURE);
+				return false;
+			}
+			checked = true;
+		}
+
+		AccountQueue q = queues.get(origin);
+		if (q == null) {
+			q = new AccountQueue(nextQueueID++);
+			queues.put(origin, q);
+		} else {
+			bySize.remove(q);
+		}
+
+		long seq = t.getSequence();
+		SignedData<ATransaction> existing = q.pending.get(seq);
+		if (existing != null) {
+			if (!checked || !q.unchecked.remove(existing)) {
+				// Conflicting transaction with the same sequence number. First one wins.
+				bySize.add(q);
+				drop(st, ErrorCodes.SEQUENCE);
+				return false;
+			}
+			// A key-valid transaction displaces one that may not be
+			q.pending.remove(seq);
+			removeAccounting(existing);
+			drop(existing, ErrorCodes.SEQUENCE);
+		}
+
+		q.pending.put(seq, st);
+		if (!checked) q.unchecked.add(st);
+		bySize.add(q);
+		pooled.put(h, st);
+		memorySize += st.getMemorySize();
+		count++;
+
+		enforceMemoryLimit();
+		return pooled.containsKey(h);
+	}
+
+	/**
+	 * Selects a batch of executable transactions for a new Block, removing them
+	 * from the pool. Transactions for each origin are taken in consecutive sequence
+	 * order, starting at the next sequence number expected given the provided State
+	 * and any transactions already selected. Origins are visited round-robin so
+	 * that no single Account can monopolise a Block.
+	 *
+	 * Stale transactions (sequence already used), transactions not signed with the
+	 * Account key and transactions for Accounts that cannot transact are dropped.
+	 *
+	 * @param state    Current consensus State, used to determine expected sequence
+	 *                 numbers
+	 * @param maxCount Maximum number of transactions to select
+	 * @return List of selected transactions, possibly empty
+	 */
+	public synchronized List<SignedData<ATransaction>> select(State state, int maxCount) {
+		ArrayList<SignedData<ATransaction>> result = new ArrayList<>();
+		if (count == 0) return result;
+		long now = Utils.getCurrentTimestamp();
+
+		// queue sizes change throughout, so the size order is rebuilt afterwards
+		bySize.clear();
+
+		// Work out the expected next sequence for each origin, dropping anything stale
+		ArrayList<AccountQueue> ready = new ArrayList<>();
+		HashMap<AccountQueue, Long> expected = new HashMap<>();
+		Iterator<Map.Entry<Address, AccountQueue>> it = queues.entrySet().iterator();
+		while (it.hasNext()) {
+			Map.Entry<Address, AccountQueue> me = it.next();
+			Address origin = me.getKey();
+			AccountQueue q = me.getValue();
+			AccountStatus as = state.getAccount(origin);
+			if ((as == null) || (as.getAccountKey() == null)) {
+				dropAll(q, ErrorCodes.NOBODY);
+				it.remove();
+				continue;
+			}
+
+			// Drop transactions not signed with the Account key, since they will fail anyway
+			AccountKey key = as.getAccountKey();
+			for (SignedData<ATransaction> st : q.unchecked) {
+				if (key.equals(st.getAccountKey())) continue;
+				if (q.pending.remove(st.getValue().getSequence(), st)) {
+					removeAccounting(st);
+					drop(st, ErrorCodes.SIGNATURE);
+				}
+			}
+			q.unchecked.clear();
+
+			long next = as.getSequence() + 1;
+			if (q.nextSequence > next) {
+				if ((q.selectTime + IN_FLIGHT_TIMEOUT) < now) {
+					log.debug("Abandoning in-flight sequence {} for {}", q.nextSequence, origin);
+					q.nextSequence = 0;
+				} else {
+					next = q.nextSequence;
+				}
+			} else {
+				q.nextSequence = 0;
+			}
+
+			// Drop stale transactions that can no longer execute
+			while (!q.pending.isEmpty() && (q.pending.firstKey() < next)) {
+				SignedData<ATransaction> st = q.pending.pollFirstEntry().getValue();
+				removeAccounting(st);
+				drop(st, ErrorCodes.SEQUENCE);
+			}
+
+			if (q.pending.isEmpty()) {
+				if (q.nextSequence == 0) it.remove();
+				continue;
+			}
+			if (q.pending.firstKey() == next) {
+				ready.add(q);
+				expected.put(q, next);
+			}
+		}
+
+		// Round-robin selection across ready origins
+		while ((result.size() < maxCount) && !ready.isEmpty()) {
+			Iterator<AccountQueue> rit = ready.iterator();
+			while (rit.hasNext() && (result.size() < maxCount)) {
+				AccountQueue q = rit.next();
+				long next = expected.get(q);
+				SignedData<ATransaction> st = q.pending.get(next);
+				if (st == null) {
+					rit.remove();
+					continue;
+				}
+				q.pending.remove(next);
+				removeAccounting(st);
+				recent.put(st.getHash(), Boolean.TRUE);
+				result.add(st);
+				expected.put(q, next + 1);
+				q.nextSequence = next + 1;
+				q.selectTime = now;
+			}
+		}
+		bySize.addAll(queues.values());
+		return result;
+	}
+
+	private void enforceMemoryLimit() {
+		while (memorySize > memoryLimit) {
+			// The origin with the longest queue is last in size order
+			AccountQueue longest = bySize.isEmpty() ? null : bySize.last();
+			if ((longest == null) || longest.pending.isEmpty()) break;
+
+			// Evict the highest sequence number from that queue
+			bySize.remove(longest);
+			SignedData<ATransaction> st = longest.pending.pollLastEntry().getValue();
+			bySize.add(longest);
+			longest.unchecked.remove(st);
+			removeAccounting(st);
+			evictedCount++;
+			drop(st, ErrorCodes.LOAD);
+		}
+	}
+
+	private void dropAll(AccountQueue q, Keyword code) {
+		for (SignedData<ATransaction> st : q.pending.values()) {
+			removeAccounting(st);
+			drop(st, code);
+		}
+		q.pending.clear();
+		q.unchecked.clear();
+	}
+
+	private void removeAccounting(SignedData<ATransaction> st) {
+		pooled.remove(st.getHash());
+		memorySize -= st.getMemorySize();
+		count--;
+	}
+
+	private void drop(SignedData<ATransaction> st, Keyword code) {
+		if (code != ErrorCodes.LOAD) rejectedCount++;
+		log.debug("Dropping transaction {} from pool: {}", st.getHash(), code);
+		if (dropHandler == null) return;
+		try {
+			dropHandler.accept(st, code);
+		} catch (Throwable t) {
+			log.warn("Exception in transaction drop handler: {}", t);
+		}
+	}
+
+	/**
+	 * Checks if a transaction with the given hash is currently held in the pool
+	 * @param hash Hash of signed transaction
+	 * @return true if pooled, false otherwise
+	 */
+	public synchronized boolean contains(Hash hash) {
+		return pooled.containsKey(hash);
+	}
+
+	/**
+	 * Gets the number of transactions currently held in the pool
+	 * @return Count of pooled transactions
+	 */
+	public int count() {
+		return count;
+	}
+
+	/**
+	 * Checks if the pool is empty
+	 * @return true if no transactions are pooled
+	 */
+	public boolean isEmpty() {
+		return count == 0;
+	}
+
+	/**
+	 * Gets the total memory size of pooled transactions
+	 * @return Memory size in bytes
+	 */
+	public long getMemorySize() {
+		return memorySize;
+	}
+
+	/**
+	 * Gets the number of duplicate transactions ignored by this pool
+	 * @return Duplicate count
+	 */
+	public long getDuplicateCount() {
+		return duplicateCount;
+	}
+
+	/**
+	 * Gets the number of transactions evicted due to the memory budget
+	 * @return Eviction count
+	 */
+	public long getEvictedCount() {
+		return evictedCount;
+	}
+
+	/**
+	 * Gets the number of transactions rejected as not executable (e.g. stale sequence numbers)
+	 * @return Rejected count
+	 */
+	public long getRejectedCount() {
+		return rejectedCount;
+	}
+}
@@ -3,11 +3,16 @@ package convex.api;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
@@ -18,14 +23,18 @@ import convex.core.ErrorCodes;
 import convex.core.Result;
 import convex.core.crypto.AKeyPair;
 import convex.core.crypto.Ed25519Signature;
+import convex.core.data.ACell;
 import convex.core.data.Address;
 import convex.core.data.Ref;
 import convex.core.data.SignedData;
+import convex.core.data.Symbol;
+import convex.core.data.prim.CVMLong;
 import convex.core.lang.Reader;
 import convex.core.lang.ops.Constant;
 import convex.core.transactions.ATransaction;
 import convex.core.transactions.Invoke;
 import convex.core.util.Utils;
+import convex.net.Connection;
 import convex.peer.TestNetwork;
 
 /**
@@ -100,4 +109,114 @@ public class ConvexRemoteTest {
 		}
 	}
 
+	@Test
+	public void testConcurrentQueries() throws Exception {
+		synchronized (network.SERVER) {
+			Convex convex = Convex.connect(network.SERVER.getHostAddress(), ADDRESS, KEYPAIR);
+			int threads = 4;
+			int n = 200;
+			ArrayList<CompletableFuture<Result>> rs = new ArrayList<>();
+			ArrayList<Thread> ts = new ArrayList<>();
+			for (int t = 0; t < threads; t++) {
+				Thread thread = new Thread(() -> {
+					for (int i = 0; i < n; i++) {
+						try {
+							CompletableFuture<Result> f = convex.query(Constant.of(i));
+							synchronized (rs) {
+								rs.add(f);
+							}
+						} catch (IOException e) {
+							throw Utils.sneakyThrow(e);
+						}
+					}
+				});
+				ts.add(thread);
+				thread.start();
+			}
+			for (Thread t : ts) {
+				t.join();
+			}
+			assertEquals(threads * n, rs.size());
+			for (CompletableFuture<Result> f : rs) {
+				Result r = f.get(6000, TimeUnit.MILLISECONDS);
+				assertNull(r.getErrorCode(), "Error:" + r.toString());
+			}
+			assertEquals(0, convex.getAwaitingCount());
+		}
+	}
+
+	@Test
+	public void testResultTimeout() throws Exception {
+		ConvexRemote convex = Convex.connectRemote(network.SERVER);
+		convex.setTimeout(10);
+
+		// never sent, so can only complete by timing out
+		CompletableFuture<Result> f = convex.awaitResult(Connection.nextID());
+		ExecutionException e = assertThrows(ExecutionException.class, () -> f.get(5000, TimeUnit.MILLISECONDS));
+		assertTrue(e.getCause() instanceof TimeoutException);
+		assertEquals(0, convex.getAwaitingCount());
+		convex.close();
+	}
+
+	@Test
+	public void testTransactBatch() throws Exception {
+		synchronized (network.SERVER) {
+			Convex convex = Convex.connect(network.SERVER.getHostAddress(), ADDRESS, KEYPAIR);
+			int n = 300; // more than a single batch message
+			ArrayList<ATransaction> txs = new ArrayList<>();
+			for (int i = 0; i < n; i++) {
+				txs.add(Invoke.create(ADDRESS, 0, Constant.of(i)));
+			}
+			List<CompletableFuture<Result>> rs = convex.transactBatch(txs);
+			assertEquals(n, rs.size());
+			for (int i = 0; i < n; i++) {
+				Result r = rs.get(i).get(6000, TimeUnit.MILLISECONDS);
+				assertNull(r.getErrorCode(), "Error:" + r.toString());
+				assertEquals(CVMLong.create(i), r.getValue());
+			}
+		}
+	}
+
+	@Test
+	public void testQueryBatch() throws Exception {
+		synchronized (network.SERVER) {
+			Convex convex = Convex.connect(network.SERVER.getHostAddress(), ADDRESS, KEYPAIR);
+			List<ACell> forms = List.of(Reader.read("*address*"), Reader.read("(+ 1 2)"), Reader.read("(fail :foo)"));
+			List<CompletableFuture<Result>> rs = convex.queryBatch(forms);
+			assertEquals(3, rs.size());
+			assertEquals(ADDRESS, rs.get(0).get(6000, TimeUnit.MILLISECONDS).getValue());
+			assertEquals(CVMLong.create(3), rs.get(1).get(6000, TimeUnit.MILLISECONDS).getValue());
+			assertTrue(rs.get(2).get(6000, TimeUnit.MILLISECONDS).isError());
+		}
+	}
+
+	@Test
+	public void testSubscribe() throws Exception {
+		synchronized (network.SERVER) {
+			Convex convex = Convex.connect(network.SERVER.getHostAddress(), ADDRESS, KEYPAIR);
+			LinkedBlockingQueue<Result> updates = new LinkedBlockingQueue<>();
+			long id = convex.subscribe(Symbol.create("sub-counter"), updates::add);
+			assertEquals(1, convex.getSubscriptionCount());
+
+			// initial value pushed on subscription
+			Result r = updates.poll(6000, TimeUnit.MILLISECONDS);
+			assertNull(r.getErrorCode(), "Error:" + r.toString());
+			assertNull(r.getValue());
+
+			// change pushed once consensus reached
+			assertNull(convex.transactSync("(def sub-counter 1)").getErrorCode());
+			r = updates.poll(6000, TimeUnit.MILLISECONDS);
+			assertEquals(CVMLong.create(1), r.getValue());
+
+			// unrelated change not pushed
+			assertNull(convex.transactSync("(def sub-other 1)").getErrorCode());
+			assertNull(updates.poll(200, TimeUnit.MILLISECONDS));
+
+			convex.unsubscribe(id);
+			assertEquals(0, convex.getSubscriptionCount());
+			assertNull(convex.transactSync("(def sub-counter 2)").getErrorCode());
+			assertNull(updates.poll(200, TimeUnit.MILLISECONDS));
+			convex.close();
+		}
+	}
 }
@@ -0,0 +1,50 @@
+package convex.net;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+
+import org.junit.jupiter.api.Test;
+
+public class BufferPoolTest {
+
+	@Test
+	public void testReuse() {
+		BufferPool pool = BufferPool.create(100, 1);
+		ByteBuffer a = pool.acquire();
+		ByteBuffer b = pool.acquire();
+		assertTrue(a.isDirect());
+		assertEquals(100, a.remaining());
+		assertEquals(2, pool.getInUseCount());
+		assertEquals(2, pool.getAllocatedCount());
+
+		a.put((byte) 1);
+		pool.release(a);
+		pool.release(b); // exceeds max pooled, so dropped
+		assertEquals(0, pool.getInUseCount());
+		assertEquals(1, pool.getPooledCount());
+		assertEquals(100, pool.getMemorySize());
+
+		// released buffer is reused, and cleared
+		ByteBuffer c = pool.acquire();
+		assertSame(a, c);
+		assertEquals(0, c.position());
+		assertEquals(2, pool.getAllocatedCount());
+
+		// foreign buffers are ignored
+		pool.release(ByteBuffer.allocate(100));
+		assertEquals(1, pool.getInUseCount());
+	}
+
+	@Test
+	public void testFrameSizing() {
+		ByteBuffer small = BufferPool.acquireFrame(100);
+		ByteBuffer large = BufferPool.acquireFrame(BufferPool.SMALL_FRAME_BUFFER_SIZE + 1);
+		assertEquals(BufferPool.SMALL_FRAME_BUFFER_SIZE, small.capacity());
+		assertEquals(BufferPool.FRAME_BUFFER_SIZE, large.capacity());
+		BufferPool.releaseFrame(small);
+		BufferPool.releaseFrame(large);
+	}
+}
@@ -1,12 +1,18 @@
 package convex.net;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
 
 import org.junit.Test;
 
+import convex.core.data.Blob;
+import convex.core.data.Format;
 import convex.core.data.prim.CVMLong;
 import convex.core.exceptions.BadFormatException;
 import convex.core.store.Stores;
@@ -86,4 +92,114 @@ public class ConnectionTest {
 		receiveThread.join();
 	}
 
+	@Test
+	public void testReadPauseInterleaving() throws IOException {
+		Connection conn=Connection.create(MemoryByteChannel.create(100), null, Stores.current(), null);
+		MessageReceiver mr = new MessageReceiver(a -> {}, conn);
+		Blob enc=Format.encodedBlob(CVMLong.create(1));
+
+		// frames drained by a worker before the selector's pause decision lands
+		for (int i=0; i<MessageDecoder.HIGH_WATERMARK; i++) {
+			mr.enqueue(new MessageReceiver.Frame(MessageType.DATA, enc));
+		}
+		MessageReceiver.Frame f;
+		while ((f=mr.poll())!=null) {
+			mr.decode(f);
+			assertEquals(0, mr.updateReads());
+		}
+		// late pause sees the current count, so reads are never left paused
+		assertEquals(0, mr.updateReads());
+		assertFalse(mr.isReadPaused());
+
+		// pause landing first is resumed by the worker as it drains
+		for (int i=0; i<MessageDecoder.HIGH_WATERMARK; i++) {
+			mr.enqueue(new MessageReceiver.Frame(MessageType.DATA, enc));
+		}
+		assertEquals(1, mr.updateReads());
+		assertTrue(mr.isReadPaused());
+		int resumes=0;
+		while ((f=mr.poll())!=null) {
+			mr.decode(f);
+			if (mr.updateReads()<0) resumes++;
+		}
+		assertEquals(1, resumes);
+		assertFalse(mr.isReadPaused());
+	}
+
+	@Test
+	public void testAsyncSendOrdering() throws IOException, BadFormatException {
+		final ArrayList<Message> received = new ArrayList<>();
+		MemoryByteChannel chan = MemoryByteChannel.create(100);
+		Connection conn=Connection.create(chan, null, Stores.current(), null);
+		MessageReceiver mr = new MessageReceiver(a -> received.add(a), conn);
+
+		// more messages than the send queue can hold
+		int NUM=MessageSender.MAX_QUEUED_FRAMES*2;
+		ArrayList<CompletableFuture<Void>> futures=new ArrayList<>();
+		for (int i=0; i<NUM; i++) {
+			futures.add(conn.sendObjectAsync(MessageType.DATA, CVMLong.create(i)));
+		}
+
+		// drain through the small channel until everything is delivered
+		int loops=0;
+		while (received.size()<NUM) {
+			conn.flushBytes();
+			mr.receiveFromChannel(chan);
+			assertTrue(++loops<1000000);
+		}
+
+		for (int i=0; i<NUM; i++) {
+			assertTrue(futures.get(i).isDone());
+			assertEquals(CVMLong.create(i),received.get(i).getPayload());
+		}
+	}
+
+	@Test
+	public void testPendingSendLimit() throws IOException {
+		MemoryByteChannel chan = MemoryByteChannel.create(100);
+		Connection conn=Connection.create(chan, null, Stores.current(), null);
+
+		// nothing is flushed, so sends beyond the queue must wait for space
+		CompletableFuture<Void> last=null;
+		int i=0;
+		while (conn.getPendingAsyncSends()<Connection.MAX_PENDING_ASYNC_SENDS) {
+			last=conn.sendObjectAsync(MessageType.RESULT, CVMLong.create(i++));
+			assertTrue(i<MessageSender.MAX_QUEUED_FRAMES+Connection.MAX_PENDING_ASYNC_SENDS+1);
+		}
+		assertFalse(last.isDone());
+		assertFalse(conn.isClosed());
+
+		// one more is over the limit, so the connection is dropped
+		CompletableFuture<Void> over=conn.sendObjectAsync(MessageType.RESULT, CVMLong.create(i));
+		assertTrue(over.isCompletedExceptionally());
+		assertTrue(conn.isClosed());
+		assertTrue(last.isCompletedExceptionally());
+		assertEquals(0,conn.getPendingAsyncSends());
+	}
+
+	@Test
+	public void testSendQueueCapacity() {
+		// queue is bounded by buffer capacity, so small frames use less of it
+		int large=fillSender(BufferPool.FRAME_BUFFER_SIZE);
+		int small=fillSender(10);
+		assertTrue(large*(long)BufferPool.FRAME_BUFFER_SIZE<=MessageSender.SEND_BUFFER_SIZE);
+		assertTrue(small>large*4);
+		assertTrue(small<=MessageSender.MAX_QUEUED_FRAMES);
+	}
+
+	private int fillSender(int frameSize) {
+		MessageSender sender=new MessageSender(MemoryByteChannel.create(100));
+		int n=0;
+		while (true) {
+			ByteBuffer frame=BufferPool.acquireFrame(frameSize);
+			if (sender.offer(frame, null)<0) {
+				BufferPool.releaseFrame(frame);
+				break;
+			}
+			n++;
+		}
+		sender.close();
+		return n;
+	}
+
 }
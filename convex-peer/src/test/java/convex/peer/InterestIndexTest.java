@@ -0,0 +1,84 @@
+package convex.peer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+
+import org.junit.jupiter.api.Test;
+
+import convex.core.ErrorCodes;
+import convex.core.Result;
+import convex.core.data.Hash;
+import convex.core.data.Vectors;
+import convex.core.lang.RT;
+import convex.core.store.Stores;
+import convex.net.Connection;
+import convex.net.MemoryByteChannel;
+import convex.net.MessageType;
+import convex.net.message.Message;
+import convex.net.message.MessageLocal;
+
+public class InterestIndexTest {
+
+	@Test
+	public void testDelivery() {
+		InterestIndex index = InterestIndex.create();
+		Hash h = RT.cvm(1L).getHash();
+		Message m = MessageLocal.create(MessageType.TRANSACT, Vectors.of(1L, 2L), null, r -> {});
+		assertTrue(index.register(h, m));
+		assertEquals(1, index.count());
+
+		assertSame(m, index.remove(h));
+		assertNull(index.remove(h));
+		assertEquals(0, index.count());
+		assertEquals(1, index.getDeliveredCount());
+
+		// drops are not counted as deliveries
+		assertTrue(index.register(h, m));
+		assertSame(m, index.drop(h));
+		assertEquals(1, index.getDeliveredCount());
+		assertEquals(1, index.getDroppedCount());
+		assertEquals(0, index.count());
+	}
+
+	@Test
+	public void testExpiry() {
+		ArrayList<Result> results = new ArrayList<>();
+		InterestIndex index = InterestIndex.create(-1, 10);
+		Message m = MessageLocal.create(MessageType.TRANSACT, Vectors.of(7L, 2L), null, r -> results.add(r));
+		index.register(RT.cvm(1L).getHash(), m);
+
+		assertEquals(1, index.sweep());
+		assertEquals(0, index.count());
+		assertEquals(1, index.getExpiredCount());
+		assertEquals(ErrorCodes.TIMEOUT, results.get(0).getErrorCode());
+	}
+
+	@Test
+	public void testConnectionLimit() throws IOException {
+		InterestIndex index = InterestIndex.create(InterestIndex.DEFAULT_TTL, 2);
+		Connection pc = Connection.create(MemoryByteChannel.create(10000), null, Stores.current(), null);
+		for (long i = 0; i < 2; i++) {
+			assertTrue(index.register(RT.cvm(i).getHash(), Message.create(pc, MessageType.TRANSACT, Vectors.of(i, i))));
+		}
+		Message extra = Message.create(pc, MessageType.TRANSACT, Vectors.of(3L, 3L));
+		assertFalse(index.register(RT.cvm(3L).getHash(), extra));
+		assertEquals(2, index.count(pc));
+		assertEquals(1, index.getRejectedCount());
+
+		// delivering a result frees capacity for the connection
+		index.remove(RT.cvm(0L).getHash());
+		assertEquals(1, index.count(pc));
+		assertTrue(index.register(RT.cvm(3L).getHash(), extra));
+
+		// counts are released completely when all interests are removed
+		index.drop(RT.cvm(1L).getHash());
+		index.remove(RT.cvm(3L).getHash());
+		assertEquals(0, index.count(pc));
+	}
+}
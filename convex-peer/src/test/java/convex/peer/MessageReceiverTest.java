@@ -1,19 +1,26 @@
 package convex.peer;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
 
 import org.junit.Test;
 
 import convex.core.data.ACell;
+import convex.core.data.AVector;
+import convex.core.data.Blob;
+import convex.core.data.Blobs;
+import convex.core.data.Vectors;
 import convex.core.exceptions.BadFormatException;
 import convex.core.lang.RT;
 import convex.core.store.Stores;
 import convex.net.Connection;
 import convex.net.MemoryByteChannel;
+import convex.net.MessageDecoder;
 import convex.net.MessageReceiver;
 import convex.net.MessageType;
 import convex.net.message.Message;
@@ -53,4 +60,150 @@ public class MessageReceiverTest {
 		Message m1 = received.get(0);
 		assertEquals(MessageType.DATA, m1.getType());
 	}
+
+	@Test
+	public void testDataBundle() throws IOException, BadFormatException {
+		final ArrayList<Message> received = new ArrayList<>();
+		MemoryByteChannel chan = MemoryByteChannel.create(100000);
+		Connection pc = Connection.create(chan, null, Stores.current(), null);
+		MessageReceiver mr = new MessageReceiver(a -> received.add(a), pc);
+
+		// bundling is off until enabled
+		assertEquals(0, pc.getMaxBundleSize());
+		pc.setMaxBundleSize(Connection.DEFAULT_MAX_BUNDLE_SIZE);
+
+		// novel non-embedded children should be sent ahead in a single bundle
+		Blob[] blobs = new Blob[10];
+		for (int i = 0; i < blobs.length; i++) {
+			blobs[i] = Blobs.createRandom(200);
+		}
+		AVector<Blob> v = Vectors.of((Object[]) blobs);
+		assertTrue(pc.sendObject(MessageType.QUERY, v));
+		assertTrue(pc.flushBytes());
+
+		while (mr.receiveFromChannel(chan) > 0) {
+			// read everything
+		}
+		assertEquals(2, received.size());
+		Message bundle = received.get(0);
+		assertEquals(MessageType.DATA_BUNDLE, bundle.getType());
+		AVector<ACell> cells = bundle.getPayload();
+		assertEquals(blobs.length, cells.count());
+		for (int i = 0; i < blobs.length; i++) {
+			assertEquals(blobs[i], cells.get(i));
+		}
+		assertEquals(v, received.get(1).getPayload());
+	}
+
+	@Test
+	public void testBundleNegotiation() throws IOException, BadFormatException {
+		final ArrayList<Message> received = new ArrayList<>();
+		MemoryByteChannel chan = MemoryByteChannel.create(100000);
+		Connection pc = Connection.create(chan, null, Stores.current(), null);
+		MessageReceiver mr = new MessageReceiver(a -> received.add(a), pc);
+
+		// without negotiation, novelty is sent as individual DATA messages
+		AVector<Blob> v = Vectors.of(Blobs.createRandom(200), Blobs.createRandom(200));
+		assertTrue(pc.sendObject(MessageType.QUERY, v));
+		assertTrue(pc.flushBytes());
+		while (mr.receiveFromChannel(chan) > 0) {
+			// read everything
+		}
+		assertEquals(3, received.size());
+		assertEquals(MessageType.DATA, received.get(0).getType());
+
+		// receiving a bundle shows the remote supports them
+		assertTrue(pc.sendDataBundle(Vectors.of(Blobs.createRandom(200), Blobs.createRandom(200))));
+		assertTrue(pc.flushBytes());
+		while (mr.receiveFromChannel(chan) > 0) {
+			// read everything
+		}
+		assertEquals(Connection.DEFAULT_MAX_BUNDLE_SIZE, pc.getMaxBundleSize());
+
+		// explicit setting is not overridden by negotiation
+		pc.setMaxBundleSize(0);
+		pc.enableRemoteBundles();
+		assertEquals(0, pc.getMaxBundleSize());
+	}
+
+	@Test
+	public void testBundleAnnouncement() throws IOException, BadFormatException {
+		final ArrayList<Message> received = new ArrayList<>();
+		MemoryByteChannel chan = MemoryByteChannel.create(100000);
+		Connection pc = Connection.create(chan, null, Stores.current(), null);
+		MessageReceiver mr = new MessageReceiver(a -> received.add(a), pc);
+
+		// a zero limit prevents opting in
+		pc.setBundleLimit(0);
+		assertFalse(pc.enableBundles());
+		assertEquals(0, pc.getMaxBundleSize());
+
+		// opting in announces support with an empty bundle
+		pc.setBundleLimit(1000);
+		assertTrue(pc.enableBundles());
+		assertEquals(1000, pc.getMaxBundleSize());
+
+		// lowering the limit caps the current size
+		pc.setBundleLimit(500);
+		assertEquals(500, pc.getMaxBundleSize());
+
+		// announcement enables bundles on receipt, but is not delivered
+		assertTrue(pc.flushBytes());
+		while (mr.receiveFromChannel(chan) > 0) {
+			// read everything
+		}
+		assertEquals(0, received.size());
+		assertEquals(1, mr.getReceivedCount());
+		assertEquals(500, pc.getMaxBundleSize());
+	}
+
+	@Test
+	public void testDecoderOrderingAndBackpressure() throws IOException, BadFormatException, InterruptedException {
+		final ArrayList<Message> received = new ArrayList<>();
+		CountDownLatch release = new CountDownLatch(1);
+
+		MemoryByteChannel chan = MemoryByteChannel.create(10000);
+		Connection pc = Connection.create(chan, null, Stores.current(), null);
+
+		// receive action blocks until released, simulating a full receive queue
+		MessageReceiver mr = new MessageReceiver(a -> {
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				return;
+			}
+			synchronized (received) {
+				received.add(a);
+			}
+		}, pc);
+		MessageDecoder decoder = MessageDecoder.create(2);
+		mr.setDecoder(decoder);
+
+		int n = MessageDecoder.HIGH_WATERMARK * 2;
+		for (int i = 0; i < n; i++) {
+			assertTrue(pc.sendData(RT.cvm((long) i)));
+		}
+		assertTrue(pc.flushBytes());
+
+		// reading does not block even though nothing can be delivered
+		for (int i = 0; i < n; i++) {
+			mr.receiveFromChannel(chan);
+		}
+		assertTrue(mr.getPendingCount() >= MessageDecoder.HIGH_WATERMARK);
+		assertEquals(1, decoder.getPausedCount());
+
+		release.countDown();
+		for (int i = 0; (i < 500) && (mr.getPendingCount() > 0); i++) {
+			Thread.sleep(10);
+		}
+		Thread.sleep(20);
+		synchronized (received) {
+			assertEquals(n, received.size());
+			for (int i = 0; i < n; i++) {
+				assertEquals(RT.cvm((long) i), received.get(i).getPayload());
+			}
+		}
+		assertEquals(0, decoder.getQueuedCount());
+		decoder.close();
+	}
 }
@@ -0,0 +1,153 @@
+package convex.peer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import convex.core.crypto.AKeyPair;
+import convex.core.data.AccountKey;
+import convex.core.data.Vectors;
+import convex.core.lang.RT;
+import convex.core.store.Stores;
+import convex.net.Connection;
+import convex.net.MemoryByteChannel;
+import convex.net.MessageType;
+import convex.net.message.Message;
+import convex.net.message.MessageLocal;
+import convex.peer.MessageScheduler.Category;
+
+public class MessageSchedulerTest {
+
+	private static Connection connection() throws IOException {
+		return Connection.create(MemoryByteChannel.create(100000), null, Stores.current(), null);
+	}
+
+	private static Connection trustedConnection() throws IOException {
+		AccountKey key = AKeyPair.createSeeded(678).getAccountKey();
+		return Connection.create(MemoryByteChannel.create(100000), null, Stores.current(), key);
+	}
+
+	private static Message query(Connection pc, long id) {
+		return Message.create(pc, MessageType.QUERY, Vectors.of(id, RT.cvm(id), null));
+	}
+
+	@Test
+	public void testFairness() throws Exception {
+		MessageScheduler ms = MessageScheduler.create();
+		Connection a = connection();
+		Connection b = connection();
+		for (long i = 0; i < 100; i++) {
+			assertTrue(ms.offer(query(a, i)));
+		}
+		Message mb = query(b, 1000);
+		assertTrue(ms.offer(mb));
+		assertEquals(101, ms.size());
+
+		// b gets its turn after at most one round of a
+		int pos = 0;
+		while (ms.poll(0, TimeUnit.MILLISECONDS) != mb) pos++;
+		assertTrue(pos <= MessageScheduler.QUANTUM * MessageScheduler.DEFAULT_WEIGHT);
+		assertEquals(100 - pos, ms.size());
+	}
+
+	@Test
+	public void testPeerPriority() throws Exception {
+		MessageScheduler ms = MessageScheduler.create();
+		Connection client = connection();
+		Connection peer = trustedConnection();
+		for (long i = 0; i < 10; i++) {
+			ms.offer(query(client, i));
+		}
+
+		// a BELIEF from an untrusted connection gets no priority
+		Message fake = Message.create(connection(), MessageType.BELIEF, RT.cvm(2L));
+		ms.offer(fake);
+
+		Message belief = Message.create(peer, MessageType.BELIEF, RT.cvm(1L));
+		ms.offer(belief);
+		assertSame(belief, ms.poll(0, TimeUnit.MILLISECONDS));
+		assertEquals(1, ms.getPeerCount());
+		assertEquals(0, ms.getClientCount());
+
+		// order within a source is preserved
+		assertEquals(RT.cvm(0L), ms.poll(0, TimeUnit.MILLISECONDS).getID());
+		assertEquals(RT.cvm(1L), ms.poll(0, TimeUnit.MILLISECONDS).getID());
+	}
+
+	@Test
+	public void testRateLimit() throws Exception {
+		MessageScheduler ms = MessageScheduler.create();
+		ms.setRateLimit(Category.QUERY, 0, 5);
+		Connection pc = connection();
+		for (long i = 0; i < 5; i++) {
+			assertTrue(ms.offer(query(pc, i)));
+		}
+		assertFalse(ms.offer(query(pc, 5)));
+		assertEquals(1, ms.getThrottledCount(Category.QUERY));
+		assertEquals(0, ms.getThrottledCount(Category.TRANSACT));
+
+		// other categories and local messages not affected
+		assertTrue(ms.offer(Message.create(pc, MessageType.DATA, RT.cvm(1L))));
+		assertTrue(ms.offer(MessageLocal.create(MessageType.QUERY, Vectors.of(6L, 6L), null, r -> {})));
+		assertEquals(1, ms.getThrottledCount());
+	}
+
+	@Test
+	public void testAwaitedData() throws Exception {
+		MessageScheduler ms = MessageScheduler.create();
+		ms.setRateLimit(Category.DATA, 0, 1);
+		Connection pc = connection();
+		assertTrue(ms.offer(Message.create(pc, MessageType.DATA, RT.cvm(1L))));
+		assertFalse(ms.offer(Message.create(pc, MessageType.DATA, RT.cvm(2L))));
+
+		// data we asked for is accepted over the limit, but nothing else
+		ms.setAwaitedData(h -> h.equals(RT.cvm(3L).getHash()));
+		assertTrue(ms.offer(Message.create(pc, MessageType.DATA, RT.cvm(3L))));
+		assertFalse(ms.offer(Message.create(pc, MessageType.DATA, RT.cvm(4L))));
+		assertEquals(2, ms.getThrottledCount(Category.DATA));
+		assertEquals(2, ms.size());
+	}
+
+	@Test
+	public void testSourceLimit() throws Exception {
+		MessageScheduler ms = MessageScheduler.create(100, 3);
+		Connection pc = connection();
+		for (long i = 0; i < 3; i++) {
+			assertTrue(ms.offer(query(pc, i)));
+		}
+		assertFalse(ms.offer(query(pc, 3)));
+		assertEquals(1, ms.getDroppedCount());
+
+		// other sources still accepted
+		assertTrue(ms.offer(query(connection(), 4)));
+
+		// closed connections are culled
+		pc.close();
+		assertEquals(1, ms.sweep());
+		assertEquals(1, ms.size());
+		assertEquals(RT.cvm(4L), ms.poll(0, TimeUnit.MILLISECONDS).getID());
+		assertNull(ms.poll(0, TimeUnit.MILLISECONDS));
+	}
+
+	@Test
+	public void testTrustedBackPressure() throws Exception {
+		MessageScheduler ms = MessageScheduler.create(2, 2);
+		Connection peer = trustedConnection();
+		assertTrue(ms.offer(query(peer, 0)));
+		assertTrue(ms.offer(query(peer, 1)));
+
+		// trusted source waits only briefly for space before the message is dropped
+		long start = System.currentTimeMillis();
+		assertFalse(ms.offer(query(peer, 2)));
+		assertTrue(System.currentTimeMillis() - start >= MessageScheduler.OFFER_TIMEOUT);
+		assertEquals(1, ms.getDroppedCount());
+		assertEquals(2, ms.size());
+	}
+}
@@ -0,0 +1,87 @@
+package convex.peer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+import convex.core.ErrorCodes;
+import convex.core.Result;
+import convex.core.data.Hash;
+import convex.core.data.Vectors;
+import convex.core.lang.RT;
+import convex.core.store.Stores;
+import convex.net.Connection;
+import convex.net.MemoryByteChannel;
+import convex.net.MessageType;
+import convex.net.message.Message;
+import convex.net.message.MessageLocal;
+
+public class PartialMessageStoreTest {
+
+	@Test
+	public void testCompletion() {
+		PartialMessageStore store = PartialMessageStore.create();
+		Hash a = RT.cvm(1L).getHash();
+		Hash b = RT.cvm(2L).getHash();
+		Message m = MessageLocal.create(MessageType.QUERY, Vectors.of(1L, 2L), null, r -> {});
+		assertTrue(store.register(m, Set.of(a, b)));
+		assertEquals(1, store.count());
+		assertEquals(2, store.getMissingCount());
+
+		// not ready until all missing data received
+		assertTrue(store.dataReceived(a).isEmpty());
+		assertTrue(store.dataReceived(a).isEmpty());
+		List<Message> ready = store.dataReceived(b);
+		assertEquals(1, ready.size());
+		assertSame(m, ready.get(0));
+		assertEquals(0, store.count());
+		assertEquals(0, store.getMissingCount());
+		assertEquals(1, store.getCompletedCount());
+	}
+
+	@Test
+	public void testExpiry() {
+		ArrayList<Result> results = new ArrayList<>();
+		PartialMessageStore store = PartialMessageStore.create(-1, 10, 10);
+		Message m = MessageLocal.create(MessageType.QUERY, Vectors.of(7L, 2L), null, r -> results.add(r));
+		Hash h = RT.cvm(1L).getHash();
+		store.register(m, Set.of(h));
+
+		assertEquals(1, store.sweep());
+		assertEquals(0, store.count());
+		assertEquals(0, store.getMissingCount());
+		assertEquals(1, store.getExpiredCount());
+		assertEquals(ErrorCodes.TIMEOUT, results.get(0).getErrorCode());
+		assertTrue(store.dataReceived(h).isEmpty());
+	}
+
+	@Test
+	public void testLimits() throws IOException {
+		PartialMessageStore store = PartialMessageStore.create(PartialMessageStore.DEFAULT_TTL, 2, 3);
+		Connection pc = Connection.create(MemoryByteChannel.create(10000), null, Stores.current(), null);
+		for (long i = 0; i < 2; i++) {
+			assertTrue(store.register(Message.create(pc, MessageType.DATA, RT.cvm(i)), Set.of(RT.cvm(i).getHash())));
+		}
+		Message extra = Message.create(pc, MessageType.DATA, RT.cvm(3L));
+		assertFalse(store.register(extra, Set.of(RT.cvm(3L).getHash())));
+		assertEquals(2, store.count(pc));
+
+		// total limit applies across connections
+		assertTrue(store.register(MessageLocal.create(MessageType.QUERY, Vectors.of(4L, 4L), null, r -> {}), Set.of(RT.cvm(4L).getHash())));
+		assertFalse(store.register(MessageLocal.create(MessageType.QUERY, Vectors.of(5L, 5L), null, r -> {}), Set.of(RT.cvm(5L).getHash())));
+		assertEquals(2, store.getRejectedCount());
+
+		// completing a message frees capacity for the connection
+		assertEquals(1, store.dataReceived(RT.cvm(0L).getHash()).size());
+		assertEquals(1, store.count(pc));
+		assertTrue(store.register(extra, Set.of(RT.cvm(3L).getHash())));
+	}
+}
@@ -15,6 +15,7 @@ import java.util.concurrent.TimeoutException;
 import org.junit.jupiter.api.Test;
 
 import convex.api.Convex;
+import convex.core.Peer;
 import convex.core.Result;
 import convex.core.State;
 import convex.core.crypto.AKeyPair;
@@ -94,4 +95,41 @@ public class RestoreTest {
 		State state=s2.getPeer().getConsensusState();
 		assertNotNull(state);
 	}
-}
\ No newline at end of file
+
+	@Test
+	public void checkpointTest() throws IOException, InterruptedException, ExecutionException, TimeoutException {
+		AStore store=EtchStore.createTemp();
+		Map<Keyword, Object> config = Maps.hashMapOf(
+				Keywords.KEYPAIR,KP,
+				Keywords.STATE,GENESIS,
+				Keywords.STORE,store,
+				Keywords.URL,null,
+				Keywords.PERSIST,true,
+				Keywords.PERSIST_BLOCKS,1,
+				Keywords.PERSIST_INTERVAL,10
+		);
+		Server s1=API.launchPeer(config);
+		try {
+			Convex cvx1=Convex.connect(s1,HERO,KP);
+			Result tx1=cvx1.transactSync(Invoke.create(HERO,1, Symbols.STAR_ADDRESS));
+			assertFalse(tx1.isError());
+			long cp=s1.getPeer().getConsensusPoint();
+			assertTrue(cp>0);
+
+			// Wait for background checkpoint to catch up, without closing the Server
+			for (int i=0; (i<500)&&(s1.getPersistedConsensusPoint()<cp); i++) {
+				Thread.sleep(10);
+			}
+			assertTrue(s1.getPersistCount()>0);
+			assertTrue(s1.getPersistedConsensusPoint()>=cp);
+
+			// Peer can be restored from the checkpoint as if after a crash
+			Peer restored=Peer.restorePeer(store, KP);
+			assertNotNull(restored);
+			assertTrue(restored.getConsensusPoint()>=cp);
+			assertEquals(GENESIS.getHash(),restored.getNetworkID());
+		} finally {
+			s1.close();
+		}
+	}
+}
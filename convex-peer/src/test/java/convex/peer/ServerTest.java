@@ -3,11 +3,14 @@ package convex.peer;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
@@ -19,7 +22,9 @@ import org.junit.jupiter.api.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import convex.api.Acquiror;
 import convex.api.Convex;
+import convex.api.ConvexRemote;
 import convex.core.Belief;
 import convex.core.Coin;
 import convex.core.ErrorCodes;
@@ -51,6 +56,8 @@ import convex.core.transactions.Invoke;
 import convex.core.transactions.Transfer;
 import convex.core.util.Utils;
 import convex.net.Connection;
+import convex.net.MessageType;
+import convex.net.NIOServer;
 import convex.net.ResultConsumer;
 import convex.net.message.Message;
 import etch.EtchStore;
@@ -229,6 +236,202 @@ public class ServerTest {
 		}
 	}
 	
+	@Test
+	public void testAcquireToNewStore() throws IOException, InterruptedException, ExecutionException, TimeoutException {
+		synchronized(network.SERVER) {
+			AStore store=EtchStore.createTemp("acquire-test");
+			ConvexRemote convex=Convex.connect(network.SERVER.getHostAddress(), null, null, store);
+			try {
+				Hash h=network.SERVER.getPeer().getConsensusState().getHash();
+				Acquiror<State> acquiror=convex.startAcquire(h, store);
+				State s=acquiror.getFuture().get(20000,TimeUnit.MILLISECONDS);
+				assertEquals(h,s.getHash());
+				assertTrue(store.refForHash(h).getStatus()>=Ref.PERSISTED);
+
+				// progress metrics reflect a multi-cell transfer
+				assertTrue(acquiror.getReceivedCount()>1);
+				assertTrue(acquiror.getRequestCount()>=acquiror.getReceivedCount());
+				assertEquals(0,acquiror.getInFlightCount());
+			} finally {
+				convex.close();
+			}
+		}
+	}
+
+	@Test
+	public void testInboundPeerPriority() throws IOException, TimeoutException, InterruptedException {
+		AKeyPair kp0=AKeyPair.createSeeded(2468);
+		AKeyPair kp1=AKeyPair.createSeeded(3579);
+		State genesis=Init.createState(List.of(kp0.getAccountKey(),kp1.getAccountKey()));
+		HashMap<Keyword,Object> config=new HashMap<>();
+		config.put(Keywords.STATE,genesis);
+		config.put(Keywords.KEYPAIR,kp0);
+		config.put(Keywords.STORE,EtchStore.createTemp());
+		Server s0=API.launchPeer(config);
+		config.put(Keywords.KEYPAIR,kp1);
+		config.put(Keywords.STORE,EtchStore.createTemp());
+		Server s1=API.launchPeer(config);
+
+		// tight client limit, so that a flooding client is throttled
+		MessageScheduler ms=s0.getMessageScheduler();
+		ms.setRateLimit(MessageScheduler.Category.QUERY, 10, 10);
+		Connection flood=null;
+		try {
+			// only s1 connects, so s0 only sees s1 on an inbound connection
+			s1.getConnectionManager().connectToPeer(s0.getHostAddress());
+
+			// a transaction on s1 makes it broadcast Beliefs to s0
+			Convex c1=Convex.connect(s1, Address.create(Init.GENESIS_ADDRESS), kp0);
+			c1.transact(Invoke.create(Address.create(Init.GENESIS_ADDRESS), 0, "1"));
+
+			flood=Connection.connect(s0.getHostAddress(), handler, Stores.current());
+			long start=System.currentTimeMillis();
+			while ((ms.getPeerCount()==0)&&(System.currentTimeMillis()<start+10000)) {
+				for (int i=0; i<100; i++) {
+					flood.sendQuery(CVMLong.create(i),network.HERO);
+				}
+				Thread.sleep(10);
+			}
+
+			// Beliefs from the authenticated inbound connection are served as peer traffic
+			assertTrue(ms.getPeerCount()>0);
+			assertEquals(0,s0.getConnectionManager().getConnectionCount());
+			assertEquals(0,ms.getThrottledCount(MessageScheduler.Category.PEER));
+			assertTrue(ms.getThrottledCount(MessageScheduler.Category.QUERY)>0);
+		} finally {
+			if (flood!=null) flood.close();
+			s1.close();
+			s0.close();
+		}
+	}
+
+	@Test
+	public void testBundleRoundTrip() throws IOException, TimeoutException, InterruptedException {
+		AKeyPair kp0=AKeyPair.createSeeded(1470);
+		AKeyPair kp1=AKeyPair.createSeeded(2581);
+		State genesis=Init.createState(List.of(kp0.getAccountKey(),kp1.getAccountKey()));
+		HashMap<Keyword,Object> config=new HashMap<>();
+		config.put(Keywords.STATE,genesis);
+		config.put(Keywords.KEYPAIR,kp0);
+		config.put(Keywords.STORE,EtchStore.createTemp());
+		Server s0=API.launchPeer(config);
+		config.put(Keywords.KEYPAIR,kp1);
+		config.put(Keywords.STORE,EtchStore.createTemp());
+		Server s1=API.launchPeer(config);
+
+		ArrayList<Message> plainMessages=new ArrayList<>();
+		ArrayList<Message> bundledMessages=new ArrayList<>();
+		Connection plain=null;
+		Connection bundled=null;
+		try {
+			// outgoing peer connections opt in to bundles
+			Connection pc=s1.getConnectionManager().connectToPeer(s0.getHostAddress());
+			assertNotNull(pc);
+			assertEquals(Connection.DEFAULT_MAX_BUNDLE_SIZE,pc.getMaxBundleSize());
+
+			// novelty in a transaction on s1 still reaches consensus
+			Convex c1=Convex.connect(s1, Address.create(Init.GENESIS_ADDRESS), kp0);
+			Result r=c1.transactSync(Invoke.create(Address.create(Init.GENESIS_ADDRESS), 0, bigForm("p")));
+			assertFalse(r.isError());
+			assertEquals(8L,RT.count(r.getValue()));
+
+			// clients only get bundles from the peer after opting in
+			plain=Connection.connect(s0.getHostAddress(), m->{synchronized(plainMessages) {plainMessages.add(m);}}, Stores.current());
+			bundled=Connection.connect(s0.getHostAddress(), m->{synchronized(bundledMessages) {bundledMessages.add(m);}}, Stores.current());
+			assertTrue(bundled.enableBundles());
+			assertTrue(plain.sendQuery(1, Reader.read(bigForm("a")), Address.create(Init.GENESIS_ADDRESS)));
+			assertTrue(bundled.sendQuery(2, Reader.read(bigForm("b")), Address.create(Init.GENESIS_ADDRESS)));
+
+			Result plainResult=awaitResult(plainMessages);
+			Result bundledResult=awaitResult(bundledMessages);
+			assertNull(plainResult.getErrorCode());
+			assertNull(bundledResult.getErrorCode());
+
+			// result novelty arrives as individual cells, or in bundles after opting in
+			assertTrue(countType(plainMessages,MessageType.DATA)>0);
+			assertEquals(0,countType(plainMessages,MessageType.DATA_BUNDLE));
+			assertEquals(0,countType(bundledMessages,MessageType.DATA));
+			assertTrue(countType(bundledMessages,MessageType.DATA_BUNDLE)>0);
+		} finally {
+			if (plain!=null) plain.close();
+			if (bundled!=null) bundled.close();
+			s1.close();
+			s0.close();
+		}
+	}
+
+	/**
+	 * Form producing a vector of novel non-embedded strings
+	 */
+	private static String bigForm(String tag) {
+		StringBuilder sb=new StringBuilder();
+		for (int i=0; i<200; i++) sb.append(tag);
+		return "(map (fn [i] (str i \""+sb+"\")) [0 1 2 3 4 5 6 7])";
+	}
+
+	private static Result awaitResult(ArrayList<Message> messages) throws InterruptedException {
+		long start=System.currentTimeMillis();
+		while (System.currentTimeMillis()<start+5000) {
+			synchronized(messages) {
+				for (Message m: messages) {
+					if (m.getType()==MessageType.RESULT) return m.getPayload();
+				}
+			}
+			Thread.sleep(10);
+		}
+		throw new AssertionError("No result received");
+	}
+
+	private static int countType(ArrayList<Message> messages, MessageType type) {
+		int n=0;
+		synchronized(messages) {
+			for (Message m: messages) {
+				if (m.getType()==type) n++;
+			}
+		}
+		return n;
+	}
+
+	@Test
+	public void testReactors() throws IOException, TimeoutException, InterruptedException {
+		AKeyPair kp=AKeyPair.createSeeded(1357);
+		HashMap<Keyword,Object> config=new HashMap<>();
+		config.put(Keywords.KEYPAIR,kp);
+		config.put(Keywords.STORE,EtchStore.createTemp());
+		config.put(Keywords.REACTORS,3);
+		Server server=API.launchPeer(config);
+		ArrayList<Convex> clients=new ArrayList<>();
+		try {
+			List<NIOServer.Reactor> reactors=server.getNIOServer().getReactors();
+			assertEquals(3,reactors.size());
+
+			for (int i=0; i<6; i++) {
+				Convex c=Convex.connect(server.getHostAddress());
+				clients.add(c);
+				assertEquals(CVMLong.create(i),c.querySync(CVMLong.create(i)).getValue());
+			}
+
+			// connections are spread evenly, and each reactor has handled reads
+			for (NIOServer.Reactor r: reactors) {
+				assertEquals(2,r.getConnectionCount());
+				assertTrue(r.getBytesRead()>0);
+			}
+
+			// counts drop back to zero once clients disconnect
+			for (Convex c: clients) c.close();
+			long start=System.currentTimeMillis();
+			while (reactors.stream().anyMatch(r->r.getConnectionCount()>0)&&(System.currentTimeMillis()<start+5000)) {
+				Thread.sleep(10);
+			}
+			for (NIOServer.Reactor r: reactors) {
+				assertEquals(0,r.getConnectionCount());
+			}
+		} finally {
+			for (Convex c: clients) c.close();
+			server.close();
+		}
+	}
+
 	@Test
 	public void testQueryStrings() throws TimeoutException, IOException {
 		Convex convex=network.CONVEX;
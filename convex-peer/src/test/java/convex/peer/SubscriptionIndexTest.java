@@ -0,0 +1,170 @@
+package convex.peer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import org.junit.jupiter.api.Test;
+
+import convex.core.ErrorCodes;
+import convex.core.Peer;
+import convex.core.Result;
+import convex.core.State;
+import convex.core.crypto.AKeyPair;
+import convex.core.data.AccountStatus;
+import convex.core.data.Address;
+import convex.core.data.Symbol;
+import convex.core.data.Vectors;
+import convex.core.data.prim.CVMLong;
+import convex.core.init.Init;
+import convex.core.lang.Reader;
+import convex.net.MessageType;
+import convex.net.message.MessageLocal;
+
+public class SubscriptionIndexTest {
+
+	static final AKeyPair KP = AKeyPair.createSeeded(4343);
+	static final State STATE = Init.createState(List.of(KP.getAccountKey()));
+	static final Address BANK = Init.MAINBANK_ADDRESS;
+
+	private static MessageLocal subscribe(long id, Object target, Address address, Consumer<Result> handler) {
+		return MessageLocal.create(MessageType.SUBSCRIBE, Vectors.of(id, target, address), null, handler);
+	}
+
+	@Test
+	public void testPushOnChange() {
+		Peer p1 = Peer.create(KP, STATE);
+		AccountStatus bank = STATE.getAccount(BANK);
+		Peer p2 = Peer.create(KP, STATE.putAccount(BANK, bank.withBalance(bank.getBalance() - 1)));
+
+		ArrayList<Result> results = new ArrayList<>();
+		SubscriptionIndex index = SubscriptionIndex.create();
+		index.setQueryInterval(0);
+		index.queue(subscribe(1, BANK, null, results::add));
+		index.queue(subscribe(2, Init.ROOTFUND_ADDRESS, null, results::add));
+		index.queue(subscribe(3, Reader.read("(balance #3)"), Init.CORE_ADDRESS, results::add));
+		index.queue(subscribe(4, BANK, null, results::add));
+
+		// initial values pushed, with shared watch for same target. The query is
+		// executed by the rate limited check, after the others
+		assertEquals(4, index.update(p1));
+		assertEquals(4, index.count());
+		assertEquals(3, index.getWatchCount());
+		assertEquals(bank, results.get(0).getValue());
+		assertEquals(CVMLong.create(1), results.get(0).getID());
+		assertEquals(CVMLong.create(3), results.get(3).getID());
+		assertEquals(CVMLong.create(bank.getBalance()), results.get(3).getValue());
+
+		// no change, no pushes
+		assertEquals(0, index.update(p1));
+
+		// changed account and query result pushed, unchanged account not pushed
+		results.clear();
+		assertEquals(3, index.update(p2));
+		assertEquals(CVMLong.create(bank.getBalance() - 1), results.get(2).getValue());
+
+		// unsubscribe removes only the given subscription
+		Consumer<Result> handler = results::add;
+		index.queue(subscribe(5, BANK, null, handler));
+		index.update(p2);
+		index.queue(MessageLocal.create(MessageType.UNSUBSCRIBE, Vectors.of(5), null, handler));
+		index.update(p2);
+		assertEquals(4, index.count());
+	}
+
+	@Test
+	public void testRejection() {
+		Peer p = Peer.create(KP, STATE);
+		ArrayList<Result> results = new ArrayList<>();
+		SubscriptionIndex index = SubscriptionIndex.create(1, 1);
+		index.queue(subscribe(1, Symbol.create("foo"), null, results::add));
+		index.queue(subscribe(2, Symbol.create("foo"), BANK, results::add));
+		index.queue(subscribe(3, BANK, null, results::add));
+		index.update(p);
+
+		assertEquals(ErrorCodes.ARGUMENT, results.get(0).getErrorCode());
+		assertNull(results.get(1).getErrorCode());
+		assertEquals(ErrorCodes.LOAD, results.get(2).getErrorCode());
+		assertEquals(1, index.count());
+		assertEquals(1, index.getRejectedCount());
+	}
+
+	@Test
+	public void testQueryLimits() {
+		Peer p1 = Peer.create(KP, STATE);
+		AccountStatus bank = STATE.getAccount(BANK);
+		Peer p2 = Peer.create(KP, STATE.putAccount(BANK, bank.withBalance(bank.getBalance() - 1)));
+
+		ArrayList<Result> results = new ArrayList<>();
+		Consumer<Result> handler = results::add;
+		SubscriptionIndex index = SubscriptionIndex.create();
+		index.setQueryInterval(1000000);
+		index.queue(subscribe(1, Reader.read("(balance #3)"), Init.CORE_ADDRESS, handler));
+		index.queue(subscribe(2, BANK, null, handler));
+		assertEquals(2, index.update(p1));
+		assertEquals(1, index.getQueryCount());
+
+		// account pushed immediately, query deferred until interval has passed
+		results.clear();
+		assertEquals(1, index.update(p2));
+		assertEquals(CVMLong.create(2), results.get(0).getID());
+		assertEquals(0, index.update(p2));
+
+		index.setQueryInterval(0);
+		assertEquals(1, index.update(p2));
+		assertEquals(CVMLong.create(bank.getBalance() - 1), results.get(1).getValue());
+
+		// unsubscribing releases query quota
+		index.queue(MessageLocal.create(MessageType.UNSUBSCRIBE, Vectors.of(1), null, handler));
+		index.update(p2);
+		assertEquals(0, index.getQueryCount());
+		assertEquals(1, index.count());
+	}
+
+	@Test
+	public void testQueryInitialValue() {
+		Peer p = Peer.create(KP, STATE);
+		long balance = STATE.getAccount(BANK).getBalance();
+		ArrayList<Result> results = new ArrayList<>();
+		Consumer<Result> handler = results::add;
+		SubscriptionIndex index = SubscriptionIndex.create();
+		index.setQueryInterval(0);
+
+		// more new query targets than can be executed in one update
+		int n = SubscriptionIndex.MAX_QUERY_CHECKS + 1;
+		for (int i = 0; i < n; i++) {
+			index.queue(subscribe(i, Reader.read("(+ " + i + " (balance #3))"), Init.CORE_ADDRESS, handler));
+		}
+		index.update(p);
+		assertEquals(SubscriptionIndex.MAX_QUERY_CHECKS, index.getCheckCount());
+		index.update(p);
+		assertEquals(n, results.size());
+
+		// a new subscriber to the same target gets the last result without executing it,
+		// even when re-subscribing with the same ID
+		index.queue(subscribe(0, Reader.read("(+ 0 (balance #3))"), Init.CORE_ADDRESS, handler));
+		index.queue(subscribe(100, Reader.read("(+ 0 (balance #3))"), Init.CORE_ADDRESS, handler));
+		assertEquals(2, index.update(p));
+		assertEquals(n, index.getCheckCount());
+		assertEquals(CVMLong.create(balance), results.get(n + 1).getValue());
+	}
+
+	@Test
+	public void testPendingLimit() {
+		Peer p = Peer.create(KP, STATE);
+		SubscriptionIndex index = SubscriptionIndex.create(SubscriptionIndex.DEFAULT_LIMIT, SubscriptionIndex.DEFAULT_LIMIT);
+		Consumer<Result> handler = r -> {};
+		int n = SubscriptionIndex.MAX_PENDING_UPDATES + 1;
+		for (int i = 0; i < n; i++) {
+			index.queue(subscribe(i, BANK, null, handler));
+		}
+		assertEquals(SubscriptionIndex.MAX_PENDING_UPDATES, index.update(p));
+		assertTrue(index.hasPending());
+		assertEquals(1, index.update(p));
+		assertEquals(n, index.count());
+	}
+}
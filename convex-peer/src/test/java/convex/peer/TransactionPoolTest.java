@@ -0,0 +1,145 @@
+package convex.peer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import convex.core.ErrorCodes;
+import convex.core.State;
+import convex.core.crypto.AKeyPair;
+import convex.core.data.ACell;
+import convex.core.data.Address;
+import convex.core.data.Keyword;
+import convex.core.data.SignedData;
+import convex.core.init.Init;
+import convex.core.transactions.ATransaction;
+import convex.core.transactions.Invoke;
+
+public class TransactionPoolTest {
+
+	static final AKeyPair KP = AKeyPair.createSeeded(2);
+	static final State STATE = Init.createState(List.of(KP.getAccountKey()));
+	static final Address HERO = Init.GENESIS_ADDRESS;
+
+	private SignedData<ATransaction> tx(long seq) {
+		ATransaction t = Invoke.create(HERO, seq, "(+ 1 2)");
+		SignedData<ATransaction> st = KP.signData(t);
+		ACell.createPersisted(st);
+		return st;
+	}
+
+	@Test
+	public void testOrderingAndGaps() {
+		ArrayList<Keyword> dropped = new ArrayList<>();
+		TransactionPool pool = TransactionPool.create(TransactionPool.DEFAULT_MEMORY_LIMIT, (st, code) -> dropped.add(code));
+		long seq = STATE.getAccount(HERO).getSequence();
+
+		// out of order arrival, with a gap at seq+3
+		assertTrue(pool.add(tx(seq + 2)));
+		assertTrue(pool.add(tx(seq + 1)));
+		assertTrue(pool.add(tx(seq + 4)));
+		assertEquals(3, pool.count());
+
+		// duplicate ignored
+		assertFalse(pool.add(tx(seq + 1)));
+		assertEquals(1, pool.getDuplicateCount());
+
+		List<SignedData<ATransaction>> sel = pool.select(STATE, 100);
+		assertEquals(2, sel.size());
+		assertEquals(seq + 1, sel.get(0).getValue().getSequence());
+		assertEquals(seq + 2, sel.get(1).getValue().getSequence());
+		assertEquals(1, pool.count());
+
+		// gapped transaction is held back until the gap is filled
+		assertTrue(pool.select(STATE, 100).isEmpty());
+		assertTrue(pool.add(tx(seq + 3)));
+		sel = pool.select(STATE, 100);
+		assertEquals(2, sel.size());
+		assertTrue(pool.isEmpty());
+		assertTrue(dropped.isEmpty());
+
+		// stale transaction is rejected
+		pool.add(tx(seq));
+		assertTrue(pool.select(STATE, 100).isEmpty());
+		assertEquals(List.of(ErrorCodes.SEQUENCE), dropped);
+		assertEquals(0, pool.getMemorySize());
+	}
+
+	@Test
+	public void testBatchLimit() {
+		TransactionPool pool = TransactionPool.create(TransactionPool.DEFAULT_MEMORY_LIMIT, null);
+		long seq = STATE.getAccount(HERO).getSequence();
+		for (int i = 1; i <= 10; i++) {
+			pool.add(tx(seq + i));
+		}
+		assertEquals(4, pool.select(STATE, 4).size());
+		assertEquals(6, pool.select(STATE, 100).size());
+	}
+
+	@Test
+	public void testMemoryLimit() {
+		ArrayList<Keyword> dropped = new ArrayList<>();
+		long size = tx(1).getMemorySize();
+		TransactionPool pool = TransactionPool.create(size * 3, (st, code) -> dropped.add(code));
+		long seq = STATE.getAccount(HERO).getSequence();
+		for (int i = 1; i <= 5; i++) {
+			pool.add(tx(seq + i));
+		}
+		assertTrue(pool.getMemorySize() <= size * 3);
+		assertEquals(2, pool.getEvictedCount());
+		assertEquals(2, dropped.size());
+
+		// highest sequences evicted, so lowest remain executable
+		List<SignedData<ATransaction>> sel = pool.select(STATE, 100);
+		assertEquals(seq + 1, sel.get(0).getValue().getSequence());
+	}
+
+	@Test
+	public void testSignerCheck() {
+		ArrayList<Keyword> dropped = new ArrayList<>();
+		TransactionPool pool = TransactionPool.create(TransactionPool.DEFAULT_MEMORY_LIMIT, (st, code) -> dropped.add(code));
+		long seq = STATE.getAccount(HERO).getSequence();
+		SignedData<ATransaction> forged = AKeyPair.createSeeded(3).signData(Invoke.create(HERO, seq + 1, "(+ 1 2)"));
+
+		// rejected before taking a sequence slot when the State is known
+		assertFalse(pool.add(forged, STATE));
+		assertEquals(List.of(ErrorCodes.SIGNATURE), dropped);
+		assertTrue(pool.isEmpty());
+
+		// an unchecked forgery is displaced by a key-valid transaction
+		assertTrue(pool.add(forged));
+		SignedData<ATransaction> genuine = tx(seq + 1);
+		assertTrue(pool.add(genuine, STATE));
+		assertEquals(1, pool.count());
+		assertFalse(pool.contains(forged.getHash()));
+		assertEquals(List.of(ErrorCodes.SIGNATURE, ErrorCodes.SEQUENCE), dropped);
+
+		// but a checked transaction keeps its slot
+		assertFalse(pool.add(KP.signData(Invoke.create(HERO, seq + 1, "(+ 3 4)")), STATE));
+		assertEquals(List.of(genuine), pool.select(STATE, 100));
+		assertEquals(0, pool.getMemorySize());
+	}
+
+	@Test
+	public void testEvictLongestQueue() {
+		SignedData<ATransaction> other = KP.signData(Invoke.create(HERO.offset(1), 1, "(+ 1 2)"));
+		long size = Math.max(tx(1).getMemorySize(), other.getMemorySize());
+		TransactionPool pool = TransactionPool.create(size * 4, null);
+		long seq = STATE.getAccount(HERO).getSequence();
+		assertTrue(pool.add(other));
+		for (int i = 1; i <= 5; i++) {
+			pool.add(tx(seq + i));
+		}
+		assertTrue(pool.getMemorySize() <= size * 4);
+
+		// evictions come from the longest queue only
+		assertTrue(pool.contains(other.getHash()));
+		assertTrue(pool.contains(tx(seq + 1).getHash()));
+		assertFalse(pool.contains(tx(seq + 5).getHash()));
+	}
+}